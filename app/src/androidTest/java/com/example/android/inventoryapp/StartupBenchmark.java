@@ -0,0 +1,132 @@
+package com.example.android.inventoryapp;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.widget.TextView;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SupplierEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures how long MainActivity takes from launch to its first frame, which shows placeholder
+ * rows, and to its first product row. The database is already open here, so this is the
+ * activity's share of a start. A cold start including the process and the database open is
+ * measured from outside with "adb shell am force-stop" followed by "adb shell am start -W".
+ * Results are written to logcat under the {@link #TAG} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    private static final String TAG = "StartupBenchmark";
+    private static final String BENCHMARK_SUPPLIER = "Startup Benchmark";
+    private static final int ROWS = 200;
+    private static final int LAUNCHES = 20;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void timeToFirstRow() throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = instrumentation.getTargetContext();
+        ContentResolver contentResolver = context.getContentResolver();
+        seed(contentResolver);
+
+        long[] firstFrame = new long[LAUNCHES];
+        long[] firstRow = new long[LAUNCHES];
+        try {
+            for (int i = 0; i < LAUNCHES; i++) {
+                Intent intent = new Intent(context, MainActivity.class)
+                        .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                long start = System.nanoTime();
+                //returns once the activity is resumed and its first frame is done
+                Activity activity = instrumentation.startActivitySync(intent);
+                firstFrame[i] = System.nanoTime() - start;
+                waitForFirstRow(instrumentation, activity, start);
+                firstRow[i] = System.nanoTime() - start;
+                activity.finish();
+                instrumentation.waitForIdleSync();
+            }
+        } finally {
+            removeSeed(contentResolver);
+        }
+
+        Log.i(TAG, "first frame " + summary(firstFrame));
+        Log.i(TAG, "first row   " + summary(firstRow));
+    }
+
+    private static void waitForFirstRow(Instrumentation instrumentation, final Activity activity,
+                                        long start) throws InterruptedException {
+        final boolean[] shown = new boolean[1];
+        Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView list = activity.findViewById(R.id.list);
+                RecyclerView.ViewHolder holder = list.findViewHolderForAdapterPosition(0);
+                shown[0] = holder != null && ((TextView) holder.itemView
+                        .findViewById(R.id.product_name)).length() > 0;
+            }
+        };
+        while (true) {
+            instrumentation.runOnMainSync(check);
+            if (shown[0]) {
+                return;
+            }
+            assertTrue("no row within " + TIMEOUT_MILLIS + "ms",
+                    System.nanoTime() - start < TIMEOUT_MILLIS * 1000000);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void seed(ContentResolver contentResolver) {
+        ContentValues[] products = new ContentValues[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            products[i] = new ContentValues();
+            products[i].put(InventoryEntry.COLUMN_PRODUCT_NAME, "Benchmark product " + i);
+            products[i].put(InventoryEntry.COLUMN_PRICE, i % 100);
+            products[i].put(InventoryEntry.COLUMN_QUANTITY, i % 50);
+            products[i].put(InventoryEntry.COLUMN_SUPPLIER_NAME, BENCHMARK_SUPPLIER);
+        }
+        assertEquals(ROWS, contentResolver.bulkInsert(InventoryEntry.CONTENT_URI, products));
+    }
+
+    private static void removeSeed(ContentResolver contentResolver) {
+        Cursor cursor = contentResolver.query(SupplierEntry.CONTENT_URI,
+                new String[]{SupplierEntry._ID}, SupplierEntry.COLUMN_SUPPLIER_NAME + " = ?",
+                new String[]{BENCHMARK_SUPPLIER}, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
+            long supplierId = cursor.getLong(0);
+            contentResolver.delete(InventoryEntry.CONTENT_URI, InventoryEntry.COLUMN_SUPPLIER_ID + " = ?",
+                    new String[]{Long.toString(supplierId)});
+            contentResolver.delete(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierId),
+                    null, null);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String summary(long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return "p50=" + sorted[sorted.length / 2] / 1000000 + "ms"
+                + " p90=" + sorted[sorted.length * 9 / 10] / 1000000 + "ms"
+                + " max=" + sorted[sorted.length - 1] / 1000000 + "ms";
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the latency of the main list query while another thread keeps writing,
+ * once with the rollback journal and once with the write-ahead log.
+ * Results are written to logcat under the {@link #TAG} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentReadBenchmark {
+    private static final String TAG = "ConcurrentReadBenchmark";
+    private static final String BENCHMARK_DATABASE = "benchmark_inventory.db";
+    private static final int ROWS = 20000;
+    private static final int READS = 200;
+
+    private static final String[] LIST_PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRICE,
+            InventoryEntry.COLUMN_QUANTITY
+    };
+
+    @Test
+    public void readLatencyDuringWrites() throws Exception {
+        long[] rollback = measure(InventoryDbHelper.StorageMode.ROLLBACK_JOURNAL);
+        long[] wal = measure(InventoryDbHelper.StorageMode.WRITE_AHEAD_LOG);
+
+        Log.i(TAG, "rollback journal " + summary(rollback));
+        Log.i(TAG, "write-ahead log  " + summary(wal));
+        assertEquals(READS, wal.length);
+    }
+
+    private long[] measure(InventoryDbHelper.StorageMode mode) throws InterruptedException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(BENCHMARK_DATABASE);
+        InventoryDbHelper helper = new InventoryDbHelper(context, BENCHMARK_DATABASE, mode);
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        seed(db);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteStatement sell = db.compileStatement("UPDATE " + InventoryEntry.TABLE_NAME
+                        + " SET " + InventoryEntry.COLUMN_QUANTITY + " = "
+                        + InventoryEntry.COLUMN_QUANTITY + " + 1 WHERE " + InventoryEntry._ID + " = ?");
+                long id = 1;
+                while (running.get()) {
+                    db.beginTransaction();
+                    try {
+                        sell.bindLong(1, id);
+                        sell.executeUpdateDelete();
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    id = id % ROWS + 1;
+                }
+                sell.close();
+            }
+        });
+        writer.start();
+
+        long[] latencies = new long[READS];
+        try {
+            for (int i = 0; i < READS; i++) {
+                long start = System.nanoTime();
+                Cursor cursor = db.query(InventoryEntry.TABLE_NAME, LIST_PROJECTION,
+                        null, null, null, null, null);
+                //filling the first window is what the list waits for
+                cursor.moveToFirst();
+                cursor.close();
+                latencies[i] = System.nanoTime() - start;
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+            helper.close();
+            context.deleteDatabase(BENCHMARK_DATABASE);
+        }
+        return latencies;
+    }
+
+    private static void seed(SQLiteDatabase db) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + InventoryEntry.TABLE_NAME
+                + " (" + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRICE + ", "
+                + InventoryEntry.COLUMN_QUANTITY + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME
+                + ") VALUES (?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                insert.bindString(1, "Product " + i);
+                insert.bindLong(2, i % 100);
+                insert.bindLong(3, i % 50);
+                insert.bindString(4, "Supplier " + (i % 40));
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    private static String summary(long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return "p50=" + sorted[sorted.length / 2] / 1000 + "us"
+                + " p99=" + sorted[sorted.length * 99 / 100] / 1000 + "us"
+                + " max=" + sorted[sorted.length - 1] / 1000 + "us";
+    }
+}
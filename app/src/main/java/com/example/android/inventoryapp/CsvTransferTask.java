@@ -0,0 +1,103 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.example.android.inventoryapp.data.InventoryCsv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+
+/**
+ * Exports the products to, or imports them from, a CSV document off the main thread.
+ * Progress is shown as the subtitle of the activity that started the transfer.
+ */
+public class CsvTransferTask extends AsyncTask<Void, Long, String> implements InventoryCsv.Listener {
+    private static final String LOG_TAG = CsvTransferTask.class.getSimpleName();
+
+    private final Context mContext;
+    private final WeakReference<AppCompatActivity> mActivity;
+    private final Uri mDocumentUri;
+    private final boolean mExport;
+    private long mRejectedRows;
+
+    /**
+     * @param export true to write the products to the document, false to read them from it
+     */
+    public CsvTransferTask(AppCompatActivity activity, Uri documentUri, boolean export) {
+        mContext = activity.getApplicationContext();
+        mActivity = new WeakReference<>(activity);
+        mDocumentUri = documentUri;
+        mExport = export;
+    }
+
+    @Override
+    protected String doInBackground(Void... voids) {
+        ContentResolver contentResolver = mContext.getContentResolver();
+        try {
+            if (mExport) {
+                OutputStream out = contentResolver.openOutputStream(mDocumentUri);
+                if (out == null) {
+                    throw new IOException("Cannot write " + mDocumentUri);
+                }
+                try {
+                    long rows = InventoryCsv.exportProducts(contentResolver, out, this);
+                    return mContext.getString(R.string.export_finished, rows);
+                } finally {
+                    out.close();
+                }
+            }
+            InputStream in = contentResolver.openInputStream(mDocumentUri);
+            if (in == null) {
+                throw new IOException("Cannot read " + mDocumentUri);
+            }
+            try {
+                long rows = InventoryCsv.importProducts(contentResolver, in, this);
+                return mContext.getString(R.string.import_finished, rows, mRejectedRows);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "CSV transfer failed for " + mDocumentUri, e);
+            return mContext.getString(R.string.csv_transfer_failed, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onProgress(long rows) {
+        publishProgress(rows);
+    }
+
+    @Override
+    public void onRowRejected(long lineNumber, String reason) {
+        mRejectedRows++;
+        Log.w(LOG_TAG, "Skipped line " + lineNumber + ": " + reason);
+    }
+
+    @Override
+    protected void onProgressUpdate(Long... rows) {
+        setSubtitle(mContext.getString(R.string.csv_progress, rows[0]));
+    }
+
+    @Override
+    protected void onPostExecute(String message) {
+        setSubtitle(null);
+        Toast.makeText(mContext, message, Toast.LENGTH_LONG).show();
+    }
+
+    private void setSubtitle(String subtitle) {
+        AppCompatActivity activity = mActivity.get();
+        ActionBar actionBar = activity == null ? null : activity.getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setSubtitle(subtitle);
+        }
+    }
+}
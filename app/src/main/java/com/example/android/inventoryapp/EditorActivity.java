@@ -12,11 +12,11 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.AppCompatActivity;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.view.Menu;
 import android.view.MenuItem;
-import android.view.MotionEvent;
-import android.view.View;
 import android.widget.EditText;
 import android.widget.Toast;
 
@@ -33,14 +33,26 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     private EditText mQuantityEdit;
     private EditText mSupplierNameEdit;
     private EditText mSupplierPhoneEdit;
+    private EditText mSkuEdit;
 
+    //the product as loaded, null while adding a new one or before it is loaded
+    private LoadedProduct mLoadedProduct;
+
+    //true while a field holds something else than the loaded product
     private boolean mProductHasChanged = false;
 
-    private View.OnTouchListener mTouchListener = new View.OnTouchListener() {
+    private final TextWatcher mEditWatcher = new TextWatcher() {
         @Override
-        public boolean onTouch(View view, MotionEvent motionEvent) {
-            mProductHasChanged = true;
-            return false;
+        public void beforeTextChanged(CharSequence text, int start, int count, int after) {
+        }
+
+        @Override
+        public void onTextChanged(CharSequence text, int start, int before, int count) {
+        }
+
+        @Override
+        public void afterTextChanged(Editable text) {
+            mProductHasChanged = editedValues().size() != 0;
         }
     };
 
@@ -64,15 +76,48 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mQuantityEdit = findViewById(R.id.quantity_edit);
         mSupplierNameEdit = findViewById(R.id.supplier_name_edit);
         mSupplierPhoneEdit = findViewById(R.id.supplier_phone_edit);
+        mSkuEdit = findViewById(R.id.sku_edit);
 
-        mProductNameEdit.setOnTouchListener(mTouchListener);
-        mPriceEdit.setOnTouchListener(mTouchListener);
-        mQuantityEdit.setOnTouchListener(mTouchListener);
-        mSupplierNameEdit.setOnTouchListener(mTouchListener);
-        mSupplierPhoneEdit.setOnTouchListener(mTouchListener);
+        mProductNameEdit.addTextChangedListener(mEditWatcher);
+        mPriceEdit.addTextChangedListener(mEditWatcher);
+        mQuantityEdit.addTextChangedListener(mEditWatcher);
+        mSupplierNameEdit.addTextChangedListener(mEditWatcher);
+        mSupplierPhoneEdit.addTextChangedListener(mEditWatcher);
+        mSkuEdit.addTextChangedListener(mEditWatcher);
+    }
+
+    /**
+     * @return every field of a new product that is filled in, or the fields of an existing
+     * product that differ from what was loaded
+     */
+    private ContentValues editedValues() {
+        ContentValues values = new ContentValues();
+        values.put(InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME,
+                mProductNameEdit.getText().toString().trim());
+        values.put(InventoryContract.InventoryEntry.COLUMN_PRICE, mPriceEdit.getText().toString().trim());
+        values.put(InventoryContract.InventoryEntry.COLUMN_QUANTITY, mQuantityEdit.getText().toString().trim());
+        values.put(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_NAME,
+                mSupplierNameEdit.getText().toString().trim());
+        values.put(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE,
+                mSupplierPhoneEdit.getText().toString().trim());
+        values.put(InventoryContract.InventoryEntry.COLUMN_SKU, mSkuEdit.getText().toString().trim());
+        if (mLoadedProduct != null) {
+            return mLoadedProduct.changes(values);
+        }
+        ContentValues filledIn = new ContentValues();
+        for (String column : values.keySet()) {
+            if (!TextUtils.isEmpty(values.getAsString(column))) {
+                filledIn.put(column, values.getAsString(column));
+            }
+        }
+        return filledIn;
     }
 
     private void saveProduct() {
+        if (mCurrentProductUri != null && mLoadedProduct == null) {
+            //not loaded yet, there is nothing to save
+            return;
+        }
         String productNameString = mProductNameEdit.getText().toString().trim();
         String priceString = mPriceEdit.getText().toString().trim();
         String quantityString = mQuantityEdit.getText().toString().trim();
@@ -89,37 +134,79 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             return;
         }
 
-        ContentValues values = new ContentValues();
-        values.put(InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME, productNameString);
-        values.put(InventoryContract.InventoryEntry.COLUMN_PRICE, priceString);
-        values.put(InventoryContract.InventoryEntry.COLUMN_QUANTITY, quantityString);
-        values.put(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_NAME, supplierNameString);
-        values.put(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE, supplierPhoneString);
+        //only what was edited is written, the sku is optional and clearing it frees it for
+        //another product
+        ContentValues values = editedValues();
+        if (values.size() == 0) {
+            finish();
+            return;
+        }
 
+        //stay open until the write is done so a failed save can be corrected
+        WriteDispatcher writeDispatcher = WriteDispatcher.getInstance(this);
         if (mCurrentProductUri == null) {
-            Uri newUri =
-                    getContentResolver().insert(InventoryContract.InventoryEntry.CONTENT_URI, values);
-            if (newUri == null) {
-                Toast.makeText(this, getString(R.string.insert_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, getString(R.string.insert_product_successfull),
-                        Toast.LENGTH_SHORT).show();
-                finish();
-            }
+            writeDispatcher.insert(InventoryContract.InventoryEntry.CONTENT_URI, values,
+                    new WriteDispatcher.Callback<Uri>() {
+                        @Override
+                        public void onWriteFinished(Uri newUri) {
+                            if (newUri == null) {
+                                Toast.makeText(EditorActivity.this, getString(R.string.insert_product_failed),
+                                        Toast.LENGTH_SHORT).show();
+                            } else {
+                                Toast.makeText(EditorActivity.this, getString(R.string.insert_product_successfull),
+                                        Toast.LENGTH_SHORT).show();
+                                finish();
+                            }
+                        }
+                    });
         } else {
-            int rowsAffected = getContentResolver().update(mCurrentProductUri, values,
-                    null, null);
-            if (rowsAffected == 0) {
-                Toast.makeText(this, getString(R.string.update_product_fail),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, getString(R.string.update_product_success),
-                        Toast.LENGTH_SHORT).show();
-                finish();
-            }
+            update(mLoadedProduct.versionedUri(), values);
         }
     }
+
+    /**
+     * Saves the edited values of an existing product. On the versioned uri of the loaded
+     * product, a change made elsewhere since then is not overwritten unless the user says so.
+     */
+    private void update(Uri uri, final ContentValues values) {
+        WriteDispatcher.getInstance(this).update(uri, values,
+                new WriteDispatcher.Callback<Integer>() {
+                    @Override
+                    public void onWriteFinished(Integer rowsAffected) {
+                        if (rowsAffected == InventoryContract.InventoryEntry.UPDATE_CONFLICT) {
+                            showConflictDialog(values);
+                        } else if (rowsAffected == 0) {
+                            Toast.makeText(EditorActivity.this, getString(R.string.update_product_fail),
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            Toast.makeText(EditorActivity.this, getString(R.string.update_product_success),
+                                    Toast.LENGTH_SHORT).show();
+                            finish();
+                        }
+                    }
+                });
+    }
+
+    private void showConflictDialog(final ContentValues values) {
+        new AlertDialog.Builder(this)
+                .setMessage(R.string.update_product_conflict)
+                .setPositiveButton(R.string.overwrite, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        update(mCurrentProductUri, values);
+                    }
+                })
+                .setNegativeButton(R.string.reload, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        //the next load replaces the edits
+                        mProductHasChanged = false;
+                        getLoaderManager().restartLoader(EXISTING_INVENTORY_LOADER, null, EditorActivity.this);
+                    }
+                })
+                .show();
+    }
+
     //for dialog for unsaved changes
     private void showUnsavedChangesDialog(
             DialogInterface.OnClickListener discardButtonClickListener) {
@@ -201,7 +288,9 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 InventoryContract.InventoryEntry.COLUMN_PRICE,
                 InventoryContract.InventoryEntry.COLUMN_QUANTITY,
                 InventoryContract.InventoryEntry.COLUMN_SUPPLIER_NAME,
-                InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE
+                InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE,
+                InventoryContract.InventoryEntry.COLUMN_SKU,
+                InventoryContract.InventoryEntry.COLUMN_LOCAL_VERSION
         };
         return new CursorLoader(this, mCurrentProductUri, projection,
                 null, null, null);
@@ -209,7 +298,18 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        //a change made elsewhere does not replace the edits, saving them reports the conflict
+        if (mLoadedProduct != null && mProductHasChanged) {
+            return;
+        }
         if (cursor.moveToFirst()) {
+            mLoadedProduct = new LoadedProduct(cursor,
+                    InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME,
+                    InventoryContract.InventoryEntry.COLUMN_PRICE,
+                    InventoryContract.InventoryEntry.COLUMN_QUANTITY,
+                    InventoryContract.InventoryEntry.COLUMN_SUPPLIER_NAME,
+                    InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE,
+                    InventoryContract.InventoryEntry.COLUMN_SKU);
             int productNameColumnIndex =
                     cursor.getColumnIndex(InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME);
             int priceColumnIndex =
@@ -225,13 +325,16 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             int price = cursor.getInt(priceColumnIndex);
             int quantity = cursor.getInt(quantityColumnIndex);
             String supplierName = cursor.getString(supplierNameColumnIndex);
-            final int supplierPhone = cursor.getInt(supplierPhoneColumnIndex);
+            final String supplierPhone = cursor.getString(supplierPhoneColumnIndex);
+            String sku = cursor.getString(
+                    cursor.getColumnIndex(InventoryContract.InventoryEntry.COLUMN_SKU));
 
             mProductNameEdit.setText(productName);
             mPriceEdit.setText(Integer.toString(price));
             mQuantityEdit.setText(Integer.toString(quantity));
             mSupplierNameEdit.setText(supplierName);
-            mSupplierPhoneEdit.setText(Integer.toString(supplierPhone));
+            mSupplierPhoneEdit.setText(supplierPhone);
+            mSkuEdit.setText(sku);
         }
     }
 
@@ -242,6 +345,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mQuantityEdit.setText("");
         mSupplierNameEdit.setText("");
         mSupplierPhoneEdit.setText("");
+        mSkuEdit.setText("");
     }
 }
 
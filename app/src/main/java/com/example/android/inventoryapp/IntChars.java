@@ -0,0 +1,42 @@
+package com.example.android.inventoryapp;
+
+/**
+ * Writes ints as decimal digits into a reusable char buffer, so numbers can be shown with
+ * {@link android.widget.TextView#setText(char[], int, int)} without creating a String.
+ */
+final class IntChars {
+
+    //enough for "-2147483648"
+    static final int MAX_LENGTH = 11;
+
+    private IntChars() {
+    }
+
+    /**
+     * Writes the digits of value to the start of buffer.
+     *
+     * @param buffer at least {@link #MAX_LENGTH} chars long
+     * @return the number of chars written
+     */
+    static int format(int value, char[] buffer) {
+        if (value == Integer.MIN_VALUE) {
+            "-2147483648".getChars(0, MAX_LENGTH, buffer, 0);
+            return MAX_LENGTH;
+        }
+        int length = 0;
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        length += digits;
+        for (int i = length - 1; i >= length - digits; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.Intent;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.example.android.inventoryapp.data.InventoryContract;
+
+/**
+ * Shows the rows of a {@link ProductPagedList}. Rows whose page is still loading are bound
+ * as empty placeholders and rebound when the page arrives.
+ * <p>
+ * Binding a loaded row does not allocate: the page holds primitives read once per page cursor,
+ * numbers are written into per row char buffers and both click listeners are shared by all rows
+ * and find the product through the view tag.
+ */
+public class InventoryListAdapter extends RecyclerView.Adapter<InventoryListAdapter.ViewHolder> {
+
+    private final Context mContext;
+    private ProductPagedList mPagedList;
+
+    //open the clicked product, the uri will be ../products/id
+    private final View.OnClickListener mItemClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            long productId = ((ViewHolder) view.getTag()).mProductId;
+            if (productId < 0) {
+                return;
+            }
+            Intent intent = new Intent(mContext, ViewActivity.class);
+            intent.setData(ContentUris.withAppendedId(
+                    InventoryContract.InventoryEntry.CONTENT_URI, productId));
+            mContext.startActivity(intent);
+        }
+    };
+
+    private final View.OnClickListener mSellClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            long productId = ((ViewHolder) view.getTag()).mProductId;
+            if (productId < 0) {
+                return;
+            }
+            //the provider refuses the sale if it would make the quantity negative
+            WriteDispatcher.getInstance(mContext).adjustQuantity(productId, -1,
+                    new WriteDispatcher.Callback<Integer>() {
+                        @Override
+                        public void onWriteFinished(Integer newQuantity) {
+                            if (newQuantity != InventoryContract.InventoryEntry.ADJUST_REJECTED) {
+                                Toast.makeText(mContext, R.string.sold, Toast.LENGTH_SHORT).show();
+                            } else {
+                                Toast.makeText(mContext, R.string.not_enough_inventory, Toast.LENGTH_SHORT).show();
+                            }
+                        }
+                    });
+        }
+    };
+
+    public InventoryListAdapter(Context context) {
+        mContext = context;
+    }
+
+    public void setPagedList(ProductPagedList pagedList) {
+        mPagedList = pagedList;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPagedList == null ? 0 : mPagedList.size();
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_product, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+        view.setTag(holder);
+        view.setOnClickListener(mItemClickListener);
+        holder.mSellButton.setTag(holder);
+        holder.mSellButton.setOnClickListener(mSellClickListener);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        ProductPage page = mPagedList.getPage(position);
+        if (page == null) {
+            holder.bindPlaceholder();
+            return;
+        }
+        int row = position % ProductPagedList.PAGE_SIZE;
+        holder.bind(page.ids[row], page.names[row], page.prices[row], page.quantities[row]);
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        private final TextView mProductNameView;
+        private final TextView mPriceView;
+        private final TextView mQuantityView;
+        private final Button mSellButton;
+        //a TextView keeps a reference to the chars it shows, so every view gets its own buffer
+        private final char[] mPriceChars = new char[IntChars.MAX_LENGTH];
+        private final char[] mQuantityChars = new char[IntChars.MAX_LENGTH];
+        private long mProductId = -1;
+
+        ViewHolder(View view) {
+            super(view);
+            mProductNameView = view.findViewById(R.id.product_name);
+            mPriceView = view.findViewById(R.id.price);
+            mQuantityView = view.findViewById(R.id.quantity);
+            mSellButton = view.findViewById(R.id.buttonSell);
+        }
+
+        void bind(long productId, String productName, int price, int quantity) {
+            mProductId = productId;
+            mProductNameView.setText(productName);
+            mPriceView.setText(mPriceChars, 0, IntChars.format(price, mPriceChars));
+            mQuantityView.setText(mQuantityChars, 0, IntChars.format(quantity, mQuantityChars));
+            mSellButton.setEnabled(true);
+        }
+
+        void bindPlaceholder() {
+            mProductId = -1;
+            mProductNameView.setText(null);
+            mPriceView.setText(null);
+            mQuantityView.setText(null);
+            mSellButton.setEnabled(false);
+        }
+    }
+}
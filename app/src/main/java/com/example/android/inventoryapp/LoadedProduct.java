@@ -0,0 +1,60 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import java.util.Map;
+
+/**
+ * The values of a product as a screen loaded them, with its version. A save writes only the
+ * fields that differ from them, on a uri that refuses the update if the product was changed
+ * elsewhere in the meantime.
+ */
+final class LoadedProduct {
+
+    private final long mId;
+    private final long mVersion;
+    private final ContentValues mValues = new ContentValues();
+
+    /**
+     * Reads the current row of a cursor holding _id, {@link InventoryEntry#COLUMN_LOCAL_VERSION}
+     * and the given columns.
+     */
+    LoadedProduct(Cursor cursor, String... columns) {
+        mId = cursor.getLong(cursor.getColumnIndexOrThrow(InventoryEntry._ID));
+        mVersion = cursor.getLong(cursor.getColumnIndexOrThrow(InventoryEntry.COLUMN_LOCAL_VERSION));
+        for (String column : columns) {
+            mValues.put(column, cursor.getString(cursor.getColumnIndexOrThrow(column)));
+        }
+    }
+
+    /**
+     * @return the values that differ from the loaded ones, empty if nothing was edited. An
+     * empty text is the same as no value.
+     */
+    ContentValues changes(ContentValues edited) {
+        ContentValues changes = new ContentValues();
+        for (Map.Entry<String, Object> entry : edited.valueSet()) {
+            String value = entry.getValue() == null ? null : entry.getValue().toString();
+            if (!TextUtils.equals(emptyToNull(value), emptyToNull(mValues.getAsString(entry.getKey())))) {
+                changes.put(entry.getKey(), emptyToNull(value));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @return the uri to save the changes on, see {@link InventoryEntry#buildVersionedUri}
+     */
+    Uri versionedUri() {
+        return InventoryEntry.buildVersionedUri(mId, mVersion);
+    }
+
+    private static String emptyToNull(String value) {
+        return TextUtils.isEmpty(value) ? null : value;
+    }
+}
@@ -1,29 +1,92 @@
 package com.example.android.inventoryapp;
 
-import android.app.LoaderManager;
+import android.annotation.TargetApi;
+import android.app.AlertDialog;
 import android.content.ContentUris;
 import android.content.ContentValues;
-import android.content.CursorLoader;
+import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.Loader;
-import android.database.Cursor;
+import android.database.ContentObserver;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.InputType;
+import android.view.KeyEvent;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.inputmethod.EditorInfo;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import android.widget.Toast;
 
-import com.example.android.inventoryapp.data.InventoryContract;
 import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.ProductQuery;
+import com.example.android.inventoryapp.data.InventoryContract.SaleEntry;
 
-public class MainActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor>{
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-    private static final int INVENTORY_LOADER = 0;
-    private Uri mCurrentProductUri;
+public class MainActivity extends AppCompatActivity implements ProductPagedList.Callback {
 
-    InventoryCursorAdapter mCursorAdapter;
+    //wait for a pause in typing before searching
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
+    //rows drawn while the first page loads, about one screen
+    private static final int PLACEHOLDER_ROWS = 10;
+
+    private static final int REQUEST_EXPORT_CSV = 1;
+    private static final int REQUEST_IMPORT_CSV = 2;
+    private static final String CSV_MIME_TYPE = "text/csv";
+
+    private final Handler mHandler = new Handler();
+    private String mPendingQuery;
+
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mPagedList.setQuery(mPendingQuery);
+        }
+    };
+
+    private InventoryListAdapter mListAdapter;
+    private ProductPagedList mPagedList;
+    private View mEmptyView;
+
+    private final Runnable mRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mPagedList.refresh();
+        }
+    };
+
+    //reloads the visible pages when the provider reports a change the list can show
+    private final ContentObserver mProductsObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            //a single product uri means only that row changed
+            if (uri != null && uri.getPathSegments().size() == 2
+                    && !mPagedList.isAffectedBy(ContentUris.parseId(uri))) {
+                return;
+            }
+            //several row notifications of one burst lead to a single refresh
+            mHandler.removeCallbacks(mRefreshRunnable);
+            mHandler.post(mRefreshRunnable);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -40,50 +103,321 @@ public class MainActivity extends AppCompatActivity implements LoaderManager.Loa
             }
         });
 
-        ListView inventoryListView = (ListView) findViewById(R.id.list);
+        RecyclerView inventoryListView = findViewById(R.id.list);
+        inventoryListView.setLayoutManager(new LinearLayoutManager(this));
+        mEmptyView = findViewById(R.id.empty_view);
 
-        View emptyView = findViewById(R.id.empty_view);
-        inventoryListView.setEmptyView(emptyView);
-        mCursorAdapter = new InventoryCursorAdapter(this,null);
-        inventoryListView.setAdapter(mCursorAdapter);
+        //only a few pages of products are in memory at any time, whatever the size of the table
+        mListAdapter = new InventoryListAdapter(this);
+        mPagedList = new ProductPagedList(getContentResolver(), this);
+        mListAdapter.setPagedList(mPagedList);
+        inventoryListView.setAdapter(mListAdapter);
 
-        //set up onItemClickListener on listView
-       inventoryListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        getContentResolver().registerContentObserver(InventoryEntry.CONTENT_URI, true,
+                mProductsObserver);
+        //the provider opens the database in the background from process start, until the
+        //first page is read the list shows empty rows rather than nothing
+        mPagedList.showPlaceholders(PLACEHOLDER_ROWS);
+        mPagedList.refresh();
+
+        if (savedInstanceState == null) {
+            //once per launch keeps the stock ledger to the retention period plus daily summaries
+            WriteDispatcher.getInstance(this).compactMovements(null);
+        }
+        SyncWorker.getInstance(this).start();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                //create new intent to go to EditorActivity
-                Intent intent = new Intent(MainActivity.this, ViewActivity.class);
-                //creating the uri of the clicked item so it wil be ../pets/id
-                Uri currentProductUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI,id);
-                //add uri to the data to pass
-                intent.setData(currentProductUri);
-                //launch the DisplayView
-                startActivity(intent);
+            public boolean onQueryTextSubmit(String query) {
+                search(query, 0);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText, SEARCH_DEBOUNCE_MILLIS);
+                return true;
+            }
+        });
+
+        //picking a document needs the storage access framework
+        boolean canPickDocuments = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        menu.findItem(R.id.action_export).setVisible(canPickDocuments);
+        menu.findItem(R.id.action_import).setVisible(canPickDocuments);
+
+        ProductQuery listQuery = mPagedList.getListQuery();
+        menu.findItem(sortItemId(listQuery.getSortBy())).setChecked(true);
+        menu.findItem(R.id.action_in_stock).setChecked(listQuery.isInStockOnly());
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        ProductQuery listQuery = mPagedList.getListQuery();
+        switch (item.getItemId()) {
+            case R.id.action_sort_added:
+            case R.id.action_sort_name:
+            case R.id.action_sort_price:
+            case R.id.action_sort_quantity:
+                item.setChecked(true);
+                mPagedList.setListQuery(listQuery.buildUpon()
+                        .sortBy(sortOf(item.getItemId()), false)
+                        .build());
+                return true;
+            case R.id.action_in_stock:
+                item.setChecked(!item.isChecked());
+                mPagedList.setListQuery(listQuery.buildUpon()
+                        .inStockOnly(item.isChecked())
+                        .build());
+                return true;
+            case R.id.action_scan_sell:
+                showScanToSellDialog();
+                return true;
+            case R.id.action_checkout:
+                showCheckoutDialog();
+                return true;
+            case R.id.action_export:
+                Intent exportIntent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                exportIntent.addCategory(Intent.CATEGORY_OPENABLE);
+                exportIntent.setType(CSV_MIME_TYPE);
+                exportIntent.putExtra(Intent.EXTRA_TITLE, "inventory.csv");
+                startActivityForResult(exportIntent, REQUEST_EXPORT_CSV);
+                return true;
+            case R.id.action_import:
+                Intent importIntent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                importIntent.addCategory(Intent.CATEGORY_OPENABLE);
+                importIntent.setType("text/*");
+                startActivityForResult(importIntent, REQUEST_IMPORT_CSV);
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        if (requestCode == REQUEST_EXPORT_CSV || requestCode == REQUEST_IMPORT_CSV) {
+            new CsvTransferTask(this, data.getData(), requestCode == REQUEST_EXPORT_CSV)
+                    .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    }
+
+    /**
+     * Sells one product per code entered. Barcode scanners type the code followed by Enter,
+     * so codes can be scanned one after another until the dialog is closed.
+     */
+    private void showScanToSellDialog() {
+        EditText skuEdit = newScanEdit(new ScanListener() {
+            @Override
+            public void onScanned(String sku) {
+                sellBySku(sku);
+            }
+        });
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.action_scan_sell)
+                .setView(skuEdit)
+                .setPositiveButton(R.string.done, null)
+                .show();
+    }
+
+    /**
+     * Collects the codes scanned into an order and sells it as a whole on Check out, so a
+     * full basket is a single write and the list redraws once.
+     */
+    private void showCheckoutDialog() {
+        //units per sku, in the order they were first scanned
+        final Map<String, Integer> cart = new LinkedHashMap<>();
+        final TextView cartView = new TextView(this);
+        cartView.setText(R.string.cart_empty);
+        EditText skuEdit = newScanEdit(new ScanListener() {
+            @Override
+            public void onScanned(String sku) {
+                Integer units = cart.get(sku);
+                cart.put(sku, units == null ? 1 : units + 1);
+                StringBuilder summary = new StringBuilder();
+                for (Map.Entry<String, Integer> line : cart.entrySet()) {
+                    summary.append(getString(R.string.cart_line, line.getValue(), line.getKey()))
+                            .append('\n');
+                }
+                cartView.setText(summary.toString().trim());
+            }
+        });
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        int padding = Math.round(16 * getResources().getDisplayMetrics().density);
+        layout.setPadding(padding, padding, padding, 0);
+        layout.addView(cartView);
+        layout.addView(skuEdit);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.action_checkout)
+                .setView(layout)
+                .setPositiveButton(R.string.check_out, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        if (!cart.isEmpty()) {
+                            checkout(cart);
+                        }
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    private void checkout(Map<String, Integer> cart) {
+        ContentValues[] lines = new ContentValues[cart.size()];
+        int units = 0;
+        int i = 0;
+        for (Map.Entry<String, Integer> line : cart.entrySet()) {
+            lines[i] = new ContentValues();
+            lines[i].put(SaleEntry.COLUMN_SKU, line.getKey());
+            lines[i].put(SaleEntry.COLUMN_QUANTITY, line.getValue());
+            units += line.getValue();
+            i++;
+        }
+        final int soldUnits = units;
+        WriteDispatcher.getInstance(this).checkout(lines, new WriteDispatcher.Callback<Integer>() {
+            @Override
+            public void onWriteFinished(Integer result) {
+                String message;
+                if (result == SaleEntry.SALE_UNKNOWN_SKU) {
+                    message = getString(R.string.checkout_unknown_sku);
+                } else if (result == SaleEntry.SALE_REJECTED) {
+                    message = getString(R.string.checkout_rejected);
+                } else {
+                    message = getString(R.string.checkout_finished, soldUnits);
+                }
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
 
+    private interface ScanListener {
+        void onScanned(String sku);
+    }
+
+    private EditText newScanEdit(final ScanListener listener) {
+        EditText skuEdit = new EditText(this);
+        skuEdit.setHint(R.string.scan_sku);
+        skuEdit.setSingleLine(true);
+        skuEdit.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS);
+        skuEdit.setImeOptions(EditorInfo.IME_ACTION_GO);
+        skuEdit.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView view, int actionId, KeyEvent event) {
+                //a scanner's Enter arrives as a key down and up, only the down counts
+                if (event != null && event.getAction() != KeyEvent.ACTION_DOWN) {
+                    return true;
+                }
+                String sku = view.getText().toString().trim();
+                view.setText("");
+                if (!sku.isEmpty()) {
+                    listener.onScanned(sku);
+                }
+                return true;
+            }
+        });
+        return skuEdit;
+    }
+
+    private void sellBySku(final String sku) {
+        WriteDispatcher.getInstance(this).sellBySku(sku, new WriteDispatcher.Callback<Integer>() {
+            @Override
+            public void onWriteFinished(Integer newQuantity) {
+                String message;
+                if (newQuantity == InventoryEntry.ADJUST_UNKNOWN_SKU) {
+                    message = getString(R.string.unknown_sku, sku);
+                } else if (newQuantity == InventoryEntry.ADJUST_REJECTED) {
+                    message = getString(R.string.not_enough_inventory);
+                } else {
+                    message = getString(R.string.sold_by_sku, sku, newQuantity);
+                }
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
             }
         });
-        getLoaderManager().initLoader(INVENTORY_LOADER,null,this);
+    }
+
+    private static int sortOf(int itemId) {
+        switch (itemId) {
+            case R.id.action_sort_name:
+                return ProductQuery.SORT_BY_NAME;
+            case R.id.action_sort_price:
+                return ProductQuery.SORT_BY_PRICE;
+            case R.id.action_sort_quantity:
+                return ProductQuery.SORT_BY_QUANTITY;
+            default:
+                return ProductQuery.SORT_BY_ID;
+        }
+    }
+
+    private static int sortItemId(int sortBy) {
+        switch (sortBy) {
+            case ProductQuery.SORT_BY_NAME:
+                return R.id.action_sort_name;
+            case ProductQuery.SORT_BY_PRICE:
+                return R.id.action_sort_price;
+            case ProductQuery.SORT_BY_QUANTITY:
+                return R.id.action_sort_quantity;
+            default:
+                return R.id.action_sort_added;
+        }
+    }
+
+    //only the last text typed within the debounce delay is searched
+    private void search(String query, long delayMillis) {
+        mPendingQuery = query;
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.postDelayed(mSearchRunnable, delayMillis);
+    }
+
+    @Override
+    protected void onDestroy() {
+        mHandler.removeCallbacks(mSearchRunnable);
+        mHandler.removeCallbacks(mRefreshRunnable);
+        getContentResolver().unregisterContentObserver(mProductsObserver);
+        mPagedList.release();
+        super.onDestroy();
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        String[] projection = {
-                InventoryContract.InventoryEntry._ID,
-                InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME,
-                InventoryContract.InventoryEntry.COLUMN_PRICE,
-                InventoryContract.InventoryEntry.COLUMN_QUANTITY
-        };
-        return new CursorLoader(this, InventoryEntry.CONTENT_URI, projection,
-                null, null, null);
+    public void onDataSetChanged() {
+        mListAdapter.notifyDataSetChanged();
+        updateEmptyView();
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mCursorAdapter.swapCursor(data);
+    public void onInserted(int position, int count) {
+        mListAdapter.notifyItemRangeInserted(position, count);
+        updateEmptyView();
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mCursorAdapter.swapCursor(null);
+    public void onRemoved(int position, int count) {
+        mListAdapter.notifyItemRangeRemoved(position, count);
+        updateEmptyView();
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        mListAdapter.notifyItemMoved(fromPosition, toPosition);
+    }
+
+    @Override
+    public void onChanged(int position, int count, Object payload) {
+        mListAdapter.notifyItemRangeChanged(position, count, payload);
+    }
+
+    private void updateEmptyView() {
+        mEmptyView.setVisibility(mPagedList.isLoaded() && mPagedList.size() == 0
+                ? View.VISIBLE : View.GONE);
     }
 }
@@ -0,0 +1,106 @@
+package com.example.android.inventoryapp;
+
+/**
+ * A fixed number of list pages keyed by page index, dropping the least recently used page
+ * when full. Lookups and updates never allocate, so it is safe to call on every bind.
+ */
+final class PageCache<P> {
+    private final int[] mPageIndices;
+    private final Object[] mPages;
+    private final long[] mLastUse;
+    private long mClock;
+
+    PageCache(int capacity) {
+        mPageIndices = new int[capacity];
+        mPages = new Object[capacity];
+        mLastUse = new long[capacity];
+        clear();
+    }
+
+    /**
+     * Returns the page and marks it as most recently used, or null if it is not held.
+     */
+    @SuppressWarnings("unchecked")
+    P get(int pageIndex) {
+        int slot = slotOf(pageIndex);
+        if (slot < 0) {
+            return null;
+        }
+        mLastUse[slot] = ++mClock;
+        return (P) mPages[slot];
+    }
+
+    /**
+     * Returns the page without changing which page is dropped next, or null if it is not held.
+     */
+    @SuppressWarnings("unchecked")
+    P peek(int pageIndex) {
+        int slot = slotOf(pageIndex);
+        return slot < 0 ? null : (P) mPages[slot];
+    }
+
+    boolean contains(int pageIndex) {
+        return slotOf(pageIndex) >= 0;
+    }
+
+    void put(int pageIndex, P page) {
+        int slot = slotOf(pageIndex);
+        if (slot < 0) {
+            //empty slots were never used, so they are picked before any held page
+            slot = 0;
+            for (int i = 1; i < mLastUse.length; i++) {
+                if (mLastUse[i] < mLastUse[slot]) {
+                    slot = i;
+                }
+            }
+        }
+        mPageIndices[slot] = pageIndex;
+        mPages[slot] = page;
+        mLastUse[slot] = ++mClock;
+    }
+
+    void clear() {
+        for (int i = 0; i < mPageIndices.length; i++) {
+            mPageIndices[i] = -1;
+            mPages[i] = null;
+            mLastUse[i] = 0;
+        }
+    }
+
+    boolean isEmpty() {
+        return lastPageIndex() < 0;
+    }
+
+    /**
+     * @return the lowest page index held, or -1 if empty
+     */
+    int firstPageIndex() {
+        int first = -1;
+        for (int pageIndex : mPageIndices) {
+            if (pageIndex >= 0 && (first < 0 || pageIndex < first)) {
+                first = pageIndex;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @return the highest page index held, or -1 if empty
+     */
+    int lastPageIndex() {
+        int last = -1;
+        for (int pageIndex : mPageIndices) {
+            last = Math.max(last, pageIndex);
+        }
+        return last;
+    }
+
+    private int slotOf(int pageIndex) {
+        for (int i = 0; i < mPageIndices.length; i++) {
+            if (mPageIndices[i] == pageIndex) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
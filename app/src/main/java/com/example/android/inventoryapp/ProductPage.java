@@ -0,0 +1,71 @@
+package com.example.android.inventoryapp;
+
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import java.util.Arrays;
+
+/**
+ * One immutable page of the product list, copied out of a small cursor so no
+ * CursorWindow stays open while the page is on screen.
+ */
+public final class ProductPage {
+
+    //columns the list shows
+    static final String[] PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRICE,
+            InventoryEntry.COLUMN_QUANTITY
+    };
+
+    final long[] ids;
+    final String[] names;
+    final int[] prices;
+    final int[] quantities;
+
+    private ProductPage(int size) {
+        ids = new long[size];
+        names = new String[size];
+        prices = new int[size];
+        quantities = new int[size];
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    long lastId() {
+        return ids[ids.length - 1];
+    }
+
+    /**
+     * @return the row of the product in this page, or -1
+     */
+    int indexOf(long productId) {
+        //rows are ordered by _id
+        int row = Arrays.binarySearch(ids, productId);
+        return row < 0 ? -1 : row;
+    }
+
+    /**
+     * Reads every row of a cursor queried with {@link #PROJECTION}.
+     */
+    static ProductPage fromCursor(Cursor cursor) {
+        ProductPage page = new ProductPage(cursor.getCount());
+        int idColumnIndex = cursor.getColumnIndex(InventoryEntry._ID);
+        int productNameColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_NAME);
+        int priceColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRICE);
+        int quantityColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_QUANTITY);
+        int row = 0;
+        while (cursor.moveToNext()) {
+            page.ids[row] = cursor.getLong(idColumnIndex);
+            page.names[row] = cursor.getString(productNameColumnIndex);
+            page.prices[row] = cursor.getInt(priceColumnIndex);
+            page.quantities[row] = cursor.getInt(quantityColumnIndex);
+            row++;
+        }
+        return page;
+    }
+}
@@ -0,0 +1,532 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.ContentResolverCompat;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.text.TextUtils;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.ProductQuery;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The product list as a window of pages loaded on demand from {@link InventoryEntry#CONTENT_URI}.
+ * At most {@link #MAX_PAGES} pages are held at once, so memory does not grow with the table.
+ * Pages are read with keyset pagination on the sort value and _id, and the row in front of
+ * every page is remembered, so scrolling back to a page that was dropped is still an index seek.
+ * <p>
+ * A refresh diffs the reloaded pages against the ones on screen on the loading thread,
+ * so a single changed quantity reaches the view as a single changed row.
+ * <p>
+ * The list shows either all products or the results of a full-text search, sorted and
+ * filtered by a {@link ProductQuery}. Every refresh cancels the queries still running for
+ * the previous one.
+ * <p>
+ * All public methods must be called on the main thread, which is also where the
+ * {@link Callback} is called.
+ */
+public class ProductPagedList {
+
+    /**
+     * Receives row level updates. A page that finished loading is reported through
+     * {@link #onChanged}, since its placeholders were already counted.
+     */
+    public interface Callback extends ListUpdateCallback {
+        /**
+         * The count and all loaded rows were replaced and no finer update is known
+         */
+        void onDataSetChanged();
+    }
+
+    static final int PAGE_SIZE = 50;
+    //pages kept in memory, least recently used is dropped first
+    static final int MAX_PAGES = 6;
+    //rows before the end of a page at which the next page is requested
+    static final int PREFETCH_DISTANCE = 15;
+
+    private final ContentResolver mContentResolver;
+    private final Callback mCallback;
+    private final ExecutorService mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    //getPage runs on every bind, so the page bookkeeping is kept free of boxing and iterators
+    private final PageCache<ProductPage> mPages = new PageCache<>(MAX_PAGES);
+    //_id of the row in front of each page, 0 for the first page and -1 where still unknown
+    private long[] mPageAfterIds = {0};
+    //sort value of the same rows, null for the first page or when sorting by _id
+    private String[] mPageAfterKeys = {null};
+    private final BitSet mLoadingPages = new BitSet();
+    //pages asked for while a refresh was running, loaded once it is applied
+    private final BitSet mDeferredPages = new BitSet();
+    private int mCount;
+    //bumped by every refresh so results of older loads are dropped
+    private int mGeneration;
+    private boolean mRefreshing;
+    private boolean mReleased;
+    //false until the first refresh is applied
+    private boolean mLoaded;
+    //all products or a search uri, without the parameters of mListQuery
+    private Uri mBaseUri = InventoryEntry.CONTENT_URI;
+    private ProductQuery mListQuery = ProductQuery.ALL;
+    //mBaseUri with mListQuery applied
+    private Uri mListUri = InventoryEntry.CONTENT_URI;
+    //cancels the queries of the current generation
+    private CancellationSignal mCancellationSignal = new CancellationSignal();
+
+    public ProductPagedList(ContentResolver contentResolver, Callback callback) {
+        this(contentResolver, callback, Executors.newSingleThreadExecutor());
+    }
+
+    /**
+     * @param executor runs the queries one at a time, in the order they were asked for
+     */
+    ProductPagedList(ContentResolver contentResolver, Callback callback, ExecutorService executor) {
+        mContentResolver = contentResolver;
+        mCallback = callback;
+        mExecutor = executor;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return false while the rows are still placeholders from {@link #showPlaceholders}
+     */
+    public boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * Shows the given number of placeholder rows until the first refresh is applied, so a
+     * cold start draws the list at once instead of an empty screen.
+     */
+    public void showPlaceholders(int count) {
+        if (mLoaded) {
+            return;
+        }
+        mCount = count;
+        mCallback.onDataSetChanged();
+    }
+
+    /**
+     * Returns the page that holds the row at the given position, or null while it is
+     * still loading. Also requests the neighbouring page when the position is near an edge.
+     */
+    public ProductPage getPage(int position) {
+        int pageIndex = position / PAGE_SIZE;
+        int offset = position % PAGE_SIZE;
+        ProductPage page = mPages.get(pageIndex);
+        if (page == null || offset >= page.size()) {
+            loadPage(pageIndex);
+            page = null;
+        }
+        if (offset >= PAGE_SIZE - PREFETCH_DISTANCE) {
+            loadPage(pageIndex + 1);
+        } else if (offset < PREFETCH_DISTANCE) {
+            loadPage(pageIndex - 1);
+        }
+        return page;
+    }
+
+    /**
+     * Whether a change to the values of the given product can change what the list shows.
+     * Only a product in a loaded page can, except while searching, sorting or filtering,
+     * where any edited product can move in or out of the loaded pages.
+     */
+    public boolean isAffectedBy(long productId) {
+        if (!InventoryEntry.CONTENT_URI.equals(mListUri)) {
+            return true;
+        }
+        for (int pageIndex = mPages.firstPageIndex(); pageIndex >= 0
+                && pageIndex <= mPages.lastPageIndex(); pageIndex++) {
+            ProductPage page = mPages.peek(pageIndex);
+            if (page != null && page.indexOf(productId) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Shows the products matching the search text, or all products for empty text.
+     */
+    public void setQuery(String query) {
+        mBaseUri = TextUtils.isEmpty(query)
+                ? InventoryEntry.CONTENT_URI
+                : InventoryEntry.buildSearchUri(query);
+        showList(mListQuery.applyTo(mBaseUri));
+    }
+
+    /**
+     * Sorts and filters the products shown, including search results.
+     */
+    public void setListQuery(ProductQuery listQuery) {
+        mListQuery = listQuery;
+        showList(listQuery.applyTo(mBaseUri));
+    }
+
+    public ProductQuery getListQuery() {
+        return mListQuery;
+    }
+
+    private void showList(Uri listUri) {
+        if (listUri.equals(mListUri)) {
+            return;
+        }
+        mListUri = listUri;
+        //a different result set, nothing to diff against
+        mPages.clear();
+        mPageAfterIds = new long[]{0};
+        mPageAfterKeys = new String[]{null};
+        refresh();
+    }
+
+    /**
+     * Re-reads the row count and the pages currently held, then swaps them in together
+     * and reports only the rows that differ.
+     */
+    public void refresh() {
+        final int generation = ++mGeneration;
+        mRefreshing = true;
+        mLoadingPages.clear();
+        mCancellationSignal.cancel();
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        mCancellationSignal = cancellationSignal;
+        final Uri listUri = mListUri;
+
+        int first = mPages.firstPageIndex();
+        int last = mPages.lastPageIndex();
+        if (last < 0) {
+            first = 0;
+            last = 0;
+        }
+        final int firstPage = first;
+        final int pageCount = Math.min(last - first + 1, MAX_PAGES);
+        final long firstAfterId = afterIdOf(firstPage);
+        final String firstAfterKey = afterKeyOf(firstPage);
+        final ProductQuery listQuery = mListQuery;
+        final int oldCount = mCount;
+        //the pages on screen now, or null if they do not form one run of rows to diff against.
+        //A short page before another one leaves placeholder rows in between.
+        final ProductPage[] oldPages = new ProductPage[pageCount];
+        boolean contiguous = !mPages.isEmpty();
+        for (int i = 0; i < pageCount && contiguous; i++) {
+            oldPages[i] = mPages.get(firstPage + i);
+            contiguous = oldPages[i] != null && (i == 0 || oldPages[i - 1].size() == PAGE_SIZE);
+        }
+        final ProductPage[] diffBase = contiguous ? oldPages : null;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int count = queryCount(listUri, cancellationSignal);
+                if (count < 0) {
+                    return;
+                }
+                //walk the held range again so page boundaries stay consistent with each other
+                final ProductPage[] pages = new ProductPage[pageCount];
+                long afterId = firstAfterId;
+                String afterKey = firstAfterKey;
+                for (int i = 0; i < pageCount; i++) {
+                    pages[i] = queryPage(listUri, firstPage + i, afterId, afterKey,
+                            cancellationSignal);
+                    if (pages[i] == null || pages[i].size() < PAGE_SIZE) {
+                        break;
+                    }
+                    afterId = pages[i].lastId();
+                    afterKey = lastKeyOf(listQuery, pages[i]);
+                }
+                if (cancellationSignal.isCanceled()) {
+                    return;
+                }
+                final DiffUtil.DiffResult diff = diffBase == null
+                        ? null
+                        : DiffUtil.calculateDiff(new WindowDiffCallback(diffBase, pages), false);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onRefreshed(generation, oldCount, count, firstPage, pages, diff);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops loading. The list must not be used afterwards.
+     */
+    public void release() {
+        mReleased = true;
+        mCancellationSignal.cancel();
+        mExecutor.shutdownNow();
+    }
+
+    private void onRefreshed(int generation, int oldCount, int count, int firstPage,
+                             ProductPage[] pages, DiffUtil.DiffResult diff) {
+        if (mReleased || generation != mGeneration) {
+            return;
+        }
+        mRefreshing = false;
+        mLoaded = true;
+        mCount = count;
+        long[] afterIds = new long[Math.max(1, (count + PAGE_SIZE - 1) / PAGE_SIZE)];
+        String[] afterKeys = new String[afterIds.length];
+        Arrays.fill(afterIds, -1);
+        //boundaries up to the first reloaded page are still valid, the ones after it may have moved
+        int validBoundaries = Math.min(Math.min(firstPage + 1, mPageAfterIds.length), afterIds.length);
+        System.arraycopy(mPageAfterIds, 0, afterIds, 0, validBoundaries);
+        System.arraycopy(mPageAfterKeys, 0, afterKeys, 0, validBoundaries);
+        afterIds[0] = 0;
+        afterKeys[0] = null;
+        mPageAfterIds = afterIds;
+        mPageAfterKeys = afterKeys;
+
+        mPages.clear();
+        for (int i = 0; i < pages.length && pages[i] != null; i++) {
+            putPage(firstPage + i, pages[i]);
+        }
+
+        if (diff == null) {
+            mCallback.onDataSetChanged();
+        } else {
+            dispatchWindowDiff(diff, firstPage * PAGE_SIZE, oldCount, count);
+        }
+
+        BitSet deferred = (BitSet) mDeferredPages.clone();
+        mDeferredPages.clear();
+        for (int pageIndex = deferred.nextSetBit(0); pageIndex >= 0;
+             pageIndex = deferred.nextSetBit(pageIndex + 1)) {
+            loadPage(pageIndex);
+        }
+    }
+
+    /**
+     * Reports the diff of the reloaded window shifted to its position in the list, then
+     * settles any remaining difference in count after the window, where rows are placeholders.
+     */
+    private void dispatchWindowDiff(DiffUtil.DiffResult diff, final int windowStart,
+                                    int oldCount, int newCount) {
+        final int[] countAfterDiff = {oldCount};
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                countAfterDiff[0] += count;
+                mCallback.onInserted(windowStart + position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                countAfterDiff[0] -= count;
+                mCallback.onRemoved(windowStart + position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                mCallback.onMoved(windowStart + fromPosition, windowStart + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                mCallback.onChanged(windowStart + position, count, payload);
+            }
+        });
+        if (newCount > countAfterDiff[0]) {
+            mCallback.onInserted(countAfterDiff[0], newCount - countAfterDiff[0]);
+        } else if (newCount < countAfterDiff[0]) {
+            mCallback.onRemoved(newCount, countAfterDiff[0] - newCount);
+        }
+    }
+
+    private void loadPage(final int pageIndex) {
+        if (mReleased || pageIndex < 0 || pageIndex * PAGE_SIZE >= mCount
+                || mPages.contains(pageIndex)) {
+            return;
+        }
+        if (mRefreshing) {
+            //the boundaries may move with the refresh, ask again once it is applied
+            mDeferredPages.set(pageIndex);
+            return;
+        }
+        if (mLoadingPages.get(pageIndex)) {
+            return;
+        }
+        mLoadingPages.set(pageIndex);
+        final int generation = mGeneration;
+        final long afterId = afterIdOf(pageIndex);
+        final String afterKey = afterKeyOf(pageIndex);
+        final Uri listUri = mListUri;
+        final CancellationSignal cancellationSignal = mCancellationSignal;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ProductPage page = queryPage(listUri, pageIndex, afterId, afterKey,
+                        cancellationSignal);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(generation, pageIndex, page);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int generation, int pageIndex, ProductPage page) {
+        if (mReleased || generation != mGeneration) {
+            return;
+        }
+        mLoadingPages.clear(pageIndex);
+        if (page == null || page.size() == 0) {
+            return;
+        }
+        putPage(pageIndex, page);
+        mCallback.onChanged(pageIndex * PAGE_SIZE, page.size(), null);
+    }
+
+    private void putPage(int pageIndex, ProductPage page) {
+        mPages.put(pageIndex, page);
+        if (pageIndex + 1 < mPageAfterIds.length && page.size() > 0) {
+            mPageAfterIds[pageIndex + 1] = page.lastId();
+            mPageAfterKeys[pageIndex + 1] = lastKeyOf(mListQuery, page);
+        }
+    }
+
+    private long afterIdOf(int pageIndex) {
+        return pageIndex < mPageAfterIds.length ? mPageAfterIds[pageIndex] : -1;
+    }
+
+    private String afterKeyOf(int pageIndex) {
+        return pageIndex < mPageAfterKeys.length ? mPageAfterKeys[pageIndex] : null;
+    }
+
+    private static String lastKeyOf(ProductQuery listQuery, ProductPage page) {
+        int last = page.size() - 1;
+        return listQuery.keyOf(page.names[last], page.prices[last], page.quantities[last]);
+    }
+
+    //runs on the executor, returns null if the query failed or was cancelled
+    private ProductPage queryPage(Uri listUri, int pageIndex, long afterId, String afterKey,
+                                  CancellationSignal cancellationSignal) {
+        //without a known boundary, e.g. after a fast scroll jump, fall back to an offset
+        Uri uri = afterId >= 0
+                ? InventoryEntry.buildPageUri(listUri, afterId, afterKey, PAGE_SIZE)
+                : InventoryEntry.buildOffsetPageUri(listUri, pageIndex * PAGE_SIZE, PAGE_SIZE);
+        Cursor cursor;
+        try {
+            cursor = ContentResolverCompat.query(mContentResolver, uri, ProductPage.PROJECTION,
+                    null, null, null, cancellationSignal);
+        } catch (OperationCanceledException e) {
+            return null;
+        }
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return ProductPage.fromCursor(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //runs on the executor, returns -1 if the query was cancelled
+    private int queryCount(Uri listUri, CancellationSignal cancellationSignal) {
+        Cursor cursor;
+        try {
+            cursor = ContentResolverCompat.query(mContentResolver, listUri,
+                    new String[]{"COUNT(*)"}, null, null, null, cancellationSignal);
+        } catch (OperationCanceledException e) {
+            return -1;
+        }
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Compares two runs of consecutive pages row by row. Rows are the same product when
+     * their _id matches and unchanged when name, price and quantity match.
+     */
+    private static final class WindowDiffCallback extends DiffUtil.Callback {
+        private final ProductPage[] mOldPages;
+        private final ProductPage[] mNewPages;
+        //position of the first row of each page, with the size of the run at the end
+        private final int[] mOldStarts;
+        private final int[] mNewStarts;
+
+        WindowDiffCallback(ProductPage[] oldPages, ProductPage[] newPages) {
+            mOldPages = oldPages;
+            mNewPages = newPages;
+            mOldStarts = startsOf(oldPages);
+            mNewStarts = startsOf(newPages);
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldStarts[mOldStarts.length - 1];
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewStarts[mNewStarts.length - 1];
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            int oldPage = pageOf(mOldStarts, oldItemPosition);
+            int newPage = pageOf(mNewStarts, newItemPosition);
+            return mOldPages[oldPage].ids[oldItemPosition - mOldStarts[oldPage]]
+                    == mNewPages[newPage].ids[newItemPosition - mNewStarts[newPage]];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            int oldPageIndex = pageOf(mOldStarts, oldItemPosition);
+            int newPageIndex = pageOf(mNewStarts, newItemPosition);
+            ProductPage oldPage = mOldPages[oldPageIndex];
+            ProductPage newPage = mNewPages[newPageIndex];
+            int oldRow = oldItemPosition - mOldStarts[oldPageIndex];
+            int newRow = newItemPosition - mNewStarts[newPageIndex];
+            return oldPage.prices[oldRow] == newPage.prices[newRow]
+                    && oldPage.quantities[oldRow] == newPage.quantities[newRow]
+                    && TextUtils.equals(oldPage.names[oldRow], newPage.names[newRow]);
+        }
+
+        //the page holding position; a page loaded near the end of the list may be short,
+        //so positions are counted from the sizes of the pages before it
+        private static int pageOf(int[] starts, int position) {
+            int page = 0;
+            while (position >= starts[page + 1]) {
+                page++;
+            }
+            return page;
+        }
+
+        //position of the first row of every page up to the first missing one, then the size
+        private static int[] startsOf(ProductPage[] pages) {
+            int[] starts = new int[pages.length + 1];
+            int pageCount = 0;
+            while (pageCount < pages.length && pages[pageCount] != null) {
+                starts[pageCount + 1] = starts[pageCount] + pages[pageCount].size();
+                pageCount++;
+            }
+            return Arrays.copyOf(starts, pageCount + 1);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SyncEntry;
+
+/**
+ * Syncs the products with the server in R.string.sync_server_url from a background thread:
+ * when the app starts, a few seconds after the products changed so a burst of sales goes out
+ * in one round trip, and every {@link #PERIODIC_MILLIS} while the process lives to pull the
+ * changes of other devices. A failed sync is tried again after a delay that doubles up to
+ * the periodic one. Does nothing while the url is empty.
+ */
+public class SyncWorker {
+    private static final String LOG_TAG = SyncWorker.class.getSimpleName();
+
+    private static final long CHANGE_DELAY_MILLIS = 5000;
+    private static final long PERIODIC_MILLIS = 15 * 60 * 1000;
+    private static final long FIRST_RETRY_MILLIS = 30 * 1000;
+
+    private static SyncWorker sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final String mServerUrl;
+    private final Handler mHandler;
+    private boolean mStarted;
+
+    //only touched on the sync thread
+    private int mFailures;
+
+    private final Runnable mSync = new Runnable() {
+        @Override
+        public void run() {
+            sync();
+        }
+    };
+
+    public static synchronized SyncWorker getInstance(Context context) {
+        if (sInstance == null) {
+            HandlerThread thread = new HandlerThread(LOG_TAG);
+            thread.start();
+            sInstance = new SyncWorker(context.getApplicationContext(), new Handler(thread.getLooper()));
+        }
+        return sInstance;
+    }
+
+    private SyncWorker(Context context, Handler handler) {
+        mContentResolver = context.getContentResolver();
+        mServerUrl = context.getString(R.string.sync_server_url);
+        mHandler = handler;
+    }
+
+    /**
+     * Syncs right away and from then on after every change. Later calls do nothing.
+     */
+    public synchronized void start() {
+        if (mStarted || TextUtils.isEmpty(mServerUrl)) {
+            return;
+        }
+        mStarted = true;
+        mContentResolver.registerContentObserver(InventoryEntry.CONTENT_URI, true,
+                new ContentObserver(mHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        //a sync that is already waiting absorbs this change
+                        if (mFailures == 0) {
+                            schedule(CHANGE_DELAY_MILLIS);
+                        }
+                    }
+                });
+        schedule(0);
+    }
+
+    private void schedule(long delayMillis) {
+        mHandler.removeCallbacks(mSync);
+        mHandler.postDelayed(mSync, delayMillis);
+    }
+
+    private void sync() {
+        Bundle result = null;
+        try {
+            result = mContentResolver.call(InventoryEntry.CONTENT_URI, SyncEntry.METHOD_SYNC,
+                    mServerUrl, null);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Sync failed", e);
+        }
+        if (result == null || result.containsKey(SyncEntry.EXTRA_ERROR)) {
+            //the provider already logged why, e.g. no network
+            long delay = FIRST_RETRY_MILLIS << Math.min(mFailures, 10);
+            mFailures++;
+            schedule(Math.min(delay, PERIODIC_MILLIS));
+            return;
+        }
+        mFailures = 0;
+        Log.d(LOG_TAG, "Synced, pushed " + result.getInt(SyncEntry.EXTRA_PUSHED)
+                + " pulled " + result.getInt(SyncEntry.EXTRA_PULLED)
+                + " merged " + result.getInt(SyncEntry.EXTRA_CONFLICTS));
+        schedule(PERIODIC_MILLIS);
+    }
+}
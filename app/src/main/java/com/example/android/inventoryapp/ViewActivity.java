@@ -2,7 +2,8 @@ package com.example.android.inventoryapp;
 
 import android.app.AlertDialog;
 import android.app.LoaderManager;
-import android.content.ContentValues;
+import android.content.ContentUris;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -15,7 +16,6 @@ import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
-import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
@@ -33,17 +33,6 @@ public class ViewActivity extends AppCompatActivity implements LoaderManager.Loa
     private TextView mSupplierNameText;
     private TextView mSupplierPhoneText;
 
-    private boolean mProductHasChanged = false;
-
-
-    private View.OnTouchListener mTouchListener = new View.OnTouchListener() {
-        @Override
-        public boolean onTouch(View view, MotionEvent motionEvent) {
-            mProductHasChanged = true;
-            return false;
-        }
-    };
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -97,13 +86,13 @@ public class ViewActivity extends AppCompatActivity implements LoaderManager.Loa
             int price = cursor.getInt(priceColumnIndex);
             int quantity = cursor.getInt(quantityColumnIndex);
             String supplierName = cursor.getString(supplierNameColumnIndex);
-            final int supplierPhone = cursor.getInt(supplierPhoneColumnIndex);
+            final String supplierPhone = cursor.getString(supplierPhoneColumnIndex);
 
             mProductNameText.setText(productName);
             mPriceText.setText(Integer.toString(price));
             mQuantityText.setText(Integer.toString(quantity));
             mSupplierNameText.setText(supplierName);
-            mSupplierPhoneText.setText(Integer.toString(supplierPhone));
+            mSupplierPhoneText.setText(supplierPhone);
 
             Button callButton = findViewById(R.id.callButton);
             Button minusButton = findViewById(R.id.minusButton);
@@ -113,9 +102,11 @@ public class ViewActivity extends AppCompatActivity implements LoaderManager.Loa
             callButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    String phone = String.valueOf(supplierPhone);
+                    if (TextUtils.isEmpty(supplierPhone)) {
+                        return;
+                    }
                     Intent intent = new Intent(Intent.ACTION_DIAL,
-                            Uri.fromParts("tel", phone, null));
+                            Uri.fromParts("tel", supplierPhone, null));
                     if (intent.resolveActivity(getPackageManager()) != null) {
                         startActivity(intent);
                     }
@@ -125,28 +116,14 @@ public class ViewActivity extends AppCompatActivity implements LoaderManager.Loa
             plusButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    String quantityString = mQuantityText.getText().toString().trim();
-                    int quantityInt = Integer.parseInt(quantityString);
-                    quantityInt = quantityInt + 1;
-                    ContentValues values = new ContentValues();
-                    values.put(InventoryContract.InventoryEntry.COLUMN_QUANTITY, quantityInt);
-                    getContentResolver().update(mCurrentProductUri, values, null, null);
+                    adjustQuantity(1);
                 }
             });
 
             minusButton.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    String quantityString = mQuantityText.getText().toString().trim();
-                    int quantityInt = Integer.parseInt(quantityString);
-                    if (quantityInt > 0) {
-                        quantityInt = quantityInt - 1;
-                        ContentValues values = new ContentValues();
-                        values.put(InventoryContract.InventoryEntry.COLUMN_QUANTITY, quantityInt);
-                        getContentResolver().update(mCurrentProductUri, values, null, null);
-                    } else {
-                        Toast.makeText(ViewActivity.this, getText(R.string.sold_out), Toast.LENGTH_SHORT).show();
-                    }
+                    adjustQuantity(-1);
                 }
             });
 
@@ -159,19 +136,36 @@ public class ViewActivity extends AppCompatActivity implements LoaderManager.Loa
         }
     }
 
+    //change the quantity on the provider side so quick taps are never lost
+    private void adjustQuantity(int delta) {
+        long productId = ContentUris.parseId(mCurrentProductUri);
+        WriteDispatcher.getInstance(this).adjustQuantity(productId, delta,
+                new WriteDispatcher.Callback<Integer>() {
+                    @Override
+                    public void onWriteFinished(Integer newQuantity) {
+                        if (newQuantity == InventoryContract.InventoryEntry.ADJUST_REJECTED) {
+                            Toast.makeText(ViewActivity.this, getText(R.string.sold_out), Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_editor, menu);
         return true;
     }
 
+    //the fields are read only and the quantity buttons write right away, so there is nothing to save
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_save).setVisible(false);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
-            case R.id.action_save:
-                saveProduct();
-                finish();
-                return true;
             case R.id.action_edit:
                 Intent intent = new Intent(ViewActivity.this, EditorActivity.class);
                 intent.setData(mCurrentProductUri);
@@ -179,88 +173,12 @@ public class ViewActivity extends AppCompatActivity implements LoaderManager.Loa
                 finish();
                 return true;
             case android.R.id.home:
-                if (!mProductHasChanged) {
-                    NavUtils.navigateUpFromSameTask(ViewActivity.this);
-                    return true;
-                }
-                DialogInterface.OnClickListener discardButtonClickListener =
-                        new DialogInterface.OnClickListener() {
-                            @Override
-                            public void onClick(DialogInterface dialogInterface, int i) {
-                                NavUtils.navigateUpFromSameTask(ViewActivity.this);
-                            }
-                        };
-                showUnsavedChangesDialog(discardButtonClickListener);
+                NavUtils.navigateUpFromSameTask(ViewActivity.this);
                 return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
-    private void saveProduct() {
-        String productNameString = mProductNameText.getText().toString().trim();
-        String priceString = mPriceText.getText().toString().trim();
-        String quantityString = mQuantityText.getText().toString().trim();
-        String supplierNameString = mSupplierNameText.getText().toString().trim();
-        String supplierPhoneString = mSupplierPhoneText.getText().toString().trim();
-
-        if (mCurrentProductUri == null && TextUtils.isEmpty(productNameString) &&
-                TextUtils.isEmpty(priceString) && TextUtils.isEmpty(quantityString) &&
-                TextUtils.isEmpty(supplierNameString) && TextUtils.isEmpty(supplierPhoneString)) {
-            return;
-        }
-        ContentValues values = new ContentValues();
-        values.put(InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME, productNameString);
-        values.put(InventoryContract.InventoryEntry.COLUMN_PRICE, priceString);
-        values.put(InventoryContract.InventoryEntry.COLUMN_QUANTITY, quantityString);
-        values.put(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_NAME, supplierNameString);
-        values.put(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE, supplierPhoneString);
-
-        if (mCurrentProductUri == null) {
-            Uri newUri =
-                    getContentResolver().insert(InventoryContract.InventoryEntry.CONTENT_URI, values);
-            if (newUri == null) {
-                Toast.makeText(this, getString(R.string.insert_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, getString(R.string.insert_product_successfull),
-                        Toast.LENGTH_SHORT).show();
-            }
-        } else {
-            int rowsAffected = getContentResolver().update(mCurrentProductUri, values,
-                    null, null);
-            if (rowsAffected == 0) {
-                Toast.makeText(this, getString(R.string.update_product_fail),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, getString(R.string.update_product_success),
-                        Toast.LENGTH_SHORT).show();
-            }
-        }
-    }
-
-    //for dialog for unsaved changes
-    private void showUnsavedChangesDialog(
-            DialogInterface.OnClickListener discardButtonClickListener) {
-        // Create an AlertDialog.Builder and set the message, and click listeners
-        // for the positive and negative buttons on the dialog.
-        AlertDialog.Builder builder = new AlertDialog.Builder(this);
-        builder.setMessage(R.string.unsaved_changes_dialog_msg);
-        builder.setPositiveButton(R.string.discard, discardButtonClickListener);
-        builder.setNegativeButton(R.string.keep_editing, new DialogInterface.OnClickListener() {
-            public void onClick(DialogInterface dialog, int id) {
-                // User clicked the "Keep editing" button, so dismiss the dialog
-                // and continue editing the pet.
-                if (dialog != null) {
-                    dialog.dismiss();
-                }
-            }
-        });
-
-        // Create and show the AlertDialog
-        AlertDialog alertDialog = builder.create();
-        alertDialog.show();
-    }
-
     //delete
     private void showDeleteConfirmationDialog() {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
@@ -287,14 +205,20 @@ public class ViewActivity extends AppCompatActivity implements LoaderManager.Loa
 
     private void deleteProduct() {
         if (mCurrentProductUri != null) {
-            int rowsDeleted = getContentResolver().delete(mCurrentProductUri, null, null);
-            if (rowsDeleted == 0) {
-                Toast.makeText(this, getString(R.string.editor_delete_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                Toast.makeText(this, getString(R.string.editor_delete_product_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            final Context appContext = getApplicationContext();
+            WriteDispatcher.getInstance(this).delete(mCurrentProductUri,
+                    new WriteDispatcher.Callback<Integer>() {
+                        @Override
+                        public void onWriteFinished(Integer rowsDeleted) {
+                            if (rowsDeleted == 0) {
+                                Toast.makeText(appContext, appContext.getString(R.string.editor_delete_product_failed),
+                                        Toast.LENGTH_SHORT).show();
+                            } else {
+                                Toast.makeText(appContext, appContext.getString(R.string.editor_delete_product_successful),
+                                        Toast.LENGTH_SHORT).show();
+                            }
+                        }
+                    });
         }
         finish();
     }
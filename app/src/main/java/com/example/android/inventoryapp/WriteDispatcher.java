@@ -0,0 +1,370 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.MovementEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SaleEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends every insert, update and delete of the app to the provider from one background thread,
+ * in the order they were asked for, and reports the results on the main thread.
+ * <p>
+ * A write that is still waiting absorbs the next write of the same kind to the same row, as
+ * long as it is the last write queued for that row: five quick sells become one adjustment
+ * of -5 and two quick saves become one update.
+ */
+public class WriteDispatcher {
+    private static final String LOG_TAG = WriteDispatcher.class.getSimpleName();
+
+    public interface Callback<T> {
+        /**
+         * Called on the main thread once the write finished
+         */
+        void onWriteFinished(T result);
+    }
+
+    private static WriteDispatcher sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final Handler mWriteHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Object mLock = new Object();
+    //guarded by mLock, the last write queued for each row while it has not started, by the
+    //row uri without its query, so a versioned save and an adjust of a product share a key
+    private final Map<Uri, PendingWrite<?>> mPendingWrites = new HashMap<>();
+
+    public static synchronized WriteDispatcher getInstance(Context context) {
+        if (sInstance == null) {
+            HandlerThread thread = new HandlerThread(LOG_TAG);
+            thread.start();
+            sInstance = new WriteDispatcher(context.getApplicationContext().getContentResolver(),
+                    thread.getLooper());
+        }
+        return sInstance;
+    }
+
+    WriteDispatcher(ContentResolver contentResolver, Looper writeLooper) {
+        mContentResolver = contentResolver;
+        mWriteHandler = new Handler(writeLooper);
+    }
+
+    /**
+     * @param callback gets the uri of the new row, or null if it was not inserted
+     */
+    public void insert(final Uri uri, final ContentValues values, Callback<Uri> callback) {
+        PendingWrite<Uri> write = new PendingWrite<Uri>(null) {
+            @Override
+            void write() {
+                Uri newUri = null;
+                try {
+                    newUri = mContentResolver.insert(uri, values);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Insert failed for " + uri, e);
+                }
+                deliverAll(newUri);
+            }
+        };
+        write.mCallbacks.add(callback);
+        enqueue(write);
+    }
+
+    /**
+     * Updates one row. Values of a later update win over those of a waiting one.
+     *
+     * @param callback gets the number of rows updated
+     */
+    public void update(Uri rowUri, ContentValues values, Callback<Integer> callback) {
+        synchronized (mLock) {
+            PendingWrite<?> pending = mPendingWrites.get(rowKey(rowUri));
+            //only an update expecting the same version may take the values
+            if (pending instanceof PendingUpdate && pending.mRowUri.equals(rowUri)) {
+                PendingUpdate update = (PendingUpdate) pending;
+                update.mValues.putAll(values);
+                update.mCallbacks.add(callback);
+                return;
+            }
+            PendingUpdate update = new PendingUpdate(rowUri, new ContentValues(values));
+            update.mCallbacks.add(callback);
+            enqueueLocked(update);
+        }
+    }
+
+    /**
+     * Deletes one row. A delete of a row that is already waiting to be deleted is not sent again.
+     *
+     * @param callback gets the number of rows deleted
+     */
+    public void delete(final Uri rowUri, Callback<Integer> callback) {
+        synchronized (mLock) {
+            PendingWrite<?> pending = mPendingWrites.get(rowKey(rowUri));
+            if (pending instanceof PendingDelete) {
+                ((PendingDelete) pending).mCallbacks.add(callback);
+                return;
+            }
+            PendingDelete delete = new PendingDelete(rowUri);
+            delete.mCallbacks.add(callback);
+            enqueueLocked(delete);
+        }
+    }
+
+    /**
+     * Adds delta to the quantity of a product through the provider's adjust uri, as a sale
+     * if it is negative and as a restock otherwise.
+     *
+     * @param callback gets the new quantity, or {@link InventoryEntry#ADJUST_REJECTED}
+     */
+    public void adjustQuantity(long productId, int delta, Callback<Integer> callback) {
+        adjustQuantity(productId, delta,
+                delta < 0 ? MovementEntry.REASON_SALE : MovementEntry.REASON_RESTOCK, callback);
+    }
+
+    /**
+     * Same as {@link #adjustQuantity(long, int, Callback)} with the MovementEntry REASON_ to
+     * record. Only adjustments with the same reason are merged, so the ledger keeps them apart.
+     */
+    public void adjustQuantity(long productId, int delta, int reason, Callback<Integer> callback) {
+        Uri rowUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, productId);
+        synchronized (mLock) {
+            PendingWrite<?> pending = mPendingWrites.get(rowKey(rowUri));
+            if (pending instanceof PendingAdjustment && ((PendingAdjustment) pending).mReason == reason) {
+                PendingAdjustment adjustment = (PendingAdjustment) pending;
+                adjustment.mDeltas.add(delta);
+                adjustment.mCallbacks.add(callback);
+                return;
+            }
+            PendingAdjustment adjustment = new PendingAdjustment(rowUri, productId, reason);
+            adjustment.mDeltas.add(delta);
+            adjustment.mCallbacks.add(callback);
+            enqueueLocked(adjustment);
+        }
+    }
+
+    /**
+     * Sells one of the product with the given sku, e.g. one that was just scanned. Finding
+     * the product and changing its quantity is a single call to the provider.
+     *
+     * @param callback gets the new quantity, {@link InventoryEntry#ADJUST_UNKNOWN_SKU} or
+     *                 {@link InventoryEntry#ADJUST_REJECTED} if it is out of stock
+     */
+    public void sellBySku(final String sku, Callback<Integer> callback) {
+        PendingWrite<Integer> write = new PendingWrite<Integer>(null) {
+            @Override
+            void write() {
+                int newQuantity = InventoryEntry.ADJUST_REJECTED;
+                try {
+                    newQuantity = mContentResolver.update(InventoryEntry.buildSkuAdjustUri(sku, -1),
+                            null, null, null);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Sale failed for sku " + sku, e);
+                }
+                deliverAll(newQuantity);
+            }
+        };
+        write.mCallbacks.add(callback);
+        enqueue(write);
+    }
+
+    /**
+     * Sells every line of an order, see {@link SaleEntry}. The callback gets the number of
+     * lines sold or one of the SALE_ codes.
+     */
+    public void checkout(final ContentValues[] lines, Callback<Integer> callback) {
+        PendingWrite<Integer> write = new PendingWrite<Integer>(null) {
+            @Override
+            void write() {
+                int result = SaleEntry.SALE_REJECTED;
+                try {
+                    result = mContentResolver.bulkInsert(SaleEntry.CONTENT_URI, lines);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Checkout failed for " + lines.length + " lines", e);
+                }
+                deliverAll(result);
+            }
+        };
+        write.mCallbacks.add(callback);
+        enqueue(write);
+    }
+
+    private void enqueue(PendingWrite<?> write) {
+        synchronized (mLock) {
+            enqueueLocked(write);
+        }
+    }
+
+    private void enqueueLocked(PendingWrite<?> write) {
+        //a new write to the row ends merging into the one before it, so the order stays the same
+        if (write.mRowUri != null) {
+            mPendingWrites.put(rowKey(write.mRowUri), write);
+        } else {
+            //a write that finds its rows itself, e.g. a sale by sku, may touch any of them
+            mPendingWrites.clear();
+        }
+        mWriteHandler.post(write);
+    }
+
+    //the row a write goes to, without query parameters such as the version of a save
+    private static Uri rowKey(Uri rowUri) {
+        return rowUri.buildUpon().clearQuery().build();
+    }
+
+    /**
+     * Rolls stock movements older than the retention period into daily summaries.
+     *
+     * @param callback gets the number of movements rolled up
+     */
+    public void compactMovements(Callback<Integer> callback) {
+        PendingWrite<Integer> write = new PendingWrite<Integer>(null) {
+            @Override
+            void write() {
+                int compacted = 0;
+                try {
+                    Bundle result = mContentResolver.call(MovementEntry.CONTENT_URI,
+                            MovementEntry.METHOD_COMPACT, null, null);
+                    compacted = result.getInt(MovementEntry.EXTRA_COUNT);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Compaction failed", e);
+                }
+                deliverAll(compacted);
+            }
+        };
+        write.mCallbacks.add(callback);
+        enqueue(write);
+    }
+
+    /**
+     * One queued write and the callbacks of every request merged into it
+     */
+    private abstract class PendingWrite<T> implements Runnable {
+        final Uri mRowUri;
+        final List<Callback<T>> mCallbacks = new ArrayList<>(1);
+
+        PendingWrite(Uri rowUri) {
+            mRowUri = rowUri;
+        }
+
+        @Override
+        public final void run() {
+            synchronized (mLock) {
+                //from here on nothing merges into this write
+                if (mRowUri != null && mPendingWrites.get(rowKey(mRowUri)) == this) {
+                    mPendingWrites.remove(rowKey(mRowUri));
+                }
+            }
+            write();
+        }
+
+        abstract void write();
+
+        void deliverAll(T result) {
+            for (Callback<T> callback : mCallbacks) {
+                deliver(callback, result);
+            }
+        }
+
+        void deliver(final Callback<T> callback, final T result) {
+            if (callback == null) {
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onWriteFinished(result);
+                }
+            });
+        }
+    }
+
+    private final class PendingUpdate extends PendingWrite<Integer> {
+        final ContentValues mValues;
+
+        PendingUpdate(Uri rowUri, ContentValues values) {
+            super(rowUri);
+            mValues = values;
+        }
+
+        @Override
+        void write() {
+            int rowsUpdated = 0;
+            try {
+                rowsUpdated = mContentResolver.update(mRowUri, mValues, null, null);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Update failed for " + mRowUri, e);
+            }
+            deliverAll(rowsUpdated);
+        }
+    }
+
+    private final class PendingDelete extends PendingWrite<Integer> {
+
+        PendingDelete(Uri rowUri) {
+            super(rowUri);
+        }
+
+        @Override
+        void write() {
+            int rowsDeleted = 0;
+            try {
+                rowsDeleted = mContentResolver.delete(mRowUri, null, null);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Delete failed for " + mRowUri, e);
+            }
+            deliverAll(rowsDeleted);
+        }
+    }
+
+    private final class PendingAdjustment extends PendingWrite<Integer> {
+        final long mProductId;
+        final int mReason;
+        final List<Integer> mDeltas = new ArrayList<>(1);
+
+        PendingAdjustment(Uri rowUri, long productId, int reason) {
+            super(rowUri);
+            mProductId = productId;
+            mReason = reason;
+        }
+
+        @Override
+        void write() {
+            int total = 0;
+            for (int delta : mDeltas) {
+                total += delta;
+            }
+            int newQuantity = adjust(total);
+            if (newQuantity != InventoryEntry.ADJUST_REJECTED || mDeltas.size() == 1) {
+                deliverAll(newQuantity);
+                return;
+            }
+            //the sum went below zero, so apply the requests one by one and refuse only the
+            //ones that do not fit, as if they had not been merged
+            for (int i = 0; i < mDeltas.size(); i++) {
+                deliver(mCallbacks.get(i), adjust(mDeltas.get(i)));
+            }
+        }
+
+        private int adjust(int delta) {
+            try {
+                return mContentResolver.update(InventoryEntry.buildAdjustUri(mProductId, delta, mReason),
+                        null, null, null);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Adjustment failed for " + mRowUri, e);
+                return InventoryEntry.ADJUST_REJECTED;
+            }
+        }
+    }
+}
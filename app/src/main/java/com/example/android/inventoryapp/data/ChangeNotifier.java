@@ -0,0 +1,194 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SupplierEntry;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Publishes changes made by {@link InventoryProvider} to content observers.
+ * <p>
+ * Changes are collected for {@link #COALESCE_WINDOW_MILLIS} and sent together. Changes made
+ * inside a batch are held until the batch commits and dropped if it rolls back.
+ * A change to known rows, e.g. an edited quantity, is published on the uri of every changed row
+ * so observers can tell whether they show it. Inserts, deletes and changes to unknown rows are
+ * published on {@link InventoryEntry#CONTENT_URI}, since they can change any list.
+ * Changes to suppliers are published on {@link SupplierEntry#CONTENT_URI}.
+ */
+public class ChangeNotifier {
+
+    //changes closer together than this go out as one notification
+    static final long COALESCE_WINDOW_MILLIS = 50;
+    //above this many rows one table notification is cheaper for the observers
+    static final int MAX_ROW_NOTIFICATIONS = 32;
+
+    private final ContentResolver mContentResolver;
+    private final Handler mHandler;
+    private final ProviderMetrics mMetrics;
+
+    private final Object mLock = new Object();
+    //guarded by mLock
+    private final Set<Long> mChangedIds = new HashSet<>();
+    private boolean mTableChanged;
+    private boolean mSuppliersChanged;
+    private boolean mFlushScheduled;
+
+    //changes of the batch running on the calling thread, if any
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
+
+    private static final class Batch {
+        int depth;
+        boolean tableChanged;
+        boolean suppliersChanged;
+        final Set<Long> changedIds = new HashSet<>();
+    }
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public ChangeNotifier(ContentResolver contentResolver) {
+        this(contentResolver, new ProviderMetrics());
+    }
+
+    ChangeNotifier(ContentResolver contentResolver, ProviderMetrics metrics) {
+        mContentResolver = contentResolver;
+        mMetrics = metrics;
+        HandlerThread thread = new HandlerThread(ChangeNotifier.class.getSimpleName());
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * The looper notifications go out on, for tests that check them
+     */
+    Looper getLooper() {
+        return mHandler.getLooper();
+    }
+
+    /**
+     * Values of the row with the given _id changed, but no row was added or removed
+     */
+    public void notifyRowChanged(long id) {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.changedIds.add(id);
+            return;
+        }
+        synchronized (mLock) {
+            mChangedIds.add(id);
+            scheduleFlushLocked();
+        }
+    }
+
+    /**
+     * Rows were added or removed, or the changed rows are not known
+     */
+    public void notifyTableChanged() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.tableChanged = true;
+            return;
+        }
+        synchronized (mLock) {
+            mTableChanged = true;
+            scheduleFlushLocked();
+        }
+    }
+
+    /**
+     * Suppliers were added, removed or changed. Call {@link #notifyTableChanged} as well if
+     * products show the change.
+     */
+    public void notifySuppliersChanged() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.suppliersChanged = true;
+            return;
+        }
+        synchronized (mLock) {
+            mSuppliersChanged = true;
+            scheduleFlushLocked();
+        }
+    }
+
+    /**
+     * Holds back the changes of the calling thread until the matching {@link #endBatch}.
+     * Batches may nest, only the outermost one publishes.
+     */
+    public void beginBatch() {
+        Batch batch = mBatch.get();
+        if (batch == null) {
+            batch = new Batch();
+            mBatch.set(batch);
+        }
+        batch.depth++;
+    }
+
+    /**
+     * @param committed false if the batch rolled back and its changes never happened
+     */
+    public void endBatch(boolean committed) {
+        Batch batch = mBatch.get();
+        if (--batch.depth > 0) {
+            return;
+        }
+        mBatch.remove();
+        if (!committed || (!batch.tableChanged && !batch.suppliersChanged
+                && batch.changedIds.isEmpty())) {
+            return;
+        }
+        synchronized (mLock) {
+            mTableChanged |= batch.tableChanged;
+            mSuppliersChanged |= batch.suppliersChanged;
+            mChangedIds.addAll(batch.changedIds);
+            scheduleFlushLocked();
+        }
+    }
+
+    private void scheduleFlushLocked() {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushRunnable, COALESCE_WINDOW_MILLIS);
+        }
+    }
+
+    private void flush() {
+        boolean tableChanged;
+        boolean suppliersChanged;
+        Long[] changedIds;
+        int changedRows;
+        synchronized (mLock) {
+            changedRows = mChangedIds.size();
+            suppliersChanged = mSuppliersChanged;
+            mSuppliersChanged = false;
+            tableChanged = mTableChanged || mChangedIds.size() > MAX_ROW_NOTIFICATIONS;
+            changedIds = tableChanged ? null : mChangedIds.toArray(new Long[mChangedIds.size()]);
+            mChangedIds.clear();
+            mTableChanged = false;
+            mFlushScheduled = false;
+        }
+        if (suppliersChanged) {
+            mContentResolver.notifyChange(SupplierEntry.CONTENT_URI, null);
+        }
+        mMetrics.recordFlush(changedRows, (suppliersChanged ? 1 : 0)
+                + (tableChanged ? 1 : changedIds.length));
+        if (tableChanged) {
+            mContentResolver.notifyChange(InventoryEntry.CONTENT_URI, null);
+            return;
+        }
+        for (Long id : changedIds) {
+            mContentResolver.notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), null);
+        }
+    }
+}
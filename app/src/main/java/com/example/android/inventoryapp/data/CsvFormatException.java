@@ -0,0 +1,19 @@
+package com.example.android.inventoryapp.data;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link CsvReader} when the input is not valid CSV and reading cannot go on.
+ */
+public class CsvFormatException extends IOException {
+    private final long mLineNumber;
+
+    public CsvFormatException(long lineNumber, String message) {
+        super("Line " + lineNumber + ": " + message);
+        mLineNumber = lineNumber;
+    }
+
+    public long getLineNumber() {
+        return mLineNumber;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.android.inventoryapp.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 style CSV one row at a time through a fixed size buffer, so a file of
+ * any size is read in constant memory. Quoted fields may contain commas, doubled quotes
+ * and line breaks. Both \n and \r\n end a row.
+ */
+public final class CsvReader implements Closeable {
+
+    //longest field accepted, so a stray quote cannot pull the rest of the file into memory
+    public static final int MAX_FIELD_LENGTH = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader mReader;
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+    private int mPosition;
+    private int mLimit;
+    private final StringBuilder mField = new StringBuilder();
+    //line the last row started on and line the next row starts on
+    private long mRowLineNumber;
+    private long mNextLineNumber = 1;
+
+    public CsvReader(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * @return the 1-based line on which the row last returned by {@link #readRow} started
+     */
+    public long getLineNumber() {
+        return mRowLineNumber;
+    }
+
+    /**
+     * Reads the next row, replacing the contents of fields.
+     *
+     * @return false at the end of the input
+     */
+    public boolean readRow(List<String> fields) throws IOException {
+        fields.clear();
+        mField.setLength(0);
+        mRowLineNumber = mNextLineNumber;
+        int c = read();
+        if (c == -1) {
+            return false;
+        }
+        boolean inQuotes = false;
+        while (true) {
+            if (c == -1) {
+                if (inQuotes) {
+                    throw new CsvFormatException(mRowLineNumber, "unterminated quoted field");
+                }
+                fields.add(mField.toString());
+                return true;
+            }
+            char ch = (char) c;
+            if (inQuotes) {
+                if (ch == '"') {
+                    if (peek() == '"') {
+                        read();
+                        append(ch);
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    if (ch == '\n') {
+                        mNextLineNumber++;
+                    }
+                    append(ch);
+                }
+            } else if (ch == '"') {
+                inQuotes = true;
+            } else if (ch == ',') {
+                fields.add(mField.toString());
+                mField.setLength(0);
+            } else if (ch == '\n') {
+                mNextLineNumber++;
+                fields.add(mField.toString());
+                return true;
+            } else if (ch != '\r') {
+                append(ch);
+            }
+            c = read();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    private void append(char ch) throws CsvFormatException {
+        if (mField.length() == MAX_FIELD_LENGTH) {
+            throw new CsvFormatException(mRowLineNumber, "field longer than " + MAX_FIELD_LENGTH + " chars");
+        }
+        mField.append(ch);
+    }
+
+    private int read() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPosition++];
+    }
+
+    private int peek() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPosition];
+    }
+
+    private boolean fill() throws IOException {
+        int read = mReader.read(mBuffer, 0, BUFFER_SIZE);
+        if (read <= 0) {
+            return false;
+        }
+        mPosition = 0;
+        mLimit = read;
+        return true;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.android.inventoryapp.data;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes CSV one field at a time in the format read by {@link CsvReader}.
+ * Wrap the target in a BufferedWriter, every field goes straight to it.
+ */
+public final class CsvWriter implements Closeable, Flushable {
+
+    private final Writer mWriter;
+    private boolean mRowStarted;
+
+    public CsvWriter(Writer writer) {
+        mWriter = writer;
+    }
+
+    /**
+     * Writes a text field, quoting it if it contains a comma, a quote or a line break.
+     * Null is written as an empty field.
+     */
+    public void writeField(String value) throws IOException {
+        startField();
+        if (value == null) {
+            return;
+        }
+        if (!needsQuotes(value)) {
+            mWriter.write(value);
+            return;
+        }
+        mWriter.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"') {
+                mWriter.write('"');
+            }
+            mWriter.write(ch);
+        }
+        mWriter.write('"');
+    }
+
+    public void writeField(long value) throws IOException {
+        startField();
+        mWriter.write(Long.toString(value));
+    }
+
+    public void endRow() throws IOException {
+        mWriter.write('\n');
+        mRowStarted = false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWriter.close();
+    }
+
+    private void startField() throws IOException {
+        if (mRowStarted) {
+            mWriter.write(',');
+        }
+        mRowStarted = true;
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == ',' || ch == '"' || ch == '\n' || ch == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.inventoryapp.data;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Posts each sync request as gzip compressed JSON to one url and reads the JSON answer,
+ * which the server may compress as well. Product rows repeat the same keys and supplier
+ * names, so a batch usually shrinks to a fraction of its size.
+ */
+final class HttpSyncTransport implements SyncTransport {
+
+    private static final int TIMEOUT_MILLIS = 30000;
+    private static final String GZIP = "gzip";
+
+    private final URL mUrl;
+
+    HttpSyncTransport(URL url) {
+        mUrl = url;
+    }
+
+    @Override
+    public JSONObject exchange(JSONObject request) throws IOException {
+        byte[] body = gzip(request.toString().getBytes("UTF-8"));
+        HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setRequestProperty("Content-Encoding", GZIP);
+            //asking for it ourselves turns off the transparent decompression, so handle it below
+            connection.setRequestProperty("Accept-Encoding", GZIP);
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Sync server answered " + status + " for " + mUrl);
+            }
+            InputStream in = connection.getInputStream();
+            if (GZIP.equalsIgnoreCase(connection.getContentEncoding())) {
+                in = new GZIPInputStream(in);
+            }
+            try {
+                return new JSONObject(new String(readAll(in), "UTF-8"));
+            } catch (JSONException e) {
+                throw new IOException("Malformed answer from " + mUrl, e);
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
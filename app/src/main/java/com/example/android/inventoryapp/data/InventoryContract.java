@@ -1,6 +1,7 @@
 package com.example.android.inventoryapp.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -11,8 +12,50 @@ public class InventoryContract {
 
 
     public static final String CONTENT_AUTHORITY = "com.example.android.inventoryapp";
+
+    //signature permission other apps, e.g. the back office, need to use the provider
+    public static final String PERMISSION_ACCESS = CONTENT_AUTHORITY + ".permission.ACCESS_INVENTORY";
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://"+ CONTENT_AUTHORITY);
     public static final String PATH_PRODUCTS = "products";
+    public static final String PATH_ADJUST = "adjust";
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_SKU = "sku";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_BY_SUPPLIER = "by_supplier";
+    public static final String PATH_SUPPLIERS = "suppliers";
+    public static final String PATH_MOVEMENTS = "movements";
+    public static final String PATH_DAYS = "days";
+    public static final String PATH_SALES = "sales";
+
+    //query parameter holding the signed quantity change for an adjust uri
+    public static final String QUERY_PARAMETER_DELTA = "delta";
+
+    //query parameter holding the MovementEntry REASON_ of an adjust uri
+    public static final String QUERY_PARAMETER_REASON = "reason";
+
+    //query parameter holding the version a conditional update expects the product to have
+    public static final String QUERY_PARAMETER_VERSION = "version";
+
+    //query parameter holding the search text for the search uri
+    public static final String QUERY_PARAMETER_QUERY = "q";
+
+    //query parameters for reading the products table one page at a time, ordered by _id
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+    public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+    public static final String QUERY_PARAMETER_OFFSET = "offset";
+    //sort value of the row in front of a page of a list sorted by a column
+    public static final String QUERY_PARAMETER_AFTER_KEY = "after_key";
+
+    //query parameters of a ProductQuery
+    public static final String QUERY_PARAMETER_SORT = "sort";
+    public static final String QUERY_PARAMETER_ORDER = "order";
+    public static final String QUERY_PARAMETER_MIN_PRICE = "min_price";
+    public static final String QUERY_PARAMETER_MAX_PRICE = "max_price";
+    public static final String QUERY_PARAMETER_IN_STOCK = "in_stock";
+    public static final String QUERY_PARAMETER_SUPPLIER = "supplier_id";
+
+    //query parameter holding another low stock threshold for the stats uri
+    public static final String QUERY_PARAMETER_THRESHOLD = "threshold";
 
     public static final class InventoryEntry implements BaseColumns {
 
@@ -30,8 +73,19 @@ public class InventoryContract {
 
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PRODUCTS);
 
+        /**
+         * Full-text search over product and supplier names, e.g. products/search?q=pen.
+         * Every word is matched as a prefix. Accepts the same paging parameters as
+         * {@link #CONTENT_URI}.
+         */
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
         //name of the table
         public static final String TABLE_NAME = "products";
+        //products joined with their supplier, what every product query reads
+        public static final String VIEW_NAME = "products_view";
+        //full-text index over the product and supplier names, kept in sync by triggers
+        public static final String FTS_TABLE_NAME = "products_fts";
         //unique id of product. type:INTEGER
         public static final String _ID = BaseColumns._ID;
         //name of the product. type: TEXT
@@ -40,9 +94,651 @@ public class InventoryContract {
         public static final String COLUMN_PRICE = "Price";
         //quantity of the product in inventory. type: INTEGER
         public static final String COLUMN_QUANTITY = "Quantity";
-        //supplier of the product. type: TEXT
+        //_id of the supplier of the product in the suppliers table. type: INTEGER
+        public static final String COLUMN_SUPPLIER_ID = "Supplier_Id";
+        //name of the supplier, read from the suppliers table. Writing it points the product
+        //to the supplier with that name, which is added if needed. type: TEXT
+        public static final String COLUMN_SUPPLIER_NAME = SupplierEntry.COLUMN_SUPPLIER_NAME;
+        //phone of the supplier, read from the suppliers table. Writing it together with the
+        //supplier name changes the phone of that supplier. type: TEXT
+        public static final String COLUMN_SUPPLIER_PHOHE = SupplierEntry.COLUMN_SUPPLIER_PHONE;
+        //stock keeping unit or barcode, e.g. "4006381333931". Unique, but may be left out. type: TEXT
+        public static final String COLUMN_SKU = "SKU";
+        //id of the product shared with the sync server and every other device. type: TEXT
+        public static final String COLUMN_SYNC_ID = "Sync_Id";
+        //raised by every change of the product, set to the version of the server by a sync. type: INTEGER
+        public static final String COLUMN_VERSION = "Version";
+        //time of the last change in milliseconds since the epoch. type: INTEGER
+        public static final String COLUMN_UPDATED_AT = "Updated_At";
+        //raised by every change of the product on this device, including the ones a sync
+        //writes, and never set back. type: INTEGER
+        public static final String COLUMN_LOCAL_VERSION = "Local_Version";
+
+        /**
+         * Builds the uri for the next page of at most limit products whose _id is greater
+         * than afterId. Pass 0 for the first page.
+         */
+        public static Uri buildPageUri(long afterId, int limit) {
+            return buildPageUri(CONTENT_URI, afterId, limit);
+        }
+
+        /**
+         * Same as {@link #buildPageUri(long, int)} for another list uri, e.g. a search uri
+         */
+        public static Uri buildPageUri(Uri listUri, long afterId, int limit) {
+            return listUri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, Long.toString(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(limit))
+                    .build();
+        }
+
+        /**
+         * Same as {@link #buildPageUri(Uri, long, int)} for a list sorted by a column, where
+         * afterKey is the sort value of the row with afterId, see {@link ProductQuery#keyOf}.
+         * Pass null for the first page.
+         */
+        public static Uri buildPageUri(Uri listUri, long afterId, String afterKey, int limit) {
+            if (afterKey == null) {
+                return buildPageUri(listUri, afterId, limit);
+            }
+            return listUri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, Long.toString(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_KEY, afterKey)
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(limit))
+                    .build();
+        }
+
+        /**
+         * Builds the uri for a page that starts at the given row position. Slower than
+         * {@link #buildPageUri} because SQLite has to step over every skipped row, so only
+         * use it to jump to a position whose preceding _id is unknown.
+         */
+        public static Uri buildOffsetPageUri(Uri listUri, int offset, int limit) {
+            return listUri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_OFFSET, Integer.toString(offset))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(limit))
+                    .build();
+        }
+
+        /**
+         * Builds the uri that searches products for the given text
+         */
+        public static Uri buildSearchUri(String query) {
+            return CONTENT_SEARCH_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_QUERY, query)
+                    .build();
+        }
+
+        /**
+         * Returned by an update on an adjust uri when the product does not exist or
+         * the change would make its quantity negative
+         */
+        public static final int ADJUST_REJECTED = -1;
+
+        /**
+         * Returned by an update on a sku adjust uri when no product has the sku
+         */
+        public static final int ADJUST_UNKNOWN_SKU = -2;
+
+        /**
+         * Returned by an update on a versioned uri when the product was changed or deleted
+         * since the version was read
+         */
+        public static final int UPDATE_CONFLICT = -1;
+
+        /**
+         * Builds the uri of a product for an update that only applies if the product still has
+         * the given {@link #COLUMN_LOCAL_VERSION}, e.g. products/5?version=3. The update returns
+         * {@link #UPDATE_CONFLICT} instead of overwriting a change made since then.
+         */
+        public static Uri buildVersionedUri(long id, long version) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_VERSION, Long.toString(version))
+                    .build();
+        }
+
+        /**
+         * Builds the uri that atomically changes the quantity of a product by the given delta,
+         * e.g. products/5/adjust?delta=-1. An update on it returns the new quantity
+         * or {@link #ADJUST_REJECTED}. The change is recorded in the stock movements as a sale
+         * if it is negative and as a restock otherwise.
+         */
+        public static Uri buildAdjustUri(long id, int delta) {
+            return buildAdjustUri(id, delta,
+                    delta < 0 ? MovementEntry.REASON_SALE : MovementEntry.REASON_RESTOCK);
+        }
+
+        /**
+         * Same as {@link #buildAdjustUri(long, int)}, recording the change with the given
+         * MovementEntry REASON_
+         */
+        public static Uri buildAdjustUri(long id, int delta, int reason) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon()
+                    .appendPath(PATH_ADJUST)
+                    .appendQueryParameter(QUERY_PARAMETER_DELTA, Integer.toString(delta))
+                    .appendQueryParameter(QUERY_PARAMETER_REASON, Integer.toString(reason))
+                    .build();
+        }
+
+        /**
+         * Builds the uri of the product with the given sku, e.g. products/sku/4006381333931.
+         * A query on it is a single lookup in the unique sku index.
+         */
+        public static Uri buildSkuUri(String sku) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_SKU)
+                    .appendPath(sku)
+                    .build();
+        }
+
+        /**
+         * Builds the uri that finds the product with the given sku and changes its quantity
+         * by delta in the same transaction, e.g. products/sku/4006381333931/adjust?delta=-1,
+         * so a scanned sale needs one call. An update on it returns the new quantity,
+         * {@link #ADJUST_UNKNOWN_SKU} or {@link #ADJUST_REJECTED}, and records the change like
+         * {@link #buildAdjustUri(long, int)}.
+         */
+        public static Uri buildSkuAdjustUri(String sku, int delta) {
+            return buildSkuUri(sku).buildUpon()
+                    .appendPath(PATH_ADJUST)
+                    .appendQueryParameter(QUERY_PARAMETER_DELTA, Integer.toString(delta))
+                    .appendQueryParameter(QUERY_PARAMETER_REASON, Integer.toString(
+                            delta < 0 ? MovementEntry.REASON_SALE : MovementEntry.REASON_RESTOCK))
+                    .build();
+        }
+    }
+
+    /**
+     * Sort order and filters of a product list, carried as query parameters of
+     * {@link InventoryEntry#CONTENT_URI} or a search uri. The provider only accepts the
+     * values defined here and answers every combination from an index.
+     */
+    public static final class ProductQuery {
+
+        public static final int SORT_BY_ID = 0;
+        public static final int SORT_BY_NAME = 1;
+        public static final int SORT_BY_PRICE = 2;
+        public static final int SORT_BY_QUANTITY = 3;
+
+        //values of the sort parameter, by SORT_BY_ constant
+        private static final String[] SORT_NAMES = {"id", "name", "price", "quantity"};
+        private static final String ORDER_DESCENDING = "desc";
+
+        /**
+         * All products by _id, the order they were added in
+         */
+        public static final ProductQuery ALL = new Builder().build();
+
+        private final int mSortBy;
+        private final boolean mDescending;
+        //-1 where not set
+        private final int mMinPrice;
+        private final int mMaxPrice;
+        private final boolean mInStockOnly;
+        private final long mSupplierId;
+
+        private ProductQuery(Builder builder) {
+            mSortBy = builder.mSortBy;
+            mDescending = builder.mDescending;
+            mMinPrice = builder.mMinPrice;
+            mMaxPrice = builder.mMaxPrice;
+            mInStockOnly = builder.mInStockOnly;
+            mSupplierId = builder.mSupplierId;
+        }
+
+        public int getSortBy() {
+            return mSortBy;
+        }
+
+        public boolean isDescending() {
+            return mDescending;
+        }
+
+        /**
+         * @return the lowest price shown, or -1 for no lower bound
+         */
+        public int getMinPrice() {
+            return mMinPrice;
+        }
+
+        /**
+         * @return the highest price shown, or -1 for no upper bound
+         */
+        public int getMaxPrice() {
+            return mMaxPrice;
+        }
+
+        public boolean isInStockOnly() {
+            return mInStockOnly;
+        }
+
+        /**
+         * @return the _id of the only supplier shown, or -1 for all suppliers
+         */
+        public long getSupplierId() {
+            return mSupplierId;
+        }
+
+        /**
+         * @return the sort value of a product as passed to
+         * {@link InventoryEntry#buildPageUri(Uri, long, String, int)}, null when sorting by _id
+         */
+        public String keyOf(String name, int price, int quantity) {
+            switch (mSortBy) {
+                case SORT_BY_NAME:
+                    return name;
+                case SORT_BY_PRICE:
+                    return Integer.toString(price);
+                case SORT_BY_QUANTITY:
+                    return Integer.toString(quantity);
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @return a builder starting from the values of this query
+         */
+        public Builder buildUpon() {
+            return new Builder()
+                    .sortBy(mSortBy, mDescending)
+                    .priceRange(mMinPrice, mMaxPrice)
+                    .inStockOnly(mInStockOnly)
+                    .supplier(mSupplierId);
+        }
+
+        /**
+         * @return listUri with the parameters of this query, values at their default are left out
+         */
+        public Uri applyTo(Uri listUri) {
+            Uri.Builder builder = listUri.buildUpon();
+            if (mSortBy != SORT_BY_ID) {
+                builder.appendQueryParameter(QUERY_PARAMETER_SORT, SORT_NAMES[mSortBy]);
+            }
+            if (mDescending) {
+                builder.appendQueryParameter(QUERY_PARAMETER_ORDER, ORDER_DESCENDING);
+            }
+            if (mMinPrice >= 0) {
+                builder.appendQueryParameter(QUERY_PARAMETER_MIN_PRICE, Integer.toString(mMinPrice));
+            }
+            if (mMaxPrice >= 0) {
+                builder.appendQueryParameter(QUERY_PARAMETER_MAX_PRICE, Integer.toString(mMaxPrice));
+            }
+            if (mInStockOnly) {
+                builder.appendQueryParameter(QUERY_PARAMETER_IN_STOCK, "1");
+            }
+            if (mSupplierId >= 0) {
+                builder.appendQueryParameter(QUERY_PARAMETER_SUPPLIER, Long.toString(mSupplierId));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Reads the query parameters of uri.
+         *
+         * @throws IllegalArgumentException if a parameter has a value not defined here
+         */
+        public static ProductQuery fromUri(Uri uri) {
+            Builder builder = new Builder();
+            String sort = uri.getQueryParameter(QUERY_PARAMETER_SORT);
+            String order = uri.getQueryParameter(QUERY_PARAMETER_ORDER);
+            int sortBy = SORT_BY_ID;
+            if (sort != null) {
+                sortBy = -1;
+                for (int i = 0; i < SORT_NAMES.length; i++) {
+                    if (SORT_NAMES[i].equals(sort)) {
+                        sortBy = i;
+                    }
+                }
+                if (sortBy < 0) {
+                    throw new IllegalArgumentException("Unknown sort " + sort + " in " + uri);
+                }
+            }
+            if (order != null && !order.equals(ORDER_DESCENDING) && !order.equals("asc")) {
+                throw new IllegalArgumentException("Unknown order " + order + " in " + uri);
+            }
+            builder.sortBy(sortBy, ORDER_DESCENDING.equals(order));
+            int minPrice = parseNonNegative(uri, QUERY_PARAMETER_MIN_PRICE);
+            int maxPrice = parseNonNegative(uri, QUERY_PARAMETER_MAX_PRICE);
+            if (minPrice >= 0 || maxPrice >= 0) {
+                builder.priceRange(minPrice, maxPrice);
+            }
+            builder.inStockOnly("1".equals(uri.getQueryParameter(QUERY_PARAMETER_IN_STOCK)));
+            String supplier = uri.getQueryParameter(QUERY_PARAMETER_SUPPLIER);
+            if (supplier != null) {
+                builder.supplier(Long.parseLong(supplier));
+            }
+            return builder.build();
+        }
+
+        private static int parseNonNegative(Uri uri, String parameter) {
+            String value = uri.getQueryParameter(parameter);
+            if (value == null) {
+                return -1;
+            }
+            int number = Integer.parseInt(value);
+            if (number < 0) {
+                throw new IllegalArgumentException(parameter + " must be at least 0 in " + uri);
+            }
+            return number;
+        }
+
+        public static final class Builder {
+            private int mSortBy = SORT_BY_ID;
+            private boolean mDescending;
+            private int mMinPrice = -1;
+            private int mMaxPrice = -1;
+            private boolean mInStockOnly;
+            private long mSupplierId = -1;
+
+            /**
+             * @param sortBy one of the SORT_BY_ constants, ties are ordered by _id
+             */
+            public Builder sortBy(int sortBy, boolean descending) {
+                if (sortBy < SORT_BY_ID || sortBy > SORT_BY_QUANTITY) {
+                    throw new IllegalArgumentException("Unknown sort " + sortBy);
+                }
+                mSortBy = sortBy;
+                mDescending = descending;
+                return this;
+            }
+
+            /**
+             * Only products with a price from minPrice to maxPrice, inclusive. Pass -1 to
+             * leave a side open.
+             */
+            public Builder priceRange(int minPrice, int maxPrice) {
+                mMinPrice = minPrice;
+                mMaxPrice = maxPrice;
+                return this;
+            }
+
+            /**
+             * Only products with a quantity above 0
+             */
+            public Builder inStockOnly(boolean inStockOnly) {
+                mInStockOnly = inStockOnly;
+                return this;
+            }
+
+            /**
+             * Only products of the supplier with the given _id
+             */
+            public Builder supplier(long supplierId) {
+                mSupplierId = supplierId;
+                return this;
+            }
+
+            public ProductQuery build() {
+                return new ProductQuery(this);
+            }
+        }
+    }
+
+    /**
+     * Suppliers, each stored once and referenced by the products they stock
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        //name of the table
+        public static final String TABLE_NAME = "suppliers";
+        //unique name of the supplier. type: TEXT
         public static final String COLUMN_SUPPLIER_NAME = "Supplier_Name";
-        // phone of the supplier type: INTEGER
-        public static final String COLUMN_SUPPLIER_PHOHE = "Supplier_Phone_Number";
+        //phone of the supplier as entered, e.g. "+1 (555) 010-0100". type: TEXT
+        public static final String COLUMN_SUPPLIER_PHONE = "Supplier_Phone_Number";
+
+        /**
+         * Builds the uri listing the products of one supplier, e.g. suppliers/3/products.
+         * Accepts the same paging parameters as {@link InventoryEntry#CONTENT_URI}.
+         */
+        public static Uri buildProductsUri(long supplierId) {
+            return ContentUris.withAppendedId(CONTENT_URI, supplierId).buildUpon()
+                    .appendPath(PATH_PRODUCTS)
+                    .build();
+        }
+    }
+
+    /**
+     * Append-only ledger of quantity changes. Every change of a quantity adds a movement in the
+     * same transaction, so the quantity of a product always equals the sum of its movements
+     * and daily summaries. Movements of deleted products are kept.
+     * <p>
+     * Movements older than {@link #RETENTION_DAYS} are rolled up into one summary per product,
+     * day and reason by calling {@link #METHOD_COMPACT} on the provider.
+     */
+    public static final class MovementEntry implements BaseColumns {
+
+        /**
+         * The movements, oldest first. Inserting a movement changes the quantity of its product
+         * by its delta, or returns null if that would make the quantity negative.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_MOVEMENTS);
+
+        /**
+         * The daily summaries of compacted movements, oldest first
+         */
+        public static final Uri CONTENT_DAYS_URI = Uri.withAppendedPath(CONTENT_URI, PATH_DAYS);
+
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_MOVEMENTS;
+
+        public static final String CONTENT_DAYS_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_MOVEMENTS + "/" + PATH_DAYS;
+
+        //name of the ledger table
+        public static final String TABLE_NAME = "stock_movements";
+        //name of the table of daily summaries
+        public static final String DAYS_TABLE_NAME = "stock_movement_days";
+
+        //_id of the product whose quantity changed. type: INTEGER
+        public static final String COLUMN_PRODUCT_ID = "Product_Id";
+        //signed change of the quantity, or sum of the changes of a summary. type: INTEGER
+        public static final String COLUMN_DELTA = "Delta";
+        //time of the change in milliseconds since the epoch, movements only. type: INTEGER
+        public static final String COLUMN_TIMESTAMP = "Timestamp";
+        //one of the REASON_ constants. type: INTEGER
+        public static final String COLUMN_REASON = "Reason";
+        //UTC day of a summary in days since the epoch, summaries only. type: INTEGER
+        public static final String COLUMN_DAY = "Day";
+        //number of movements rolled into a summary, summaries only. type: INTEGER
+        public static final String COLUMN_MOVEMENT_COUNT = "Movement_Count";
+
+        //products sold
+        public static final int REASON_SALE = 1;
+        //products received, including the quantity a new product starts with
+        public static final int REASON_RESTOCK = 2;
+        //quantity set by hand in the editor
+        public static final int REASON_CORRECTION = 3;
+
+        /**
+         * Days for which every single movement is kept
+         */
+        public static final int RETENTION_DAYS = 30;
+
+        /**
+         * Provider method that rolls movements older than the long extra {@link #EXTRA_BEFORE},
+         * by default the start of the UTC day {@link #RETENTION_DAYS} ago, into daily summaries.
+         * The result holds the number of movements rolled up in {@link #EXTRA_COUNT}.
+         */
+        public static final String METHOD_COMPACT = "compact_movements";
+        public static final String EXTRA_BEFORE = "before";
+        public static final String EXTRA_COUNT = "count";
+    }
+
+    /**
+     * Checkout of a whole order. A bulk insert on {@link #CONTENT_URI} takes one ContentValues
+     * per line, naming the product by {@link #COLUMN_PRODUCT_ID} or {@link #COLUMN_SKU}. Every
+     * line is checked and sold in one transaction, recorded as a sale in the stock movements:
+     * either the whole order is sold or, if a product is unknown or short, none of it.
+     * Observers hear about the order once.
+     */
+    public static final class SaleEntry {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SALES);
+
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SALES;
+
+        //_id of the product of the line. type: INTEGER
+        public static final String COLUMN_PRODUCT_ID = MovementEntry.COLUMN_PRODUCT_ID;
+        //sku of the product of the line, instead of its _id. type: TEXT
+        public static final String COLUMN_SKU = InventoryEntry.COLUMN_SKU;
+        //units sold, at least 1. type: INTEGER
+        public static final String COLUMN_QUANTITY = InventoryEntry.COLUMN_QUANTITY;
+
+        /**
+         * Returned by a bulk insert of an order with a product that does not exist or has
+         * fewer units than the order takes
+         */
+        public static final int SALE_REJECTED = -1;
+
+        /**
+         * Returned by a bulk insert of an order with a sku that no product has
+         */
+        public static final int SALE_UNKNOWN_SKU = -2;
+    }
+
+    /**
+     * Bulk read of the catalogue for other apps, e.g. a back office copying every product. They
+     * need {@link InventoryContract#PERMISSION_ACCESS}, like for every other use of the provider.
+     * Instead of cursor rows, each call of {@link #METHOD_READ_COLUMNS} returns a chunk of
+     * products as packed arrays, read with {@code ProductColumns.from(result)}:
+     * <ul>
+     * <li>{@link #EXTRA_IDS} holds the _ids as a long[], in ascending order</li>
+     * <li>every integer column, e.g. {@link InventoryEntry#COLUMN_PRICE}, is an int[] under
+     * its name</li>
+     * <li>every text column, e.g. {@link InventoryEntry#COLUMN_SUPPLIER_NAME}, is an int[] of
+     * indexes into the String[] {@link #EXTRA_STRINGS}, -1 for null</li>
+     * </ul>
+     * A chunk too large for a Binder transaction comes as the same arrays in a file descriptor
+     * under {@link #EXTRA_FILE} instead. Pass {@link #EXTRA_NEXT} of a result as
+     * {@link #EXTRA_AFTER} of the next call until a result has none.
+     */
+    public static final class ColumnsEntry {
+
+        /**
+         * Provider method returning the next chunk of products. Extras: the columns to read
+         * as a String[] in {@link #EXTRA_COLUMNS}, by default all, the continuation token
+         * in {@link #EXTRA_AFTER} and the most products to return in {@link #EXTRA_LIMIT}.
+         */
+        public static final String METHOD_READ_COLUMNS = "read_columns";
+        public static final String EXTRA_COLUMNS = "columns";
+        public static final String EXTRA_AFTER = "after";
+        public static final String EXTRA_LIMIT = "limit";
+        public static final String EXTRA_IDS = "ids";
+        public static final String EXTRA_STRINGS = "strings";
+        public static final String EXTRA_FILE = "file";
+        public static final String EXTRA_NEXT = "next";
+
+        //products per chunk unless the call asks for another limit
+        public static final int DEFAULT_LIMIT = 5000;
+        public static final int MAX_LIMIT = 50000;
+    }
+
+    /**
+     * Bookkeeping of the product sync, written by triggers on every local change so a sync
+     * only sends the rows changed since the last one. Deleted products leave a tombstone
+     * until the server has seen the delete.
+     * <p>
+     * A sync runs through {@link #METHOD_SYNC} on the provider.
+     */
+    public static final class SyncEntry implements BaseColumns {
+
+        //deleted products not yet pushed, by sync id
+        public static final String TOMBSTONE_TABLE_NAME = "product_tombstones";
+        //one row per local change waiting to be pushed, oldest first
+        public static final String OUTBOX_TABLE_NAME = "sync_outbox";
+        //single row table with the sync state, its _id is always 1
+        public static final String STATE_TABLE_NAME = "sync_state";
+
+        //order of the changes in the outbox. type: INTEGER
+        public static final String COLUMN_SEQUENCE = "Seq";
+        //version of the product before the change, 0 for a new product. type: INTEGER
+        public static final String COLUMN_BASE_VERSION = "Base_Version";
+        //quantity of the product before the change, what a merge adds the local sales to. type: INTEGER
+        public static final String COLUMN_BASE_QUANTITY = "Base_Quantity";
+        //1 while a sync writes the changes of the server, which the triggers leave alone. type: INTEGER
+        public static final String COLUMN_APPLYING = "Applying";
+        //position in the change feed of the server up to which changes were pulled. type: INTEGER
+        public static final String COLUMN_PULL_CURSOR = "Pull_Cursor";
+
+        /**
+         * Provider method that pushes the local changes to the sync server at the url in arg
+         * and pulls the changes of the other devices. A product changed on both sides keeps
+         * the newer name, price, supplier and sku, and adds up the quantity changes of both.
+         * The result holds the numbers of rows in {@link #EXTRA_PUSHED}, {@link #EXTRA_PULLED}
+         * and {@link #EXTRA_CONFLICTS}, or the reason it failed in {@link #EXTRA_ERROR}.
+         */
+        public static final String METHOD_SYNC = "sync";
+        public static final String EXTRA_PUSHED = "pushed";
+        public static final String EXTRA_PULLED = "pulled";
+        public static final String EXTRA_CONFLICTS = "conflicts";
+        public static final String EXTRA_ERROR = "error";
+    }
+
+    /**
+     * Totals over the products table, kept up to date by triggers on every write so reading
+     * them never scans the products.
+     */
+    public static final class StatsEntry implements BaseColumns {
+
+        /**
+         * One row with the totals of all products, e.g. for a dashboard
+         */
+        public static final Uri CONTENT_STATS_URI =
+                Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_STATS);
+
+        /**
+         * One row of totals per supplier, ordered by supplier name
+         */
+        public static final Uri CONTENT_BY_SUPPLIER_URI =
+                Uri.withAppendedPath(InventoryEntry.CONTENT_URI, PATH_BY_SUPPLIER);
+
+        public static final String CONTENT_STATS_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_PRODUCTS + "/" + PATH_STATS;
+
+        public static final String CONTENT_BY_SUPPLIER_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_PRODUCTS + "/" + PATH_BY_SUPPLIER;
+
+        //single row table behind the stats uri, its _id is always 1
+        public static final String TABLE_NAME = "inventory_stats";
+        //totals of every supplier, its _id is the _id of the supplier
+        public static final String SUPPLIER_TABLE_NAME = "supplier_stats";
+        //supplier totals joined with the supplier names, behind the by_supplier uri
+        public static final String SUPPLIER_VIEW_NAME = "supplier_stats_view";
+
+        //supplier of the row, by_supplier only. type: TEXT
+        public static final String COLUMN_SUPPLIER_NAME = InventoryEntry.COLUMN_SUPPLIER_NAME;
+        //number of products. type: INTEGER
+        public static final String COLUMN_PRODUCT_COUNT = "Product_Count";
+        //sum of the quantities. type: INTEGER
+        public static final String COLUMN_TOTAL_QUANTITY = "Total_Quantity";
+        //sum of price times quantity. type: INTEGER
+        public static final String COLUMN_STOCK_VALUE = "Stock_Value";
+        //number of products with a quantity below the threshold. type: INTEGER
+        public static final String COLUMN_LOW_STOCK_COUNT = "Low_Stock_Count";
+
+        /**
+         * Quantity below which a product counts as low on stock. The triggers keep the count
+         * for this value; the stats uri counts other thresholds on the quantity index.
+         */
+        public static final int LOW_STOCK_THRESHOLD = 5;
+
+        /**
+         * Builds the stats uri counting products with a quantity below threshold as low on stock
+         */
+        public static Uri buildStatsUri(int threshold) {
+            return CONTENT_STATS_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_THRESHOLD, Integer.toString(threshold))
+                    .build();
+        }
     }
 }
@@ -0,0 +1,204 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams the products table to and from CSV through {@link InventoryProvider}.
+ * <p>
+ * Export reads one page of rows at a time and import sends rows to
+ * {@link ContentResolver#bulkInsert} in batches, so memory stays the same whatever the
+ * size of the file. The first row holds the column names of {@link #COLUMNS}; _id is not
+ * written because ids only mean something inside one database.
+ * <p>
+ * Both directions block, so call them off the main thread.
+ */
+public final class InventoryCsv {
+
+    public interface Listener {
+        /**
+         * Called after every page or batch with the number of rows handled so far
+         */
+        void onProgress(long rows);
+
+        /**
+         * A row of an import could not be used and was skipped
+         */
+        void onRowRejected(long lineNumber, String reason);
+    }
+
+    //columns written by export and expected by import, in this order on export
+    public static final String[] COLUMNS = {
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRICE,
+            InventoryEntry.COLUMN_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_PHOHE
+    };
+
+    //rows per page read on export and per transaction on import
+    private static final int BATCH_SIZE = 500;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private InventoryCsv() {
+    }
+
+    /**
+     * Writes all products to out, ordered by _id. Does not close out.
+     *
+     * @return the number of products written
+     */
+    public static long exportProducts(ContentResolver contentResolver, OutputStream out,
+                                      Listener listener) throws IOException {
+        CsvWriter writer = new CsvWriter(new BufferedWriter(new OutputStreamWriter(out, UTF_8)));
+        for (String column : COLUMNS) {
+            writer.writeField(column);
+        }
+        writer.endRow();
+
+        String[] projection = new String[COLUMNS.length + 1];
+        projection[0] = InventoryEntry._ID;
+        System.arraycopy(COLUMNS, 0, projection, 1, COLUMNS.length);
+
+        long rows = 0;
+        long afterId = 0;
+        while (true) {
+            Cursor cursor = contentResolver.query(InventoryEntry.buildPageUri(afterId, BATCH_SIZE),
+                    projection, null, null, null);
+            if (cursor == null) {
+                throw new IOException("Products could not be read");
+            }
+            int pageRows;
+            try {
+                pageRows = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    afterId = cursor.getLong(0);
+                    writer.writeField(cursor.getString(1));
+                    writer.writeField(cursor.getLong(2));
+                    writer.writeField(cursor.getLong(3));
+                    writer.writeField(cursor.getString(4));
+                    //no phone stays an empty field instead of 0
+                    writer.writeField(cursor.isNull(5) ? null : cursor.getString(5));
+                    writer.endRow();
+                }
+            } finally {
+                cursor.close();
+            }
+            rows += pageRows;
+            if (listener != null) {
+                listener.onProgress(rows);
+            }
+            if (pageRows < BATCH_SIZE) {
+                break;
+            }
+        }
+        writer.flush();
+        return rows;
+    }
+
+    /**
+     * Adds the products read from in. Rows that cannot be used are reported to the listener
+     * and skipped, the others are inserted in batches. Columns are matched by the names in
+     * the first row, so their order does not matter. Does not close in.
+     *
+     * @return the number of products inserted
+     * @throws CsvFormatException if the file is not CSV or lacks a required column
+     */
+    public static long importProducts(ContentResolver contentResolver, InputStream in,
+                                      Listener listener) throws IOException {
+        CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(in, UTF_8)));
+        List<String> fields = new ArrayList<>();
+        if (!reader.readRow(fields)) {
+            return 0;
+        }
+        //position of every column of COLUMNS in the file, or -1
+        int[] positions = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            positions[i] = indexOfIgnoreCase(fields, COLUMNS[i]);
+        }
+        if (positions[0] < 0 || positions[3] < 0) {
+            throw new CsvFormatException(reader.getLineNumber(), "header needs the columns "
+                    + COLUMNS[0] + " and " + COLUMNS[3] + ", found " + fields);
+        }
+
+        ContentValues[] batch = new ContentValues[BATCH_SIZE];
+        int batchSize = 0;
+        long inserted = 0;
+        while (reader.readRow(fields)) {
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                //blank line
+                continue;
+            }
+            ContentValues values = new ContentValues();
+            String reason = parseRow(fields, positions, values);
+            if (reason != null) {
+                if (listener != null) {
+                    listener.onRowRejected(reader.getLineNumber(), reason);
+                }
+                continue;
+            }
+            batch[batchSize++] = values;
+            if (batchSize == BATCH_SIZE) {
+                inserted += contentResolver.bulkInsert(InventoryEntry.CONTENT_URI, batch);
+                batchSize = 0;
+                if (listener != null) {
+                    listener.onProgress(inserted);
+                }
+            }
+        }
+        if (batchSize > 0) {
+            inserted += contentResolver.bulkInsert(InventoryEntry.CONTENT_URI,
+                    Arrays.copyOf(batch, batchSize));
+            if (listener != null) {
+                listener.onProgress(inserted);
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Fills values from one row.
+     *
+     * @return why the row cannot be used, or null if it can
+     */
+    private static String parseRow(List<String> fields, int[] positions, ContentValues values) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            String field = field(fields, positions[i]);
+            //empty fields take the defaults of the table
+            if (!field.isEmpty()) {
+                values.put(COLUMNS[i], field);
+            }
+        }
+        int error = ProductValidator.validateInsert(values);
+        return error == ProductValidator.VALID ? null : ProductValidator.describe(error);
+    }
+
+    private static String field(List<String> fields, int position) {
+        return position < 0 || position >= fields.size() ? "" : fields.get(position).trim();
+    }
+
+    private static int indexOfIgnoreCase(List<String> fields, String name) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).trim().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
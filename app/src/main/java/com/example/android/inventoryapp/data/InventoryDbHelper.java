@@ -1,21 +1,139 @@
 package com.example.android.inventoryapp.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
 
 public class InventoryDbHelper extends SQLiteOpenHelper {
-    public static final int DATABASE_VERSION = 1;
+    public static final int DATABASE_VERSION = 11;
     public static final String DATABASE_NAME = "inventory.db";
 
+    /**
+     * Journaling, durability and cache settings applied whenever the database is opened.
+     */
+    public static final class StorageMode {
+
+        /**
+         * Write-ahead log so list queries keep reading while a sale or import is writing.
+         * NORMAL sync is durable across app crashes and only loses the last commits on power loss.
+         */
+        public static final StorageMode WRITE_AHEAD_LOG =
+                new StorageMode(true, "NORMAL", 4096, 2048, 1000);
+
+        /**
+         * The SQLite default rollback journal, where a writer blocks all readers
+         */
+        public static final StorageMode ROLLBACK_JOURNAL =
+                new StorageMode(false, "FULL", 4096, 2048, 0);
+
+        final boolean writeAheadLogging;
+        final String synchronous;
+        final int pageSize;
+        final int cacheSizeKib;
+        final int autoCheckpointPages;
+
+        /**
+         * @param writeAheadLogging   use the write-ahead log instead of the rollback journal
+         * @param synchronous         OFF, NORMAL, FULL or EXTRA
+         * @param pageSize            page size in bytes, only effective before the first table exists
+         * @param cacheSizeKib        page cache of the writing connection in KiB
+         * @param autoCheckpointPages WAL size in pages that triggers a checkpoint, 0 to only
+         *                            checkpoint through {@link #checkpoint()}
+         */
+        public StorageMode(boolean writeAheadLogging, String synchronous, int pageSize,
+                           int cacheSizeKib, int autoCheckpointPages) {
+            this.writeAheadLogging = writeAheadLogging;
+            this.synchronous = synchronous;
+            this.pageSize = pageSize;
+            this.cacheSizeKib = cacheSizeKib;
+            this.autoCheckpointPages = autoCheckpointPages;
+        }
+    }
+
+    private final StorageMode mStorageMode;
+
     public InventoryDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, StorageMode.WRITE_AHEAD_LOG);
+    }
+
+    public InventoryDbHelper(Context context, String name, StorageMode storageMode) {
+        super(context, name, null, DATABASE_VERSION);
+        mStorageMode = storageMode;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        //called before onCreate, so the page size still applies to a new database
+        applyStorageMode(db);
+        //products may only point to suppliers that exist
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        //onConfigure only exists from Jelly Bean on
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            applyStorageMode(db);
+            pragma(db, "foreign_keys = ON");
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        createVersion1(db);
+        //bring the fresh table up to date through the same steps an upgrade runs
+        InventoryMigrations.migrate(db, 1, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        InventoryMigrations.migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Copies the write-ahead log back into the database file without blocking readers.
+     * Does nothing in rollback journal mode.
+     */
+    public void checkpoint() {
+        if (mStorageMode.writeAheadLogging) {
+            pragma(getWritableDatabase(), "wal_checkpoint(PASSIVE)");
+        }
+    }
+
+    private void applyStorageMode(SQLiteDatabase db) {
+        //page size has to be set before the journal mode switches to WAL
+        pragma(db, "page_size = " + mStorageMode.pageSize);
+        if (mStorageMode.writeAheadLogging) {
+            db.enableWriteAheadLogging();
+            pragma(db, "wal_autocheckpoint = " + mStorageMode.autoCheckpointPages);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            db.disableWriteAheadLogging();
+        }
+        pragma(db, "synchronous = " + mStorageMode.synchronous);
+        //a negative cache size is in KiB instead of pages
+        pragma(db, "cache_size = -" + mStorageMode.cacheSizeKib);
+    }
+
+    //some pragmas return a row, which execSQL refuses, so always go through rawQuery
+    private static void pragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Creates the products table as it was in version 1 of the database
+     */
+    static void createVersion1(SQLiteDatabase db) {
         String SQL_CREATE_PETS_TABLE = "CREATE TABLE " + InventoryEntry.TABLE_NAME + "("
                 + InventoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + InventoryEntry.COLUMN_PRODUCT_NAME + " TEXT  NOT NULL, "
@@ -26,9 +144,4 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
 
         db.execSQL(SQL_CREATE_PETS_TABLE);
     }
-
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        //still version 1. no need to do anything
-    }
 }
@@ -0,0 +1,685 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.MovementEntry;
+import com.example.android.inventoryapp.data.InventoryContract.StatsEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SupplierEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SyncEntry;
+
+/**
+ * Ordered schema migrations for {@link InventoryDbHelper}. Every step moves the database
+ * from the previous version to {@link Migration#toVersion} and fresh installs run the same
+ * steps on top of the version 1 table, so both paths end with an identical schema.
+ */
+final class InventoryMigrations {
+
+    private InventoryMigrations() {
+    }
+
+    /**
+     * One schema step. Steps run inside the transaction opened by SQLiteOpenHelper.
+     */
+    abstract static class Migration {
+        final int toVersion;
+
+        Migration(int toVersion) {
+            this.toVersion = toVersion;
+        }
+
+        abstract void migrate(SQLiteDatabase db);
+    }
+
+    //covering index for the main list projection up to version 6 (_id is the rowid and comes for free)
+    static final String INDEX_PRODUCTS_LIST = "products_list_index";
+    //low stock filter and sort by quantity; covering except in versions 7 to 10
+    static final String INDEX_PRODUCTS_QUANTITY = "products_quantity_index";
+    //sort by name from version 7, covering from version 11
+    static final String INDEX_PRODUCTS_NAME = "products_name_index";
+    //price ranges and sort by price from version 7, covering from version 11
+    static final String INDEX_PRODUCTS_PRICE = "products_price_index";
+    //index for supplier filters, covering from version 11
+    static final String INDEX_PRODUCTS_SUPPLIER = "products_supplier_index";
+    //unique sku lookups from version 8
+    static final String INDEX_PRODUCTS_SKU = "products_sku_index";
+    //products by sync id from version 9
+    static final String INDEX_PRODUCTS_SYNC_ID = "products_sync_id_index";
+    //pending changes of one product from version 9
+    static final String INDEX_OUTBOX_SYNC_ID = "sync_outbox_sync_id_index";
+
+    /**
+     * Version 2: secondary indexes on name, quantity and supplier
+     */
+    static final Migration MIGRATION_1_2 = new Migration(2) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_PRODUCTS_LIST + " ON "
+                    + InventoryEntry.TABLE_NAME + "("
+                    + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                    + InventoryEntry.COLUMN_PRICE + ", "
+                    + InventoryEntry.COLUMN_QUANTITY + ");");
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_PRODUCTS_QUANTITY + " ON "
+                    + InventoryEntry.TABLE_NAME + "("
+                    + InventoryEntry.COLUMN_QUANTITY + ", "
+                    + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                    + InventoryEntry.COLUMN_PRICE + ");");
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_PRODUCTS_SUPPLIER + " ON "
+                    + InventoryEntry.TABLE_NAME + "("
+                    + InventoryEntry.COLUMN_SUPPLIER_NAME + ");");
+        }
+    };
+
+    static final String TRIGGER_FTS_INSERT = "products_fts_after_insert";
+    static final String TRIGGER_FTS_BEFORE_UPDATE = "products_fts_before_update";
+    static final String TRIGGER_FTS_AFTER_UPDATE = "products_fts_after_update";
+    static final String TRIGGER_FTS_DELETE = "products_fts_before_delete";
+
+    /**
+     * Version 3: FTS4 index over product and supplier names, filled from the existing rows
+     * and kept in sync by triggers. The update triggers only fire for the indexed columns,
+     * so selling stock does not touch the index.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(3) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            String fts = InventoryEntry.FTS_TABLE_NAME;
+            String names = InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME;
+            String newValues = "new." + InventoryEntry.COLUMN_PRODUCT_NAME
+                    + ", new." + InventoryEntry.COLUMN_SUPPLIER_NAME;
+
+            db.execSQL("CREATE VIRTUAL TABLE " + fts + " USING fts4(" + names + ");");
+            db.execSQL("INSERT INTO " + fts + "(docid, " + names + ") SELECT "
+                    + InventoryEntry._ID + ", " + names + " FROM " + InventoryEntry.TABLE_NAME + ";");
+
+            db.execSQL("CREATE TRIGGER " + TRIGGER_FTS_INSERT + " AFTER INSERT ON "
+                    + InventoryEntry.TABLE_NAME + " BEGIN "
+                    + "INSERT INTO " + fts + "(docid, " + names + ") VALUES (new."
+                    + InventoryEntry._ID + ", " + newValues + "); END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_FTS_BEFORE_UPDATE + " BEFORE UPDATE OF "
+                    + names + " ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                    + "DELETE FROM " + fts + " WHERE docid = old." + InventoryEntry._ID + "; END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_FTS_AFTER_UPDATE + " AFTER UPDATE OF "
+                    + names + " ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                    + "INSERT INTO " + fts + "(docid, " + names + ") VALUES (new."
+                    + InventoryEntry._ID + ", " + newValues + "); END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_FTS_DELETE + " BEFORE DELETE ON "
+                    + InventoryEntry.TABLE_NAME + " BEGIN "
+                    + "DELETE FROM " + fts + " WHERE docid = old." + InventoryEntry._ID + "; END;");
+        }
+    };
+
+    static final String TRIGGER_STATS_INSERT = "products_stats_after_insert";
+    static final String TRIGGER_STATS_UPDATE = "products_stats_after_update";
+    static final String TRIGGER_STATS_DELETE = "products_stats_after_delete";
+
+    /**
+     * Version 4: running totals of all products and per supplier, filled from the existing
+     * rows and kept up to date by triggers. The update trigger only fires for the columns the
+     * totals use and adds the new row before taking away the old one, so a supplier keeps its
+     * row while it has products.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(4) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            String totals = StatsEntry.COLUMN_PRODUCT_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                    + StatsEntry.COLUMN_TOTAL_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                    + StatsEntry.COLUMN_STOCK_VALUE + " INTEGER NOT NULL DEFAULT 0, "
+                    + StatsEntry.COLUMN_LOW_STOCK_COUNT + " INTEGER NOT NULL DEFAULT 0";
+            String totalColumns = StatsEntry.COLUMN_PRODUCT_COUNT + ", "
+                    + StatsEntry.COLUMN_TOTAL_QUANTITY + ", "
+                    + StatsEntry.COLUMN_STOCK_VALUE + ", "
+                    + StatsEntry.COLUMN_LOW_STOCK_COUNT;
+            String totalsOfProducts = "COUNT(*), IFNULL(SUM(" + quantity("") + "), 0), IFNULL(SUM("
+                    + value("") + "), 0), IFNULL(SUM(" + lowStock("") + "), 0)";
+
+            db.execSQL("CREATE TABLE " + StatsEntry.TABLE_NAME + " ("
+                    + StatsEntry._ID + " INTEGER PRIMARY KEY, " + totals + ");");
+            db.execSQL("CREATE TABLE " + StatsEntry.SUPPLIER_TABLE_NAME + " ("
+                    + StatsEntry._ID + " INTEGER PRIMARY KEY, "
+                    + StatsEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL UNIQUE, " + totals + ");");
+
+            db.execSQL("INSERT INTO " + StatsEntry.TABLE_NAME + " (" + StatsEntry._ID + ", "
+                    + totalColumns + ") SELECT 1, " + totalsOfProducts
+                    + " FROM " + InventoryEntry.TABLE_NAME + ";");
+            db.execSQL("INSERT INTO " + StatsEntry.SUPPLIER_TABLE_NAME + " ("
+                    + StatsEntry.COLUMN_SUPPLIER_NAME + ", " + totalColumns + ") SELECT "
+                    + InventoryEntry.COLUMN_SUPPLIER_NAME + ", " + totalsOfProducts
+                    + " FROM " + InventoryEntry.TABLE_NAME
+                    + " GROUP BY " + InventoryEntry.COLUMN_SUPPLIER_NAME + ";");
+
+            db.execSQL("CREATE TRIGGER " + TRIGGER_STATS_INSERT + " AFTER INSERT ON "
+                    + InventoryEntry.TABLE_NAME + " BEGIN "
+                    + addStats("new.", "+", BY_NAME) + " END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_STATS_UPDATE + " AFTER UPDATE OF "
+                    + InventoryEntry.COLUMN_PRICE + ", " + InventoryEntry.COLUMN_QUANTITY + ", "
+                    + InventoryEntry.COLUMN_SUPPLIER_NAME + " ON " + InventoryEntry.TABLE_NAME + " BEGIN "
+                    + addStats("new.", "+", BY_NAME) + addStats("old.", "-", BY_NAME) + " END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_STATS_DELETE + " AFTER DELETE ON "
+                    + InventoryEntry.TABLE_NAME + " BEGIN "
+                    + addStats("old.", "-", BY_NAME) + " END;");
+        }
+    };
+
+    //how supplier_stats finds the supplier of a product: in version 4 by name,
+    //from version 5 on by the _id of the supplier
+    private static final String[] BY_NAME =
+            {StatsEntry.COLUMN_SUPPLIER_NAME, InventoryEntry.COLUMN_SUPPLIER_NAME};
+    private static final String[] BY_ID =
+            {StatsEntry._ID, InventoryEntry.COLUMN_SUPPLIER_ID};
+
+    static final String TRIGGER_FTS_SUPPLIER_RENAME = "suppliers_fts_after_rename";
+
+    /**
+     * Version 5: suppliers move to their own table and products reference them by _id.
+     * Each supplier name is stored once, with the phone of its newest product as text.
+     * Products are copied to a new table with the same _ids, so the search index and the
+     * totals stay valid; their triggers, the supplier totals and the indexes are rebuilt on
+     * the new table. products_view joins the supplier back in for reading.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(5) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            String products = InventoryEntry.TABLE_NAME;
+            String suppliers = SupplierEntry.TABLE_NAME;
+            String newProducts = products + "_new";
+
+            db.execSQL("CREATE TABLE " + suppliers + " ("
+                    + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL UNIQUE, "
+                    + SupplierEntry.COLUMN_SUPPLIER_PHONE + " TEXT);");
+            db.execSQL("INSERT INTO " + suppliers + " (" + SupplierEntry.COLUMN_SUPPLIER_NAME + ", "
+                    + SupplierEntry.COLUMN_SUPPLIER_PHONE + ") SELECT p." + InventoryEntry.COLUMN_SUPPLIER_NAME
+                    + ", (SELECT CAST(latest." + InventoryEntry.COLUMN_SUPPLIER_PHOHE + " AS TEXT) FROM "
+                    + products + " latest WHERE latest." + InventoryEntry.COLUMN_SUPPLIER_NAME
+                    + " = p." + InventoryEntry.COLUMN_SUPPLIER_NAME + " AND latest."
+                    + InventoryEntry.COLUMN_SUPPLIER_PHOHE + " IS NOT NULL ORDER BY latest."
+                    + InventoryEntry._ID + " DESC LIMIT 1) FROM " + products + " p GROUP BY p."
+                    + InventoryEntry.COLUMN_SUPPLIER_NAME + " ORDER BY MIN(p." + InventoryEntry._ID + ");");
+
+            db.execSQL("CREATE TABLE " + newProducts + " ("
+                    + InventoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + InventoryEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                    + InventoryEntry.COLUMN_PRICE + " INTEGER DEFAULT 0, "
+                    + InventoryEntry.COLUMN_QUANTITY + " INTEGER DEFAULT 0, "
+                    + InventoryEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                    + suppliers + "(" + SupplierEntry._ID + "));");
+            db.execSQL("INSERT INTO " + newProducts + " (" + InventoryEntry._ID + ", "
+                    + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRICE + ", "
+                    + InventoryEntry.COLUMN_QUANTITY + ", " + InventoryEntry.COLUMN_SUPPLIER_ID + ") SELECT p."
+                    + InventoryEntry._ID + ", p." + InventoryEntry.COLUMN_PRODUCT_NAME + ", p."
+                    + InventoryEntry.COLUMN_PRICE + ", p." + InventoryEntry.COLUMN_QUANTITY + ", s."
+                    + SupplierEntry._ID + " FROM " + products + " p JOIN " + suppliers + " s ON s."
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " = p." + InventoryEntry.COLUMN_SUPPLIER_NAME + ";");
+            //keep the autoincrement counter, so ids of deleted products are not handed out again
+            db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + newProducts + "', seq"
+                    + " FROM sqlite_sequence WHERE name = '" + products + "' AND NOT EXISTS"
+                    + " (SELECT 1 FROM sqlite_sequence WHERE name = '" + newProducts + "');");
+            db.execSQL("UPDATE sqlite_sequence SET seq = (SELECT MAX(seq) FROM sqlite_sequence"
+                    + " WHERE name IN ('" + products + "', '" + newProducts + "'))"
+                    + " WHERE name = '" + newProducts + "';");
+            //dropping the table drops its indexes and triggers without firing them
+            db.execSQL("DROP TABLE " + products + ";");
+            db.execSQL("ALTER TABLE " + newProducts + " RENAME TO " + products + ";");
+
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_LIST + " ON " + products + "("
+                    + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                    + InventoryEntry.COLUMN_PRICE + ", "
+                    + InventoryEntry.COLUMN_QUANTITY + ");");
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_QUANTITY + " ON " + products + "("
+                    + InventoryEntry.COLUMN_QUANTITY + ", "
+                    + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                    + InventoryEntry.COLUMN_PRICE + ");");
+            //supplier filters, and the foreign key check when a supplier is deleted
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_SUPPLIER + " ON " + products + "("
+                    + InventoryEntry.COLUMN_SUPPLIER_ID + ");");
+
+            createProductsView(db, InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                    + InventoryEntry.COLUMN_PRICE + ", "
+                    + InventoryEntry.COLUMN_QUANTITY + ", "
+                    + InventoryEntry.COLUMN_SUPPLIER_ID);
+
+            //the search index keeps the supplier name of every product
+            String fts = InventoryEntry.FTS_TABLE_NAME;
+            String names = InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME;
+            String newValues = "new." + InventoryEntry.COLUMN_PRODUCT_NAME + ", (SELECT "
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM " + suppliers + " WHERE "
+                    + SupplierEntry._ID + " = new." + InventoryEntry.COLUMN_SUPPLIER_ID + ")";
+            String indexed = InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_ID;
+            db.execSQL("CREATE TRIGGER " + TRIGGER_FTS_INSERT + " AFTER INSERT ON "
+                    + products + " BEGIN "
+                    + "INSERT INTO " + fts + "(docid, " + names + ") VALUES (new."
+                    + InventoryEntry._ID + ", " + newValues + "); END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_FTS_BEFORE_UPDATE + " BEFORE UPDATE OF "
+                    + indexed + " ON " + products + " BEGIN "
+                    + "DELETE FROM " + fts + " WHERE docid = old." + InventoryEntry._ID + "; END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_FTS_AFTER_UPDATE + " AFTER UPDATE OF "
+                    + indexed + " ON " + products + " BEGIN "
+                    + "INSERT INTO " + fts + "(docid, " + names + ") VALUES (new."
+                    + InventoryEntry._ID + ", " + newValues + "); END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_FTS_DELETE + " BEFORE DELETE ON "
+                    + products + " BEGIN "
+                    + "DELETE FROM " + fts + " WHERE docid = old." + InventoryEntry._ID + "; END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_FTS_SUPPLIER_RENAME + " AFTER UPDATE OF "
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + suppliers + " BEGIN "
+                    + "UPDATE " + fts + " SET " + InventoryEntry.COLUMN_SUPPLIER_NAME + " = new."
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " WHERE docid IN (SELECT "
+                    + InventoryEntry._ID + " FROM " + products + " WHERE "
+                    + InventoryEntry.COLUMN_SUPPLIER_ID + " = new." + SupplierEntry._ID + "); END;");
+
+            //supplier totals are kept by supplier _id, so a rename does not touch them
+            String totals = StatsEntry.COLUMN_PRODUCT_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                    + StatsEntry.COLUMN_TOTAL_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                    + StatsEntry.COLUMN_STOCK_VALUE + " INTEGER NOT NULL DEFAULT 0, "
+                    + StatsEntry.COLUMN_LOW_STOCK_COUNT + " INTEGER NOT NULL DEFAULT 0";
+            String totalColumns = StatsEntry.COLUMN_PRODUCT_COUNT + ", "
+                    + StatsEntry.COLUMN_TOTAL_QUANTITY + ", "
+                    + StatsEntry.COLUMN_STOCK_VALUE + ", "
+                    + StatsEntry.COLUMN_LOW_STOCK_COUNT;
+            db.execSQL("DROP TABLE " + StatsEntry.SUPPLIER_TABLE_NAME + ";");
+            db.execSQL("CREATE TABLE " + StatsEntry.SUPPLIER_TABLE_NAME + " ("
+                    + StatsEntry._ID + " INTEGER PRIMARY KEY REFERENCES " + suppliers + "("
+                    + SupplierEntry._ID + "), " + totals + ");");
+            db.execSQL("INSERT INTO " + StatsEntry.SUPPLIER_TABLE_NAME + " (" + StatsEntry._ID + ", "
+                    + totalColumns + ") SELECT " + InventoryEntry.COLUMN_SUPPLIER_ID + ", COUNT(*), IFNULL(SUM("
+                    + quantity("") + "), 0), IFNULL(SUM(" + value("") + "), 0), IFNULL(SUM("
+                    + lowStock("") + "), 0) FROM " + products
+                    + " GROUP BY " + InventoryEntry.COLUMN_SUPPLIER_ID + ";");
+            db.execSQL("CREATE VIEW " + StatsEntry.SUPPLIER_VIEW_NAME + " AS SELECT "
+                    + suppliers + "." + SupplierEntry._ID + " AS " + StatsEntry._ID + ", "
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + StatsEntry.COLUMN_SUPPLIER_NAME + ", "
+                    + totalColumns + " FROM " + StatsEntry.SUPPLIER_TABLE_NAME + " JOIN " + suppliers
+                    + " ON " + suppliers + "." + SupplierEntry._ID + " = "
+                    + StatsEntry.SUPPLIER_TABLE_NAME + "." + StatsEntry._ID + ";");
+
+            db.execSQL("CREATE TRIGGER " + TRIGGER_STATS_INSERT + " AFTER INSERT ON "
+                    + products + " BEGIN "
+                    + addStats("new.", "+", BY_ID) + " END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_STATS_UPDATE + " AFTER UPDATE OF "
+                    + InventoryEntry.COLUMN_PRICE + ", " + InventoryEntry.COLUMN_QUANTITY + ", "
+                    + InventoryEntry.COLUMN_SUPPLIER_ID + " ON " + products + " BEGIN "
+                    + addStats("new.", "+", BY_ID) + addStats("old.", "-", BY_ID) + " END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_STATS_DELETE + " AFTER DELETE ON "
+                    + products + " BEGIN "
+                    + addStats("old.", "-", BY_ID) + " END;");
+        }
+    };
+
+    /**
+     * Version 6: append-only ledger of stock movements and its daily summaries. Every product
+     * starts with one correction for the quantity it has, so its movements add up to it.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(6) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            //no secondary index, so appending a movement only touches the end of the table
+            db.execSQL("CREATE TABLE " + MovementEntry.TABLE_NAME + " ("
+                    + MovementEntry._ID + " INTEGER PRIMARY KEY, "
+                    + MovementEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                    + MovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                    + MovementEntry.COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                    + MovementEntry.COLUMN_REASON + " INTEGER NOT NULL);");
+            db.execSQL("CREATE TABLE " + MovementEntry.DAYS_TABLE_NAME + " ("
+                    + MovementEntry._ID + " INTEGER PRIMARY KEY, "
+                    + MovementEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                    + MovementEntry.COLUMN_DAY + " INTEGER NOT NULL, "
+                    + MovementEntry.COLUMN_REASON + " INTEGER NOT NULL, "
+                    + MovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                    + MovementEntry.COLUMN_MOVEMENT_COUNT + " INTEGER NOT NULL, "
+                    + "UNIQUE (" + MovementEntry.COLUMN_PRODUCT_ID + ", " + MovementEntry.COLUMN_DAY
+                    + ", " + MovementEntry.COLUMN_REASON + "));");
+            db.execSQL("INSERT INTO " + MovementEntry.TABLE_NAME + " ("
+                    + MovementEntry.COLUMN_PRODUCT_ID + ", " + MovementEntry.COLUMN_DELTA + ", "
+                    + MovementEntry.COLUMN_TIMESTAMP + ", " + MovementEntry.COLUMN_REASON + ") SELECT "
+                    + InventoryEntry._ID + ", " + InventoryEntry.COLUMN_QUANTITY
+                    //the current time in milliseconds
+                    + ", CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER), "
+                    + MovementEntry.REASON_CORRECTION + " FROM " + InventoryEntry.TABLE_NAME
+                    + " WHERE " + InventoryEntry.COLUMN_QUANTITY + " != 0 ORDER BY "
+                    + InventoryEntry._ID + ";");
+        }
+    };
+
+    /**
+     * Version 7: one index per sort column of {@link InventoryContract.ProductQuery}. Each one
+     * holds the column and the rowid, so it also orders ties by _id, which the keyset pages
+     * of a sorted list rely on. Null prices and quantities become 0 so the keys are never null.
+     */
+    static final Migration MIGRATION_6_7 = new Migration(7) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            String products = InventoryEntry.TABLE_NAME;
+            db.execSQL("UPDATE " + products + " SET " + InventoryEntry.COLUMN_PRICE + " = 0 WHERE "
+                    + InventoryEntry.COLUMN_PRICE + " IS NULL;");
+            db.execSQL("UPDATE " + products + " SET " + InventoryEntry.COLUMN_QUANTITY + " = 0 WHERE "
+                    + InventoryEntry.COLUMN_QUANTITY + " IS NULL;");
+
+            //a sale now updates two indexes instead of three wide ones
+            db.execSQL("DROP INDEX IF EXISTS " + INDEX_PRODUCTS_LIST + ";");
+            db.execSQL("DROP INDEX IF EXISTS " + INDEX_PRODUCTS_QUANTITY + ";");
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_NAME + " ON " + products + "("
+                    + InventoryEntry.COLUMN_PRODUCT_NAME + ");");
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_PRICE + " ON " + products + "("
+                    + InventoryEntry.COLUMN_PRICE + ");");
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_QUANTITY + " ON " + products + "("
+                    + InventoryEntry.COLUMN_QUANTITY + ");");
+        }
+    };
+
+    /**
+     * Version 8: an optional sku per product. The unique index answers a lookup by sku with
+     * one seek and refuses a sku that is already taken; products without one keep it null,
+     * which the index does not count as a duplicate. products_view is rebuilt to show it.
+     */
+    static final Migration MIGRATION_7_8 = new Migration(8) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            String products = InventoryEntry.TABLE_NAME;
+            db.execSQL("ALTER TABLE " + products + " ADD COLUMN " + InventoryEntry.COLUMN_SKU + " TEXT;");
+            db.execSQL("CREATE UNIQUE INDEX " + INDEX_PRODUCTS_SKU + " ON " + products + "("
+                    + InventoryEntry.COLUMN_SKU + ");");
+            db.execSQL("DROP VIEW " + InventoryEntry.VIEW_NAME + ";");
+            createProductsView(db, InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                    + InventoryEntry.COLUMN_PRICE + ", "
+                    + InventoryEntry.COLUMN_QUANTITY + ", "
+                    + InventoryEntry.COLUMN_SUPPLIER_ID + ", "
+                    + InventoryEntry.COLUMN_SKU);
+        }
+    };
+
+    static final String TRIGGER_SYNC_INSERT = "products_sync_after_insert";
+    static final String TRIGGER_SYNC_UPDATE = "products_sync_after_update";
+    static final String TRIGGER_SYNC_DELETE = "products_sync_after_delete";
+    static final String TRIGGER_SYNC_SUPPLIER = "suppliers_sync_after_update";
+
+    //the current time in milliseconds
+    private static final String NOW = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    /**
+     * Version 9: bookkeeping for the product sync. Every product gets a random sync id, a
+     * version and the time of its last change. Triggers raise the version of a changed product
+     * and put the change into the outbox with the version and quantity it started from, and a
+     * delete leaves a tombstone. They stand still while a sync writes the changes of the server.
+     * The existing products go into the outbox as new, the first sync pushes all of them.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(9) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            String products = InventoryEntry.TABLE_NAME;
+            String outbox = SyncEntry.OUTBOX_TABLE_NAME;
+            String outboxColumns = " (" + InventoryEntry.COLUMN_SYNC_ID + ", "
+                    + SyncEntry.COLUMN_BASE_VERSION + ", " + SyncEntry.COLUMN_BASE_QUANTITY + ")";
+            String local = " WHEN (SELECT " + SyncEntry.COLUMN_APPLYING + " FROM "
+                    + SyncEntry.STATE_TABLE_NAME + " WHERE " + SyncEntry._ID + " = 1) = 0";
+            String randomId = "lower(hex(randomblob(16)))";
+            String touch = InventoryEntry.COLUMN_VERSION + " = " + InventoryEntry.COLUMN_VERSION
+                    + " + 1, " + InventoryEntry.COLUMN_UPDATED_AT + " = " + NOW;
+
+            db.execSQL("ALTER TABLE " + products + " ADD COLUMN " + InventoryEntry.COLUMN_SYNC_ID + " TEXT;");
+            db.execSQL("ALTER TABLE " + products + " ADD COLUMN " + InventoryEntry.COLUMN_VERSION
+                    + " INTEGER NOT NULL DEFAULT 1;");
+            db.execSQL("ALTER TABLE " + products + " ADD COLUMN " + InventoryEntry.COLUMN_UPDATED_AT
+                    + " INTEGER NOT NULL DEFAULT 0;");
+            db.execSQL("UPDATE " + products + " SET " + InventoryEntry.COLUMN_SYNC_ID + " = "
+                    + randomId + ", " + InventoryEntry.COLUMN_UPDATED_AT + " = " + NOW + ";");
+            db.execSQL("CREATE UNIQUE INDEX " + INDEX_PRODUCTS_SYNC_ID + " ON " + products + "("
+                    + InventoryEntry.COLUMN_SYNC_ID + ");");
+
+            db.execSQL("CREATE TABLE " + SyncEntry.TOMBSTONE_TABLE_NAME + " ("
+                    + InventoryEntry.COLUMN_SYNC_ID + " TEXT PRIMARY KEY, "
+                    + InventoryEntry.COLUMN_VERSION + " INTEGER NOT NULL, "
+                    + InventoryEntry.COLUMN_UPDATED_AT + " INTEGER NOT NULL);");
+            db.execSQL("CREATE TABLE " + outbox + " ("
+                    + SyncEntry.COLUMN_SEQUENCE + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + InventoryEntry.COLUMN_SYNC_ID + " TEXT NOT NULL, "
+                    + SyncEntry.COLUMN_BASE_VERSION + " INTEGER NOT NULL, "
+                    + SyncEntry.COLUMN_BASE_QUANTITY + " INTEGER NOT NULL);");
+            db.execSQL("CREATE INDEX " + INDEX_OUTBOX_SYNC_ID + " ON " + outbox + "("
+                    + InventoryEntry.COLUMN_SYNC_ID + ");");
+            db.execSQL("CREATE TABLE " + SyncEntry.STATE_TABLE_NAME + " ("
+                    + SyncEntry._ID + " INTEGER PRIMARY KEY, "
+                    + SyncEntry.COLUMN_APPLYING + " INTEGER NOT NULL DEFAULT 0, "
+                    + SyncEntry.COLUMN_PULL_CURSOR + " INTEGER NOT NULL DEFAULT 0);");
+            db.execSQL("INSERT INTO " + SyncEntry.STATE_TABLE_NAME + " (" + SyncEntry._ID + ") VALUES (1);");
+            db.execSQL("INSERT INTO " + outbox + outboxColumns + " SELECT "
+                    + InventoryEntry.COLUMN_SYNC_ID + ", 0, 0 FROM " + products
+                    + " ORDER BY " + InventoryEntry._ID + ";");
+
+            //a new product gets its sync id here unless a sync wrote it with the one of the server
+            db.execSQL("CREATE TRIGGER " + TRIGGER_SYNC_INSERT + " AFTER INSERT ON " + products
+                    + local + " BEGIN "
+                    + "UPDATE " + products + " SET " + InventoryEntry.COLUMN_SYNC_ID + " = IFNULL(new."
+                    + InventoryEntry.COLUMN_SYNC_ID + ", " + randomId + "), "
+                    + InventoryEntry.COLUMN_UPDATED_AT + " = " + NOW + " WHERE "
+                    + InventoryEntry._ID + " = new." + InventoryEntry._ID + "; "
+                    + "INSERT INTO " + outbox + outboxColumns + " SELECT "
+                    + InventoryEntry.COLUMN_SYNC_ID + ", 0, 0 FROM " + products + " WHERE "
+                    + InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END;");
+            //only a real change of a synced column counts, the version columns are not in the list
+            String synced = InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRICE
+                    + ", " + InventoryEntry.COLUMN_QUANTITY + ", " + InventoryEntry.COLUMN_SUPPLIER_ID
+                    + ", " + InventoryEntry.COLUMN_SKU;
+            StringBuilder changed = new StringBuilder();
+            for (String column : synced.split(", ")) {
+                changed.append(changed.length() == 0 ? " AND (" : " OR ")
+                        .append("old.").append(column).append(" IS NOT new.").append(column);
+            }
+            db.execSQL("CREATE TRIGGER " + TRIGGER_SYNC_UPDATE + " AFTER UPDATE OF " + synced
+                    + " ON " + products + local + changed + ") BEGIN "
+                    + "INSERT INTO " + outbox + outboxColumns + " VALUES (new."
+                    + InventoryEntry.COLUMN_SYNC_ID + ", old." + InventoryEntry.COLUMN_VERSION
+                    + ", IFNULL(old." + InventoryEntry.COLUMN_QUANTITY + ", 0)); "
+                    + "UPDATE " + products + " SET " + touch + " WHERE "
+                    + InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_SYNC_DELETE + " AFTER DELETE ON " + products
+                    + local + " BEGIN "
+                    + "INSERT OR REPLACE INTO " + SyncEntry.TOMBSTONE_TABLE_NAME + " ("
+                    + InventoryEntry.COLUMN_SYNC_ID + ", " + InventoryEntry.COLUMN_VERSION + ", "
+                    + InventoryEntry.COLUMN_UPDATED_AT + ") VALUES (old." + InventoryEntry.COLUMN_SYNC_ID
+                    + ", old." + InventoryEntry.COLUMN_VERSION + " + 1, " + NOW + "); "
+                    + "INSERT INTO " + outbox + outboxColumns + " VALUES (old."
+                    + InventoryEntry.COLUMN_SYNC_ID + ", old." + InventoryEntry.COLUMN_VERSION
+                    + ", IFNULL(old." + InventoryEntry.COLUMN_QUANTITY + ", 0)); END;");
+            //products carry the name and phone of their supplier to the server
+            db.execSQL("CREATE TRIGGER " + TRIGGER_SYNC_SUPPLIER + " AFTER UPDATE OF "
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_PHONE
+                    + " ON " + SupplierEntry.TABLE_NAME + local + " BEGIN "
+                    + "INSERT INTO " + outbox + outboxColumns + " SELECT "
+                    + InventoryEntry.COLUMN_SYNC_ID + ", " + InventoryEntry.COLUMN_VERSION + ", IFNULL("
+                    + InventoryEntry.COLUMN_QUANTITY + ", 0) FROM " + products + " WHERE "
+                    + InventoryEntry.COLUMN_SUPPLIER_ID + " = new." + SupplierEntry._ID + "; "
+                    + "UPDATE " + products + " SET " + touch + " WHERE "
+                    + InventoryEntry.COLUMN_SUPPLIER_ID + " = new." + SupplierEntry._ID + "; END;");
+
+            db.execSQL("DROP VIEW " + InventoryEntry.VIEW_NAME + ";");
+            createProductsView(db, InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                    + InventoryEntry.COLUMN_PRICE + ", "
+                    + InventoryEntry.COLUMN_QUANTITY + ", "
+                    + InventoryEntry.COLUMN_SUPPLIER_ID + ", "
+                    + InventoryEntry.COLUMN_SKU + ", "
+                    + InventoryEntry.COLUMN_SYNC_ID + ", "
+                    + InventoryEntry.COLUMN_VERSION + ", "
+                    + InventoryEntry.COLUMN_UPDATED_AT);
+        }
+    };
+
+    static final String TRIGGER_LOCAL_VERSION = "products_local_version_after_update";
+    static final String TRIGGER_LOCAL_VERSION_SUPPLIER = "suppliers_local_version_after_update";
+
+    /**
+     * Version 10: a local version per product for the conditional updates of the editors.
+     * The sync version cannot serve, a sync sets it to the number of the server, which may
+     * be lower than or equal to one an editor has already seen. The local version goes up
+     * with every change of what a product shows, including the changes a sync writes, and
+     * nothing else writes it.
+     */
+    static final Migration MIGRATION_9_10 = new Migration(10) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            String products = InventoryEntry.TABLE_NAME;
+            String shown = InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRICE
+                    + ", " + InventoryEntry.COLUMN_QUANTITY + ", " + InventoryEntry.COLUMN_SUPPLIER_ID
+                    + ", " + InventoryEntry.COLUMN_SKU;
+            StringBuilder changed = new StringBuilder();
+            for (String column : shown.split(", ")) {
+                changed.append(changed.length() == 0 ? " WHEN " : " OR ")
+                        .append("old.").append(column).append(" IS NOT new.").append(column);
+            }
+            String raise = InventoryEntry.COLUMN_LOCAL_VERSION + " = "
+                    + InventoryEntry.COLUMN_LOCAL_VERSION + " + 1";
+
+            db.execSQL("ALTER TABLE " + products + " ADD COLUMN " + InventoryEntry.COLUMN_LOCAL_VERSION
+                    + " INTEGER NOT NULL DEFAULT 1;");
+            db.execSQL("CREATE TRIGGER " + TRIGGER_LOCAL_VERSION + " AFTER UPDATE OF " + shown
+                    + " ON " + products + changed + " BEGIN "
+                    + "UPDATE " + products + " SET " + raise + " WHERE "
+                    + InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END;");
+            //products show the name and phone of their supplier
+            db.execSQL("CREATE TRIGGER " + TRIGGER_LOCAL_VERSION_SUPPLIER + " AFTER UPDATE OF "
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_PHONE
+                    + " ON " + SupplierEntry.TABLE_NAME + " WHEN old." + SupplierEntry.COLUMN_SUPPLIER_NAME
+                    + " IS NOT new." + SupplierEntry.COLUMN_SUPPLIER_NAME + " OR old."
+                    + SupplierEntry.COLUMN_SUPPLIER_PHONE + " IS NOT new." + SupplierEntry.COLUMN_SUPPLIER_PHONE
+                    + " BEGIN UPDATE " + products + " SET " + raise + " WHERE "
+                    + InventoryEntry.COLUMN_SUPPLIER_ID + " = new." + SupplierEntry._ID + "; END;");
+
+            db.execSQL("DROP VIEW " + InventoryEntry.VIEW_NAME + ";");
+            createProductsView(db, InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                    + InventoryEntry.COLUMN_PRICE + ", "
+                    + InventoryEntry.COLUMN_QUANTITY + ", "
+                    + InventoryEntry.COLUMN_SUPPLIER_ID + ", "
+                    + InventoryEntry.COLUMN_SKU + ", "
+                    + InventoryEntry.COLUMN_SYNC_ID + ", "
+                    + InventoryEntry.COLUMN_VERSION + ", "
+                    + InventoryEntry.COLUMN_UPDATED_AT + ", "
+                    + InventoryEntry.COLUMN_LOCAL_VERSION);
+        }
+    };
+
+    /**
+     * Version 11: the indexes of version 7 lost the covering columns of the list, so every
+     * row of a sorted page was read a second time from the table. Each sort index is now the
+     * sort column and _id, which keeps ties in _id order for the keyset pages, followed by
+     * the other columns of a list page and the supplier. The supplier index gets the same
+     * columns, so whichever index SQLite picks for a filter, it never reads the table. A sale
+     * writes all four, the price of answering pages from the index.
+     */
+    static final Migration MIGRATION_10_11 = new Migration(11) {
+        @Override
+        void migrate(SQLiteDatabase db) {
+            String name = InventoryEntry.COLUMN_PRODUCT_NAME;
+            String price = InventoryEntry.COLUMN_PRICE;
+            String quantity = InventoryEntry.COLUMN_QUANTITY;
+            String supplier = InventoryEntry.COLUMN_SUPPLIER_ID;
+            createCoveringIndex(db, INDEX_PRODUCTS_NAME, name, price, quantity, supplier);
+            createCoveringIndex(db, INDEX_PRODUCTS_PRICE, price, name, quantity, supplier);
+            createCoveringIndex(db, INDEX_PRODUCTS_QUANTITY, quantity, name, price, supplier);
+            createCoveringIndex(db, INDEX_PRODUCTS_SUPPLIER, supplier, name, price, quantity);
+        }
+    };
+
+    //replaces index with one on column and _id followed by the covered columns
+    private static void createCoveringIndex(SQLiteDatabase db, String index, String column,
+                                            String... covered) {
+        StringBuilder columns = new StringBuilder(column).append(", ").append(InventoryEntry._ID);
+        for (String coveredColumn : covered) {
+            columns.append(", ").append(coveredColumn);
+        }
+        db.execSQL("DROP INDEX IF EXISTS " + index + ";");
+        db.execSQL("CREATE INDEX " + index + " ON " + InventoryEntry.TABLE_NAME + "("
+                + columns + ");");
+    }
+
+    /**
+     * Creates products_view, the given product columns after _id followed by the supplier name
+     * and phone
+     */
+    private static void createProductsView(SQLiteDatabase db, String productColumns) {
+        String products = InventoryEntry.TABLE_NAME;
+        String suppliers = SupplierEntry.TABLE_NAME;
+        db.execSQL("CREATE VIEW " + InventoryEntry.VIEW_NAME + " AS SELECT "
+                + products + "." + InventoryEntry._ID + " AS " + InventoryEntry._ID + ", "
+                + productColumns + ", "
+                + suppliers + "." + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS "
+                + InventoryEntry.COLUMN_SUPPLIER_NAME + ", "
+                + suppliers + "." + SupplierEntry.COLUMN_SUPPLIER_PHONE + " AS "
+                + InventoryEntry.COLUMN_SUPPLIER_PHOHE
+                //a left join lets SQLite skip the supplier lookup when no supplier column is read
+                + " FROM " + products + " LEFT JOIN " + suppliers + " ON "
+                + suppliers + "." + SupplierEntry._ID + " = " + products + "."
+                + InventoryEntry.COLUMN_SUPPLIER_ID + ";");
+    }
+
+    /**
+     * Trigger statements adding (sign "+") or taking away (sign "-") the product in row,
+     * "new." or "old.", to the totals and to the totals of its supplier. supplierKey holds the
+     * column of supplier_stats and the column of products that identify the supplier.
+     */
+    private static String addStats(String row, String sign, String[] supplierKey) {
+        String set = " SET "
+                + StatsEntry.COLUMN_PRODUCT_COUNT + " = " + StatsEntry.COLUMN_PRODUCT_COUNT + sign + "1, "
+                + StatsEntry.COLUMN_TOTAL_QUANTITY + " = " + StatsEntry.COLUMN_TOTAL_QUANTITY + sign + quantity(row) + ", "
+                + StatsEntry.COLUMN_STOCK_VALUE + " = " + StatsEntry.COLUMN_STOCK_VALUE + sign + value(row) + ", "
+                + StatsEntry.COLUMN_LOW_STOCK_COUNT + " = " + StatsEntry.COLUMN_LOW_STOCK_COUNT + sign + lowStock(row);
+        String supplier = supplierKey[0] + " = " + row + supplierKey[1];
+
+        StringBuilder sql = new StringBuilder();
+        if (sign.equals("+")) {
+            sql.append("INSERT OR IGNORE INTO ").append(StatsEntry.SUPPLIER_TABLE_NAME).append(" (")
+                    .append(supplierKey[0]).append(") VALUES (")
+                    .append(row).append(supplierKey[1]).append("); ");
+        }
+        sql.append("UPDATE ").append(StatsEntry.TABLE_NAME).append(set)
+                .append(" WHERE ").append(StatsEntry._ID).append(" = 1; ");
+        sql.append("UPDATE ").append(StatsEntry.SUPPLIER_TABLE_NAME).append(set)
+                .append(" WHERE ").append(supplier).append("; ");
+        if (sign.equals("-")) {
+            sql.append("DELETE FROM ").append(StatsEntry.SUPPLIER_TABLE_NAME).append(" WHERE ")
+                    .append(supplier).append(" AND ").append(StatsEntry.COLUMN_PRODUCT_COUNT)
+                    .append(" = 0; ");
+        }
+        return sql.toString();
+    }
+
+    //price and quantity may be null, they count as 0 like the column defaults
+    private static String quantity(String row) {
+        return "IFNULL(" + row + InventoryEntry.COLUMN_QUANTITY + ", 0)";
+    }
+
+    private static String value(String row) {
+        return "IFNULL(" + row + InventoryEntry.COLUMN_PRICE + ", 0) * " + quantity(row);
+    }
+
+    //same rule as "Quantity < threshold", which leaves out null quantities
+    private static String lowStock(String row) {
+        return "IFNULL(" + row + InventoryEntry.COLUMN_QUANTITY + " < "
+                + StatsEntry.LOW_STOCK_THRESHOLD + ", 0)";
+    }
+
+    /**
+     * All steps in ascending version order
+     */
+    static final Migration[] MIGRATIONS = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9,
+            MIGRATION_9_10,
+            MIGRATION_10_11
+    };
+
+    /**
+     * Runs every step above oldVersion up to and including newVersion.
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (Migration migration : MIGRATIONS) {
+            if (migration.toVersion > oldVersion && migration.toVersion <= newVersion) {
+                migration.migrate(db);
+            }
+        }
+    }
+}
@@ -1,14 +1,36 @@
 package com.example.android.inventoryapp.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.Process;
+import android.text.TextUtils;
 import android.util.Log;
-import android.widget.Toast;
+import android.util.SparseArray;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class InventoryProvider extends ContentProvider {
     public static final String LOG_TAG = InventoryProvider.class.getSimpleName();
@@ -23,51 +45,318 @@ public class InventoryProvider extends ContentProvider {
      */
     private static final int PRODUCT_ID = 101;
 
+    /**
+     * URI matcher code for the content URI that changes the quantity of a single product
+     */
+    private static final int PRODUCT_ADJUST = 102;
+
+    /**
+     * URI matcher code for the full-text search over product and supplier names
+     */
+    private static final int PRODUCT_SEARCH = 103;
+
+    /**
+     * URI matcher code for the totals of all products
+     */
+    private static final int PRODUCT_STATS = 104;
+
+    /**
+     * URI matcher code for the totals of every supplier
+     */
+    private static final int PRODUCT_BY_SUPPLIER = 105;
+
+    /**
+     * URI matcher code for the suppliers table
+     */
+    private static final int SUPPLIERS = 106;
+
+    /**
+     * URI matcher code for a single supplier
+     */
+    private static final int SUPPLIER_ID = 107;
+
+    /**
+     * URI matcher code for the products of a single supplier
+     */
+    private static final int SUPPLIER_PRODUCTS = 108;
+
+    /**
+     * URI matcher code for the stock movement ledger
+     */
+    private static final int MOVEMENTS = 109;
+
+    /**
+     * URI matcher code for the daily summaries of compacted movements
+     */
+    private static final int MOVEMENT_DAYS = 110;
+
+    /**
+     * URI matcher code for the product with a given sku
+     */
+    private static final int PRODUCT_SKU = 111;
+
+    /**
+     * URI matcher code for the content URI that changes the quantity of the product with a given sku
+     */
+    private static final int PRODUCT_SKU_ADJUST = 112;
+
+    /**
+     * URI matcher code for the checkout of a whole order
+     */
+    private static final int SALES = 113;
+
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
+    //path of every matcher code, e.g. "products/#", for the metrics
+    private static final SparseArray<String> sPatterns = new SparseArray<>();
+
     // Static initializer. This is run the first time anything is called from this class.
     static {
-        // The calls to addURI() go here, for all of the content URI patterns that the provider
+        // The calls to addUri() go here, for all of the content URI patterns that the provider
         // should recognize. All paths added to the UriMatcher have a corresponding code to return
         // when a match is found.
 
-        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
-                InventoryContract.PATH_PRODUCTS,
-                PRODUCTS);
-        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
-                InventoryContract.PATH_PRODUCTS + "/#",
-                PRODUCT_ID);
+        addUri(InventoryContract.PATH_PRODUCTS, PRODUCTS);
+        addUri(InventoryContract.PATH_PRODUCTS + "/#", PRODUCT_ID);
+        addUri(InventoryContract.PATH_PRODUCTS + "/#/" + InventoryContract.PATH_ADJUST, PRODUCT_ADJUST);
+        addUri(InventoryContract.PATH_PRODUCTS + "/" + InventoryContract.PATH_SEARCH, PRODUCT_SEARCH);
+        addUri(InventoryContract.PATH_PRODUCTS + "/" + InventoryContract.PATH_STATS, PRODUCT_STATS);
+        addUri(InventoryContract.PATH_PRODUCTS + "/" + InventoryContract.PATH_BY_SUPPLIER, PRODUCT_BY_SUPPLIER);
+        addUri(InventoryContract.PATH_SUPPLIERS, SUPPLIERS);
+        addUri(InventoryContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+        addUri(InventoryContract.PATH_SUPPLIERS + "/#/" + InventoryContract.PATH_PRODUCTS, SUPPLIER_PRODUCTS);
+        addUri(InventoryContract.PATH_MOVEMENTS, MOVEMENTS);
+        addUri(InventoryContract.PATH_MOVEMENTS + "/" + InventoryContract.PATH_DAYS, MOVEMENT_DAYS);
+        addUri(InventoryContract.PATH_PRODUCTS + "/" + InventoryContract.PATH_SKU + "/*", PRODUCT_SKU);
+        addUri(InventoryContract.PATH_PRODUCTS + "/" + InventoryContract.PATH_SKU + "/*/"
+                + InventoryContract.PATH_ADJUST, PRODUCT_SKU_ADJUST);
+        addUri(InventoryContract.PATH_SALES, SALES);
     }
 
+    private static void addUri(String path, int code) {
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, path, code);
+        sPatterns.put(code, path);
+    }
+
+    private static String patternOf(int match) {
+        return sPatterns.get(match, "unknown");
+    }
+
+    /**
+     * Number of rows a bulk insert writes before it offers to yield the transaction
+     * to other threads waiting on the database
+     */
+    private static final int BULK_INSERT_YIELD_INTERVAL = 500;
+
+    /**
+     * Insert statement compiled once per bulk insert and reused for every row
+     */
+    private static final String SQL_INSERT_PRODUCT = "INSERT INTO "
+            + InventoryContract.InventoryEntry.TABLE_NAME + " ("
+            + InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+            + InventoryContract.InventoryEntry.COLUMN_PRICE + ", "
+            + InventoryContract.InventoryEntry.COLUMN_QUANTITY + ", "
+            + InventoryContract.InventoryEntry.COLUMN_SUPPLIER_ID + ", "
+            + InventoryContract.InventoryEntry.COLUMN_SKU + ") VALUES (?, ?, ?, ?, ?)";
+
     //database helper object
     private InventoryDbHelper mDbHelper;
 
+    //coalesces change notifications and holds them back until a batch commits
+    private ChangeNotifier mChangeNotifier;
+
+    //off unless turned on through dump, see there
+    private final ProviderMetrics mMetrics = new ProviderMetrics();
+
+    /**
+     * Number of recently opened products kept in memory
+     */
+    private static final int PRODUCT_CACHE_SIZE = 128;
+
+    //single products opened by the detail and edit screens, dropped by every write to them
+    private final ProductCache mProductCache = new ProductCache(PRODUCT_CACHE_SIZE);
+
+    //statements for quantity adjustments, compiled on first use and guarded by mLedgerLock.
+    //Only taken inside a write transaction, so it never waits on a thread that waits for one.
+    private final Object mLedgerLock = new Object();
+    private StockLedger mLedger;
+
+    //a sync pushes what the outbox holds, so two at once would send the same rows twice
+    private final Object mSyncLock = new Object();
+
+    /**
+     * Rows of the list read by the warm-up, one page of the main list
+     */
+    private static final int WARM_UP_ROWS = 50;
+
+    private static final String[] WARM_UP_PROJECTION = {
+            InventoryContract.InventoryEntry._ID,
+            InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryContract.InventoryEntry.COLUMN_PRICE,
+            InventoryContract.InventoryEntry.COLUMN_QUANTITY
+    };
+
+    //a string literal or an identifier, bare, double quoted, in brackets or in backticks;
+    //SQLite compares identifiers without case, so "supplier_name" is the supplier column too
+    private static final Pattern SQL_TOKEN = Pattern.compile(
+            "'(?:[^']|'')*'|\"((?:[^\"]|\"\")*)\"|\\[([^\\]]*)\\]|`([^`]*)`|([A-Za-z_][A-Za-z0-9_$]*)");
+
+    //opens the database after onCreate, see warmUp
+    private Thread mWarmUp;
+
     @Override
     public boolean onCreate() {
         mDbHelper = new InventoryDbHelper(getContext());
+        mChangeNotifier = new ChangeNotifier(getContext().getContentResolver(), mMetrics);
+        warmUp();
         return true;
     }
 
+    /**
+     * Opens the database on a background thread as soon as the process starts, creating or
+     * migrating it if needed, and reads the first page of the list so its pages are cached.
+     * The first query of the list then usually finds everything ready; one that comes earlier
+     * waits for the open inside {@link InventoryDbHelper} instead of opening it twice.
+     */
+    private void warmUp() {
+        mWarmUp = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Cursor cursor = query(InventoryContract.InventoryEntry.buildPageUri(0, WARM_UP_ROWS),
+                            WARM_UP_PROJECTION, null, null, null);
+                    try {
+                        cursor.moveToLast();
+                    } finally {
+                        cursor.close();
+                    }
+                } catch (RuntimeException e) {
+                    //the first real query opens the database again and reports the error
+                    Log.e(LOG_TAG, "Failed to warm up the database", e);
+                }
+            }
+        }, "InventoryWarmUp");
+        mWarmUp.start();
+    }
+
+    /**
+     * Waits until the warm-up started by onCreate is done, for tests that count queries
+     */
+    void awaitWarmUp() throws InterruptedException {
+        mWarmUp.join();
+    }
+
+    /**
+     * The looper change notifications go out on, for tests that check them
+     */
+    Looper getNotifierLooper() {
+        return mChangeNotifier.getLooper();
+    }
+
     //perform query
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        long start = mMetrics.start();
+        int match = sUriMatcher.match(uri);
+        Cursor cursor = query(match, uri, projection, selection, selectionArgs, sortOrder);
+        return mMetrics.recordQuery(patternOf(match), start, cursor);
+    }
+
+    private Cursor query(int match, Uri uri, String[] projection, String selection,
+                         String[] selectionArgs, String sortOrder) {
 
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
         Cursor cursor;
 
-        int match = sUriMatcher.match(uri);
         switch (match) {
             case PRODUCTS:
-                cursor = database.query(InventoryContract.InventoryEntry.TABLE_NAME, projection,
-                        selection, selectionArgs, null, null, sortOrder);
+                cursor = queryProducts(database, uri, projection, selection, selectionArgs, sortOrder);
                 break;
             case PRODUCT_ID:
+                if (Product.covers(projection)) {
+                    cursor = queryCachedProduct(database, ContentUris.parseId(uri), projection);
+                    break;
+                }
                 selection = InventoryContract.InventoryEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                cursor = database.query(InventoryContract.InventoryEntry.TABLE_NAME, projection,
+                cursor = database.query(productSource(projection, null, sortOrder), projection,
+                        selection, selectionArgs, null, null, sortOrder);
+                break;
+            case PRODUCT_SKU:
+                //one seek in the unique sku index
+                cursor = database.query(productSource(projection, null, null), projection,
+                        InventoryContract.InventoryEntry.COLUMN_SKU + "=?",
+                        new String[]{uri.getPathSegments().get(2)}, null, null, null);
+                //changes are published on products/#, which does not tell the sku
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        InventoryContract.InventoryEntry.CONTENT_URI);
+                return cursor;
+            case PRODUCT_SEARCH:
+                String matchExpression =
+                        toMatchExpression(uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_QUERY));
+                if (matchExpression != null) {
+                    //the full-text index finds the matching rowids, products supplies the columns
+                    selection = DatabaseUtils.concatenateWhere(selection,
+                            InventoryContract.InventoryEntry._ID + " IN (SELECT docid FROM "
+                                    + InventoryContract.InventoryEntry.FTS_TABLE_NAME + " WHERE "
+                                    + InventoryContract.InventoryEntry.FTS_TABLE_NAME + " MATCH ?)");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{matchExpression});
+                }
+                cursor = queryProducts(database, uri, projection, selection, selectionArgs, sortOrder);
+                break;
+            case SUPPLIER_PRODUCTS:
+                //one range of the supplier index
+                selection = DatabaseUtils.concatenateWhere(selection,
+                        InventoryContract.InventoryEntry.COLUMN_SUPPLIER_ID + " = ?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{uri.getPathSegments().get(1)});
+                cursor = queryProducts(database, uri, projection, selection, selectionArgs, sortOrder);
+                //the products change with every product write
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        InventoryContract.InventoryEntry.CONTENT_URI);
+                return cursor;
+            case SUPPLIERS:
+                cursor = database.query(InventoryContract.SupplierEntry.TABLE_NAME, projection,
+                        selection, selectionArgs, null, null,
+                        sortOrder != null ? sortOrder : InventoryContract.SupplierEntry.COLUMN_SUPPLIER_NAME);
+                break;
+            case SUPPLIER_ID:
+                selection = InventoryContract.SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = database.query(InventoryContract.SupplierEntry.TABLE_NAME, projection,
                         selection, selectionArgs, null, null, sortOrder);
                 break;
+            case PRODUCT_STATS:
+                cursor = queryStats(database, uri, projection);
+                //totals change with every product, including edits published on products/#
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        InventoryContract.InventoryEntry.CONTENT_URI);
+                return cursor;
+            case PRODUCT_BY_SUPPLIER:
+                cursor = database.query(InventoryContract.StatsEntry.SUPPLIER_VIEW_NAME, projection,
+                        selection, selectionArgs, null, null,
+                        sortOrder != null ? sortOrder : InventoryContract.StatsEntry.COLUMN_SUPPLIER_NAME);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        InventoryContract.InventoryEntry.CONTENT_URI);
+                return cursor;
+            case MOVEMENTS:
+                cursor = database.query(InventoryContract.MovementEntry.TABLE_NAME, projection,
+                        selection, selectionArgs, null, null,
+                        sortOrder != null ? sortOrder : InventoryContract.MovementEntry._ID);
+                //every movement changes a product, compaction notifies the whole table
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        InventoryContract.InventoryEntry.CONTENT_URI);
+                return cursor;
+            case MOVEMENT_DAYS:
+                cursor = database.query(InventoryContract.MovementEntry.DAYS_TABLE_NAME, projection,
+                        selection, selectionArgs, null, null, sortOrder != null ? sortOrder
+                                : InventoryContract.MovementEntry.COLUMN_DAY + ", "
+                                + InventoryContract.MovementEntry.COLUMN_PRODUCT_ID);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        InventoryContract.InventoryEntry.CONTENT_URI);
+                return cursor;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
@@ -75,15 +364,171 @@ public class InventoryProvider extends ContentProvider {
         return cursor;
     }
 
+    /**
+     * Reads the single row of totals. The low stock count for the default threshold is kept
+     * by the triggers, any other threshold is counted on the quantity index.
+     */
+    private static Cursor queryStats(SQLiteDatabase database, Uri uri, String[] projection) {
+        String threshold = uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_THRESHOLD);
+        if (threshold == null
+                || Integer.parseInt(threshold) == InventoryContract.StatsEntry.LOW_STOCK_THRESHOLD) {
+            return database.query(InventoryContract.StatsEntry.TABLE_NAME, projection,
+                    null, null, null, null, null);
+        }
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables("(SELECT " + InventoryContract.StatsEntry._ID + ", "
+                + InventoryContract.StatsEntry.COLUMN_PRODUCT_COUNT + ", "
+                + InventoryContract.StatsEntry.COLUMN_TOTAL_QUANTITY + ", "
+                + InventoryContract.StatsEntry.COLUMN_STOCK_VALUE + ", (SELECT COUNT(*) FROM "
+                + InventoryContract.InventoryEntry.TABLE_NAME + " WHERE "
+                + InventoryContract.InventoryEntry.COLUMN_QUANTITY + " < ?) AS "
+                + InventoryContract.StatsEntry.COLUMN_LOW_STOCK_COUNT + " FROM "
+                + InventoryContract.StatsEntry.TABLE_NAME + ")");
+        return builder.query(database, projection, null,
+                new String[]{Integer.toString(Integer.parseInt(threshold))}, null, null, null);
+    }
+
+    /**
+     * Answers a query for one product from {@link #mProductCache}, reading and caching
+     * the whole row on a miss.
+     */
+    private Cursor queryCachedProduct(SQLiteDatabase database, long id, String[] projection) {
+        Product product = mProductCache.get(id);
+        if (product == null) {
+            long token = mProductCache.beginLoad();
+            Cursor cursor = database.query(InventoryContract.InventoryEntry.VIEW_NAME, Product.COLUMNS,
+                    InventoryContract.InventoryEntry._ID + "=?", new String[]{String.valueOf(id)},
+                    null, null, null);
+            try {
+                if (!cursor.moveToFirst()) {
+                    //no such product, answer with an empty cursor
+                    return new MatrixCursor(projection == null ? Product.COLUMNS : projection, 0);
+                }
+                product = Product.fromCursor(cursor);
+            } finally {
+                cursor.close();
+            }
+            mProductCache.put(product, token);
+        }
+        return product.toCursor(projection);
+    }
+
+    /**
+     * Reads a list of products with the filters and order of the {@link InventoryContract.ProductQuery}
+     * in uri. With a limit it reads one page: a page after a known row is a range seek on the
+     * index of the sort column, so it costs the same wherever it is in the list.
+     */
+    private Cursor queryProducts(SQLiteDatabase database, Uri uri, String[] projection,
+                                 String selection, String[] selectionArgs, String sortOrder) {
+        String limit = uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_LIMIT);
+        ProductQuerySql sql = ProductQuerySql.of(InventoryContract.ProductQuery.fromUri(uri),
+                selection, selectionArgs,
+                uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_AFTER_ID),
+                uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_AFTER_KEY));
+        if (limit == null) {
+            //without a sort parameter the caller may order the list its own way
+            String orderBy = uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_SORT) == null
+                    ? ProductQuerySql.checkSortOrder(sortOrder, uri)
+                    : sql.orderBy;
+            return database.query(productSource(projection, sql.selection, orderBy), projection,
+                    sql.selection, sql.selectionArgs, null, null, orderBy);
+        }
+        String offset = uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_OFFSET);
+        String limitClause = offset == null
+                ? Integer.toString(Integer.parseInt(limit))
+                : Integer.parseInt(offset) + "," + Integer.parseInt(limit);
+        return database.query(productSource(projection, sql.selection, sql.orderBy), projection,
+                sql.selection, sql.selectionArgs, null, null, sql.orderBy, limitClause);
+    }
+
+    /**
+     * @return the products table if the query reads no supplier column, so SQLite can answer
+     * it from the product indexes alone, otherwise the view that joins in the suppliers
+     */
+    private static String productSource(String[] projection, String selection, String orderBy) {
+        if (projection == null || readsSupplier(selection) || readsSupplier(orderBy)) {
+            return InventoryContract.InventoryEntry.VIEW_NAME;
+        }
+        for (String column : projection) {
+            if (readsSupplier(column)) {
+                return InventoryContract.InventoryEntry.VIEW_NAME;
+            }
+        }
+        return InventoryContract.InventoryEntry.TABLE_NAME;
+    }
+
+    //true if a column, selection or sort order names a column of the suppliers table
+    private static boolean readsSupplier(String sql) {
+        if (sql == null) {
+            return false;
+        }
+        Matcher token = SQL_TOKEN.matcher(sql);
+        while (token.find()) {
+            //string literals are the only tokens without a group
+            for (int group = 1; group <= token.groupCount(); group++) {
+                String identifier = token.group(group);
+                if (identifier != null && (identifier.equalsIgnoreCase(
+                        InventoryContract.InventoryEntry.COLUMN_SUPPLIER_NAME)
+                        || identifier.equalsIgnoreCase(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Turns what the user typed into an FTS match expression where every word is a prefix,
+     * so "blu pen" finds "Blue Pencil". Quotes and operators are dropped.
+     *
+     * @return null if nothing searchable is left
+     */
+    private static String toMatchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
     //Returns the MIME type of data for the content URI.
     @Override
     public String getType(Uri uri) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case PRODUCTS:
+            case PRODUCT_SEARCH:
                 return InventoryContract.InventoryEntry.CONTENT_LIST_TYPE;
             case PRODUCT_ID:
+            case PRODUCT_ADJUST:
+            case PRODUCT_SKU:
+            case PRODUCT_SKU_ADJUST:
                 return InventoryContract.InventoryEntry.CONTENT_ITEM_TYPE;
+            case PRODUCT_STATS:
+                return InventoryContract.StatsEntry.CONTENT_STATS_TYPE;
+            case PRODUCT_BY_SUPPLIER:
+                return InventoryContract.StatsEntry.CONTENT_BY_SUPPLIER_TYPE;
+            case SUPPLIERS:
+                return InventoryContract.SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return InventoryContract.SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIER_PRODUCTS:
+                return InventoryContract.InventoryEntry.CONTENT_LIST_TYPE;
+            case MOVEMENTS:
+                return InventoryContract.MovementEntry.CONTENT_LIST_TYPE;
+            case MOVEMENT_DAYS:
+                return InventoryContract.MovementEntry.CONTENT_DAYS_TYPE;
+            case SALES:
+                return InventoryContract.SaleEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
@@ -92,67 +537,172 @@ public class InventoryProvider extends ContentProvider {
     //Insert new data into the provider with the given ContentValues.
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
-        final int match = sUriMatcher.match(uri);
+        long start = mMetrics.start();
+        int match = sUriMatcher.match(uri);
+        Uri inserted = insert(match, uri, contentValues);
+        mMetrics.record(ProviderMetrics.INSERT, patternOf(match), start, inserted == null ? 0 : 1);
+        return inserted;
+    }
+
+    private Uri insert(int match, Uri uri, ContentValues contentValues) {
         switch (match) {
             case PRODUCTS:
                 return insertProduct(uri, contentValues);
+            case SUPPLIERS:
+                return insertSupplier(uri, contentValues);
+            case MOVEMENTS:
+                return insertMovement(uri, contentValues);
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
     }
 
     private Uri insertProduct(Uri uri, ContentValues values) {
-
-        String name = values.getAsString(InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME);
-        if (name == null) {
-            Toast.makeText(getContext(), "Product requires a name", Toast.LENGTH_SHORT).show();
+        //refuse bad rows before they reach the database
+        int error = ProductValidator.validateInsert(values);
+        if (error != ProductValidator.VALID) {
+            throw new IllegalArgumentException(ProductValidator.describe(error) + " for " + uri);
         }
 
-        Integer price = values.getAsInteger(InventoryContract.InventoryEntry.COLUMN_PRICE);
-        if (price != null && price < 0) {
-            Toast.makeText(getContext(), "Product requires valid price", Toast.LENGTH_SHORT).show();
-        }
+        //get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        Integer quantity = values.getAsInteger(InventoryContract.InventoryEntry.COLUMN_QUANTITY);
-        if (quantity != null && quantity < 0) {
-            Toast.makeText(getContext(), "Product requires valid quantity", Toast.LENGTH_SHORT).show();
+        //the supplier has to exist before the product can point to it
+        values = new ContentValues(values);
+        //an explicit null gets the column default like in bulkInsert, so sorted pages never meet a null
+        if (values.get(InventoryContract.InventoryEntry.COLUMN_PRICE) == null) {
+            values.remove(InventoryContract.InventoryEntry.COLUMN_PRICE);
         }
-
-        String supplierName = values.getAsString(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_NAME);
-        if (supplierName == null) {
-            Toast.makeText(getContext(), "Product requires a supplier", Toast.LENGTH_SHORT).show();
+        if (values.get(InventoryContract.InventoryEntry.COLUMN_QUANTITY) == null) {
+            values.remove(InventoryContract.InventoryEntry.COLUMN_QUANTITY);
         }
-
-        Integer supplierPhone = values.getAsInteger(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE);
-        if (supplierPhone == null ) {
-            Toast.makeText(getContext(), "Product requires valid phone number", Toast.LENGTH_SHORT).show();
+        SupplierLookup suppliers = new SupplierLookup(database);
+        long id;
+        database.beginTransaction();
+        try {
+            suppliers.resolve(values);
+            id = database.insert(InventoryContract.InventoryEntry.TABLE_NAME, null, values);
+            if (id != -1) {
+                recordStartingQuantity(database, id, values, System.currentTimeMillis());
+                database.setTransactionSuccessful();
+            }
+        } finally {
+            database.endTransaction();
+            suppliers.close();
         }
-        //get writable database
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
-
-        long id = database.insert(InventoryContract.InventoryEntry.TABLE_NAME, null, values);
 
         //if insertation fails, log error
         if (id == -1) {
             Log.e(LOG_TAG, "Failed tyo insert row for " + uri);
             return null;
         }
+        //an id can be reused after the newest product was deleted
+        mProductCache.invalidate(id);
+        if (suppliers.suppliersChanged()) {
+            //a new phone shows on every product of the supplier
+            mProductCache.invalidateAll();
+            mChangeNotifier.notifySuppliersChanged();
+        }
         //notify all listeners that the data has changed for the product content uri
-        getContext().getContentResolver().notifyChange(uri, null);
+        mChangeNotifier.notifyTableChanged();
 
         return ContentUris.withAppendedId(uri, id);
     }
 
+    private Uri insertSupplier(Uri uri, ContentValues values) {
+        int error = ProductValidator.validateSupplier(values, true);
+        if (error != ProductValidator.VALID) {
+            throw new IllegalArgumentException(ProductValidator.describe(error) + " for " + uri);
+        }
+        long id = mDbHelper.getWritableDatabase().insert(
+                InventoryContract.SupplierEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert supplier for " + uri);
+            return null;
+        }
+        mChangeNotifier.notifySuppliersChanged();
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Applies a movement to the quantity of its product and appends it to the ledger.
+     *
+     * @return the uri of the movement, or null if the product does not exist or its
+     * quantity would go below zero
+     */
+    private Uri insertMovement(Uri uri, ContentValues values) {
+        Long productId = values.getAsLong(InventoryContract.MovementEntry.COLUMN_PRODUCT_ID);
+        Integer delta = values.getAsInteger(InventoryContract.MovementEntry.COLUMN_DELTA);
+        Integer reason = values.getAsInteger(InventoryContract.MovementEntry.COLUMN_REASON);
+        Long timestamp = values.getAsLong(InventoryContract.MovementEntry.COLUMN_TIMESTAMP);
+        if (productId == null || delta == null || delta == 0 || reason == null) {
+            throw new IllegalArgumentException("Movement requires a product, a delta and a reason for " + uri);
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long id;
+        database.beginTransaction();
+        try {
+            synchronized (mLedgerLock) {
+                StockLedger ledger = ledger(database);
+                if (!ledger.apply(productId, delta)) {
+                    return null;
+                }
+                id = ledger.record(productId, delta, reason,
+                        timestamp != null ? timestamp : System.currentTimeMillis());
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        mProductCache.invalidate(productId);
+        mChangeNotifier.notifyRowChanged(productId);
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Records the quantity a new product starts with as its first movement
+     */
+    private void recordStartingQuantity(SQLiteDatabase database, long id, ContentValues values,
+                                        long timestamp) {
+        Integer quantity = values.getAsInteger(InventoryContract.InventoryEntry.COLUMN_QUANTITY);
+        if (quantity == null || quantity == 0) {
+            return;
+        }
+        synchronized (mLedgerLock) {
+            ledger(database).record(id, quantity,
+                    InventoryContract.MovementEntry.REASON_RESTOCK, timestamp);
+        }
+    }
+
+    /**
+     * @return the ledger statements, compiled on first use. Hold mLedgerLock.
+     */
+    private StockLedger ledger(SQLiteDatabase database) {
+        if (mLedger == null) {
+            mLedger = new StockLedger(database);
+        }
+        return mLedger;
+    }
+
     //delete the data at the given selection and selection arguments
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = mMetrics.start();
+        int match = sUriMatcher.match(uri);
+        int rowsDeleted = delete(match, uri, selection, selectionArgs);
+        mMetrics.record(ProviderMetrics.DELETE, patternOf(match), start, rowsDeleted);
+        return rowsDeleted;
+    }
+
+    private int delete(int match, Uri uri, String selection, String[] selectionArgs) {
         //get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
         //track the number of rows that were deleted
         int rowsDeleted;
 
-        final int match = sUriMatcher.match(uri);
         switch (match) {
             case PRODUCTS:
                 //Delete all rows that match the selection and selection args
@@ -164,56 +714,189 @@ public class InventoryProvider extends ContentProvider {
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 rowsDeleted = database.delete(InventoryContract.InventoryEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case SUPPLIER_ID:
+                //the foreign key refuses to delete a supplier that still has products
+                rowsDeleted = database.delete(InventoryContract.SupplierEntry.TABLE_NAME,
+                        InventoryContract.SupplierEntry._ID + "=?",
+                        new String[]{String.valueOf(ContentUris.parseId(uri))});
+                if (rowsDeleted != 0) {
+                    mChangeNotifier.notifySuppliersChanged();
+                }
+                return rowsDeleted;
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
         //notify listeners if there is any deletion
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (match == PRODUCT_ID) {
+                mProductCache.invalidate(ContentUris.parseId(uri));
+            } else {
+                mProductCache.invalidateAll();
+            }
+            mChangeNotifier.notifyTableChanged();
         }
         return rowsDeleted;
     }
 
     @Override
     public int update(Uri uri, ContentValues contenValues, String selection, String[] selectionArgs) {
-        final int match = sUriMatcher.match(uri);
+        long start = mMetrics.start();
+        int match = sUriMatcher.match(uri);
+        int rowsUpdated = update(match, uri, contenValues, selection, selectionArgs);
+        if (start != ProviderMetrics.NOT_TIMED) {
+            //an adjust answers with the new quantity instead of a row count, a conflict with -1
+            int rows = rowsUpdated < 0 ? 0
+                    : match != PRODUCT_ADJUST && match != PRODUCT_SKU_ADJUST ? rowsUpdated : 1;
+            mMetrics.record(ProviderMetrics.UPDATE, patternOf(match), start, rows);
+        }
+        return rowsUpdated;
+    }
+
+    private int update(int match, Uri uri, ContentValues contenValues, String selection,
+                       String[] selectionArgs) {
         switch (match) {
             case PRODUCTS:
-                return updateProduct(uri, contenValues, selection, selectionArgs);
+                return updateProduct(uri, contenValues, selection, selectionArgs, null);
             case PRODUCT_ID:
                 selection = InventoryContract.InventoryEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updateProduct(uri, contenValues, selection, selectionArgs);
+                return updateProduct(uri, contenValues, selection, selectionArgs,
+                        uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_VERSION));
+            case PRODUCT_ADJUST:
+            case PRODUCT_SKU_ADJUST:
+                return adjustQuantity(match, uri);
+            case SUPPLIER_ID:
+                return updateSupplier(uri, contenValues);
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
     }
 
-    private int updateProduct(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        //if product name key is present check that it is not null
-        if (values.containsKey(InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME)) {
-            String name = values.getAsString(InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME);
-            if (name == null) {
-                Toast.makeText(getContext(), "Product requires a name", Toast.LENGTH_SHORT).show();
+    /**
+     * Adds the delta of the given adjust uri to the quantity of the product in one statement,
+     * so concurrent taps cannot overwrite each other, and records it in the stock movements.
+     * A sku adjust uri finds the product in the same transaction.
+     *
+     * @return the new quantity, {@link InventoryContract.InventoryEntry#ADJUST_UNKNOWN_SKU}
+     * if no product has the sku, or {@link InventoryContract.InventoryEntry#ADJUST_REJECTED}
+     * if the product does not exist or would go below zero. Inside applyBatch those two throw
+     * instead, see {@link #refuse}.
+     */
+    private int adjustQuantity(int match, Uri uri) {
+        String sku = match == PRODUCT_SKU_ADJUST ? uri.getPathSegments().get(2) : null;
+        long id = sku == null ? Long.parseLong(uri.getPathSegments().get(1)) : -1;
+        String deltaString = uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_DELTA);
+        if (deltaString == null) {
+            throw new IllegalArgumentException("Adjustment requires a delta " + uri);
+        }
+        int delta = Integer.parseInt(deltaString);
+        String reasonString = uri.getQueryParameter(InventoryContract.QUERY_PARAMETER_REASON);
+        int reason = reasonString != null ? Integer.parseInt(reasonString)
+                : delta < 0 ? InventoryContract.MovementEntry.REASON_SALE
+                : InventoryContract.MovementEntry.REASON_RESTOCK;
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        //true inside applyBatch, see refuse()
+        boolean nested = database.inTransaction();
+        int newQuantity;
+        database.beginTransaction();
+        try {
+            synchronized (mLedgerLock) {
+                StockLedger ledger = ledger(database);
+                if (sku != null) {
+                    id = ledger.idOfSku(sku);
+                    if (id == -1) {
+                        return refuse(nested, InventoryContract.InventoryEntry.ADJUST_UNKNOWN_SKU,
+                                "No product has the sku of " + uri);
+                    }
+                }
+                newQuantity = ledger.adjust(id, delta, reason, System.currentTimeMillis());
             }
-            Integer price = values.getAsInteger(InventoryContract.InventoryEntry.COLUMN_PRICE);
-            if (price != null && price < 0) {
-                Toast.makeText(getContext(), "Product requires valid price", Toast.LENGTH_SHORT).show();
+            if (newQuantity == InventoryContract.InventoryEntry.ADJUST_REJECTED) {
+                return refuse(nested, newQuantity, "Adjustment refused for " + uri);
             }
-            Integer quantity = values.getAsInteger(InventoryContract.InventoryEntry.COLUMN_QUANTITY);
-            if (quantity != null && quantity < 0) {
-                Toast.makeText(getContext(), "Product requires valid quantity", Toast.LENGTH_SHORT).show();
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
 
-            }
-            String supplierName = values.getAsString(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_NAME);
-            if (supplierName == null) {
-                Toast.makeText(getContext(), "Product requires a supplier", Toast.LENGTH_SHORT).show();
+        //after the commit, so a read of the old quantity cannot be cached again
+        mProductCache.invalidate(id);
+        mChangeNotifier.notifyRowChanged(id);
+        return newQuantity;
+    }
 
+    /**
+     * Sells every line of an order in one transaction, so the order costs one commit however
+     * many lines it has. The first line that cannot be sold rolls back the lines before it.
+     *
+     * @return the number of lines, {@link InventoryContract.SaleEntry#SALE_UNKNOWN_SKU} or
+     * {@link InventoryContract.SaleEntry#SALE_REJECTED}
+     */
+    private int sell(Uri uri, ContentValues[] lines) {
+        //a malformed order is refused before it takes the database
+        for (ContentValues line : lines) {
+            Integer quantity = line.getAsInteger(InventoryContract.SaleEntry.COLUMN_QUANTITY);
+            if (quantity == null || quantity < 1) {
+                throw new IllegalArgumentException("Every line needs a quantity of at least 1 for " + uri);
+            }
+            if (line.getAsLong(InventoryContract.SaleEntry.COLUMN_PRODUCT_ID) == null
+                    && TextUtils.isEmpty(line.getAsString(InventoryContract.SaleEntry.COLUMN_SKU))) {
+                throw new IllegalArgumentException("Every line needs a product id or sku for " + uri);
             }
-            Integer supplierPhone = values.getAsInteger(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE);
-            if (supplierPhone == null) {
-                Toast.makeText(getContext(), "Product requires valid phone number", Toast.LENGTH_SHORT).show();
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long[] ids = new long[lines.length];
+        long now = System.currentTimeMillis();
+        database.beginTransaction();
+        try {
+            synchronized (mLedgerLock) {
+                StockLedger ledger = ledger(database);
+                for (int i = 0; i < lines.length; i++) {
+                    Long id = lines[i].getAsLong(InventoryContract.SaleEntry.COLUMN_PRODUCT_ID);
+                    if (id == null) {
+                        id = ledger.idOfSku(lines[i].getAsString(InventoryContract.SaleEntry.COLUMN_SKU));
+                        if (id == -1) {
+                            return InventoryContract.SaleEntry.SALE_UNKNOWN_SKU;
+                        }
+                    }
+                    int quantity = lines[i].getAsInteger(InventoryContract.SaleEntry.COLUMN_QUANTITY);
+                    if (!ledger.apply(id, -quantity)) {
+                        return InventoryContract.SaleEntry.SALE_REJECTED;
+                    }
+                    ledger.record(id, -quantity, InventoryContract.MovementEntry.REASON_SALE, now);
+                    ids[i] = id;
+                }
             }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        //one notification for the whole order
+        mChangeNotifier.beginBatch();
+        for (long id : ids) {
+            mProductCache.invalidate(id);
+            mChangeNotifier.notifyRowChanged(id);
+        }
+        mChangeNotifier.endBatch(true);
+        return lines.length;
+    }
+
+    /**
+     * @param expectedVersion the version the product must still have, or null to update
+     *                        whatever it holds
+     * @return the number of products updated, or
+     * {@link InventoryContract.InventoryEntry#UPDATE_CONFLICT} if the version is stale, which
+     * throws instead inside applyBatch
+     */
+    private int updateProduct(Uri uri, ContentValues values, String selection, String[] selectionArgs,
+                              String expectedVersion) {
+        //only the columns being changed are checked
+        int error = ProductValidator.validateUpdate(values);
+        if (error != ProductValidator.VALID) {
+            throw new IllegalArgumentException(ProductValidator.describe(error) + " for " + uri);
         }
 
         //if there are no values to update, dont try to update the database
@@ -223,13 +906,413 @@ public class InventoryProvider extends ContentProvider {
 
         //otherwise get writable database to update
         SQLiteDatabase database =mDbHelper.getWritableDatabase();
-        //update
-        int rowsUpdated = database.update(InventoryContract.InventoryEntry.TABLE_NAME,values,
-                selection,selectionArgs);
-        //notify listeners
-        if (rowsUpdated != 0){
-            getContext().getContentResolver().notifyChange(uri,null);
+        values = new ContentValues(values);
+        SupplierLookup suppliers = new SupplierLookup(database);
+        //true inside applyBatch, see refuse()
+        boolean nested = database.inTransaction();
+        int rowsUpdated = 0;
+        boolean suppliersChanged;
+        database.beginTransaction();
+        try {
+            //checked in the write transaction, so no other write can come in between
+            if (expectedVersion != null && DatabaseUtils.queryNumEntries(database,
+                    InventoryContract.InventoryEntry.TABLE_NAME,
+                    DatabaseUtils.concatenateWhere(selection,
+                            InventoryContract.InventoryEntry.COLUMN_LOCAL_VERSION + " = ?"),
+                    DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{expectedVersion})) == 0) {
+                return refuse(nested, InventoryContract.InventoryEntry.UPDATE_CONFLICT,
+                        "Product changed since version " + expectedVersion + " for " + uri);
+            }
+            suppliers.resolve(values);
+            suppliersChanged = suppliers.suppliersChanged();
+            if (values.containsKey(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE)) {
+                //a phone without a supplier name belongs to the current suppliers of the products
+                suppliersChanged |= updateSupplierPhones(database,
+                        values.getAsString(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE),
+                        selection, selectionArgs);
+                values.remove(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE);
+            }
+            Integer quantity = values.getAsInteger(InventoryContract.InventoryEntry.COLUMN_QUANTITY);
+            if (quantity != null) {
+                //a quantity typed into the editor goes into the ledger as the difference it makes
+                StockLedger.recordCorrections(database, quantity, selection, selectionArgs,
+                        System.currentTimeMillis());
+            }
+            if (values.size() != 0) {
+                rowsUpdated = updateChangedProducts(database, values, selection, selectionArgs);
+            }
+            if (suppliersChanged) {
+                //the products show the new supplier values even if their own columns did not change
+                rowsUpdated = (int) DatabaseUtils.queryNumEntries(database,
+                        InventoryContract.InventoryEntry.TABLE_NAME, selection, selectionArgs);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            suppliers.close();
+        }
+
+        //notify listeners, a single product only concerns observers that show it
+        if (suppliersChanged) {
+            mProductCache.invalidateAll();
+            mChangeNotifier.notifySuppliersChanged();
+            mChangeNotifier.notifyTableChanged();
+        } else if (rowsUpdated != 0){
+            if (sUriMatcher.match(uri) == PRODUCT_ID) {
+                mProductCache.invalidate(ContentUris.parseId(uri));
+                mChangeNotifier.notifyRowChanged(ContentUris.parseId(uri));
+            } else {
+                mProductCache.invalidateAll();
+                mChangeNotifier.notifyTableChanged();
+            }
         }
         return rowsUpdated;
     }
+
+    /**
+     * Updates the products matching selection, skipping rows that already hold the values
+     * so a no-op save does not wake up observers.
+     */
+    private static int updateChangedProducts(SQLiteDatabase database, ContentValues values,
+                                             String selection, String[] selectionArgs) {
+        StringBuilder unchanged = new StringBuilder();
+        ArrayList<String> unchangedArgs = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            if (unchanged.length() > 0) {
+                unchanged.append(" AND ");
+            }
+            unchanged.append(entry.getKey());
+            if (entry.getValue() == null) {
+                unchanged.append(" IS NULL");
+            } else {
+                unchanged.append(" IS ?");
+                unchangedArgs.add(entry.getValue().toString());
+            }
+        }
+        selection = DatabaseUtils.concatenateWhere(selection, "NOT (" + unchanged + ")");
+        selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                unchangedArgs.toArray(new String[unchangedArgs.size()]));
+        return database.update(InventoryContract.InventoryEntry.TABLE_NAME, values,
+                selection, selectionArgs);
+    }
+
+    /**
+     * Sets the phone of the suppliers of the products matching selection
+     *
+     * @return true if a phone changed
+     */
+    private static boolean updateSupplierPhones(SQLiteDatabase database, String phone,
+                                                String selection, String[] selectionArgs) {
+        ContentValues supplierValues = new ContentValues();
+        supplierValues.put(InventoryContract.SupplierEntry.COLUMN_SUPPLIER_PHONE, phone);
+        String supplierSelection = InventoryContract.SupplierEntry._ID + " IN (SELECT "
+                + InventoryContract.InventoryEntry.COLUMN_SUPPLIER_ID + " FROM "
+                + InventoryContract.InventoryEntry.TABLE_NAME
+                + (TextUtils.isEmpty(selection) ? "" : " WHERE " + selection) + ")";
+        if (phone == null) {
+            supplierSelection += " AND " + InventoryContract.SupplierEntry.COLUMN_SUPPLIER_PHONE + " IS NOT NULL";
+        } else {
+            supplierSelection += " AND " + InventoryContract.SupplierEntry.COLUMN_SUPPLIER_PHONE + " IS NOT ?";
+            selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{phone});
+        }
+        return database.update(InventoryContract.SupplierEntry.TABLE_NAME, supplierValues,
+                supplierSelection, selectionArgs) != 0;
+    }
+
+    /**
+     * Renames a supplier or changes its phone. Its products show the change right away.
+     */
+    private int updateSupplier(Uri uri, ContentValues values) {
+        int error = ProductValidator.validateSupplier(values, false);
+        if (error != ProductValidator.VALID) {
+            throw new IllegalArgumentException(ProductValidator.describe(error) + " for " + uri);
+        }
+        if (values.size() == 0) {
+            return 0;
+        }
+        //one row, however many products the supplier has
+        int rowsUpdated = mDbHelper.getWritableDatabase().update(
+                InventoryContract.SupplierEntry.TABLE_NAME, values,
+                InventoryContract.SupplierEntry._ID + "=?",
+                new String[]{String.valueOf(ContentUris.parseId(uri))});
+        if (rowsUpdated != 0) {
+            mProductCache.invalidateAll();
+            mChangeNotifier.notifySuppliersChanged();
+            mChangeNotifier.notifyTableChanged();
+        }
+        return rowsUpdated;
+    }
+
+    //insert all the given products in a single transaction, or sell all lines of an order
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        final int match = sUriMatcher.match(uri);
+        if (match == SALES) {
+            return sell(uri, values);
+        }
+        if (match != PRODUCTS) {
+            throw new IllegalArgumentException("Bulk insertion is not supported for " + uri);
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        SQLiteStatement statement = database.compileStatement(SQL_INSERT_PRODUCT);
+        SupplierLookup suppliers = new SupplierLookup(database);
+        int rowsInserted = 0;
+        long now = System.currentTimeMillis();
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0 && i % BULK_INSERT_YIELD_INTERVAL == 0) {
+                    database.yieldIfContendedSafely();
+                }
+                int error = ProductValidator.validateInsert(values[i]);
+                if (error != ProductValidator.VALID) {
+                    Log.e(LOG_TAG, "Skipping row " + i + " for " + uri + ": "
+                            + ProductValidator.describe(error));
+                    continue;
+                }
+                try {
+                    bindProduct(statement, values[i], suppliers);
+                    long id = statement.executeInsert();
+                    if (id != -1) {
+                        recordStartingQuantity(database, id, values[i], now);
+                        rowsInserted++;
+                    }
+                } catch (SQLException e) {
+                    //a bad row should not roll back the rest of the import
+                    Log.e(LOG_TAG, "Failed to insert row " + i + " for " + uri, e);
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+            suppliers.close();
+        }
+
+        //one notification for the whole batch
+        if (suppliers.suppliersChanged()) {
+            mProductCache.invalidateAll();
+            mChangeNotifier.notifySuppliersChanged();
+        }
+        if (rowsInserted != 0) {
+            mChangeNotifier.notifyTableChanged();
+        }
+        //fold a large import back into the database file now instead of on some later commit
+        if (rowsInserted >= BULK_INSERT_YIELD_INTERVAL) {
+            mDbHelper.checkpoint();
+        }
+        return rowsInserted;
+    }
+
+    /**
+     * Binds the values of one product, already checked by {@link ProductValidator},
+     * to the compiled {@link #SQL_INSERT_PRODUCT} statement.
+     */
+    private static void bindProduct(SQLiteStatement statement, ContentValues values,
+                                    SupplierLookup suppliers) {
+        String name = values.getAsString(InventoryContract.InventoryEntry.COLUMN_PRODUCT_NAME);
+        Integer price = values.getAsInteger(InventoryContract.InventoryEntry.COLUMN_PRICE);
+        Integer quantity = values.getAsInteger(InventoryContract.InventoryEntry.COLUMN_QUANTITY);
+        Long supplierId = values.getAsLong(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_ID);
+        if (supplierId == null) {
+            supplierId = suppliers.idOf(
+                    values.getAsString(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_NAME),
+                    values.getAsString(InventoryContract.InventoryEntry.COLUMN_SUPPLIER_PHOHE));
+        }
+
+        statement.clearBindings();
+        statement.bindString(1, name);
+        //same defaults as the table definition
+        statement.bindLong(2, price == null ? 0 : price);
+        statement.bindLong(3, quantity == null ? 0 : quantity);
+        statement.bindLong(4, supplierId);
+        String sku = values.getAsString(InventoryContract.InventoryEntry.COLUMN_SKU);
+        if (sku == null) {
+            statement.bindNull(5);
+        } else {
+            statement.bindString(5, sku);
+        }
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        //unlike queries and writes, call() is not checked against the provider permission
+        if (Binder.getCallingPid() != Process.myPid()) {
+            getContext().enforceCallingPermission(InventoryContract.PERMISSION_ACCESS, method);
+        }
+        if (InventoryContract.SyncEntry.METHOD_SYNC.equals(method)) {
+            return sync(arg);
+        }
+        if (InventoryContract.ColumnsEntry.METHOD_READ_COLUMNS.equals(method)) {
+            return readColumns(extras != null ? extras : Bundle.EMPTY);
+        }
+        if (!InventoryContract.MovementEntry.METHOD_COMPACT.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        long before = extras != null && extras.containsKey(InventoryContract.MovementEntry.EXTRA_BEFORE)
+                ? extras.getLong(InventoryContract.MovementEntry.EXTRA_BEFORE)
+                : StockLedger.retentionCutoff(System.currentTimeMillis());
+        return compactMovements(before);
+    }
+
+    /**
+     * Reads the next chunk of products as packed columns, see {@link InventoryContract.ColumnsEntry}
+     */
+    private Bundle readColumns(Bundle extras) {
+        int limit = extras.getInt(InventoryContract.ColumnsEntry.EXTRA_LIMIT,
+                InventoryContract.ColumnsEntry.DEFAULT_LIMIT);
+        if (limit < 1 || limit > InventoryContract.ColumnsEntry.MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and "
+                    + InventoryContract.ColumnsEntry.MAX_LIMIT + ": " + limit);
+        }
+        ProductColumns chunk = ProductColumns.read(mDbHelper.getReadableDatabase(),
+                extras.getStringArray(InventoryContract.ColumnsEntry.EXTRA_COLUMNS),
+                extras.getLong(InventoryContract.ColumnsEntry.EXTRA_AFTER), limit);
+        try {
+            return chunk.toBundle(getContext().getCacheDir(),
+                    Binder.getCallingPid() == Process.myPid());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write " + chunk.size() + " products", e);
+        }
+    }
+
+    /**
+     * Rolls the movements before the given time into daily summaries in one transaction
+     */
+    private Bundle compactMovements(long before) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int compacted;
+        database.beginTransaction();
+        try {
+            compacted = StockLedger.compact(database, before);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        if (compacted != 0) {
+            //the products are unchanged, but ledger cursors observe the products uri
+            mChangeNotifier.notifyTableChanged();
+        }
+        Bundle result = new Bundle();
+        result.putInt(InventoryContract.MovementEntry.EXTRA_COUNT, compacted);
+        return result;
+    }
+
+    /**
+     * Syncs the products with the server at serverUrl, one sync at a time. Observers hear
+     * about it once, after the last round trip.
+     */
+    private Bundle sync(String serverUrl) {
+        Bundle result = new Bundle();
+        synchronized (mSyncLock) {
+            InventorySync sync = null;
+            try {
+                final SQLiteDatabase database = mDbHelper.getWritableDatabase();
+                //the movements of the sync go through the statements of sales and adjustments
+                sync = new InventorySync(database, new HttpSyncTransport(new URL(serverUrl)),
+                        new SyncLedger() {
+                            @Override
+                            public void record(long productId, int delta, int reason, long timestamp) {
+                                synchronized (mLedgerLock) {
+                                    ledger(database).record(productId, delta, reason, timestamp);
+                                }
+                            }
+                        });
+                sync.run();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Sync with " + serverUrl + " failed", e);
+                result.putString(InventoryContract.SyncEntry.EXTRA_ERROR, e.toString());
+            } finally {
+                if (sync != null && sync.changedLocally()) {
+                    mProductCache.invalidateAll();
+                    if (sync.suppliersChanged()) {
+                        mChangeNotifier.notifySuppliersChanged();
+                    }
+                    mChangeNotifier.notifyTableChanged();
+                }
+            }
+            if (sync != null) {
+                result.putInt(InventoryContract.SyncEntry.EXTRA_PUSHED, sync.pushed());
+                result.putInt(InventoryContract.SyncEntry.EXTRA_PULLED, sync.pulled());
+                result.putInt(InventoryContract.SyncEntry.EXTRA_CONFLICTS, sync.conflicts());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Shown by "adb shell dumpsys activity provider InventoryProvider". The arguments
+     * "metrics on", "metrics off" and "metrics reset" control the {@link ProviderMetrics}
+     * before they are written.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args != null && args.length == 2 && args[0].equals("metrics")) {
+            if (args[1].equals("on")) {
+                mMetrics.setEnabled(true);
+            } else if (args[1].equals("off")) {
+                mMetrics.setEnabled(false);
+            } else if (args[1].equals("reset")) {
+                mMetrics.reset();
+            }
+        }
+        writer.println(mProductCache);
+        mMetrics.dump(writer);
+    }
+
+    /**
+     * A write that gives up ends its transaction without success. Nested in the transaction
+     * of {@link #applyBatch}, that would make the whole batch roll back when it ends, with no
+     * error and after the results were handed out, so inside a transaction it throws instead.
+     *
+     * @return code, the answer of the write outside of a transaction
+     */
+    private static int refuse(boolean inTransaction, int code, String reason) {
+        if (inTransaction) {
+            throw new WriteRefusedException(reason);
+        }
+        return code;
+    }
+
+    //a write refused inside applyBatch, turned into an OperationApplicationException
+    private static final class WriteRefusedException extends IllegalStateException {
+        WriteRefusedException(String message) {
+            super(message);
+        }
+    }
+
+    //apply all operations in a single transaction and notify once when it commits
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        mChangeNotifier.beginBatch();
+        boolean committed = false;
+        database.beginTransaction();
+        try {
+            final int count = operations.size();
+            ContentProviderResult[] results = new ContentProviderResult[count];
+            for (int i = 0; i < count; i++) {
+                ContentProviderOperation operation = operations.get(i);
+                if (i > 0 && operation.isYieldAllowed()) {
+                    database.yieldIfContendedSafely();
+                }
+                try {
+                    results[i] = operation.apply(this, results, i);
+                } catch (WriteRefusedException e) {
+                    throw new OperationApplicationException("Operation " + i + ": " + e.getMessage());
+                }
+            }
+            database.setTransactionSuccessful();
+            committed = true;
+            return results;
+        } finally {
+            database.endTransaction();
+            //the operations dropped their products before the commit, a read in between
+            //may have cached a product again
+            mProductCache.invalidateAll();
+            mChangeNotifier.endBatch(committed);
+        }
+    }
 }
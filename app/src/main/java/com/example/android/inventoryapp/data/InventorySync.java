@@ -0,0 +1,547 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.MovementEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SyncEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One sync of the products with the sync server. Every round trip pushes up to
+ * {@link #BATCH_SIZE} changed products from the outbox and pulls up to as many rows the server
+ * changed since the last sync, until neither side has more. Only changed rows travel; the
+ * first sync of a database pushes every product once because the migration queued them all.
+ * <p>
+ * The request is
+ * <pre>
+ * {"since": 42, "limit": 500, "changes": [row with "base", ...]}
+ * </pre>
+ * where base is the version the local change started from, 0 for a new product. The server
+ * accepts a change whose base is its current version of the row and answers
+ * <pre>
+ * {"accepted": [{"id": "...", "version": 8}, ...], "conflicts": [row, ...],
+ *  "changes": [row, ...], "cursor": 57, "more": false}
+ * </pre>
+ * with its own row for every change it refused, the rows it changed after since in the order
+ * of its feed and the position after the last of them. A row holds "id", "version",
+ * "updated_at" and "deleted", and unless deleted "name", "price", "quantity", "supplier",
+ * "phone" and "sku".
+ * <p>
+ * A product changed on both sides keeps the name, price, supplier and sku of the newer change
+ * and the quantity of the server plus the local change since base, so sales on two devices add
+ * up. A delete and an edit are decided by which came last. The merged row goes back into the
+ * outbox against the version of the server.
+ * <p>
+ * Run it on a background thread. It commits once per round trip and holds no transaction
+ * while it waits for the server.
+ */
+final class InventorySync {
+
+    /**
+     * Rows sent and asked for per round trip
+     */
+    static final int BATCH_SIZE = 500;
+
+    //the oldest pending change of every product in the outbox, in the order they were made.
+    //Walks the outbox in Seq order and stops at the limit.
+    private static final String SQL_SELECT_OUTBOX = "SELECT o."
+            + InventoryEntry.COLUMN_SYNC_ID + ", o."
+            + SyncEntry.COLUMN_BASE_VERSION + " FROM "
+            + SyncEntry.OUTBOX_TABLE_NAME + " o WHERE o."
+            + SyncEntry.COLUMN_SEQUENCE + " = (SELECT MIN("
+            + SyncEntry.COLUMN_SEQUENCE + ") FROM "
+            + SyncEntry.OUTBOX_TABLE_NAME + " WHERE "
+            + InventoryEntry.COLUMN_SYNC_ID + " = o."
+            + InventoryEntry.COLUMN_SYNC_ID + ") ORDER BY o."
+            + SyncEntry.COLUMN_SEQUENCE + " LIMIT " + BATCH_SIZE;
+
+    private static final String SQL_SELECT_PENDING = "SELECT "
+            + SyncEntry.COLUMN_BASE_VERSION + ", "
+            + SyncEntry.COLUMN_BASE_QUANTITY + " FROM "
+            + SyncEntry.OUTBOX_TABLE_NAME + " WHERE "
+            + InventoryEntry.COLUMN_SYNC_ID + " = ? ORDER BY "
+            + SyncEntry.COLUMN_SEQUENCE + " LIMIT 1";
+
+    private static final String SQL_SELECT_PRODUCT = "SELECT "
+            + InventoryEntry._ID + ", "
+            + InventoryEntry.COLUMN_VERSION + ", "
+            + InventoryEntry.COLUMN_UPDATED_AT + ", "
+            + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+            + InventoryEntry.COLUMN_PRICE + ", "
+            + InventoryEntry.COLUMN_QUANTITY + ", "
+            + InventoryEntry.COLUMN_SUPPLIER_NAME + ", "
+            + InventoryEntry.COLUMN_SUPPLIER_PHOHE + ", "
+            + InventoryEntry.COLUMN_SKU + " FROM "
+            + InventoryEntry.VIEW_NAME + " WHERE "
+            + InventoryEntry.COLUMN_SYNC_ID + " = ?";
+
+    private static final String SQL_SELECT_TOMBSTONE = "SELECT "
+            + InventoryEntry.COLUMN_VERSION + ", "
+            + InventoryEntry.COLUMN_UPDATED_AT + " FROM "
+            + SyncEntry.TOMBSTONE_TABLE_NAME + " WHERE "
+            + InventoryEntry.COLUMN_SYNC_ID + " = ?";
+
+    private static final String WHERE_SYNC_ID = InventoryEntry.COLUMN_SYNC_ID + " = ?";
+
+    private final SQLiteDatabase mDatabase;
+    private final SyncTransport mTransport;
+    private final SyncLedger mLedger;
+
+    //supplier lookups of the round trip being applied
+    private SupplierLookup mSuppliers;
+
+    private int mPushed;
+    private int mPulled;
+    private int mConflicts;
+    private boolean mChangedLocally;
+    private boolean mSuppliersChanged;
+
+    InventorySync(SQLiteDatabase database, SyncTransport transport, SyncLedger ledger) {
+        mDatabase = database;
+        mTransport = transport;
+        mLedger = ledger;
+    }
+
+    /**
+     * Pushes and pulls until both sides are up to date. The round trips before a failure
+     * stay committed and are counted.
+     *
+     * @throws IOException if the server could not be reached or gave no valid answer
+     */
+    void run() throws IOException {
+        try {
+            while (true) {
+                Push push = readOutbox();
+                JSONObject request = new JSONObject();
+                request.put("since", push.since);
+                request.put("limit", BATCH_SIZE);
+                request.put("changes", push.changes);
+                JSONObject response = mTransport.exchange(request);
+                boolean settled = apply(push, response);
+                //a push the server neither took nor refused is not sent again in this sync
+                if (!response.optBoolean("more") && (!settled || DatabaseUtils.queryNumEntries(
+                        mDatabase, SyncEntry.OUTBOX_TABLE_NAME) == 0)) {
+                    return;
+                }
+            }
+        } catch (JSONException e) {
+            throw new IOException("Malformed sync data", e);
+        }
+    }
+
+    /**
+     * @return the number of local changes the server accepted
+     */
+    int pushed() {
+        return mPushed;
+    }
+
+    /**
+     * @return the number of changes of the server written to the local products
+     */
+    int pulled() {
+        return mPulled;
+    }
+
+    /**
+     * @return the number of products changed on both sides that were merged
+     */
+    int conflicts() {
+        return mConflicts;
+    }
+
+    /**
+     * @return true if a local product was added, changed or deleted
+     */
+    boolean changedLocally() {
+        return mChangedLocally;
+    }
+
+    /**
+     * @return true if a supplier was added or got a new phone
+     */
+    boolean suppliersChanged() {
+        return mSuppliersChanged;
+    }
+
+    /**
+     * The changes of one round trip, read in one transaction so they match the outbox
+     */
+    private static final class Push {
+        final Map<String, SyncRow> rows = new HashMap<>();
+        final JSONArray changes = new JSONArray();
+        //highest Seq the rows include, later changes stay in the outbox
+        long watermark;
+        long since;
+    }
+
+    private Push readOutbox() throws JSONException {
+        Push push = new Push();
+        mDatabase.beginTransactionNonExclusive();
+        try {
+            push.since = DatabaseUtils.longForQuery(mDatabase, "SELECT "
+                    + SyncEntry.COLUMN_PULL_CURSOR + " FROM " + SyncEntry.STATE_TABLE_NAME
+                    + " WHERE " + SyncEntry._ID + " = 1", null);
+            push.watermark = DatabaseUtils.longForQuery(mDatabase, "SELECT IFNULL(MAX("
+                    + SyncEntry.COLUMN_SEQUENCE + "), 0) FROM " + SyncEntry.OUTBOX_TABLE_NAME, null);
+            Cursor cursor = mDatabase.rawQuery(SQL_SELECT_OUTBOX, null);
+            try {
+                while (cursor.moveToNext()) {
+                    String id = cursor.getString(0);
+                    long base = cursor.getLong(1);
+                    SyncRow row = readLocal(id);
+                    if (row == null) {
+                        row = SyncRow.deleted(id, base + 1, 0);
+                    }
+                    push.rows.put(id, row);
+                    push.changes.put(row.toJson().put("base", base));
+                }
+            } finally {
+                cursor.close();
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        return push;
+    }
+
+    /**
+     * Writes the answer to one push in one transaction
+     *
+     * @return true if the server accepted or refused any pushed row
+     */
+    private boolean apply(Push push, JSONObject response) throws JSONException {
+        JSONArray accepted = optArray(response, "accepted");
+        JSONArray conflicts = optArray(response, "conflicts");
+        JSONArray changes = optArray(response, "changes");
+        mSuppliers = new SupplierLookup(mDatabase);
+        mDatabase.beginTransaction();
+        try {
+            setApplying(true);
+            for (int i = 0; i < accepted.length(); i++) {
+                JSONObject row = accepted.getJSONObject(i);
+                accept(push, row.getString("id"), row.getLong("version"));
+            }
+            for (int i = 0; i < conflicts.length(); i++) {
+                applyRemote(SyncRow.fromJson(conflicts.getJSONObject(i)));
+            }
+            for (int i = 0; i < changes.length(); i++) {
+                if (applyRemote(SyncRow.fromJson(changes.getJSONObject(i)))) {
+                    mPulled++;
+                }
+            }
+            ContentValues state = new ContentValues();
+            state.put(SyncEntry.COLUMN_PULL_CURSOR, response.optLong("cursor", push.since));
+            state.put(SyncEntry.COLUMN_APPLYING, 0);
+            mDatabase.update(SyncEntry.STATE_TABLE_NAME, state, SyncEntry._ID + " = 1", null);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+            mSuppliersChanged |= mSuppliers.suppliersChanged();
+            mSuppliers.close();
+            mSuppliers = null;
+        }
+        return accepted.length() + conflicts.length() != 0;
+    }
+
+    /**
+     * The server took the pushed row as the given version. Changes made after it was read
+     * stay in the outbox, now based on what the server has.
+     */
+    private void accept(Push push, String id, long version) {
+        SyncRow pushed = push.rows.get(id);
+        if (pushed == null) {
+            return;
+        }
+        mPushed++;
+        String[] idArg = {id};
+        mDatabase.delete(SyncEntry.OUTBOX_TABLE_NAME, WHERE_SYNC_ID + " AND "
+                + SyncEntry.COLUMN_SEQUENCE + " <= ?", new String[]{id, Long.toString(push.watermark)});
+        if (DatabaseUtils.queryNumEntries(mDatabase, SyncEntry.OUTBOX_TABLE_NAME, WHERE_SYNC_ID, idArg) == 0) {
+            ContentValues values = new ContentValues();
+            values.put(InventoryEntry.COLUMN_VERSION, version);
+            mDatabase.update(InventoryEntry.TABLE_NAME, values, WHERE_SYNC_ID, idArg);
+            mDatabase.delete(SyncEntry.TOMBSTONE_TABLE_NAME, WHERE_SYNC_ID, idArg);
+        } else {
+            ContentValues base = new ContentValues();
+            base.put(SyncEntry.COLUMN_BASE_VERSION, version);
+            base.put(SyncEntry.COLUMN_BASE_QUANTITY, pushed.quantity);
+            mDatabase.update(SyncEntry.OUTBOX_TABLE_NAME, base, WHERE_SYNC_ID, idArg);
+        }
+    }
+
+    /**
+     * Brings a row of the server into the local products, merging it with a local change
+     * that the server has not seen yet.
+     *
+     * @return true if the local products changed
+     */
+    private boolean applyRemote(SyncRow remote) {
+        SyncRow local = readLocal(remote.id);
+        String[] idArg = {remote.id};
+        Cursor pending = mDatabase.rawQuery(SQL_SELECT_PENDING, idArg);
+        long baseVersion;
+        int baseQuantity;
+        try {
+            if (!pending.moveToFirst()) {
+                //nothing local to keep, unless it is the row we pushed
+                if (local == null ? remote.deleted : local.version == remote.version) {
+                    return false;
+                }
+                write(local, remote);
+                return true;
+            }
+            baseVersion = pending.getLong(0);
+            baseQuantity = pending.getInt(1);
+        } finally {
+            pending.close();
+        }
+        if (remote.version == baseVersion) {
+            //the server has not changed the row since the local change started, the push wins
+            return false;
+        }
+
+        mConflicts++;
+        if (local == null) {
+            local = SyncRow.deleted(remote.id, baseVersion + 1, 0);
+        }
+        SyncRow merged = resolve(local, baseQuantity, remote);
+        write(local, merged);
+        mDatabase.delete(SyncEntry.OUTBOX_TABLE_NAME, WHERE_SYNC_ID, idArg);
+        if (merged.sameValues(remote)) {
+            mDatabase.delete(SyncEntry.TOMBSTONE_TABLE_NAME, WHERE_SYNC_ID, idArg);
+        } else {
+            ContentValues change = new ContentValues();
+            change.put(InventoryEntry.COLUMN_SYNC_ID, remote.id);
+            change.put(SyncEntry.COLUMN_BASE_VERSION, remote.version);
+            change.put(SyncEntry.COLUMN_BASE_QUANTITY, remote.quantity);
+            mDatabase.insert(SyncEntry.OUTBOX_TABLE_NAME, null, change);
+        }
+        return true;
+    }
+
+    /**
+     * Merges a product changed both locally and on the server.
+     *
+     * @param baseQuantity the local quantity before the first change the server has not seen
+     * @return the merged row with the version of the server
+     */
+    static SyncRow resolve(SyncRow local, int baseQuantity, SyncRow remote) {
+        //ties go to the server, so every device picks the same side
+        SyncRow newer = local.updatedAt > remote.updatedAt ? local : remote;
+        SyncRow merged = newer.copy();
+        merged.version = remote.version;
+        if (!local.deleted && !remote.deleted) {
+            merged.quantity = Math.max(0, remote.quantity + local.quantity - baseQuantity);
+        }
+        return merged;
+    }
+
+    /**
+     * Makes the local product look like row. Triggers are off, so this is not sent back.
+     */
+    private void write(SyncRow local, SyncRow row) {
+        String[] idArg = {row.id};
+        boolean exists = local != null && !local.deleted;
+        if (row.deleted) {
+            if (exists) {
+                mDatabase.delete(InventoryEntry.TABLE_NAME, WHERE_SYNC_ID, idArg);
+                mChangedLocally = true;
+            }
+            return;
+        }
+        if (row.sku != null) {
+            releaseSku(row.sku, row.id);
+        }
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, row.name);
+        values.put(InventoryEntry.COLUMN_PRICE, row.price);
+        values.put(InventoryEntry.COLUMN_QUANTITY, row.quantity);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_ID, mSuppliers.idOf(row.supplier, row.phone));
+        values.put(InventoryEntry.COLUMN_SKU, row.sku);
+        values.put(InventoryEntry.COLUMN_VERSION, row.version);
+        values.put(InventoryEntry.COLUMN_UPDATED_AT, row.updatedAt);
+        long now = System.currentTimeMillis();
+        if (exists) {
+            mDatabase.update(InventoryEntry.TABLE_NAME, values, WHERE_SYNC_ID, idArg);
+            if (row.quantity != local.quantity) {
+                mLedger.record(local.localId, row.quantity - local.quantity,
+                        MovementEntry.REASON_CORRECTION, now);
+            }
+        } else {
+            values.put(InventoryEntry.COLUMN_SYNC_ID, row.id);
+            long productId = mDatabase.insertOrThrow(InventoryEntry.TABLE_NAME, null, values);
+            if (row.quantity != 0) {
+                mLedger.record(productId, row.quantity, MovementEntry.REASON_RESTOCK, now);
+            }
+            mDatabase.delete(SyncEntry.TOMBSTONE_TABLE_NAME, WHERE_SYNC_ID, idArg);
+        }
+        mChangedLocally = true;
+    }
+
+    /**
+     * The sku moved to another product on some device. The local product that still has it
+     * gives it up as a local change, so the server hears about it.
+     */
+    private void releaseSku(String sku, String id) {
+        String selection = InventoryEntry.COLUMN_SKU + " = ? AND " + InventoryEntry.COLUMN_SYNC_ID + " IS NOT ?";
+        String[] selectionArgs = {sku, id};
+        if (DatabaseUtils.queryNumEntries(mDatabase, InventoryEntry.TABLE_NAME, selection, selectionArgs) == 0) {
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.putNull(InventoryEntry.COLUMN_SKU);
+        setApplying(false);
+        mDatabase.update(InventoryEntry.TABLE_NAME, values, selection, selectionArgs);
+        setApplying(true);
+    }
+
+    //turns the sync triggers off while the changes of the server are written
+    private void setApplying(boolean applying) {
+        ContentValues state = new ContentValues();
+        state.put(SyncEntry.COLUMN_APPLYING, applying ? 1 : 0);
+        mDatabase.update(SyncEntry.STATE_TABLE_NAME, state, SyncEntry._ID + " = 1", null);
+    }
+
+    /**
+     * @return the local product with the given sync id, its tombstone, or null if there is neither
+     */
+    private SyncRow readLocal(String id) {
+        String[] idArg = {id};
+        Cursor cursor = mDatabase.rawQuery(SQL_SELECT_PRODUCT, idArg);
+        try {
+            if (cursor.moveToFirst()) {
+                SyncRow row = new SyncRow();
+                row.id = id;
+                row.localId = cursor.getLong(0);
+                row.version = cursor.getLong(1);
+                row.updatedAt = cursor.getLong(2);
+                row.name = cursor.getString(3);
+                row.price = cursor.getInt(4);
+                row.quantity = cursor.getInt(5);
+                row.supplier = cursor.getString(6);
+                row.phone = cursor.getString(7);
+                row.sku = cursor.getString(8);
+                return row;
+            }
+        } finally {
+            cursor.close();
+        }
+        cursor = mDatabase.rawQuery(SQL_SELECT_TOMBSTONE, idArg);
+        try {
+            return cursor.moveToFirst() ? SyncRow.deleted(id, cursor.getLong(0), cursor.getLong(1)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static JSONArray optArray(JSONObject object, String name) {
+        JSONArray array = object.optJSONArray(name);
+        return array == null ? new JSONArray() : array;
+    }
+
+    /**
+     * A product as the server sees it
+     */
+    static final class SyncRow {
+        String id;
+        long version;
+        long updatedAt;
+        boolean deleted;
+        String name;
+        int price;
+        int quantity;
+        String supplier;
+        String phone;
+        String sku;
+        //_id of the local product, -1 if it is not a local product
+        long localId = -1;
+
+        static SyncRow deleted(String id, long version, long updatedAt) {
+            SyncRow row = new SyncRow();
+            row.id = id;
+            row.version = version;
+            row.updatedAt = updatedAt;
+            row.deleted = true;
+            return row;
+        }
+
+        static SyncRow fromJson(JSONObject json) throws JSONException {
+            SyncRow row = new SyncRow();
+            row.id = json.getString("id");
+            row.version = json.getLong("version");
+            row.updatedAt = json.optLong("updated_at");
+            row.deleted = json.optBoolean("deleted");
+            if (!row.deleted) {
+                row.name = json.getString("name");
+                row.price = json.optInt("price");
+                row.quantity = json.optInt("quantity");
+                row.supplier = json.getString("supplier");
+                row.phone = json.isNull("phone") ? null : json.getString("phone");
+                row.sku = json.isNull("sku") ? null : json.getString("sku");
+            }
+            return row;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("id", id);
+            json.put("version", version);
+            json.put("updated_at", updatedAt);
+            json.put("deleted", deleted);
+            if (!deleted) {
+                json.put("name", name);
+                json.put("price", price);
+                json.put("quantity", quantity);
+                json.put("supplier", supplier);
+                json.put("phone", phone == null ? JSONObject.NULL : phone);
+                json.put("sku", sku == null ? JSONObject.NULL : sku);
+            }
+            return json;
+        }
+
+        SyncRow copy() {
+            SyncRow row = new SyncRow();
+            row.id = id;
+            row.version = version;
+            row.updatedAt = updatedAt;
+            row.deleted = deleted;
+            row.name = name;
+            row.price = price;
+            row.quantity = quantity;
+            row.supplier = supplier;
+            row.phone = phone;
+            row.sku = sku;
+            row.localId = localId;
+            return row;
+        }
+
+        /**
+         * @return true if both rows hold the same product, whatever their versions
+         */
+        boolean sameValues(SyncRow other) {
+            if (deleted || other.deleted) {
+                return deleted == other.deleted;
+            }
+            return name.equals(other.name) && price == other.price && quantity == other.quantity
+                    && supplier.equals(other.supplier) && equal(phone, other.phone)
+                    && equal(sku, other.sku);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+/**
+ * An immutable copy of one product with its supplier, as held by {@link ProductCache}.
+ */
+public final class Product {
+
+    //every column of the products view that the screens read
+    static final String[] COLUMNS = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRICE,
+            InventoryEntry.COLUMN_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_PHOHE,
+            InventoryEntry.COLUMN_SKU,
+            InventoryEntry.COLUMN_LOCAL_VERSION
+    };
+
+    public final long id;
+    public final String name;
+    public final int price;
+    public final int quantity;
+    public final String supplierName;
+    //null if the supplier has no phone
+    public final String supplierPhone;
+    //null if the product has no sku
+    public final String sku;
+    //what a conditional update of the product expects, see InventoryEntry#buildVersionedUri
+    public final long version;
+
+    public Product(long id, String name, int price, int quantity, String supplierName,
+                   String supplierPhone, String sku, long version) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+        this.quantity = quantity;
+        this.supplierName = supplierName;
+        this.supplierPhone = supplierPhone;
+        this.sku = sku;
+        this.version = version;
+    }
+
+    /**
+     * Reads the current row of a cursor queried with {@link #COLUMNS}.
+     */
+    static Product fromCursor(Cursor cursor) {
+        return new Product(cursor.getLong(0), cursor.getString(1), cursor.getInt(2),
+                cursor.getInt(3), cursor.getString(4), cursor.getString(5), cursor.getString(6),
+                cursor.getLong(7));
+    }
+
+    /**
+     * @return true if every column of projection is one of {@link #COLUMNS}, so the
+     * product can answer a query for it
+     */
+    static boolean covers(String[] projection) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (columnIndex(column) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a one row cursor with the columns of projection, or all columns if it is null
+     */
+    Cursor toCursor(String[] projection) {
+        String[] columns = projection == null ? COLUMNS : projection;
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            row[i] = value(columnIndex(columns[i]));
+        }
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    private Object value(int columnIndex) {
+        switch (columnIndex) {
+            case 0:
+                return id;
+            case 1:
+                return name;
+            case 2:
+                return price;
+            case 3:
+                return quantity;
+            case 4:
+                return supplierName;
+            case 5:
+                return supplierPhone;
+            case 6:
+                return sku;
+            default:
+                return version;
+        }
+    }
+
+    private static int columnIndex(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.inventoryapp.data;
+
+import android.util.LruCache;
+
+/**
+ * Keeps the most recently opened products in memory so going back and forth between the
+ * list and a product does not read the same row again.
+ * <p>
+ * A load that overlapped a write is not cached: {@link #beginLoad} returns a token that
+ * {@link #put} checks against the writes seen since.
+ */
+public class ProductCache {
+
+    private final LruCache<Long, Product> mProducts;
+
+    //guarded by this, counts invalidations so loads that raced a write can be dropped
+    private long mInvalidations;
+
+    public ProductCache(int maxProducts) {
+        mProducts = new LruCache<>(maxProducts);
+    }
+
+    /**
+     * @return the cached product, or null. Counts as a hit or a miss.
+     */
+    public Product get(long id) {
+        return mProducts.get(id);
+    }
+
+    /**
+     * Call before reading a product from the database
+     *
+     * @return the token to pass to {@link #put}
+     */
+    public synchronized long beginLoad() {
+        return mInvalidations;
+    }
+
+    /**
+     * Caches a product read after {@link #beginLoad}, unless a write may have changed it since
+     */
+    public synchronized void put(Product product, long token) {
+        if (token == mInvalidations) {
+            mProducts.put(product.id, product);
+        }
+    }
+
+    /**
+     * The product with the given _id changed or is gone
+     */
+    public synchronized void invalidate(long id) {
+        mInvalidations++;
+        mProducts.remove(id);
+    }
+
+    /**
+     * Any product may have changed
+     */
+    public synchronized void invalidateAll() {
+        mInvalidations++;
+        //remove instead of evictAll so the eviction count only shows products pushed out by size
+        for (Long id : mProducts.snapshot().keySet()) {
+            mProducts.remove(id);
+        }
+    }
+
+    public int hitCount() {
+        return mProducts.hitCount();
+    }
+
+    public int missCount() {
+        return mProducts.missCount();
+    }
+
+    public int evictionCount() {
+        return mProducts.evictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return "ProductCache[size=" + mProducts.size() + "/" + mProducts.maxSize()
+                + ", hits=" + hitCount() + ", misses=" + missCount()
+                + ", evictions=" + evictionCount() + "]";
+    }
+}
@@ -0,0 +1,404 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import com.example.android.inventoryapp.data.InventoryContract.ColumnsEntry;
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One chunk of products read by {@link ColumnsEntry#METHOD_READ_COLUMNS}, held as one array
+ * per column instead of rows. Text columns are indexes into a table of the distinct strings of
+ * the chunk, so a supplier name shared by a thousand products is sent once.
+ */
+public final class ProductColumns {
+
+    private static final String LOG_TAG = ProductColumns.class.getSimpleName();
+
+    //columns read as int[]
+    static final String[] INT_COLUMNS = {
+            InventoryEntry.COLUMN_PRICE,
+            InventoryEntry.COLUMN_QUANTITY
+    };
+
+    //columns read as indexes into the string table
+    static final String[] STRING_COLUMNS = {
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SUPPLIER_PHOHE,
+            InventoryEntry.COLUMN_SKU
+    };
+
+    //a larger chunk goes through a file, Binder transactions of a process share 1 MB
+    static final int MAX_INLINE_BYTES = 256 * 1024;
+
+    //what a pipe holds before a write blocks until the other end reads, 64 KB on Linux
+    private static final int PIPE_BUFFER_BYTES = 64 * 1024;
+
+    //only the size of a chunk is read before the arrays, so a bad file fails early
+    private static final int MAX_FILE_ROWS = ColumnsEntry.MAX_LIMIT;
+
+    private final long[] mIds;
+    private final Map<String, int[]> mColumns;
+    private final String[] mStrings;
+    //-1 for the last chunk
+    private final long mNext;
+
+    private ProductColumns(long[] ids, Map<String, int[]> columns, String[] strings, long next) {
+        mIds = ids;
+        mColumns = columns;
+        mStrings = strings;
+        mNext = next;
+    }
+
+    public int size() {
+        return mIds.length;
+    }
+
+    public long[] ids() {
+        return mIds;
+    }
+
+    /**
+     * @return the values of an integer column, e.g. {@link InventoryEntry#COLUMN_PRICE}
+     */
+    public int[] ints(String column) {
+        if (!Arrays.asList(INT_COLUMNS).contains(column)) {
+            throw new IllegalArgumentException(column + " is not an integer column");
+        }
+        return values(column);
+    }
+
+    /**
+     * @return the value of a text column in the given row, may be null
+     */
+    public String string(String column, int row) {
+        if (!Arrays.asList(STRING_COLUMNS).contains(column)) {
+            throw new IllegalArgumentException(column + " is not a text column");
+        }
+        int index = values(column)[row];
+        return index == -1 ? null : mStrings[index];
+    }
+
+    public boolean hasMore() {
+        return mNext != -1;
+    }
+
+    /**
+     * @return the continuation token for the next chunk, see {@link ColumnsEntry#EXTRA_AFTER}
+     */
+    public long next() {
+        return mNext;
+    }
+
+    private int[] values(String column) {
+        int[] values = mColumns.get(column);
+        if (values == null) {
+            throw new IllegalArgumentException(column + " was not read");
+        }
+        return values;
+    }
+
+    /**
+     * Reads the result of {@link ColumnsEntry#METHOD_READ_COLUMNS}, closing its file if it has one
+     */
+    public static ProductColumns from(Bundle result) throws IOException {
+        long next = result.getLong(ColumnsEntry.EXTRA_NEXT, -1);
+        ParcelFileDescriptor file = result.getParcelable(ColumnsEntry.EXTRA_FILE);
+        if (file != null) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new ParcelFileDescriptor.AutoCloseInputStream(file), 64 * 1024));
+            try {
+                return readFrom(in, next);
+            } finally {
+                in.close();
+            }
+        }
+        Map<String, int[]> columns = new LinkedHashMap<>();
+        for (String column : result.getStringArray(ColumnsEntry.EXTRA_COLUMNS)) {
+            columns.put(column, result.getIntArray(column));
+        }
+        return new ProductColumns(result.getLongArray(ColumnsEntry.EXTRA_IDS), columns,
+                result.getStringArray(ColumnsEntry.EXTRA_STRINGS), next);
+    }
+
+    /**
+     * Reads at most limit products whose _id is greater than after, in _id order
+     *
+     * @param columns the columns to read, all of them if null
+     */
+    static ProductColumns read(SQLiteDatabase database, String[] columns, long after, int limit) {
+        if (columns == null) {
+            columns = new String[INT_COLUMNS.length + STRING_COLUMNS.length];
+            System.arraycopy(INT_COLUMNS, 0, columns, 0, INT_COLUMNS.length);
+            System.arraycopy(STRING_COLUMNS, 0, columns, INT_COLUMNS.length, STRING_COLUMNS.length);
+        }
+        String[] projection = new String[columns.length + 1];
+        projection[0] = InventoryEntry._ID;
+        for (int i = 0; i < columns.length; i++) {
+            if (!Arrays.asList(INT_COLUMNS).contains(columns[i])
+                    && !Arrays.asList(STRING_COLUMNS).contains(columns[i])) {
+                throw new IllegalArgumentException("Cannot read column " + columns[i]);
+            }
+            projection[i + 1] = columns[i];
+        }
+
+        //one row more than asked tells if there is a next chunk
+        Cursor cursor = database.query(InventoryEntry.VIEW_NAME, projection,
+                InventoryEntry._ID + " > ?", new String[]{Long.toString(after)},
+                null, null, InventoryEntry._ID, Integer.toString(limit + 1));
+        try {
+            int rows = Math.min(cursor.getCount(), limit);
+            long[] ids = new long[rows];
+            int[][] values = new int[columns.length][rows];
+            boolean[] text = new boolean[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                text[i] = Arrays.asList(STRING_COLUMNS).contains(columns[i]);
+            }
+            Map<String, Integer> indexes = new HashMap<>();
+            List<String> strings = new ArrayList<>();
+            for (int row = 0; row < rows && cursor.moveToNext(); row++) {
+                ids[row] = cursor.getLong(0);
+                for (int i = 0; i < columns.length; i++) {
+                    if (!text[i]) {
+                        values[i][row] = cursor.getInt(i + 1);
+                        continue;
+                    }
+                    String value = cursor.getString(i + 1);
+                    if (value == null) {
+                        values[i][row] = -1;
+                        continue;
+                    }
+                    Integer index = indexes.get(value);
+                    if (index == null) {
+                        index = strings.size();
+                        indexes.put(value, index);
+                        strings.add(value);
+                    }
+                    values[i][row] = index;
+                }
+            }
+
+            Map<String, int[]> byColumn = new LinkedHashMap<>();
+            for (int i = 0; i < columns.length; i++) {
+                byColumn.put(columns[i], values[i]);
+            }
+            long next = cursor.getCount() > limit ? ids[rows - 1] : -1;
+            return new ProductColumns(ids, byColumn, strings.toArray(new String[strings.size()]), next);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @param directory   where a chunk too large for the bundle is written for a caller in this
+     *                    process. The file is deleted as soon as it is open, only the descriptor
+     *                    the caller closes keeps it.
+     * @param sameProcess false if the bundle is parceled to another process, which gets a
+     *                    large chunk through a pipe instead, see {@link #writePipe}
+     */
+    Bundle toBundle(File directory, boolean sameProcess) throws IOException {
+        Bundle result = new Bundle();
+        if (mNext != -1) {
+            result.putLong(ColumnsEntry.EXTRA_NEXT, mNext);
+        }
+        if (estimatedBytes() > MAX_INLINE_BYTES) {
+            result.putParcelable(ColumnsEntry.EXTRA_FILE,
+                    sameProcess ? writeFile(directory) : writePipe());
+            return result;
+        }
+        result.putLongArray(ColumnsEntry.EXTRA_IDS, mIds);
+        result.putStringArray(ColumnsEntry.EXTRA_COLUMNS,
+                mColumns.keySet().toArray(new String[mColumns.size()]));
+        for (Map.Entry<String, int[]> column : mColumns.entrySet()) {
+            result.putIntArray(column.getKey(), column.getValue());
+        }
+        result.putStringArray(ColumnsEntry.EXTRA_STRINGS, mStrings);
+        return result;
+    }
+
+    //what the arrays take in a parcel, strings are written as UTF-16
+    private long estimatedBytes() {
+        long bytes = 8L * mIds.length + 4L * mIds.length * mColumns.size();
+        for (String string : mStrings) {
+            bytes += 8 + 2 * string.length();
+        }
+        return bytes;
+    }
+
+    private ParcelFileDescriptor writeFile(File directory) throws IOException {
+        File file = File.createTempFile("columns", null, directory);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file), 64 * 1024));
+            try {
+                writeTo(out);
+            } finally {
+                out.close();
+            }
+            return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Returns the read end of a pipe that a background thread fills. The reply holding it is
+     * parceled after call() returned, so the provider closes its copy of the read end only
+     * once more than the pipe holds was written: that write returns only after the caller
+     * started reading through its own copy.
+     */
+    private ParcelFileDescriptor writePipe() throws IOException {
+        final ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new HandOverStream(new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1]),
+                                pipe[0]), 64 * 1024));
+                try {
+                    writeTo(out);
+                    out.close();
+                } catch (IOException e) {
+                    //the caller closed the pipe before reading all of it
+                    Log.w(LOG_TAG, "Chunk of " + size() + " products not read", e);
+                    closeQuietly(out);
+                }
+            }
+        });
+        return pipe[0];
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Counts the bytes written to a pipe and closes the provider's read end once the caller
+     * has one, or when the stream is closed.
+     */
+    private static final class HandOverStream extends FilterOutputStream {
+        private final ParcelFileDescriptor mReadEnd;
+        private long mWritten;
+        private boolean mReadEndClosed;
+
+        HandOverStream(OutputStream out, ParcelFileDescriptor readEnd) {
+            super(out);
+            mReadEnd = readEnd;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            written(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            written(len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                closeReadEnd();
+            }
+        }
+
+        private void written(int bytes) throws IOException {
+            mWritten += bytes;
+            if (mWritten > PIPE_BUFFER_BYTES) {
+                closeReadEnd();
+            }
+        }
+
+        private void closeReadEnd() throws IOException {
+            if (!mReadEndClosed) {
+                mReadEndClosed = true;
+                mReadEnd.close();
+            }
+        }
+    }
+
+    //the same arrays as the bundle: sizes first, then the values
+    private void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(mIds.length);
+        out.writeInt(mColumns.size());
+        out.writeInt(mStrings.length);
+        for (long id : mIds) {
+            out.writeLong(id);
+        }
+        for (Map.Entry<String, int[]> column : mColumns.entrySet()) {
+            out.writeUTF(column.getKey());
+            for (int value : column.getValue()) {
+                out.writeInt(value);
+            }
+        }
+        for (String string : mStrings) {
+            byte[] bytes = string.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static ProductColumns readFrom(DataInputStream in, long next) throws IOException {
+        int rows = in.readInt();
+        int columnCount = in.readInt();
+        int stringCount = in.readInt();
+        if (rows < 0 || rows > MAX_FILE_ROWS || columnCount < 0
+                || columnCount > INT_COLUMNS.length + STRING_COLUMNS.length
+                || stringCount < 0 || stringCount > rows * columnCount) {
+            throw new IOException("Not a chunk of product columns");
+        }
+        long[] ids = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            ids[i] = in.readLong();
+        }
+        Map<String, int[]> columns = new LinkedHashMap<>();
+        for (int c = 0; c < columnCount; c++) {
+            String column = in.readUTF();
+            int[] values = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                values[i] = in.readInt();
+            }
+            columns.put(column, values);
+        }
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Not a chunk of product columns");
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            strings[i] = new String(bytes, "UTF-8");
+        }
+        return new ProductColumns(ids, columns, strings, next);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.DatabaseUtils;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.ProductQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a {@link ProductQuery} into the selection and order of a query on the products
+ * table. Every sort column has an index that also orders ties by _id and covers the list
+ * columns, and every filter is a range or equality on an indexed column, so SQLite never
+ * has to scan the table or read a row of it.
+ * Pages after the first are keyset seeks on the sort column and _id.
+ */
+final class ProductQuerySql {
+
+    //sort column by ProductQuery SORT_BY_ constant
+    private static final String[] SORT_COLUMNS = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRICE,
+            InventoryEntry.COLUMN_QUANTITY
+    };
+
+    //columns a caller may pass in its own sort order
+    private static final String[] SORTABLE_COLUMNS = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRICE,
+            InventoryEntry.COLUMN_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_ID,
+            InventoryEntry.COLUMN_SUPPLIER_NAME
+    };
+
+    final String selection;
+    final String[] selectionArgs;
+    final String orderBy;
+
+    private ProductQuerySql(String selection, String[] selectionArgs, String orderBy) {
+        this.selection = selection;
+        this.selectionArgs = selectionArgs;
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * Adds the filters and the order of query to the selection of the caller.
+     *
+     * @param afterId  _id of the row in front of the page, or null for all rows
+     * @param afterKey sort value of that row, or null for the first page of a sorted list
+     */
+    static ProductQuerySql of(ProductQuery query, String selection, String[] selectionArgs,
+                              String afterId, String afterKey) {
+        List<String> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder();
+        if (query.getMinPrice() >= 0) {
+            and(where, InventoryEntry.COLUMN_PRICE + " >= ?");
+            args.add(Integer.toString(query.getMinPrice()));
+        }
+        if (query.getMaxPrice() >= 0) {
+            and(where, InventoryEntry.COLUMN_PRICE + " <= ?");
+            args.add(Integer.toString(query.getMaxPrice()));
+        }
+        if (query.isInStockOnly()) {
+            and(where, InventoryEntry.COLUMN_QUANTITY + " > 0");
+        }
+        if (query.getSupplierId() >= 0) {
+            and(where, InventoryEntry.COLUMN_SUPPLIER_ID + " = ?");
+            args.add(Long.toString(query.getSupplierId()));
+        }
+
+        String column = SORT_COLUMNS[query.getSortBy()];
+        String after = query.isDescending() ? " < ?" : " > ?";
+        if (afterId != null) {
+            long id = Long.parseLong(afterId);
+            if (query.getSortBy() == ProductQuery.SORT_BY_ID) {
+                //0 stands for the start of the list in either direction
+                if (!query.isDescending() || id > 0) {
+                    and(where, InventoryEntry._ID + after);
+                    args.add(Long.toString(id));
+                }
+            } else if (afterKey != null) {
+                //the first term bounds the index range, the second one skips the ties before afterId
+                and(where, column + (query.isDescending() ? " <= ?" : " >= ?") + " AND ("
+                        + column + after + " OR " + InventoryEntry._ID + after + ")");
+                args.add(afterKey);
+                args.add(afterKey);
+                args.add(Long.toString(id));
+            }
+        }
+
+        String direction = query.isDescending() ? " DESC" : " ASC";
+        String orderBy = query.getSortBy() == ProductQuery.SORT_BY_ID
+                ? InventoryEntry._ID + direction
+                : column + direction + ", " + InventoryEntry._ID + direction;
+        if (where.length() == 0) {
+            return new ProductQuerySql(selection, selectionArgs, orderBy);
+        }
+        return new ProductQuerySql(DatabaseUtils.concatenateWhere(selection, where.toString()),
+                DatabaseUtils.appendSelectionArgs(selectionArgs, args.toArray(new String[args.size()])),
+                orderBy);
+    }
+
+    /**
+     * @return sortOrder if it only names product columns, each optionally followed by
+     * ASC or DESC, so a caller cannot put arbitrary SQL into the query
+     * @throws IllegalArgumentException otherwise
+     */
+    static String checkSortOrder(String sortOrder, Uri uri) {
+        if (sortOrder == null) {
+            return null;
+        }
+        for (String term : sortOrder.split(",")) {
+            String[] words = term.trim().split("\\s+");
+            boolean valid = words.length <= 2 && isSortable(words[0]) && (words.length == 1
+                    || words[1].equalsIgnoreCase("ASC") || words[1].equalsIgnoreCase("DESC"));
+            if (!valid) {
+                throw new IllegalArgumentException("Unsupported sort order " + sortOrder + " for " + uri);
+            }
+        }
+        return sortOrder;
+    }
+
+    private static boolean isSortable(String column) {
+        for (String sortable : SORTABLE_COLUMNS) {
+            if (sortable.equals(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void and(StringBuilder where, String term) {
+        if (where.length() > 0) {
+            where.append(" AND ");
+        }
+        where.append(term);
+    }
+}
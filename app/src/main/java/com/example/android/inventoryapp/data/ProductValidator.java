@@ -0,0 +1,244 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SupplierEntry;
+
+/**
+ * Checks product values before they are written. Results are int codes so a check never
+ * allocates, which keeps it cheap inside bulk inserts of thousands of rows.
+ * <p>
+ * Numbers may be given as numbers or as strings of digits, the way the editor and the
+ * CSV import put them. Phones are text and may hold the usual separators and a leading +.
+ */
+public final class ProductValidator {
+
+    public static final int VALID = 0;
+    public static final int ERROR_NAME_MISSING = 1;
+    public static final int ERROR_PRICE_INVALID = 2;
+    public static final int ERROR_QUANTITY_INVALID = 3;
+    public static final int ERROR_SUPPLIER_MISSING = 4;
+    public static final int ERROR_PHONE_INVALID = 5;
+    public static final int ERROR_SKU_INVALID = 6;
+
+    private ProductValidator() {
+    }
+
+    //longest phone accepted, more than any real number with separators
+    private static final int MAX_PHONE_LENGTH = 32;
+
+    //longest sku accepted, enough for any linear barcode and most QR payloads used as one
+    private static final int MAX_SKU_LENGTH = 64;
+
+    /**
+     * Checks a new product: name and supplier, by name or _id, are required. Price and
+     * quantity may be left out but must be non-negative whole numbers if given.
+     *
+     * @return {@link #VALID} or the first error found
+     */
+    public static int validateInsert(ContentValues values) {
+        if (isBlank(values.get(InventoryEntry.COLUMN_PRODUCT_NAME))) {
+            return ERROR_NAME_MISSING;
+        }
+        if (isBlank(values.get(InventoryEntry.COLUMN_SUPPLIER_NAME))
+                && values.get(InventoryEntry.COLUMN_SUPPLIER_ID) == null) {
+            return ERROR_SUPPLIER_MISSING;
+        }
+        return validateNumbers(values);
+    }
+
+    /**
+     * Checks the values of a supplier. A new supplier needs a name, a change may leave it out.
+     *
+     * @return {@link #VALID} or the first error found
+     */
+    public static int validateSupplier(ContentValues values, boolean insert) {
+        if ((insert || values.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME))
+                && isBlank(values.get(SupplierEntry.COLUMN_SUPPLIER_NAME))) {
+            return ERROR_SUPPLIER_MISSING;
+        }
+        if (!isPhone(values.get(SupplierEntry.COLUMN_SUPPLIER_PHONE))) {
+            return ERROR_PHONE_INVALID;
+        }
+        return VALID;
+    }
+
+    /**
+     * Checks a change to existing products. Only the columns present in values are checked,
+     * but those may not be cleared.
+     *
+     * @return {@link #VALID} or the first error found
+     */
+    public static int validateUpdate(ContentValues values) {
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_NAME)
+                && isBlank(values.get(InventoryEntry.COLUMN_PRODUCT_NAME))) {
+            return ERROR_NAME_MISSING;
+        }
+        if (values.containsKey(InventoryEntry.COLUMN_SUPPLIER_NAME)
+                && isBlank(values.get(InventoryEntry.COLUMN_SUPPLIER_NAME))) {
+            return ERROR_SUPPLIER_MISSING;
+        }
+        if (values.containsKey(InventoryEntry.COLUMN_PRICE)
+                && values.get(InventoryEntry.COLUMN_PRICE) == null) {
+            return ERROR_PRICE_INVALID;
+        }
+        if (values.containsKey(InventoryEntry.COLUMN_QUANTITY)
+                && values.get(InventoryEntry.COLUMN_QUANTITY) == null) {
+            return ERROR_QUANTITY_INVALID;
+        }
+        return validateNumbers(values);
+    }
+
+    /**
+     * @return a short English description of an error code, for logs and import reports
+     */
+    public static String describe(int code) {
+        switch (code) {
+            case VALID:
+                return "valid";
+            case ERROR_NAME_MISSING:
+                return "product requires a name";
+            case ERROR_PRICE_INVALID:
+                return "price must be a whole number of at least 0";
+            case ERROR_QUANTITY_INVALID:
+                return "quantity must be a whole number of at least 0";
+            case ERROR_SUPPLIER_MISSING:
+                return "product requires a supplier";
+            case ERROR_PHONE_INVALID:
+                return "supplier phone must be digits with at most + ( ) - . and spaces";
+            case ERROR_SKU_INVALID:
+                return "sku must be text of at most " + MAX_SKU_LENGTH + " visible ASCII characters";
+            default:
+                return "unknown error " + code;
+        }
+    }
+
+    //checks the number, phone and sku columns that are present and not null
+    private static int validateNumbers(ContentValues values) {
+        if (!isNonNegative(values.get(InventoryEntry.COLUMN_PRICE), Integer.MAX_VALUE)) {
+            return ERROR_PRICE_INVALID;
+        }
+        if (!isNonNegative(values.get(InventoryEntry.COLUMN_QUANTITY), Integer.MAX_VALUE)) {
+            return ERROR_QUANTITY_INVALID;
+        }
+        if (!isPhone(values.get(InventoryEntry.COLUMN_SUPPLIER_PHOHE))) {
+            return ERROR_PHONE_INVALID;
+        }
+        if (!isSku(values.get(InventoryEntry.COLUMN_SKU))) {
+            return ERROR_SKU_INVALID;
+        }
+        return VALID;
+    }
+
+    private static boolean isBlank(Object value) {
+        if (!(value instanceof CharSequence)) {
+            return true;
+        }
+        CharSequence text = (CharSequence) value;
+        for (int i = 0; i < text.length(); i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if value is null, a non-negative number, or text of at most
+     * {@link #MAX_PHONE_LENGTH} phone characters with at least one digit
+     */
+    private static boolean isPhone(Object value) {
+        if (value == null) {
+            return true;
+        }
+        if (value instanceof Number) {
+            return isNonNegative(value, Long.MAX_VALUE);
+        }
+        if (!(value instanceof CharSequence)) {
+            return false;
+        }
+        CharSequence text = (CharSequence) value;
+        if (text.length() > MAX_PHONE_LENGTH) {
+            return false;
+        }
+        boolean hasDigit = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else if (c != ' ' && c != '-' && c != '(' && c != ')' && c != '.'
+                    && !(c == '+' && i == 0)) {
+                return false;
+            }
+        }
+        return hasDigit;
+    }
+
+    /**
+     * @return true if value is null or text of 1 to {@link #MAX_SKU_LENGTH} printable ASCII
+     * characters without spaces, which is what barcode scanners type. A number is refused
+     * because it would lose the leading zeros of a barcode.
+     */
+    private static boolean isSku(Object value) {
+        if (value == null) {
+            return true;
+        }
+        if (!(value instanceof CharSequence)) {
+            return false;
+        }
+        CharSequence text = (CharSequence) value;
+        if (text.length() == 0 || text.length() > MAX_SKU_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c <= ' ' || c > '~') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if value is null or a whole number from 0 to max
+     */
+    private static boolean isNonNegative(Object value, long max) {
+        if (value == null) {
+            return true;
+        }
+        if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            long number = ((Number) value).longValue();
+            return number >= 0 && number <= max;
+        }
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            return number >= 0 && number <= max && number == Math.floor(number);
+        }
+        if (value instanceof CharSequence) {
+            return isDigits((CharSequence) value, max);
+        }
+        return false;
+    }
+
+    //parses without allocating, callers trim the text before putting it in
+    private static boolean isDigits(CharSequence text, long max) {
+        if (text.length() == 0) {
+            return false;
+        }
+        long number = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            int digit = c - '0';
+            if (number > (max - digit) / 10) {
+                return false;
+            }
+            number = number * 10 + digit;
+        }
+        return true;
+    }
+}
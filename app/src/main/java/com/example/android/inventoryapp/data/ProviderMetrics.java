@@ -0,0 +1,273 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.AbstractWindowedCursor;
+import android.database.CrossProcessCursorWrapper;
+import android.database.Cursor;
+import android.database.CursorWindow;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Optional counters for the calls into {@link InventoryProvider}: a latency histogram per
+ * operation and uri pattern, the rows each call returned or wrote, the cursor window fills
+ * behind query results and the notifications sent for the changes.
+ * <p>
+ * Disabled by default. While disabled every hook is a single volatile read and query results
+ * are returned unwrapped, so the provider pays next to nothing for it.
+ */
+final class ProviderMetrics {
+
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int UPDATE = 2;
+    static final int DELETE = 3;
+
+    private static final String[] OPERATION_NAMES = {"query", "insert", "update", "delete"};
+
+    /**
+     * Returned by {@link #start} while disabled, nothing is recorded for it
+     */
+    static final long NOT_TIMED = -1;
+
+    //bucket i counts calls that took less than 2^i microseconds, the last one all slower calls
+    private static final int BUCKETS = 21;
+
+    private volatile boolean mEnabled;
+
+    //guarded by this, keyed by operation and uri pattern so the dump is sorted
+    private final Map<String, CallStats> mCalls = new TreeMap<>();
+    private long mFlushes;
+    private long mChangedRows;
+    private long mNotifications;
+    private int mMaxFanOut;
+
+    private static final class CallStats {
+        final long[] histogram = new long[BUCKETS];
+        long calls;
+        long totalNanos;
+        long maxNanos;
+        long rows;
+        long windowFills;
+        long windowFillNanos;
+    }
+
+    boolean isEnabled() {
+        return mEnabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    synchronized void reset() {
+        mCalls.clear();
+        mFlushes = 0;
+        mChangedRows = 0;
+        mNotifications = 0;
+        mMaxFanOut = 0;
+    }
+
+    /**
+     * @return the start time to pass to the record methods, or {@link #NOT_TIMED}
+     */
+    long start() {
+        return mEnabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * Records a call that wrote the given number of rows
+     */
+    void record(int operation, String pattern, long start, int rows) {
+        if (start == NOT_TIMED) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        synchronized (this) {
+            CallStats stats = statsLocked(operation, pattern);
+            stats.calls++;
+            stats.totalNanos += nanos;
+            stats.maxNanos = Math.max(stats.maxNanos, nanos);
+            stats.histogram[bucketOf(nanos)]++;
+            stats.rows += rows;
+        }
+    }
+
+    /**
+     * Records a query that returned cursor. SQLite only runs the query when the first window
+     * is filled, so a windowed cursor is wrapped to count its fills and the rows they read.
+     *
+     * @return the cursor to hand out
+     */
+    Cursor recordQuery(String pattern, long start, Cursor cursor) {
+        if (start == NOT_TIMED || cursor == null) {
+            return cursor;
+        }
+        if (!(cursor instanceof AbstractWindowedCursor)) {
+            //already in memory, e.g. a cached product
+            record(QUERY, pattern, start, cursor.getCount());
+            return cursor;
+        }
+        record(QUERY, pattern, start, 0);
+        return new MeteredCursor((AbstractWindowedCursor) cursor, pattern);
+    }
+
+    /**
+     * Records one flush of {@link ChangeNotifier}
+     *
+     * @param changedRows   rows whose changes the flush published
+     * @param notifications uris it notified
+     */
+    void recordFlush(int changedRows, int notifications) {
+        if (!mEnabled) {
+            return;
+        }
+        synchronized (this) {
+            mFlushes++;
+            mChangedRows += changedRows;
+            mNotifications += notifications;
+            mMaxFanOut = Math.max(mMaxFanOut, notifications);
+        }
+    }
+
+    private synchronized void recordWindowFill(String pattern, long nanos, int rows) {
+        CallStats stats = statsLocked(QUERY, pattern);
+        stats.windowFills++;
+        stats.windowFillNanos += nanos;
+        stats.rows += rows;
+    }
+
+    private CallStats statsLocked(int operation, String pattern) {
+        String key = OPERATION_NAMES[operation] + " " + pattern;
+        CallStats stats = mCalls.get(key);
+        if (stats == null) {
+            stats = new CallStats();
+            mCalls.put(key, stats);
+        }
+        return stats;
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Writes every counter, one line per operation and uri pattern followed by its
+     * non-empty latency buckets
+     */
+    synchronized void dump(PrintWriter writer) {
+        writer.println("ProviderMetrics[" + (mEnabled ? "enabled" : "disabled") + "]");
+        for (Map.Entry<String, CallStats> entry : mCalls.entrySet()) {
+            CallStats stats = entry.getValue();
+            writer.print("  " + entry.getKey() + ": calls=" + stats.calls
+                    + " meanUs=" + (stats.calls == 0 ? 0 : stats.totalNanos / stats.calls / 1000)
+                    + " maxUs=" + stats.maxNanos / 1000
+                    + " rows=" + stats.rows);
+            if (stats.windowFills != 0) {
+                writer.print(" windowFills=" + stats.windowFills
+                        + " fillMeanUs=" + stats.windowFillNanos / stats.windowFills / 1000);
+            }
+            writer.println();
+            writer.print("    latency");
+            for (int i = 0; i < BUCKETS; i++) {
+                if (stats.histogram[i] != 0) {
+                    writer.print(i == BUCKETS - 1 ? " slower=" : " <" + (1L << i) + "us=");
+                    writer.print(stats.histogram[i]);
+                }
+            }
+            writer.println();
+        }
+        writer.println("  notifications: flushes=" + mFlushes + " changedRows=" + mChangedRows
+                + " sent=" + mNotifications + " maxFanOut=" + mMaxFanOut);
+    }
+
+    /**
+     * Counts the window fills of a query result. In process every move may fill the window,
+     * across processes the caller asks for fills through {@link #fillWindow}.
+     */
+    private final class MeteredCursor extends CrossProcessCursorWrapper {
+        private final AbstractWindowedCursor mWindowedCursor;
+        private final String mPattern;
+        //the window contents last seen, to tell when a move filled it again
+        private int mWindowStart = -1;
+        private int mWindowRows = -1;
+
+        MeteredCursor(AbstractWindowedCursor cursor, String pattern) {
+            super(cursor);
+            mWindowedCursor = cursor;
+            mPattern = pattern;
+        }
+
+        @Override
+        public void fillWindow(int position, CursorWindow window) {
+            long start = System.nanoTime();
+            super.fillWindow(position, window);
+            recordWindowFill(mPattern, System.nanoTime() - start, window.getNumRows());
+        }
+
+        @Override
+        public int getCount() {
+            long start = System.nanoTime();
+            int count = super.getCount();
+            checkWindow(start);
+            return count;
+        }
+
+        @Override
+        public boolean move(int offset) {
+            long start = System.nanoTime();
+            return checkWindow(start, super.move(offset));
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            long start = System.nanoTime();
+            return checkWindow(start, super.moveToPosition(position));
+        }
+
+        @Override
+        public boolean moveToFirst() {
+            long start = System.nanoTime();
+            return checkWindow(start, super.moveToFirst());
+        }
+
+        @Override
+        public boolean moveToLast() {
+            long start = System.nanoTime();
+            return checkWindow(start, super.moveToLast());
+        }
+
+        @Override
+        public boolean moveToNext() {
+            long start = System.nanoTime();
+            return checkWindow(start, super.moveToNext());
+        }
+
+        @Override
+        public boolean moveToPrevious() {
+            long start = System.nanoTime();
+            return checkWindow(start, super.moveToPrevious());
+        }
+
+        private boolean checkWindow(long start, boolean moved) {
+            checkWindow(start);
+            return moved;
+        }
+
+        private void checkWindow(long start) {
+            CursorWindow window = mWindowedCursor.getWindow();
+            if (window == null) {
+                return;
+            }
+            int windowStart = window.getStartPosition();
+            int windowRows = window.getNumRows();
+            if (windowStart != mWindowStart || windowRows != mWindowRows) {
+                mWindowStart = windowStart;
+                mWindowRows = windowRows;
+                recordWindowFill(mPattern, System.nanoTime() - start, windowRows);
+            }
+        }
+    }
+}
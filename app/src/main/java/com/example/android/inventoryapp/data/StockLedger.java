@@ -0,0 +1,182 @@
+package com.example.android.inventoryapp.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.MovementEntry;
+
+/**
+ * Writes the stock movement ledger together with the quantities it explains. Every method
+ * has to run inside the write transaction that changes the quantity, so the quantity and
+ * its movements commit or roll back together.
+ */
+final class StockLedger {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    //changes the quantity in place, refusing any change that would make it negative
+    private static final String SQL_ADJUST_QUANTITY = "UPDATE "
+            + InventoryEntry.TABLE_NAME + " SET "
+            + InventoryEntry.COLUMN_QUANTITY + " = "
+            + InventoryEntry.COLUMN_QUANTITY + " + ? WHERE "
+            + InventoryEntry._ID + " = ? AND "
+            + InventoryEntry.COLUMN_QUANTITY + " + ? >= 0";
+
+    private static final String SQL_SELECT_QUANTITY = "SELECT "
+            + InventoryEntry.COLUMN_QUANTITY + " FROM "
+            + InventoryEntry.TABLE_NAME + " WHERE "
+            + InventoryEntry._ID + " = ?";
+
+    //one seek in the unique sku index, -1 instead of no row so it never throws
+    private static final String SQL_SELECT_ID_BY_SKU = "SELECT IFNULL((SELECT "
+            + InventoryEntry._ID + " FROM "
+            + InventoryEntry.TABLE_NAME + " WHERE "
+            + InventoryEntry.COLUMN_SKU + " = ?), -1)";
+
+    private static final String SQL_INSERT_MOVEMENT = "INSERT INTO "
+            + MovementEntry.TABLE_NAME + " ("
+            + MovementEntry.COLUMN_PRODUCT_ID + ", "
+            + MovementEntry.COLUMN_DELTA + ", "
+            + MovementEntry.COLUMN_TIMESTAMP + ", "
+            + MovementEntry.COLUMN_REASON + ") VALUES (?, ?, ?, ?)";
+
+    //adds the movements before the cutoff to the summaries already there for their day
+    private static final String SQL_SUMMARIZE = "INSERT OR REPLACE INTO "
+            + MovementEntry.DAYS_TABLE_NAME + " ("
+            + MovementEntry.COLUMN_PRODUCT_ID + ", "
+            + MovementEntry.COLUMN_DAY + ", "
+            + MovementEntry.COLUMN_REASON + ", "
+            + MovementEntry.COLUMN_DELTA + ", "
+            + MovementEntry.COLUMN_MOVEMENT_COUNT + ") SELECT m."
+            + MovementEntry.COLUMN_PRODUCT_ID + ", " + day("m.") + ", m."
+            + MovementEntry.COLUMN_REASON + ", SUM(m." + MovementEntry.COLUMN_DELTA + ") + "
+            + summarized(MovementEntry.COLUMN_DELTA) + ", COUNT(*) + "
+            + summarized(MovementEntry.COLUMN_MOVEMENT_COUNT) + " FROM "
+            + MovementEntry.TABLE_NAME + " m WHERE m." + MovementEntry.COLUMN_TIMESTAMP
+            + " < ? GROUP BY m." + MovementEntry.COLUMN_PRODUCT_ID + ", " + day("m.") + ", m."
+            + MovementEntry.COLUMN_REASON;
+
+    private final SQLiteStatement mAdjust;
+    private final SQLiteStatement mSelectQuantity;
+    private final SQLiteStatement mInsertMovement;
+    private final SQLiteStatement mSelectIdBySku;
+
+    StockLedger(SQLiteDatabase database) {
+        mAdjust = database.compileStatement(SQL_ADJUST_QUANTITY);
+        mSelectQuantity = database.compileStatement(SQL_SELECT_QUANTITY);
+        mInsertMovement = database.compileStatement(SQL_INSERT_MOVEMENT);
+        mSelectIdBySku = database.compileStatement(SQL_SELECT_ID_BY_SKU);
+    }
+
+    /**
+     * @return the _id of the product with the given sku, or -1 if there is none
+     */
+    long idOfSku(String sku) {
+        mSelectIdBySku.bindString(1, sku);
+        return mSelectIdBySku.simpleQueryForLong();
+    }
+
+    /**
+     * Changes the quantity of a product by delta and records the movement.
+     *
+     * @return the new quantity, or {@link InventoryEntry#ADJUST_REJECTED} if the product does
+     * not exist or would go below zero
+     */
+    int adjust(long productId, int delta, int reason, long timestamp) {
+        if (!apply(productId, delta)) {
+            return InventoryEntry.ADJUST_REJECTED;
+        }
+        if (delta != 0) {
+            record(productId, delta, reason, timestamp);
+        }
+        mSelectQuantity.bindLong(1, productId);
+        return (int) mSelectQuantity.simpleQueryForLong();
+    }
+
+    /**
+     * Changes the quantity of a product by delta without recording it, for a movement
+     * that is recorded by the caller.
+     *
+     * @return false if the product does not exist or would go below zero
+     */
+    boolean apply(long productId, int delta) {
+        mAdjust.bindLong(1, delta);
+        mAdjust.bindLong(2, productId);
+        mAdjust.bindLong(3, delta);
+        return mAdjust.executeUpdateDelete() != 0;
+    }
+
+    /**
+     * Records a movement for a quantity that was already written, e.g. the quantity
+     * a new product starts with.
+     *
+     * @return the _id of the movement
+     */
+    long record(long productId, int delta, int reason, long timestamp) {
+        mInsertMovement.bindLong(1, productId);
+        mInsertMovement.bindLong(2, delta);
+        mInsertMovement.bindLong(3, timestamp);
+        mInsertMovement.bindLong(4, reason);
+        return mInsertMovement.executeInsert();
+    }
+
+    /**
+     * Records a correction for every product matching selection whose quantity is about to
+     * be set to quantity. Call it right before the update.
+     */
+    static void recordCorrections(SQLiteDatabase database, long quantity, String selection,
+                                  String[] selectionArgs, long timestamp) {
+        selection = DatabaseUtils.concatenateWhere(selection,
+                InventoryEntry.COLUMN_QUANTITY + " IS NOT " + quantity);
+        database.execSQL("INSERT INTO " + MovementEntry.TABLE_NAME + " ("
+                        + MovementEntry.COLUMN_PRODUCT_ID + ", " + MovementEntry.COLUMN_DELTA + ", "
+                        + MovementEntry.COLUMN_TIMESTAMP + ", " + MovementEntry.COLUMN_REASON + ") SELECT "
+                        + InventoryEntry._ID + ", " + quantity + " - IFNULL("
+                        + InventoryEntry.COLUMN_QUANTITY + ", 0), " + timestamp + ", "
+                        + MovementEntry.REASON_CORRECTION + " FROM " + InventoryEntry.TABLE_NAME
+                        + " WHERE " + selection,
+                selectionArgs == null ? new String[0] : selectionArgs);
+    }
+
+    /**
+     * Rolls every movement before the given time into the summary of its product, UTC day
+     * and reason, then removes it from the ledger.
+     *
+     * @return the number of movements rolled up
+     */
+    static int compact(SQLiteDatabase database, long before) {
+        SQLiteStatement summarize = database.compileStatement(SQL_SUMMARIZE);
+        try {
+            summarize.bindLong(1, before);
+            summarize.execute();
+        } finally {
+            summarize.close();
+        }
+        return database.delete(MovementEntry.TABLE_NAME,
+                MovementEntry.COLUMN_TIMESTAMP + " < ?", new String[]{Long.toString(before)});
+    }
+
+    /**
+     * @return the start of the UTC day {@link MovementEntry#RETENTION_DAYS} before now,
+     * the default cutoff of {@link #compact}
+     */
+    static long retentionCutoff(long now) {
+        return (now / MILLIS_PER_DAY - MovementEntry.RETENTION_DAYS) * MILLIS_PER_DAY;
+    }
+
+    //UTC day of the movement in row
+    private static String day(String row) {
+        return row + MovementEntry.COLUMN_TIMESTAMP + " / " + MILLIS_PER_DAY;
+    }
+
+    //column of the summary that a group of movements is added to, 0 if there is none yet
+    private static String summarized(String column) {
+        return "IFNULL((SELECT d." + column + " FROM " + MovementEntry.DAYS_TABLE_NAME
+                + " d WHERE d." + MovementEntry.COLUMN_PRODUCT_ID + " = m."
+                + MovementEntry.COLUMN_PRODUCT_ID + " AND d." + MovementEntry.COLUMN_DAY
+                + " = " + day("m.") + " AND d." + MovementEntry.COLUMN_REASON + " = m."
+                + MovementEntry.COLUMN_REASON + "), 0)";
+    }
+}
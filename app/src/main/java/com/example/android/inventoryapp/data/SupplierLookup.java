@@ -0,0 +1,114 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SupplierEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns the supplier name and phone written with a product into the _id of a row of the
+ * suppliers table, adding the supplier if it is new. Statements are compiled once and
+ * names already seen are remembered, so a bulk insert looks up every supplier only once.
+ * <p>
+ * Use it on one thread, inside the transaction of the write, and close it afterwards.
+ */
+final class SupplierLookup {
+
+    private final SQLiteStatement mSelectId;
+    private final SQLiteStatement mInsert;
+    private final SQLiteStatement mUpdatePhone;
+    private final Map<String, Long> mIds = new HashMap<>();
+    private boolean mSuppliersChanged;
+
+    SupplierLookup(SQLiteDatabase database) {
+        mSelectId = database.compileStatement("SELECT " + SupplierEntry._ID + " FROM "
+                + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry.COLUMN_SUPPLIER_NAME + " = ?");
+        mInsert = database.compileStatement("INSERT INTO " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + ", " + SupplierEntry.COLUMN_SUPPLIER_PHONE
+                + ") VALUES (?, ?)");
+        mUpdatePhone = database.compileStatement("UPDATE " + SupplierEntry.TABLE_NAME + " SET "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE + " = ? WHERE " + SupplierEntry._ID + " = ? AND "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE + " IS NOT ?");
+    }
+
+    /**
+     * Replaces the supplier name and phone in values of a product with the supplier _id.
+     * A phone given with the name becomes the phone of that supplier. Does nothing if
+     * values has no supplier name.
+     */
+    void resolve(ContentValues values) {
+        if (!values.containsKey(InventoryEntry.COLUMN_SUPPLIER_NAME)) {
+            return;
+        }
+        String name = values.getAsString(InventoryEntry.COLUMN_SUPPLIER_NAME);
+        String phone = values.getAsString(InventoryEntry.COLUMN_SUPPLIER_PHOHE);
+        values.remove(InventoryEntry.COLUMN_SUPPLIER_NAME);
+        values.remove(InventoryEntry.COLUMN_SUPPLIER_PHOHE);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_ID, idOf(name, phone));
+    }
+
+    /**
+     * @return the _id of the supplier with the given name, added if there is none
+     */
+    long idOf(String name, String phone) {
+        Long id = mIds.get(name);
+        if (id == null) {
+            id = select(name);
+            if (id == null) {
+                mInsert.bindString(1, name);
+                bindPhone(mInsert, 2, phone);
+                id = mInsert.executeInsert();
+                mIds.put(name, id);
+                mSuppliersChanged = true;
+                return id;
+            }
+            mIds.put(name, id);
+        }
+        if (phone != null) {
+            mUpdatePhone.bindString(1, phone);
+            mUpdatePhone.bindLong(2, id);
+            mUpdatePhone.bindString(3, phone);
+            if (mUpdatePhone.executeUpdateDelete() > 0) {
+                mSuppliersChanged = true;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * @return true if a supplier was added or got a new phone
+     */
+    boolean suppliersChanged() {
+        return mSuppliersChanged;
+    }
+
+    void close() {
+        mSelectId.close();
+        mInsert.close();
+        mUpdatePhone.close();
+    }
+
+    private Long select(String name) {
+        mSelectId.bindString(1, name);
+        try {
+            return mSelectId.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            //no such supplier
+            return null;
+        }
+    }
+
+    private static void bindPhone(SQLiteStatement statement, int index, String phone) {
+        if (phone == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, phone);
+        }
+    }
+}
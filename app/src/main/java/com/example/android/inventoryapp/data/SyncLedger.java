@@ -0,0 +1,13 @@
+package com.example.android.inventoryapp.data;
+
+/**
+ * Records the stock movements of a sync, see {@link InventorySync}. The provider records them
+ * with its own {@link StockLedger}, under the same lock as its sales and adjustments.
+ */
+interface SyncLedger {
+
+    /**
+     * Called inside the write transaction that changes the quantity
+     */
+    void record(long productId, int delta, int reason, long timestamp);
+}
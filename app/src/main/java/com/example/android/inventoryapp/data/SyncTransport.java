@@ -0,0 +1,18 @@
+package com.example.android.inventoryapp.data;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * Carries one sync request to the server and brings back its answer, see {@link InventorySync}
+ * for what they hold. Lets tests run a sync without a network.
+ */
+interface SyncTransport {
+
+    /**
+     * @return the answer of the server
+     * @throws IOException if the server could not be reached or gave no valid answer
+     */
+    JSONObject exchange(JSONObject request) throws IOException;
+}
@@ -0,0 +1,162 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import com.example.android.inventoryapp.data.InventoryContract;
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Binds loaded rows through the real {@link InventoryListAdapter} and {@link ProductPagedList}
+ * and checks that, once warmed up, binding a loaded row allocates nothing at all.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BindPathAllocationTest {
+
+    //three full pages, all held by the paged list at once
+    private static final int ROWS = 3 * ProductPagedList.PAGE_SIZE;
+    private static final int BINDS = 20000;
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(InventoryProvider.class, InventoryContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+        ContentValues[] products = new ContentValues[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            products[i] = new ContentValues();
+            products[i].put(InventoryEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            products[i].put(InventoryEntry.COLUMN_PRICE, i % 100);
+            products[i].put(InventoryEntry.COLUMN_QUANTITY, i % 7);
+            products[i].put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        }
+        assertEquals(ROWS, mContentResolver.bulkInsert(InventoryEntry.CONTENT_URI, products));
+    }
+
+    @Test
+    public void format_writesDecimalDigits() {
+        char[] buffer = new char[IntChars.MAX_LENGTH];
+        int[] values = {0, 7, 42, -5, 1234567, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int value : values) {
+            assertEquals(Integer.toString(value),
+                    new String(buffer, 0, IntChars.format(value, buffer)));
+        }
+    }
+
+    @Test
+    public void pageCache_dropsLeastRecentlyUsedPage() {
+        PageCache<String> cache = new PageCache<>(2);
+        cache.put(0, "first");
+        cache.put(1, "second");
+        cache.get(0);
+        cache.put(2, "third");
+
+        assertTrue(cache.contains(0));
+        assertFalse(cache.contains(1));
+        assertEquals(0, cache.firstPageIndex());
+        assertEquals(2, cache.lastPageIndex());
+    }
+
+    @Test
+    public void bindLoadedRow_allocatesNothing() throws InterruptedException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        ProductPagedList pagedList = new ProductPagedList(mContentResolver, new IgnoringCallback());
+        try {
+            loadAllPages(pagedList);
+            InventoryListAdapter adapter = new InventoryListAdapter(RuntimeEnvironment.application);
+            adapter.setPagedList(pagedList);
+            InventoryListAdapter.ViewHolder holder = adapter.onCreateViewHolder(
+                    new FrameLayout(RuntimeEnvironment.application), 0);
+            TextView name = holder.itemView.findViewById(R.id.product_name);
+            TextView price = holder.itemView.findViewById(R.id.price);
+            TextView quantity = holder.itemView.findViewById(R.id.quantity);
+
+            //warm up so the measured loop runs compiled code and every view has its buffers
+            bind(adapter, holder);
+
+            long threadId = Thread.currentThread().getId();
+            long before = threads.getThreadAllocatedBytes(threadId);
+            //reading the counter may itself allocate, e.g. the id array on older JDKs
+            long reading = threads.getThreadAllocatedBytes(threadId) - before;
+            before = threads.getThreadAllocatedBytes(threadId);
+            bind(adapter, holder);
+            long allocated = threads.getThreadAllocatedBytes(threadId) - before - reading;
+            //getPage, the prefetch check, the formatting and the view setters together
+            assertEquals("bytes allocated by " + BINDS + " binds", 0, allocated);
+
+            adapter.onBindViewHolder(holder, ROWS - 1);
+            assertEquals("Product " + (ROWS - 1), name.getText().toString());
+            assertEquals(Integer.toString((ROWS - 1) % 100), price.getText().toString());
+            assertEquals(Integer.toString((ROWS - 1) % 7), quantity.getText().toString());
+        } finally {
+            pagedList.release();
+        }
+    }
+
+    //binds every row in turn through the adapter, all pages are loaded
+    private static void bind(InventoryListAdapter adapter, InventoryListAdapter.ViewHolder holder) {
+        for (int i = 0; i < BINDS; i++) {
+            adapter.onBindViewHolder(holder, i % ROWS);
+        }
+    }
+
+    //refreshes the list and asks for every page until all of them arrived
+    private static void loadAllPages(ProductPagedList pagedList) throws InterruptedException {
+        pagedList.refresh();
+        for (int attempt = 0; attempt < 500; attempt++) {
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            boolean loaded = pagedList.size() == ROWS;
+            for (int position = 0; loaded && position < ROWS; position += ProductPagedList.PAGE_SIZE) {
+                loaded = pagedList.getPage(position) != null;
+            }
+            if (loaded) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("pages did not load");
+    }
+
+    private static class IgnoringCallback implements ProductPagedList.Callback {
+        @Override
+        public void onDataSetChanged() {
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+        }
+    }
+}
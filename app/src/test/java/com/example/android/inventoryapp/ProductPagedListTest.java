@@ -0,0 +1,247 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.data.InventoryContract;
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.ProductQuery;
+import com.example.android.inventoryapp.data.InventoryProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scrolls a {@link ProductPagedList} over more rows than it may hold at once. The test owns
+ * the query thread, so it can wait until every query asked for so far has been delivered.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProductPagedListTest {
+
+    private static final int PAGE_SIZE = ProductPagedList.PAGE_SIZE;
+    //more pages than the list holds, the last one short
+    private static final int ROWS = (ProductPagedList.MAX_PAGES + 2) * PAGE_SIZE + 20;
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private ContentResolver mContentResolver;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final RecordingCallback mCallback = new RecordingCallback();
+    private ProductPagedList mPagedList;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(InventoryProvider.class, InventoryContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+        ContentValues[] products = new ContentValues[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            products[i] = new ContentValues();
+            products[i].put(InventoryEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            //four prices for all rows, so ties run across every page boundary
+            products[i].put(InventoryEntry.COLUMN_PRICE, i % 4);
+            products[i].put(InventoryEntry.COLUMN_QUANTITY, i % 7);
+            products[i].put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        }
+        assertEquals(ROWS, mContentResolver.bulkInsert(InventoryEntry.CONTENT_URI, products));
+        mPagedList = new ProductPagedList(mContentResolver, mCallback, mExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        mPagedList.release();
+    }
+
+    @Test
+    public void sortedPagesWithTies_showEveryProductOnceInOrder() throws Exception {
+        mPagedList.setListQuery(new ProductQuery.Builder()
+                .sortBy(ProductQuery.SORT_BY_PRICE, true)
+                .build());
+        settle();
+        assertEquals(ROWS, mPagedList.size());
+
+        List<Long> shown = new ArrayList<>();
+        for (int position = 0; position < ROWS; position++) {
+            shown.add(idAt(position));
+        }
+        assertEquals(ids(InventoryEntry.COLUMN_PRICE + " DESC, " + InventoryEntry._ID + " DESC"), shown);
+    }
+
+    @Test
+    public void scrolling_holdsAtMostMaxPages() throws Exception {
+        mPagedList.refresh();
+        settle();
+        List<Long> ids = ids(InventoryEntry._ID);
+
+        for (int position = 0; position < ROWS; position++) {
+            assertEquals(ids.get(position), Long.valueOf(idAt(position)));
+            int held = 0;
+            for (int first = 0; first < ROWS; first += PAGE_SIZE) {
+                if (mPagedList.isAffectedBy(ids.get(first))) {
+                    held++;
+                }
+            }
+            assertTrue("position " + position + " holds " + held + " pages",
+                    held <= ProductPagedList.MAX_PAGES);
+        }
+        assertFalse(mPagedList.isAffectedBy(ids.get(0)));
+        assertTrue(mPagedList.isAffectedBy(ids.get(ROWS - 1)));
+    }
+
+    @Test
+    public void droppedPage_isReadAgainAfterItsRememberedRow() throws Exception {
+        mPagedList.refresh();
+        settle();
+        List<Long> ids = ids(InventoryEntry._ID);
+        for (int position = 0; position < ROWS; position++) {
+            idAt(position);
+        }
+        assertFalse(mPagedList.isAffectedBy(ids.get(PAGE_SIZE)));
+
+        //without a refresh an offset would now start the second page one row later
+        mContentResolver.delete(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, ids.get(0)),
+                null, null);
+        assertEquals(ids.get(PAGE_SIZE), Long.valueOf(idAt(PAGE_SIZE)));
+        assertEquals(ids.get(2 * PAGE_SIZE - 1), Long.valueOf(idAt(2 * PAGE_SIZE - 1)));
+    }
+
+    @Test
+    public void nearTheEndOfAPage_theNextPageIsLoadedAhead() throws Exception {
+        mPagedList.refresh();
+        settle();
+        mCallback.mEvents.clear();
+
+        mPagedList.getPage(PAGE_SIZE - ProductPagedList.PREFETCH_DISTANCE - 1);
+        settle();
+        assertEquals(Collections.<String>emptyList(), mCallback.mEvents);
+
+        mPagedList.getPage(PAGE_SIZE - ProductPagedList.PREFETCH_DISTANCE);
+        settle();
+        assertEquals(Collections.singletonList("changed " + PAGE_SIZE + " " + PAGE_SIZE),
+                mCallback.mEvents);
+        //already there when the list gets to it
+        assertNotNull(mPagedList.getPage(PAGE_SIZE));
+    }
+
+    @Test
+    public void refresh_reportsOnlyTheRowsThatChanged() throws Exception {
+        mPagedList.setListQuery(new ProductQuery.Builder()
+                .sortBy(ProductQuery.SORT_BY_ID, true)
+                .build());
+        settle();
+        List<Long> ids = ids(InventoryEntry._ID + " DESC");
+        //two pages on screen
+        idAt(0);
+        idAt(PAGE_SIZE);
+        mCallback.mEvents.clear();
+
+        ContentValues quantity = new ContentValues();
+        quantity.put(InventoryEntry.COLUMN_QUANTITY, 99);
+        mContentResolver.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, ids.get(10)),
+                quantity, null, null);
+        mContentResolver.delete(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, ids.get(30)),
+                null, null);
+        ContentValues product = new ContentValues();
+        product.put(InventoryEntry.COLUMN_PRODUCT_NAME, "New product");
+        product.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        //the highest _id, so the first row
+        long newId = ContentUris.parseId(mContentResolver.insert(InventoryEntry.CONTENT_URI, product));
+
+        mPagedList.refresh();
+        settle();
+        //the diff goes from the end of the window to its start, in positions before the
+        //updates in front of them; the row after the window moves in without an event
+        assertEquals(Arrays.asList("removed 30 1", "changed 10 1", "inserted 0 1"), mCallback.mEvents);
+        assertEquals(ROWS, mPagedList.size());
+        assertEquals(newId, idAt(0));
+        assertEquals(ids.get(10), Long.valueOf(idAt(11)));
+        assertEquals(99, mPagedList.getPage(11).quantities[11]);
+        assertEquals(ids.get(31), Long.valueOf(idAt(31)));
+        assertEquals(ids.get(2 * PAGE_SIZE - 1), Long.valueOf(idAt(2 * PAGE_SIZE - 1)));
+    }
+
+    //the _id of the row at position, waiting for its page if it is not loaded
+    private long idAt(int position) throws Exception {
+        ProductPage page = mPagedList.getPage(position);
+        if (page == null) {
+            settle();
+            page = mPagedList.getPage(position);
+        }
+        assertNotNull("row " + position, page);
+        return page.ids[position % PAGE_SIZE];
+    }
+
+    //runs the queries asked for so far and delivers their results, until no more are asked for
+    private void settle() throws Exception {
+        while (true) {
+            mExecutor.submit(NOTHING).get();
+            if (Robolectric.getForegroundThreadScheduler().size() == 0) {
+                return;
+            }
+            ShadowLooper.runUiThreadTasks();
+        }
+    }
+
+    private List<Long> ids(String sortOrder) {
+        Cursor cursor = mContentResolver.query(InventoryEntry.CONTENT_URI,
+                new String[]{InventoryEntry._ID}, null, null, sortOrder);
+        try {
+            List<Long> ids = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static class RecordingCallback implements ProductPagedList.Callback {
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onDataSetChanged() {
+            mEvents.add("dataSetChanged");
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mEvents.add("inserted " + position + " " + count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mEvents.add("removed " + position + " " + count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mEvents.add("moved " + fromPosition + " " + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mEvents.add("changed " + position + " " + count);
+        }
+    }
+}
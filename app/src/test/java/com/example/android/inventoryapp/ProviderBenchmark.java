@@ -0,0 +1,325 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.data.InventoryContract;
+import com.example.android.inventoryapp.data.InventoryContract.ColumnsEntry;
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryProvider;
+import com.example.android.inventoryapp.data.ProductColumns;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the provider calls behind the product list on catalogues of growing size, on
+ * Robolectric's SQLite so no device is needed. Every operation is warmed up before it is
+ * timed. Each catalogue is grown from the previous one, and the rows the insert step adds
+ * are removed by the delete step, so every size is measured on exactly that many products.
+ * <p>
+ * A scanned sale looks up one sku and sells it, both are single seeks in the unique sku index
+ * and should cost about the same on every catalogue size.
+ * <p>
+ * A full read of the catalogue, as another app copying every product does it, is measured
+ * twice: through a cursor and through the chunked columns of
+ * {@link ColumnsEntry#METHOD_READ_COLUMNS}. Robolectric calls the provider in process, so
+ * the Binder copies of the cursor windows, which the columns avoid, are not in these numbers.
+ * <p>
+ * Skipped by the normal test run, run it with {@code ./gradlew testDebugUnitTest -Pbenchmark}.
+ * The results are written as JSON to {@code app/build/benchmarks/provider.json}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProviderBenchmark {
+
+    private static final String DEFAULT_ROWS = "1000,100000,1000000";
+    private static final int WARM_UP = 100;
+    private static final int ITERATIONS = 500;
+    //rows per bulk insert while growing the catalogue
+    private static final int SEED_BATCH = 5000;
+    //full reads of the catalogue are long, fewer of them are enough
+    private static final int FULL_READ_WARM_UP = 2;
+    private static final int FULL_READ_ITERATIONS = 5;
+    private static final String[] FULL_READ_COLUMNS = {
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRICE,
+            InventoryEntry.COLUMN_QUANTITY,
+            InventoryEntry.COLUMN_SUPPLIER_NAME,
+            InventoryEntry.COLUMN_SKU
+    };
+
+    private InventoryProvider mProvider;
+    private int mSeeded;
+
+    @Test
+    public void providerOperations() throws Exception {
+        mProvider = Robolectric.setupContentProvider(InventoryProvider.class,
+                InventoryContract.CONTENT_AUTHORITY);
+
+        JSONArray catalogues = new JSONArray();
+        for (String size : System.getProperty("benchmark.rows", DEFAULT_ROWS).split(",")) {
+            int rows = Integer.parseInt(size.trim());
+            seed(rows);
+            long[] ids = productIds(rows);
+            JSONObject catalogue = new JSONObject();
+            catalogue.put("rows", rows);
+            catalogue.put("operations", measure(ids));
+            catalogue.put("fullRead", measureFullRead(rows));
+            catalogues.put(catalogue);
+            System.out.println("ProviderBenchmark " + catalogue);
+        }
+
+        JSONObject results = new JSONObject();
+        results.put("warmUp", WARM_UP);
+        results.put("iterations", ITERATIONS);
+        results.put("catalogues", catalogues);
+        write(results);
+    }
+
+    private JSONObject measure(long[] ids) throws Exception {
+        long[] insert = new long[ITERATIONS];
+        long[] query = new long[ITERATIONS];
+        long[] update = new long[ITERATIONS];
+        long[] delete = new long[ITERATIONS];
+        long[] skuLookup = new long[ITERATIONS];
+        long[] skuSale = new long[ITERATIONS];
+        String[] skuProjection = {InventoryEntry._ID, InventoryEntry.COLUMN_QUANTITY};
+        //the first page of the list as MainActivity shows it
+        Uri pageUri = InventoryEntry.buildPageUri(0, ProductPagedList.PAGE_SIZE);
+        ContentValues sale = new ContentValues();
+
+        for (int i = -WARM_UP; i < ITERATIONS; i++) {
+            boolean timed = i >= 0;
+            long start = System.nanoTime();
+            Uri inserted = mProvider.insert(InventoryEntry.CONTENT_URI, product(ids.length + i));
+            long end = System.nanoTime();
+            assertNotNull(inserted);
+            if (timed) {
+                insert[i] = end - start;
+            }
+
+            start = System.nanoTime();
+            Cursor cursor = mProvider.query(pageUri, ProductPage.PROJECTION, null, null, null);
+            //filling the window is what the list waits for
+            cursor.moveToLast();
+            end = System.nanoTime();
+            cursor.close();
+            if (timed) {
+                query[i] = end - start;
+            }
+
+            //spread the updates over the catalogue so they do not all hit cached pages
+            long id = ids[(int) ((long) (i + WARM_UP) * 7919 % ids.length)];
+            sale.put(InventoryEntry.COLUMN_QUANTITY, i & 63);
+            start = System.nanoTime();
+            int updated = mProvider.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                    sale, null, null);
+            end = System.nanoTime();
+            assertEquals(1, updated);
+            if (timed) {
+                update[i] = end - start;
+            }
+
+            start = System.nanoTime();
+            int deleted = mProvider.delete(inserted, null, null);
+            end = System.nanoTime();
+            assertEquals(1, deleted);
+            if (timed) {
+                delete[i] = end - start;
+            }
+
+            //a different product than the update, anywhere in the catalogue
+            String sku = sku((int) ((long) (i + WARM_UP) * 104729 % ids.length));
+            start = System.nanoTime();
+            cursor = mProvider.query(InventoryEntry.buildSkuUri(sku), skuProjection, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            end = System.nanoTime();
+            cursor.close();
+            if (timed) {
+                skuLookup[i] = end - start;
+            }
+
+            start = System.nanoTime();
+            int sold = mProvider.update(InventoryEntry.buildSkuAdjustUri(sku, -1), null, null, null);
+            end = System.nanoTime();
+            //an empty shelf is refused, which still looks up the sku
+            assertTrue(sold != InventoryEntry.ADJUST_UNKNOWN_SKU);
+            if (timed) {
+                skuSale[i] = end - start;
+            }
+            if (sold != InventoryEntry.ADJUST_REJECTED) {
+                mProvider.update(InventoryEntry.buildSkuAdjustUri(sku, 1), null, null, null);
+            }
+        }
+
+        JSONObject operations = new JSONObject();
+        operations.put("insert", summary(insert));
+        operations.put("query", summary(query));
+        operations.put("update", summary(update));
+        operations.put("delete", summary(delete));
+        operations.put("skuLookup", summary(skuLookup));
+        operations.put("skuSale", summary(skuSale));
+        return operations;
+    }
+
+    private JSONObject measureFullRead(int rows) throws Exception {
+        long[] cursorRead = new long[FULL_READ_ITERATIONS];
+        long[] columnsRead = new long[FULL_READ_ITERATIONS];
+        String[] projection = new String[FULL_READ_COLUMNS.length + 1];
+        projection[0] = InventoryEntry._ID;
+        System.arraycopy(FULL_READ_COLUMNS, 0, projection, 1, FULL_READ_COLUMNS.length);
+
+        for (int i = -FULL_READ_WARM_UP; i < FULL_READ_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            //every cell is read, as a copy of the catalogue would
+            long checksum = 0;
+            Cursor cursor = mProvider.query(InventoryEntry.CONTENT_URI, projection, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    checksum += cursor.getLong(0) + cursor.getString(1).length() + cursor.getInt(2)
+                            + cursor.getInt(3) + cursor.getString(4).length();
+                    String sku = cursor.getString(5);
+                    checksum += sku != null ? sku.length() : 0;
+                }
+            } finally {
+                cursor.close();
+            }
+            long end = System.nanoTime();
+            if (i >= 0) {
+                cursorRead[i] = end - start;
+            }
+
+            start = System.nanoTime();
+            long columnsChecksum = 0;
+            Bundle extras = new Bundle();
+            extras.putStringArray(ColumnsEntry.EXTRA_COLUMNS, FULL_READ_COLUMNS);
+            extras.putInt(ColumnsEntry.EXTRA_LIMIT, ColumnsEntry.MAX_LIMIT);
+            ProductColumns chunk;
+            do {
+                chunk = ProductColumns.from(mProvider.call(ColumnsEntry.METHOD_READ_COLUMNS, null, extras));
+                long[] ids = chunk.ids();
+                int[] prices = chunk.ints(InventoryEntry.COLUMN_PRICE);
+                int[] quantities = chunk.ints(InventoryEntry.COLUMN_QUANTITY);
+                for (int row = 0; row < chunk.size(); row++) {
+                    columnsChecksum += ids[row] + prices[row] + quantities[row]
+                            + chunk.string(InventoryEntry.COLUMN_PRODUCT_NAME, row).length()
+                            + chunk.string(InventoryEntry.COLUMN_SUPPLIER_NAME, row).length();
+                    String sku = chunk.string(InventoryEntry.COLUMN_SKU, row);
+                    columnsChecksum += sku != null ? sku.length() : 0;
+                }
+                extras.putLong(ColumnsEntry.EXTRA_AFTER, chunk.next());
+            } while (chunk.hasMore());
+            end = System.nanoTime();
+            //both read the same catalogue
+            assertEquals(checksum, columnsChecksum);
+            if (i >= 0) {
+                columnsRead[i] = end - start;
+            }
+        }
+
+        JSONObject fullRead = new JSONObject();
+        fullRead.put("iterations", FULL_READ_ITERATIONS);
+        fullRead.put("cursor", fullReadSummary(cursorRead, rows));
+        fullRead.put("columns", fullReadSummary(columnsRead, rows));
+        return fullRead;
+    }
+
+    //throughput of the median full read
+    private static JSONObject fullReadSummary(long[] nanos, int rows) throws Exception {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        JSONObject summary = new JSONObject();
+        summary.put("p50Ms", median / 1000000.0);
+        summary.put("rowsPerSecond", Math.round(rows * 1e9 / median));
+        return summary;
+    }
+
+    //grows the catalogue to the given number of products
+    private void seed(int rows) {
+        while (mSeeded < rows) {
+            ContentValues[] batch = new ContentValues[Math.min(SEED_BATCH, rows - mSeeded)];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = product(mSeeded + i);
+            }
+            assertEquals(batch.length, mProvider.bulkInsert(InventoryEntry.CONTENT_URI, batch));
+            mSeeded += batch.length;
+        }
+    }
+
+    //ids are not contiguous, the measured inserts use up _ids between the catalogues
+    private long[] productIds(int rows) {
+        long[] ids = new long[rows];
+        Cursor cursor = mProvider.query(InventoryEntry.CONTENT_URI,
+                new String[]{InventoryEntry._ID}, null, null, null);
+        try {
+            assertEquals(rows, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private static ContentValues product(int index) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Product " + index);
+        values.put(InventoryEntry.COLUMN_PRICE, index % 100);
+        values.put(InventoryEntry.COLUMN_QUANTITY, index % 50);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Supplier " + index % 40);
+        values.put(InventoryEntry.COLUMN_SKU, sku(index));
+        return values;
+    }
+
+    //13 digits like an EAN barcode
+    private static String sku(int index) {
+        return String.format(Locale.US, "%013d", index);
+    }
+
+    //latency percentiles in microseconds
+    private static JSONObject summary(long[] nanos) throws Exception {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long value : sorted) {
+            total += value;
+        }
+        JSONObject summary = new JSONObject();
+        summary.put("meanUs", total / sorted.length / 1000.0);
+        summary.put("p50Us", sorted[sorted.length / 2] / 1000.0);
+        summary.put("p90Us", sorted[sorted.length * 9 / 10] / 1000.0);
+        summary.put("p99Us", sorted[sorted.length * 99 / 100] / 1000.0);
+        summary.put("maxUs", sorted[sorted.length - 1] / 1000.0);
+        return summary;
+    }
+
+    private static void write(JSONObject results) throws Exception {
+        File directory = new File(System.getProperty("benchmark.output", "build/benchmarks"));
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+        Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(directory, "provider.json")), "UTF-8");
+        try {
+            writer.write(results.toString(2));
+        } finally {
+            writer.close();
+        }
+    }
+}
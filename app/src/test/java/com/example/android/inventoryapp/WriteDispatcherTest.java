@@ -0,0 +1,209 @@
+package com.example.android.inventoryapp;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.HandlerThread;
+
+import com.example.android.inventoryapp.data.InventoryContract;
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Queues writes while the write thread is paused, then lets them run against the real provider.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WriteDispatcherTest {
+
+    private ContentResolver mContentResolver;
+    private HandlerThread mWriteThread;
+    private ShadowLooper mWriteLooper;
+    private WriteDispatcher mDispatcher;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(InventoryProvider.class, InventoryContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+        mWriteThread = new HandlerThread("writes");
+        mWriteThread.start();
+        mWriteLooper = shadowOf(mWriteThread.getLooper());
+        mWriteLooper.pause();
+        mDispatcher = new WriteDispatcher(mContentResolver, mWriteThread.getLooper());
+    }
+
+    @After
+    public void tearDown() {
+        mWriteThread.quit();
+    }
+
+    @Test
+    public void quickSells_collapseIntoOneAdjustment() {
+        long id = insertProduct(10);
+        List<Integer> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            mDispatcher.adjustQuantity(id, -1, collect(results));
+        }
+        assertEquals(1, mWriteLooper.getScheduler().size());
+
+        mWriteLooper.runToEndOfTasks();
+
+        //one adjustment of -5, so every tap sees the same new quantity
+        assertEquals(Arrays.asList(5, 5, 5, 5, 5), results);
+        assertEquals(5, quantity(id));
+    }
+
+    @Test
+    public void collapsedSellsBelowZero_refuseOnlyTheOnesThatDoNotFit() {
+        long id = insertProduct(3);
+        List<Integer> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            mDispatcher.adjustQuantity(id, -1, collect(results));
+        }
+
+        mWriteLooper.runToEndOfTasks();
+
+        assertEquals(Arrays.asList(2, 1, 0, InventoryEntry.ADJUST_REJECTED,
+                InventoryEntry.ADJUST_REJECTED), results);
+        assertEquals(0, quantity(id));
+    }
+
+    @Test
+    public void updates_mergeWithLaterValuesWinning() {
+        long id = insertProduct(10);
+        Uri rowUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+        List<Integer> results = new ArrayList<>();
+        ContentValues first = new ContentValues();
+        first.put(InventoryEntry.COLUMN_QUANTITY, 20);
+        first.put(InventoryEntry.COLUMN_PRICE, 7);
+        ContentValues second = new ContentValues();
+        second.put(InventoryEntry.COLUMN_QUANTITY, 30);
+        mDispatcher.update(rowUri, first, collect(results));
+        mDispatcher.update(rowUri, second, collect(results));
+        assertEquals(1, mWriteLooper.getScheduler().size());
+
+        mWriteLooper.runToEndOfTasks();
+
+        assertEquals(Arrays.asList(1, 1), results);
+        assertEquals(30, quantity(id));
+    }
+
+    @Test
+    public void writeBetweenUpdates_keepsTheirOrder() {
+        long id = insertProduct(10);
+        Uri rowUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+        ContentValues first = new ContentValues();
+        first.put(InventoryEntry.COLUMN_QUANTITY, 20);
+        ContentValues second = new ContentValues();
+        second.put(InventoryEntry.COLUMN_QUANTITY, 30);
+        mDispatcher.update(rowUri, first, null);
+        mDispatcher.adjustQuantity(id, -1, null);
+        mDispatcher.update(rowUri, second, null);
+        assertEquals(3, mWriteLooper.getScheduler().size());
+
+        mWriteLooper.runToEndOfTasks();
+
+        assertEquals(30, quantity(id));
+    }
+
+    @Test
+    public void versionedSavesAroundAnAdjustment_keepTheirOrder() {
+        long id = insertProduct(10);
+        Uri versionedUri = InventoryEntry.buildVersionedUri(id, version(id));
+        ContentValues first = new ContentValues();
+        first.put(InventoryEntry.COLUMN_PRICE, 3);
+        ContentValues second = new ContentValues();
+        second.put(InventoryEntry.COLUMN_QUANTITY, 30);
+        List<Integer> results = new ArrayList<>();
+        mDispatcher.update(versionedUri, first, collect(results));
+        mDispatcher.adjustQuantity(id, -1, collect(results));
+        mDispatcher.update(versionedUri, second, collect(results));
+        //the second save must not jump ahead of the adjustment into the first one
+        assertEquals(3, mWriteLooper.getScheduler().size());
+
+        mWriteLooper.runToEndOfTasks();
+
+        //the adjustment changed the product, so the second save meets a newer version
+        assertEquals(Arrays.asList(1, 9, InventoryEntry.UPDATE_CONFLICT), results);
+        assertEquals(9, quantity(id));
+    }
+
+    @Test
+    public void deletesAroundAVersionedSave_areNotMerged() {
+        long id = insertProduct(10);
+        Uri rowUri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRICE, 3);
+        mDispatcher.delete(rowUri, null);
+        mDispatcher.update(InventoryEntry.buildVersionedUri(id, version(id)), values, null);
+        mDispatcher.delete(rowUri, null);
+        assertEquals(3, mWriteLooper.getScheduler().size());
+    }
+
+    @Test
+    public void saleBySku_endsMergingOfAdjustments() {
+        long id = insertProduct(10);
+        mDispatcher.adjustQuantity(id, -1, null);
+        mDispatcher.sellBySku("ANY-SKU", null);
+        mDispatcher.adjustQuantity(id, -1, null);
+        assertEquals(3, mWriteLooper.getScheduler().size());
+    }
+
+    private static WriteDispatcher.Callback<Integer> collect(final List<Integer> results) {
+        return new WriteDispatcher.Callback<Integer>() {
+            @Override
+            public void onWriteFinished(Integer result) {
+                results.add(result);
+            }
+        };
+    }
+
+    private long insertProduct(int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Pencil");
+        values.put(InventoryEntry.COLUMN_PRICE, 2);
+        values.put(InventoryEntry.COLUMN_QUANTITY, quantity);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        values.put(InventoryEntry.COLUMN_SUPPLIER_PHOHE, 5550100);
+        return ContentUris.parseId(mContentResolver.insert(InventoryEntry.CONTENT_URI, values));
+    }
+
+    private long version(long id) {
+        Cursor cursor = mContentResolver.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                new String[]{InventoryEntry.COLUMN_LOCAL_VERSION}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int quantity(long id) {
+        Cursor cursor = mContentResolver.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                new String[]{InventoryEntry.COLUMN_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.MovementEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs batches through {@link InventoryProvider#applyBatch} where one write gives up, which
+ * must fail the batch instead of rolling it back without an error.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ApplyBatchTest {
+
+    private InventoryProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(InventoryProvider.class,
+                InventoryContract.CONTENT_AUTHORITY);
+    }
+
+    @Test
+    public void insertAndAdjust_commitTogether() throws OperationApplicationException {
+        long id = insertProduct("Pencil", 5);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(newInsert("Eraser"));
+        operations.add(newAdjust(InventoryEntry.buildAdjustUri(id, -2)));
+
+        ContentProviderResult[] results = mProvider.applyBatch(operations);
+        assertNotNull(results[0].uri);
+        assertEquals(Integer.valueOf(3), results[1].count);
+        assertEquals(2, productCount());
+    }
+
+    @Test
+    public void refusedAdjust_failsTheBatch() {
+        long id = insertProduct("Pencil", 5);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(newInsert("Eraser"));
+        operations.add(newAdjust(InventoryEntry.buildAdjustUri(id, -6)));
+
+        assertBatchFails(operations);
+        assertEquals(1, productCount());
+        assertEquals(5, quantity(id));
+    }
+
+    @Test
+    public void unknownSku_failsTheBatch() {
+        insertProduct("Pencil", 5);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(newInsert("Eraser"));
+        operations.add(newAdjust(InventoryEntry.buildSkuAdjustUri("NO-SUCH-SKU", -1)));
+
+        assertBatchFails(operations);
+        assertEquals(1, productCount());
+    }
+
+    @Test
+    public void staleVersion_failsTheBatch() {
+        long id = insertProduct("Pencil", 5);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(newInsert("Eraser"));
+        //no product has reached this version yet
+        operations.add(ContentProviderOperation.newUpdate(InventoryEntry.buildVersionedUri(id, 99))
+                .withValue(InventoryEntry.COLUMN_PRODUCT_NAME, "Pen")
+                .build());
+
+        assertBatchFails(operations);
+        assertEquals(1, productCount());
+    }
+
+    @Test
+    public void writesAfterAFailedBatch_stillCommit() {
+        long id = insertProduct("Pencil", 5);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(newAdjust(InventoryEntry.buildAdjustUri(id, -6)));
+        assertBatchFails(operations);
+
+        //outside a batch a refused adjust answers with the code again
+        assertEquals(InventoryEntry.ADJUST_REJECTED,
+                mProvider.update(InventoryEntry.buildAdjustUri(id, -6), null, null, null));
+        assertEquals(4, mProvider.update(InventoryEntry.buildAdjustUri(id, -1), null, null, null));
+        assertEquals(4, quantity(id));
+    }
+
+    private void assertBatchFails(ArrayList<ContentProviderOperation> operations) {
+        try {
+            mProvider.applyBatch(operations);
+            fail("The batch was reported as applied");
+        } catch (OperationApplicationException expected) {
+        }
+    }
+
+    private static ContentProviderOperation newInsert(String name) {
+        return ContentProviderOperation.newInsert(InventoryEntry.CONTENT_URI)
+                .withValue(InventoryEntry.COLUMN_PRODUCT_NAME, name)
+                .withValue(InventoryEntry.COLUMN_QUANTITY, 1)
+                .withValue(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme")
+                .build();
+    }
+
+    //an adjust reads its delta from the uri, the value only satisfies the builder
+    private static ContentProviderOperation newAdjust(Uri adjustUri) {
+        return ContentProviderOperation.newUpdate(adjustUri)
+                .withValue(MovementEntry.COLUMN_DELTA, adjustUri.getQueryParameter(
+                        InventoryContract.QUERY_PARAMETER_DELTA))
+                .build();
+    }
+
+    private long insertProduct(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(InventoryEntry.COLUMN_QUANTITY, quantity);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        return ContentUris.parseId(mProvider.insert(InventoryEntry.CONTENT_URI, values));
+    }
+
+    private long productCount() {
+        return readLong(InventoryEntry.CONTENT_URI, "COUNT(*)");
+    }
+
+    private long quantity(long id) {
+        return readLong(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                InventoryEntry.COLUMN_QUANTITY);
+    }
+
+    private long readLong(Uri uri, String column) {
+        Cursor cursor = mProvider.query(uri, new String[]{column}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
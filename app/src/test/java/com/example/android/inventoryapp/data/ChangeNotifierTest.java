@@ -0,0 +1,229 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.ContentObserver;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.MovementEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Writes through the provider and checks the uris its {@link ChangeNotifier} delivers to a
+ * registered observer, moving the clock of the notifier thread by hand.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ChangeNotifierTest {
+
+    private InventoryProvider mProvider;
+    private ContentResolver mContentResolver;
+    private Scheduler mScheduler;
+    private final List<Uri> mDelivered = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(InventoryProvider.class,
+                InventoryContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+        mScheduler = shadowOf(mProvider.getNotifierLooper()).getScheduler();
+        mContentResolver.registerContentObserver(InventoryEntry.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange, Uri uri) {
+                        mDelivered.add(uri);
+                    }
+                });
+    }
+
+    @Test
+    public void changesInsideTheWindow_goOutTogether() {
+        long pencil = insertProduct("Pencil");
+        long eraser = insertProduct("Eraser");
+        flushSetup();
+
+        rename(pencil, "Red Pencil");
+        mContentResolver.update(InventoryEntry.buildAdjustUri(eraser, 1), null, null, null);
+        rename(pencil, "Blue Pencil");
+        mScheduler.advanceBy(ChangeNotifier.COALESCE_WINDOW_MILLIS - 1, TimeUnit.MILLISECONDS);
+        assertEquals(Collections.<Uri>emptyList(), mDelivered);
+
+        mScheduler.advanceBy(1, TimeUnit.MILLISECONDS);
+        //one notification per row, however often it changed
+        assertEquals(2, mDelivered.size());
+        assertEquals(new HashSet<>(Arrays.asList(rowUri(pencil), rowUri(eraser))),
+                new HashSet<>(mDelivered));
+
+        mDelivered.clear();
+        mScheduler.advanceBy(10 * ChangeNotifier.COALESCE_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        assertEquals(Collections.<Uri>emptyList(), mDelivered);
+    }
+
+    @Test
+    public void insertInsideTheWindow_sendsOnlyTheTableUri() {
+        long pencil = insertProduct("Pencil");
+        flushSetup();
+
+        rename(pencil, "Red Pencil");
+        insertProduct("Eraser");
+        flush();
+        assertEquals(Collections.singletonList(InventoryEntry.CONTENT_URI), mDelivered);
+    }
+
+    @Test
+    public void deleteOfOneRow_sendsTheTableUri() {
+        long pencil = insertProduct("Pencil");
+        flushSetup();
+
+        mContentResolver.delete(rowUri(pencil), null, null);
+        flush();
+        assertEquals(Collections.singletonList(InventoryEntry.CONTENT_URI), mDelivered);
+    }
+
+    @Test
+    public void changedRowsUpToTheLimit_eachGetTheirUri() {
+        List<Long> ids = insertProducts(ChangeNotifier.MAX_ROW_NOTIFICATIONS);
+        flushSetup();
+
+        List<Uri> expected = new ArrayList<>();
+        for (long id : ids) {
+            rename(id, "Renamed " + id);
+            expected.add(rowUri(id));
+        }
+        flush();
+        assertEquals(new HashSet<>(expected), new HashSet<>(mDelivered));
+        assertEquals(expected.size(), mDelivered.size());
+    }
+
+    @Test
+    public void changedRowsAboveTheLimit_sendTheTableUriInstead() {
+        List<Long> ids = insertProducts(ChangeNotifier.MAX_ROW_NOTIFICATIONS + 1);
+        flushSetup();
+
+        for (long id : ids) {
+            rename(id, "Renamed " + id);
+        }
+        flush();
+        assertEquals(Collections.singletonList(InventoryEntry.CONTENT_URI), mDelivered);
+    }
+
+    @Test
+    public void committedBatch_sendsItsRowsAfterTheCommit() throws OperationApplicationException {
+        long pencil = insertProduct("Pencil");
+        long eraser = insertProduct("Eraser");
+        flushSetup();
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(newRename(pencil, "Red Pencil"));
+        operations.add(newRename(eraser, "Red Eraser"));
+        mProvider.applyBatch(operations);
+        flush();
+        assertEquals(new HashSet<>(Arrays.asList(rowUri(pencil), rowUri(eraser))),
+                new HashSet<>(mDelivered));
+        assertEquals(2, mDelivered.size());
+    }
+
+    @Test
+    public void rolledBackBatch_sendsNothing() {
+        long pencil = insertProduct("Pencil");
+        flushSetup();
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(newRename(pencil, "Red Pencil"));
+        //more than there is in stock, which fails the batch
+        Uri adjustUri = InventoryEntry.buildAdjustUri(pencil, -100);
+        operations.add(ContentProviderOperation.newUpdate(adjustUri)
+                .withValue(MovementEntry.COLUMN_DELTA, -100)
+                .build());
+        try {
+            mProvider.applyBatch(operations);
+            fail("The batch was reported as applied");
+        } catch (OperationApplicationException expected) {
+        }
+        flush();
+        assertEquals(Collections.<Uri>emptyList(), mDelivered);
+    }
+
+    @Test
+    public void saveWithoutChanges_sendsNothing() {
+        long pencil = insertProduct("Pencil");
+        flushSetup();
+
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Pencil");
+        values.put(InventoryEntry.COLUMN_PRICE, 2);
+        assertEquals(0, mContentResolver.update(rowUri(pencil), values, null, null));
+        flush();
+        assertEquals(Collections.<Uri>emptyList(), mDelivered);
+
+        //one changed value is enough to update the row
+        values.put(InventoryEntry.COLUMN_PRICE, 3);
+        assertEquals(1, mContentResolver.update(rowUri(pencil), values, null, null));
+        flush();
+        assertEquals(Collections.singletonList(rowUri(pencil)), mDelivered);
+    }
+
+    //sends what the notifier holds
+    private void flush() {
+        mScheduler.advanceBy(ChangeNotifier.COALESCE_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    //sends the notifications of the setup so the test only sees its own
+    private void flushSetup() {
+        flush();
+        mDelivered.clear();
+    }
+
+    private long insertProduct(String name) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(InventoryEntry.COLUMN_PRICE, 2);
+        values.put(InventoryEntry.COLUMN_QUANTITY, 10);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        return ContentUris.parseId(mContentResolver.insert(InventoryEntry.CONTENT_URI, values));
+    }
+
+    private List<Long> insertProducts(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(insertProduct("Product " + i));
+        }
+        return ids;
+    }
+
+    private void rename(long id, String name) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        assertEquals(1, mContentResolver.update(rowUri(id), values, null, null));
+    }
+
+    private static ContentProviderOperation newRename(long id, String name) {
+        return ContentProviderOperation.newUpdate(rowUri(id))
+                .withValue(InventoryEntry.COLUMN_PRODUCT_NAME, name)
+                .build();
+    }
+
+    private static Uri rowUri(long id) {
+        return ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.android.inventoryapp.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Streams rows through {@link CsvWriter} and back through {@link CsvReader}.
+ */
+public class CsvRoundTripTest {
+
+    private static final int ROWS = 1000000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void readRow_handlesQuotesSeparatorsAndLineBreaks() throws Exception {
+        CsvReader reader = new CsvReader(new StringReader(
+                "a,\"b,c\",\"say \"\"hi\"\"\"\r\n\"two\nlines\",,3\n"));
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(reader.readRow(fields));
+        assertEquals(Arrays.asList("a", "b,c", "say \"hi\""), fields);
+        assertEquals(1, reader.getLineNumber());
+        assertTrue(reader.readRow(fields));
+        assertEquals(Arrays.asList("two\nlines", "", "3"), fields);
+        assertEquals(2, reader.getLineNumber());
+        assertFalse(reader.readRow(fields));
+    }
+
+    @Test(expected = CsvFormatException.class)
+    public void readRow_rejectsUnterminatedQuote() throws Exception {
+        new CsvReader(new StringReader("\"never closed")).readRow(new ArrayList<String>());
+    }
+
+    @Test
+    public void roundTrip_millionRows() throws Exception {
+        File file = mFolder.newFile("products.csv");
+        CsvWriter writer = new CsvWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), "UTF-8")));
+        for (int i = 0; i < ROWS; i++) {
+            writer.writeField(name(i));
+            writer.writeField(i % 1000);
+            writer.writeField(i % 77);
+            writer.writeField("Supplier " + (i % 100));
+            writer.endRow();
+        }
+        writer.close();
+
+        //rows are checked as they stream in, nothing but the current row is held
+        CsvReader reader = new CsvReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8")));
+        List<String> fields = new ArrayList<>();
+        int rows = 0;
+        while (reader.readRow(fields)) {
+            assertEquals(name(rows), fields.get(0));
+            assertEquals(Integer.toString(rows % 1000), fields.get(1));
+            assertEquals(Integer.toString(rows % 77), fields.get(2));
+            assertEquals("Supplier " + (rows % 100), fields.get(3));
+            rows++;
+        }
+        reader.close();
+        assertEquals(ROWS, rows);
+    }
+
+    //every few rows a name that needs quoting
+    private static String name(int row) {
+        switch (row % 4) {
+            case 0:
+                return "Product " + row;
+            case 1:
+                return "Pens, blue " + row;
+            case 2:
+                return "The \"best\" " + row;
+            default:
+                return "Two\nlines " + row;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exports the products through {@link InventoryCsv} and imports them back through the provider.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class InventoryCsvTest {
+
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(InventoryProvider.class, InventoryContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void exportThenImport_givesBackTheSameProducts() throws Exception {
+        insertProduct("Pencil", 2, 5, "Acme", "555-0100");
+        insertProduct("Pens, \"blue\"", 3, 0, "Acme", "555-0100");
+        insertProduct("Two\nlines", 4, 7, "Mono", null);
+        List<String> exported = products();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordingListener exportListener = new RecordingListener();
+        assertEquals(3, InventoryCsv.exportProducts(mContentResolver, out, exportListener));
+        assertEquals(Long.valueOf(3), exportListener.mProgress.get(exportListener.mProgress.size() - 1));
+        assertTrue(out.toString("UTF-8").startsWith(
+                "Product_Name,Price,Quantity,Supplier_Name,Supplier_Phone_Number\n"));
+
+        mContentResolver.delete(InventoryEntry.CONTENT_URI, null, null);
+        RecordingListener importListener = new RecordingListener();
+        assertEquals(3, InventoryCsv.importProducts(mContentResolver,
+                new ByteArrayInputStream(out.toByteArray()), importListener));
+        assertTrue(importListener.mRejected.isEmpty());
+        assertEquals(Long.valueOf(3), importListener.mProgress.get(importListener.mProgress.size() - 1));
+        assertEquals(exported, products());
+    }
+
+    @Test
+    public void import_matchesColumnsByNameAndSkipsBadRows() throws Exception {
+        String csv = "quantity,Supplier_Name,Price,Product_Name\n"
+                + "7,Acme,3,Glue\n"
+                + "1,Acme,-2,Tape\n"
+                + "\n"
+                + "4,,1,Ink\n"
+                + "2,Mono,5,Clip\n";
+        RecordingListener listener = new RecordingListener();
+        assertEquals(2, InventoryCsv.importProducts(mContentResolver,
+                new ByteArrayInputStream(csv.getBytes("UTF-8")), listener));
+
+        assertEquals(Arrays.asList(
+                "3: " + ProductValidator.describe(ProductValidator.ERROR_PRICE_INVALID),
+                "5: " + ProductValidator.describe(ProductValidator.ERROR_SUPPLIER_MISSING)),
+                listener.mRejected);
+        assertEquals(Arrays.asList("Glue|3|7|Acme|null", "Clip|5|2|Mono|null"), products());
+    }
+
+    @Test(expected = CsvFormatException.class)
+    public void import_withoutANameColumn_isRefused() throws Exception {
+        InventoryCsv.importProducts(mContentResolver,
+                new ByteArrayInputStream("Price,Supplier_Name\n3,Acme\n".getBytes("UTF-8")), null);
+    }
+
+    private void insertProduct(String name, int price, int quantity, String supplier, String phone) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(InventoryEntry.COLUMN_PRICE, price);
+        values.put(InventoryEntry.COLUMN_QUANTITY, quantity);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, supplier);
+        if (phone != null) {
+            values.put(InventoryEntry.COLUMN_SUPPLIER_PHOHE, phone);
+        }
+        assertNotNull(mContentResolver.insert(InventoryEntry.CONTENT_URI, values));
+    }
+
+    //the exported columns of every product in _id order, one string per product
+    private List<String> products() {
+        Cursor cursor = mContentResolver.query(InventoryEntry.CONTENT_URI, InventoryCsv.COLUMNS,
+                null, null, InventoryEntry._ID);
+        try {
+            List<String> products = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                StringBuilder product = new StringBuilder();
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    if (i > 0) {
+                        product.append('|');
+                    }
+                    product.append(cursor.getString(i));
+                }
+                products.add(product.toString());
+            }
+            return products;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static class RecordingListener implements InventoryCsv.Listener {
+        final List<Long> mProgress = new ArrayList<>();
+        final List<String> mRejected = new ArrayList<>();
+
+        @Override
+        public void onProgress(long rows) {
+            mProgress.add(rows);
+        }
+
+        @Override
+        public void onRowRejected(long lineNumber, String reason) {
+            mRejected.add(lineNumber + ": " + reason);
+        }
+    }
+}
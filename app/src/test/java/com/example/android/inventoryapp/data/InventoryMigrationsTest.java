@@ -0,0 +1,396 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.MovementEntry;
+import com.example.android.inventoryapp.data.InventoryContract.StatsEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SupplierEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SyncEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the schema migrations on an in-memory SQLite database.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class InventoryMigrationsTest {
+
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mDb = SQLiteDatabase.create(null);
+        InventoryDbHelper.createVersion1(mDb);
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @Test
+    public void migration1To2_keepsRowsAndCreatesIndexes() {
+        insertProduct("Pencil", 2, 40, "Acme");
+        InventoryMigrations.MIGRATION_1_2.migrate(mDb);
+
+        assertTrue(hasIndex(InventoryMigrations.INDEX_PRODUCTS_LIST));
+        assertTrue(hasIndex(InventoryMigrations.INDEX_PRODUCTS_QUANTITY));
+        assertTrue(hasIndex(InventoryMigrations.INDEX_PRODUCTS_SUPPLIER));
+        assertEquals(1, count(InventoryEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void migration1To2_listAndLowStockQueriesUseCoveringIndexes() {
+        InventoryMigrations.MIGRATION_1_2.migrate(mDb);
+
+        assertTrue(queryPlan("SELECT _id, Product_Name, Price, Quantity FROM products"
+                + " ORDER BY Product_Name").contains("COVERING INDEX " + InventoryMigrations.INDEX_PRODUCTS_LIST));
+        assertTrue(queryPlan("SELECT _id, Product_Name, Price, Quantity FROM products"
+                + " WHERE Quantity < 5").contains("COVERING INDEX " + InventoryMigrations.INDEX_PRODUCTS_QUANTITY));
+    }
+
+    @Test
+    public void migration2To3_indexesExistingRowsAndFollowsWrites() {
+        InventoryMigrations.MIGRATION_1_2.migrate(mDb);
+        long pencil = insertProduct("Blue Pencil", 2, 40, "Acme");
+        InventoryMigrations.MIGRATION_2_3.migrate(mDb);
+        long paper = insertProduct("Paper", 5, 10, "Papyrus");
+
+        assertEquals(1, countMatches("blu*"));
+        assertEquals(1, countMatches("papy*"));
+
+        ContentValues rename = new ContentValues();
+        rename.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Red Pencil");
+        mDb.update(InventoryEntry.TABLE_NAME, rename, InventoryEntry._ID + " = " + pencil, null);
+        assertEquals(0, countMatches("blu*"));
+        assertEquals(1, countMatches("red*"));
+
+        mDb.delete(InventoryEntry.TABLE_NAME, InventoryEntry._ID + " = " + paper, null);
+        assertEquals(0, countMatches("paper"));
+    }
+
+    @Test
+    public void migration3To4_keepsTotalsEqualToAScan() {
+        InventoryMigrations.migrate(mDb, 1, 3);
+        long pencil = insertProduct("Pencil", 2, 40, "Acme");
+        insertProduct("Eraser", 1, 3, "Acme");
+        InventoryMigrations.MIGRATION_3_4.migrate(mDb);
+        assertTotalsMatchScan();
+
+        long paper = insertProduct("Paper", 5, 10, "Papyrus");
+        ContentValues sale = new ContentValues();
+        sale.put(InventoryEntry.COLUMN_QUANTITY, 4);
+        mDb.update(InventoryEntry.TABLE_NAME, sale, InventoryEntry._ID + " = " + pencil, null);
+        ContentValues move = new ContentValues();
+        move.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Papyrus");
+        mDb.update(InventoryEntry.TABLE_NAME, move, InventoryEntry._ID + " = " + pencil, null);
+        mDb.delete(InventoryEntry.TABLE_NAME, InventoryEntry._ID + " = " + paper, null);
+        assertTotalsMatchScan();
+
+        //the last product of a supplier takes its row with it
+        mDb.delete(InventoryEntry.TABLE_NAME, null, null);
+        assertTotalsMatchScan();
+        assertEquals(0, count(StatsEntry.SUPPLIER_TABLE_NAME));
+    }
+
+    @Test
+    public void migration4To5_movesSuppliersIntoTheirOwnTable() {
+        InventoryMigrations.migrate(mDb, 1, 4);
+        long pencil = insertProduct("Pencil", 2, 40, "Acme");
+        ContentValues phone = new ContentValues();
+        phone.put(InventoryEntry.COLUMN_SUPPLIER_PHOHE, 5550100);
+        mDb.update(InventoryEntry.TABLE_NAME, phone, InventoryEntry._ID + " = " + pencil, null);
+        insertProduct("Eraser", 1, 3, "Acme");
+        insertProduct("Paper", 5, 10, "Papyrus");
+        InventoryMigrations.MIGRATION_4_5.migrate(mDb);
+
+        assertEquals(2, count(SupplierEntry.TABLE_NAME));
+        assertEquals("Pencil,Acme,5550100,\nEraser,Acme,5550100,\nPaper,Papyrus,null,\n",
+                rows("SELECT " + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                        + InventoryEntry.COLUMN_SUPPLIER_NAME + ", " + InventoryEntry.COLUMN_SUPPLIER_PHOHE
+                        + " FROM " + InventoryEntry.VIEW_NAME + " ORDER BY " + InventoryEntry._ID));
+        assertEquals("Acme,2,43,83,1,\nPapyrus,1,10,50,0,\n", rows("SELECT "
+                + StatsEntry.COLUMN_SUPPLIER_NAME + ", " + StatsEntry.COLUMN_PRODUCT_COUNT + ", "
+                + StatsEntry.COLUMN_TOTAL_QUANTITY + ", " + StatsEntry.COLUMN_STOCK_VALUE + ", "
+                + StatsEntry.COLUMN_LOW_STOCK_COUNT + " FROM " + StatsEntry.SUPPLIER_VIEW_NAME
+                + " ORDER BY " + StatsEntry.COLUMN_SUPPLIER_NAME));
+
+        //a rename is one row, and search follows it
+        ContentValues rename = new ContentValues();
+        rename.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Zenith");
+        assertEquals(1, mDb.update(SupplierEntry.TABLE_NAME, rename,
+                SupplierEntry.COLUMN_SUPPLIER_NAME + " = 'Acme'", null));
+        assertEquals(0, countMatches("acme"));
+        assertEquals(2, countMatches("zenith"));
+        assertEquals("Zenith,\n", rows("SELECT " + InventoryEntry.COLUMN_SUPPLIER_NAME + " FROM "
+                + InventoryEntry.VIEW_NAME + " WHERE " + InventoryEntry._ID + " = " + pencil));
+
+        mDb.execSQL("PRAGMA foreign_keys = ON");
+        try {
+            mDb.delete(SupplierEntry.TABLE_NAME, null, null);
+            fail("suppliers with products must not be deleted");
+        } catch (SQLiteConstraintException expected) {
+            assertEquals(2, count(SupplierEntry.TABLE_NAME));
+        }
+    }
+
+    @Test
+    public void migration5To6_startsTheLedgerWithTheCurrentQuantities() {
+        InventoryMigrations.migrate(mDb, 1, 3);
+        insertProduct("Pencil", 2, 40, "Acme");
+        insertProduct("Eraser", 1, 0, "Acme");
+        insertProduct("Paper", 5, 10, "Papyrus");
+        InventoryMigrations.migrate(mDb, 3, 6);
+
+        assertEquals("1,40,3,\n3,10,3,\n", rows("SELECT " + MovementEntry.COLUMN_PRODUCT_ID + ", "
+                + MovementEntry.COLUMN_DELTA + ", " + MovementEntry.COLUMN_REASON + " FROM "
+                + MovementEntry.TABLE_NAME + " ORDER BY " + MovementEntry._ID));
+        assertEquals(0, count(MovementEntry.DAYS_TABLE_NAME));
+    }
+
+    @Test
+    public void migration6To7_indexesEverySortColumnWithoutNulls() {
+        InventoryMigrations.migrate(mDb, 1, 4);
+        long pencil = insertProduct("Pencil", 2, 40, "Acme");
+        ContentValues unknown = new ContentValues();
+        unknown.putNull(InventoryEntry.COLUMN_PRICE);
+        unknown.putNull(InventoryEntry.COLUMN_QUANTITY);
+        mDb.update(InventoryEntry.TABLE_NAME, unknown, InventoryEntry._ID + " = " + pencil, null);
+        InventoryMigrations.migrate(mDb, 4, 7);
+
+        assertEquals("0,0,\n", rows("SELECT " + InventoryEntry.COLUMN_PRICE + ", "
+                + InventoryEntry.COLUMN_QUANTITY + " FROM " + InventoryEntry.TABLE_NAME));
+        assertFalse(hasIndex(InventoryMigrations.INDEX_PRODUCTS_LIST));
+        assertTrue(hasIndex(InventoryMigrations.INDEX_PRODUCTS_NAME));
+        assertTrue(hasIndex(InventoryMigrations.INDEX_PRODUCTS_PRICE));
+        assertTrue(hasIndex(InventoryMigrations.INDEX_PRODUCTS_QUANTITY));
+        assertTrue(queryPlan("SELECT _id, Product_Name, Price, Quantity FROM products"
+                + " ORDER BY Price, _id LIMIT 50").contains(InventoryMigrations.INDEX_PRODUCTS_PRICE));
+    }
+
+    @Test
+    public void migration7To8_looksUpUniqueSkusInTheIndex() {
+        InventoryMigrations.migrate(mDb, 1, 4);
+        insertProduct("Pencil", 2, 40, "Acme");
+        InventoryMigrations.migrate(mDb, 4, 8);
+
+        ContentValues sku = new ContentValues();
+        sku.put(InventoryEntry.COLUMN_SKU, "4006381333931");
+        mDb.update(InventoryEntry.TABLE_NAME, sku, null, null);
+        assertEquals("Pencil,4006381333931,Acme,\n", rows("SELECT " + InventoryEntry.COLUMN_PRODUCT_NAME
+                + ", " + InventoryEntry.COLUMN_SKU + ", " + InventoryEntry.COLUMN_SUPPLIER_NAME
+                + " FROM " + InventoryEntry.VIEW_NAME));
+
+        ContentValues product = new ContentValues();
+        product.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Eraser");
+        product.put(InventoryEntry.COLUMN_SUPPLIER_ID, 1);
+        //any number of products may go without a sku
+        mDb.insertOrThrow(InventoryEntry.TABLE_NAME, null, product);
+        mDb.insertOrThrow(InventoryEntry.TABLE_NAME, null, product);
+        product.put(InventoryEntry.COLUMN_SKU, "4006381333931");
+        try {
+            mDb.insertOrThrow(InventoryEntry.TABLE_NAME, null, product);
+            fail("duplicate sku");
+        } catch (SQLiteConstraintException expected) {
+        }
+
+        assertTrue(queryPlan("SELECT _id, Product_Name, Price, Quantity FROM products"
+                + " WHERE SKU = '4006381333931'").contains(InventoryMigrations.INDEX_PRODUCTS_SKU));
+    }
+
+    @Test
+    public void migration8To9_queuesEveryRealChangeForSync() {
+        InventoryMigrations.migrate(mDb, 1, 4);
+        insertProduct("Pencil", 2, 40, "Acme");
+        InventoryMigrations.migrate(mDb, 4, 9);
+        String outbox = "SELECT " + SyncEntry.COLUMN_BASE_VERSION + ", " + SyncEntry.COLUMN_BASE_QUANTITY
+                + " FROM " + SyncEntry.OUTBOX_TABLE_NAME + " ORDER BY " + SyncEntry.COLUMN_SEQUENCE;
+        String version = "SELECT " + InventoryEntry.COLUMN_VERSION + " FROM " + InventoryEntry.TABLE_NAME;
+        //the existing product goes out as new with the first sync
+        assertEquals("0,0,\n", rows(outbox));
+        assertEquals(1, count(InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_SYNC_ID
+                + " IS NOT NULL AND " + InventoryEntry.COLUMN_UPDATED_AT + " > 0"));
+
+        ContentValues sale = new ContentValues();
+        sale.put(InventoryEntry.COLUMN_QUANTITY, 39);
+        mDb.update(InventoryEntry.TABLE_NAME, sale, null, null);
+        //writing the same value again is no change
+        mDb.update(InventoryEntry.TABLE_NAME, sale, null, null);
+        assertEquals("0,0,\n1,40,\n", rows(outbox));
+        assertEquals("2,\n", rows(version));
+
+        //a sync writing the values of the server is not sent back
+        mDb.execSQL("UPDATE " + SyncEntry.STATE_TABLE_NAME + " SET " + SyncEntry.COLUMN_APPLYING + " = 1");
+        sale.put(InventoryEntry.COLUMN_QUANTITY, 30);
+        mDb.update(InventoryEntry.TABLE_NAME, sale, null, null);
+        assertEquals(2, count(SyncEntry.OUTBOX_TABLE_NAME));
+        mDb.execSQL("UPDATE " + SyncEntry.STATE_TABLE_NAME + " SET " + SyncEntry.COLUMN_APPLYING + " = 0");
+
+        mDb.delete(InventoryEntry.TABLE_NAME, null, null);
+        assertEquals("0,0,\n1,40,\n2,30,\n", rows(outbox));
+        assertEquals("3,\n", rows("SELECT " + InventoryEntry.COLUMN_VERSION + " FROM "
+                + SyncEntry.TOMBSTONE_TABLE_NAME));
+    }
+
+    @Test
+    public void migration9To10_raisesTheLocalVersionOnEveryChange() {
+        InventoryMigrations.migrate(mDb, 1, 4);
+        insertProduct("Pencil", 2, 40, "Acme");
+        InventoryMigrations.migrate(mDb, 4, 10);
+        String versions = "SELECT " + InventoryEntry.COLUMN_VERSION + ", "
+                + InventoryEntry.COLUMN_LOCAL_VERSION + " FROM " + InventoryEntry.VIEW_NAME;
+        assertEquals("1,1,\n", rows(versions));
+
+        ContentValues sale = new ContentValues();
+        sale.put(InventoryEntry.COLUMN_QUANTITY, 39);
+        mDb.update(InventoryEntry.TABLE_NAME, sale, null, null);
+        mDb.update(InventoryEntry.TABLE_NAME, sale, null, null);
+        assertEquals("2,2,\n", rows(versions));
+
+        //a sync sets the version of the server, the local version still goes up
+        mDb.execSQL("UPDATE " + SyncEntry.STATE_TABLE_NAME + " SET " + SyncEntry.COLUMN_APPLYING + " = 1");
+        sale.put(InventoryEntry.COLUMN_QUANTITY, 30);
+        sale.put(InventoryEntry.COLUMN_VERSION, 1);
+        mDb.update(InventoryEntry.TABLE_NAME, sale, null, null);
+        assertEquals("1,3,\n", rows(versions));
+        mDb.execSQL("UPDATE " + SyncEntry.STATE_TABLE_NAME + " SET " + SyncEntry.COLUMN_APPLYING + " = 0");
+
+        mDb.execSQL("UPDATE " + SupplierEntry.TABLE_NAME + " SET "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE + " = '555'");
+        assertEquals("2,4,\n", rows(versions));
+    }
+
+    @Test
+    public void migration10To11_answersSortedPagesFromCoveringIndexes() {
+        InventoryMigrations.migrate(mDb, 1, 4);
+        insertProduct("Pencil", 2, 40, "Acme");
+        InventoryMigrations.migrate(mDb, 4, 11);
+
+        assertTrue(queryPlan("SELECT _id, Product_Name, Price, Quantity FROM products"
+                + " ORDER BY Price, _id LIMIT 50").contains("COVERING INDEX " + InventoryMigrations.INDEX_PRODUCTS_PRICE));
+        assertTrue(queryPlan("SELECT _id, Product_Name, Price, Quantity FROM products"
+                + " WHERE Supplier_Id = 1").contains("COVERING INDEX " + InventoryMigrations.INDEX_PRODUCTS_SUPPLIER));
+        assertEquals("Pencil,\n", rows("SELECT " + InventoryEntry.COLUMN_PRODUCT_NAME + " FROM "
+                + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_QUANTITY + " > 0"));
+    }
+
+    @Test
+    public void freshInstall_matchesUpgradedSchema() {
+        InventoryDbHelper helper = new InventoryDbHelper(RuntimeEnvironment.application);
+        SQLiteDatabase fresh = helper.getReadableDatabase();
+        InventoryMigrations.migrate(mDb, 1, InventoryDbHelper.DATABASE_VERSION);
+
+        assertEquals(InventoryDbHelper.DATABASE_VERSION, fresh.getVersion());
+        assertEquals(schema(fresh), schema(mDb));
+        helper.close();
+    }
+
+    private long insertProduct(String name, int price, int quantity, String supplier) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(InventoryEntry.COLUMN_PRICE, price);
+        values.put(InventoryEntry.COLUMN_QUANTITY, quantity);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, supplier);
+        return mDb.insertOrThrow(InventoryEntry.TABLE_NAME, null, values);
+    }
+
+    private void assertTotalsMatchScan() {
+        String totals = "COUNT(*), IFNULL(SUM(" + InventoryEntry.COLUMN_QUANTITY + "), 0), IFNULL(SUM("
+                + InventoryEntry.COLUMN_PRICE + " * " + InventoryEntry.COLUMN_QUANTITY + "), 0), IFNULL(SUM("
+                + InventoryEntry.COLUMN_QUANTITY + " < " + StatsEntry.LOW_STOCK_THRESHOLD + "), 0)";
+        String columns = StatsEntry.COLUMN_PRODUCT_COUNT + ", " + StatsEntry.COLUMN_TOTAL_QUANTITY + ", "
+                + StatsEntry.COLUMN_STOCK_VALUE + ", " + StatsEntry.COLUMN_LOW_STOCK_COUNT;
+        assertEquals(rows("SELECT " + totals + " FROM " + InventoryEntry.TABLE_NAME),
+                rows("SELECT " + columns + " FROM " + StatsEntry.TABLE_NAME));
+        assertEquals(rows("SELECT " + InventoryEntry.COLUMN_SUPPLIER_NAME + ", " + totals + " FROM "
+                        + InventoryEntry.TABLE_NAME + " GROUP BY " + InventoryEntry.COLUMN_SUPPLIER_NAME),
+                rows("SELECT " + StatsEntry.COLUMN_SUPPLIER_NAME + ", " + columns + " FROM "
+                        + StatsEntry.SUPPLIER_TABLE_NAME + " ORDER BY " + StatsEntry.COLUMN_SUPPLIER_NAME));
+    }
+
+    private String rows(String sql) {
+        StringBuilder rows = new StringBuilder();
+        Cursor cursor = mDb.rawQuery(sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    rows.append(cursor.getString(i)).append(',');
+                }
+                rows.append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows.toString();
+    }
+
+    private int countMatches(String match) {
+        Cursor cursor = mDb.rawQuery("SELECT COUNT(*) FROM " + InventoryEntry.FTS_TABLE_NAME
+                + " WHERE " + InventoryEntry.FTS_TABLE_NAME + " MATCH ?", new String[]{match});
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private boolean hasIndex(String name) {
+        Cursor cursor = mDb.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'index' AND name = ?",
+                new String[]{name});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int count(String table) {
+        Cursor cursor = mDb.rawQuery("SELECT COUNT(*) FROM " + table, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String queryPlan(String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    private static String schema(SQLiteDatabase db) {
+        StringBuilder schema = new StringBuilder();
+        Cursor cursor = db.rawQuery("SELECT sql FROM sqlite_master WHERE sql IS NOT NULL"
+                + " AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata' ORDER BY name", null);
+        try {
+            while (cursor.moveToNext()) {
+                schema.append(cursor.getString(0)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return schema.toString();
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.MovementEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SyncEntry;
+import com.example.android.inventoryapp.data.InventoryDbHelper.StorageMode;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.net.URL;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Two devices with their own database syncing through {@link SyncServerStandIn} over HTTP.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class InventorySyncTest {
+
+    private MockWebServer mServer;
+    private SyncServerStandIn mStandIn;
+    private InventoryDbHelper mDeviceA;
+    private InventoryDbHelper mDeviceB;
+
+    @Before
+    public void setUp() throws IOException {
+        mStandIn = new SyncServerStandIn();
+        mServer = new MockWebServer();
+        mServer.setDispatcher(mStandIn);
+        mServer.start();
+        mDeviceA = new InventoryDbHelper(RuntimeEnvironment.application, "device_a.db",
+                StorageMode.WRITE_AHEAD_LOG);
+        mDeviceB = new InventoryDbHelper(RuntimeEnvironment.application, "device_b.db",
+                StorageMode.WRITE_AHEAD_LOG);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mDeviceA.close();
+        mDeviceB.close();
+        mServer.shutdown();
+    }
+
+    @Test
+    public void firstSync_pushesEverythingOnceAndTheOtherDevicePullsIt() throws IOException {
+        insert(mDeviceA, "Pencil", 10);
+        insert(mDeviceA, "Eraser", 0);
+        insert(mDeviceA, "Paper", 3);
+
+        assertEquals(3, sync(mDeviceA).pushed());
+        InventorySync pull = sync(mDeviceB);
+        assertEquals(3, pull.pulled());
+        assertTrue(pull.changedLocally());
+        assertEquals(products(mDeviceA), products(mDeviceB));
+        //the pulled quantities are explained by the ledger of the device
+        assertEquals("13,\n", rows(mDeviceB, "SELECT SUM(" + MovementEntry.COLUMN_DELTA + ") FROM "
+                + MovementEntry.TABLE_NAME));
+        assertEquals("0,\n", rows(mDeviceB, "SELECT COUNT(*) FROM " + SyncEntry.OUTBOX_TABLE_NAME));
+
+        //nothing changed, nothing travels
+        InventorySync again = sync(mDeviceA);
+        assertEquals(0, again.pushed());
+        assertEquals(0, again.pulled());
+        assertEquals(0, mStandIn.lastPushed());
+        assertTrue(mStandIn.gzipRequests);
+    }
+
+    @Test
+    public void afterTheSeed_onlyChangedRowsTravel() throws IOException {
+        for (int i = 0; i < InventorySync.BATCH_SIZE + 20; i++) {
+            insert(mDeviceA, "Product " + i, 5);
+        }
+        sync(mDeviceA);
+        //more than one batch each way
+        assertEquals(InventorySync.BATCH_SIZE + 20, sync(mDeviceB).pulled());
+        assertEquals(Integer.valueOf(InventorySync.BATCH_SIZE), mStandIn.pulledRows.get(
+                mStandIn.pulledRows.size() - 2));
+
+        set(mDeviceA, "Product 7", InventoryEntry.COLUMN_QUANTITY, 4);
+        sync(mDeviceA);
+        assertEquals(1, mStandIn.lastPushed());
+        assertEquals(1, sync(mDeviceB).pulled());
+        assertEquals(1, mStandIn.lastPulled());
+        assertEquals(products(mDeviceA), products(mDeviceB));
+    }
+
+    @Test
+    public void salesOnBothDevices_addUp() throws IOException {
+        insert(mDeviceA, "Pencil", 10);
+        sync(mDeviceA);
+        sync(mDeviceB);
+
+        set(mDeviceA, "Pencil", InventoryEntry.COLUMN_QUANTITY, 9);
+        set(mDeviceB, "Pencil", InventoryEntry.COLUMN_QUANTITY, 8);
+        sync(mDeviceA);
+        //the server refuses the stale change of B, which merges it and pushes again
+        assertEquals(1, sync(mDeviceB).conflicts());
+        sync(mDeviceA);
+
+        assertEquals("Pencil,7,\n", products(mDeviceA));
+        assertEquals("Pencil,7,\n", products(mDeviceB));
+    }
+
+    @Test
+    public void renamesOnBothDevices_keepTheNewer() throws Exception {
+        insert(mDeviceA, "Pencil", 10);
+        sync(mDeviceA);
+        sync(mDeviceB);
+
+        set(mDeviceA, "Pencil", InventoryEntry.COLUMN_PRODUCT_NAME, "Red pencil");
+        Thread.sleep(5);
+        set(mDeviceB, "Pencil", InventoryEntry.COLUMN_PRODUCT_NAME, "Blue pencil");
+        sync(mDeviceB);
+        sync(mDeviceA);
+        sync(mDeviceB);
+
+        assertEquals("Blue pencil,10,\n", products(mDeviceA));
+        assertEquals("Blue pencil,10,\n", products(mDeviceB));
+    }
+
+    @Test
+    public void delete_reachesTheOtherDeviceThroughItsTombstone() throws IOException {
+        insert(mDeviceA, "Pencil", 10);
+        insert(mDeviceA, "Paper", 3);
+        sync(mDeviceA);
+        sync(mDeviceB);
+
+        mDeviceA.getWritableDatabase().delete(InventoryEntry.TABLE_NAME,
+                InventoryEntry.COLUMN_PRODUCT_NAME + " = 'Pencil'", null);
+        assertEquals("1,\n", rows(mDeviceA, "SELECT COUNT(*) FROM " + SyncEntry.TOMBSTONE_TABLE_NAME));
+        sync(mDeviceA);
+        assertEquals("0,\n", rows(mDeviceA, "SELECT COUNT(*) FROM " + SyncEntry.TOMBSTONE_TABLE_NAME));
+
+        assertEquals(1, sync(mDeviceB).pulled());
+        assertEquals("Paper,3,\n", products(mDeviceB));
+    }
+
+    private InventorySync sync(InventoryDbHelper device) throws IOException {
+        InventorySync sync = newSync(device.getWritableDatabase(), mServer.url("/sync").url());
+        sync.run();
+        return sync;
+    }
+
+    //a sync of a database without a provider, which writes its movements row by row
+    static InventorySync newSync(final SQLiteDatabase database, URL serverUrl) {
+        return new InventorySync(database, new HttpSyncTransport(serverUrl), new SyncLedger() {
+            @Override
+            public void record(long productId, int delta, int reason, long timestamp) {
+                ContentValues movement = new ContentValues();
+                movement.put(MovementEntry.COLUMN_PRODUCT_ID, productId);
+                movement.put(MovementEntry.COLUMN_DELTA, delta);
+                movement.put(MovementEntry.COLUMN_REASON, reason);
+                movement.put(MovementEntry.COLUMN_TIMESTAMP, timestamp);
+                database.insertOrThrow(MovementEntry.TABLE_NAME, null, movement);
+            }
+        });
+    }
+
+    private static void insert(InventoryDbHelper device, String name, int quantity) {
+        SQLiteDatabase db = device.getWritableDatabase();
+        SupplierLookup suppliers = new SupplierLookup(db);
+        try {
+            ContentValues values = new ContentValues();
+            values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+            values.put(InventoryEntry.COLUMN_PRICE, 2);
+            values.put(InventoryEntry.COLUMN_QUANTITY, quantity);
+            values.put(InventoryEntry.COLUMN_SUPPLIER_ID, suppliers.idOf("Acme", null));
+            long id = db.insertOrThrow(InventoryEntry.TABLE_NAME, null, values);
+            if (quantity != 0) {
+                new StockLedger(db).record(id, quantity, MovementEntry.REASON_RESTOCK, 0);
+            }
+        } finally {
+            suppliers.close();
+        }
+    }
+
+    private static void set(InventoryDbHelper device, String name, String column, Object value) {
+        ContentValues values = new ContentValues();
+        values.put(column, value.toString());
+        assertEquals(1, device.getWritableDatabase().update(InventoryEntry.TABLE_NAME, values,
+                InventoryEntry.COLUMN_PRODUCT_NAME + " = ?", new String[]{name}));
+    }
+
+    private static String products(InventoryDbHelper device) {
+        return rows(device, "SELECT " + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                + InventoryEntry.COLUMN_QUANTITY + " FROM " + InventoryEntry.TABLE_NAME
+                + " ORDER BY " + InventoryEntry.COLUMN_PRODUCT_NAME);
+    }
+
+    private static String rows(InventoryDbHelper device, String sql) {
+        StringBuilder rows = new StringBuilder();
+        Cursor cursor = device.getReadableDatabase().rawQuery(sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    rows.append(cursor.getString(i)).append(',');
+                }
+                rows.append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows.toString();
+    }
+}
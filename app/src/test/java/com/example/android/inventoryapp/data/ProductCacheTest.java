@@ -0,0 +1,93 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProductCacheTest {
+
+    @Test
+    public void countsHitsMissesAndEvictions() {
+        ProductCache cache = new ProductCache(2);
+        cache.put(product(1, 5), cache.beginLoad());
+        cache.put(product(2, 5), cache.beginLoad());
+        cache.put(product(3, 5), cache.beginLoad());
+
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(3));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.evictionCount());
+
+        //invalidation is not an eviction
+        cache.invalidateAll();
+        assertNull(cache.get(3));
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void loadOverlappingAWrite_isNotCached() {
+        ProductCache cache = new ProductCache(4);
+        long token = cache.beginLoad();
+        cache.invalidate(7);
+        cache.put(product(7, 5), token);
+
+        assertNull(cache.get(7));
+    }
+
+    @Test
+    public void provider_servesReopenedProductsFromCacheAndDropsThemOnWrite() {
+        Robolectric.setupContentProvider(InventoryProvider.class, InventoryContract.CONTENT_AUTHORITY);
+        ContentResolver contentResolver = RuntimeEnvironment.application.getContentResolver();
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Pencil");
+        values.put(InventoryEntry.COLUMN_QUANTITY, 10);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        Uri productUri = contentResolver.insert(InventoryEntry.CONTENT_URI, values);
+
+        assertEquals(10, quantity(contentResolver, productUri));
+        assertEquals(10, quantity(contentResolver, productUri));
+
+        ContentValues update = new ContentValues();
+        update.put(InventoryEntry.COLUMN_QUANTITY, 4);
+        contentResolver.update(productUri, update, null, null);
+        assertEquals(4, quantity(contentResolver, productUri));
+
+        contentResolver.update(InventoryEntry.buildAdjustUri(ContentUris.parseId(productUri), -1),
+                null, null, null);
+        assertEquals(3, quantity(contentResolver, productUri));
+
+        contentResolver.delete(productUri, null, null);
+        Cursor cursor = contentResolver.query(productUri, null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    private static int quantity(ContentResolver contentResolver, Uri productUri) {
+        Cursor cursor = contentResolver.query(productUri,
+                new String[]{InventoryEntry._ID, InventoryEntry.COLUMN_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(cursor.getColumnIndex(InventoryEntry.COLUMN_QUANTITY));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Product product(long id, int quantity) {
+        return new Product(id, "Pencil", 2, quantity, "Acme", null, null, 1);
+    }
+}
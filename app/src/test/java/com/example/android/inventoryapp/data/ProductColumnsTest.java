@@ -0,0 +1,169 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
+
+import com.example.android.inventoryapp.data.InventoryContract.ColumnsEntry;
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProductColumnsTest {
+
+    private InventoryProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(InventoryProvider.class,
+                InventoryContract.CONTENT_AUTHORITY);
+    }
+
+    @Test
+    public void chunks_coverEveryProductOnceInIdOrder() throws IOException {
+        insertProducts(120, "Pencil");
+        String[] columns = {InventoryEntry.COLUMN_QUANTITY, InventoryEntry.COLUMN_SUPPLIER_NAME,
+                InventoryEntry.COLUMN_SKU};
+
+        ProductColumns first = read(columns, 0, 50);
+        assertEquals(50, first.size());
+        assertTrue(first.hasMore());
+        //50 skus and 3 supplier names, every sku of an odd product is null
+        assertEquals("Supplier 1", first.string(InventoryEntry.COLUMN_SUPPLIER_NAME, 1));
+        assertNull(first.string(InventoryEntry.COLUMN_SKU, 1));
+        assertEquals("sku-0", first.string(InventoryEntry.COLUMN_SKU, 0));
+        assertEquals(1, first.ints(InventoryEntry.COLUMN_QUANTITY)[1]);
+
+        ProductColumns second = read(columns, first.next(), 50);
+        ProductColumns last = read(columns, second.next(), 50);
+        assertEquals(20, last.size());
+        assertFalse(last.hasMore());
+
+        long[] ids = new long[120];
+        System.arraycopy(first.ids(), 0, ids, 0, 50);
+        System.arraycopy(second.ids(), 0, ids, 50, 50);
+        System.arraycopy(last.ids(), 0, ids, 100, 20);
+        assertArrayEquals(cursorIds(), ids);
+    }
+
+    @Test
+    public void largeChunk_comesThroughAFile() throws IOException {
+        char[] longName = new char[100];
+        Arrays.fill(longName, 'x');
+        //about 2000 * 200 bytes of names, more than fits inline
+        insertProducts(2000, new String(longName));
+
+        Bundle extras = new Bundle();
+        extras.putInt(ColumnsEntry.EXTRA_LIMIT, 2000);
+        Bundle result = mProvider.call(ColumnsEntry.METHOD_READ_COLUMNS, null, extras);
+        assertTrue(result.containsKey(ColumnsEntry.EXTRA_FILE));
+        assertFalse(result.containsKey(ColumnsEntry.EXTRA_IDS));
+
+        ProductColumns chunk = ProductColumns.from(result);
+        assertFalse(chunk.hasMore());
+        assertArrayEquals(cursorIds(), chunk.ids());
+        assertEquals(new String(longName) + " 1999", chunk.string(InventoryEntry.COLUMN_PRODUCT_NAME, 1999));
+        assertEquals(1999 % 100, chunk.ints(InventoryEntry.COLUMN_PRICE)[1999]);
+        assertEquals("Supplier 0", chunk.string(InventoryEntry.COLUMN_SUPPLIER_NAME, 1998));
+    }
+
+    @Test
+    public void largeChunk_unparcelsWithoutTheClassesOfThisApp() throws IOException {
+        char[] longName = new char[100];
+        Arrays.fill(longName, 'x');
+        insertProducts(2000, new String(longName));
+        Bundle extras = new Bundle();
+        extras.putInt(ColumnsEntry.EXTRA_LIMIT, 2000);
+        Bundle result = mProvider.call(ColumnsEntry.METHOD_READ_COLUMNS, null, extras);
+
+        //what another app, e.g. the back office, does with the reply
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(result);
+            parcel.setDataPosition(0);
+            Bundle received = parcel.readBundle(new FrameworkClassLoader());
+            assertEquals(ParcelFileDescriptor.class,
+                    received.getParcelable(ColumnsEntry.EXTRA_FILE).getClass());
+        } finally {
+            parcel.recycle();
+            ((ParcelFileDescriptor) result.getParcelable(ColumnsEntry.EXTRA_FILE)).close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void columnOutsideTheCatalogue_isRefused() {
+        Bundle extras = new Bundle();
+        extras.putStringArray(ColumnsEntry.EXTRA_COLUMNS, new String[]{InventoryEntry.COLUMN_SYNC_ID});
+        mProvider.call(ColumnsEntry.METHOD_READ_COLUMNS, null, extras);
+    }
+
+    private ProductColumns read(String[] columns, long after, int limit) throws IOException {
+        Bundle extras = new Bundle();
+        extras.putStringArray(ColumnsEntry.EXTRA_COLUMNS, columns);
+        extras.putLong(ColumnsEntry.EXTRA_AFTER, after);
+        extras.putInt(ColumnsEntry.EXTRA_LIMIT, limit);
+        Bundle result = mProvider.call(ColumnsEntry.METHOD_READ_COLUMNS, null, extras);
+        assertFalse(result.containsKey(ColumnsEntry.EXTRA_FILE));
+        return ProductColumns.from(result);
+    }
+
+    private void insertProducts(int count, String name) {
+        ContentValues[] products = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            products[i] = new ContentValues();
+            products[i].put(InventoryEntry.COLUMN_PRODUCT_NAME, name + " " + i);
+            products[i].put(InventoryEntry.COLUMN_PRICE, i % 100);
+            products[i].put(InventoryEntry.COLUMN_QUANTITY, i % 50);
+            products[i].put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Supplier " + i % 3);
+            if (i % 2 == 0) {
+                products[i].put(InventoryEntry.COLUMN_SKU, "sku-" + i);
+            }
+        }
+        assertEquals(count, mProvider.bulkInsert(InventoryEntry.CONTENT_URI, products));
+    }
+
+    /**
+     * Loads what the system class loader of another process would, the framework classes, and
+     * none of the classes of this app.
+     */
+    private static final class FrameworkClassLoader extends ClassLoader {
+
+        FrameworkClassLoader() {
+            super(Bundle.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith("com.example.android.inventoryapp.")) {
+                throw new ClassNotFoundException(name);
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    private long[] cursorIds() {
+        Cursor cursor = mProvider.query(InventoryEntry.CONTENT_URI, new String[]{InventoryEntry._ID},
+                null, null, InventoryEntry._ID);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.ProductQuery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProductQuerySqlTest {
+
+    private static final String[] LIST_PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRICE,
+            InventoryEntry.COLUMN_QUANTITY
+    };
+
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mDb = SQLiteDatabase.create(null);
+        InventoryDbHelper.createVersion1(mDb);
+        InventoryMigrations.migrate(mDb, 1, InventoryDbHelper.DATABASE_VERSION);
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @Test
+    public void everySortAndFilter_isAnsweredFromACoveringIndex() {
+        for (int sortBy = ProductQuery.SORT_BY_ID; sortBy <= ProductQuery.SORT_BY_QUANTITY; sortBy++) {
+            for (int descending = 0; descending < 2; descending++) {
+                //bit 0 price range, bit 1 in stock only, bit 2 one supplier
+                for (int filters = 0; filters < 8; filters++) {
+                    ProductQuery query = query(sortBy, descending == 1, filters);
+                    String firstPage = plan(ProductQuerySql.of(query, null, null, null, null));
+                    String nextPage = plan(ProductQuerySql.of(query, null, null, "10", "5"));
+                    String description = "sort " + sortBy + " desc " + descending + " filters " + filters;
+
+                    assertUsesCoveringIndexes(description, firstPage, sortBy);
+                    assertUsesCoveringIndexes(description, nextPage, sortBy);
+                    if (filters == 0) {
+                        //the index already has the rows in order
+                        assertFalse(description + "\n" + firstPage, firstPage.contains("TEMP B-TREE"));
+                        assertFalse(description + "\n" + nextPage, nextPage.contains("TEMP B-TREE"));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void everyFilteredCount_isAnsweredFromACoveringIndex() {
+        for (int filters = 0; filters < 8; filters++) {
+            ProductQuerySql sql = ProductQuerySql.of(query(ProductQuery.SORT_BY_ID, false, filters),
+                    null, null, null, null);
+            String plan = explain(SQLiteQueryBuilder.buildQueryString(false, InventoryEntry.TABLE_NAME,
+                    new String[]{"COUNT(*)"}, sql.selection, null, null, null, null), sql.selectionArgs);
+            assertUsesCoveringIndexes("filters " + filters, plan, -1);
+        }
+    }
+
+    @Test
+    public void sortedPages_visitEveryProductOnceInOrder() {
+        Robolectric.setupContentProvider(InventoryProvider.class, InventoryContract.CONTENT_AUTHORITY);
+        ContentResolver contentResolver = RuntimeEnvironment.application.getContentResolver();
+        //equal prices make the pages split ties, which only _id keeps apart
+        int[] prices = {3, 1, 3, 2, 3, 1, 2};
+        for (int i = 0; i < prices.length; i++) {
+            ContentValues values = new ContentValues();
+            values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            values.put(InventoryEntry.COLUMN_PRICE, prices[i]);
+            values.put(InventoryEntry.COLUMN_QUANTITY, i);
+            values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+            contentResolver.insert(InventoryEntry.CONTENT_URI, values);
+        }
+
+        ProductQuery query = new ProductQuery.Builder()
+                .sortBy(ProductQuery.SORT_BY_PRICE, true)
+                .inStockOnly(true)
+                .build();
+        Uri listUri = query.applyTo(InventoryEntry.CONTENT_URI);
+        StringBuilder ids = new StringBuilder();
+        long afterId = 0;
+        String afterKey = null;
+        for (int page = 0; page < 10; page++) {
+            Cursor cursor = contentResolver.query(
+                    InventoryEntry.buildPageUri(listUri, afterId, afterKey, 2),
+                    LIST_PROJECTION, null, null, null);
+            try {
+                if (!cursor.moveToFirst()) {
+                    break;
+                }
+                do {
+                    afterId = cursor.getLong(0);
+                    afterKey = query.keyOf(cursor.getString(1), cursor.getInt(2), cursor.getInt(3));
+                    ids.append(afterId).append(',');
+                } while (cursor.moveToNext());
+            } finally {
+                cursor.close();
+            }
+        }
+        //_id 1 has no stock, the rest by price descending and then _id descending
+        assertEquals("5,3,7,4,6,2,", ids.toString());
+    }
+
+    @Test
+    public void unknownParameterValues_areRejected() {
+        String[] uris = {
+                "content://" + InventoryContract.CONTENT_AUTHORITY + "/products?sort=supplier",
+                "content://" + InventoryContract.CONTENT_AUTHORITY + "/products?order=random",
+                "content://" + InventoryContract.CONTENT_AUTHORITY + "/products?min_price=-1",
+                "content://" + InventoryContract.CONTENT_AUTHORITY + "/products?supplier_id=x"
+        };
+        for (String uri : uris) {
+            try {
+                ProductQuery.fromUri(Uri.parse(uri));
+                fail(uri);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void sortOrder_onlyNamesProductColumns() {
+        assertEquals("Price DESC, _id", ProductQuerySql.checkSortOrder("Price DESC, _id",
+                InventoryEntry.CONTENT_URI));
+        String[] sortOrders = {"Price DESC LIMIT 1", "(SELECT 1)", "Price; DROP TABLE products", "Cost"};
+        for (String sortOrder : sortOrders) {
+            try {
+                ProductQuerySql.checkSortOrder(sortOrder, InventoryEntry.CONTENT_URI);
+                fail(sortOrder);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void supplierSortOrder_withoutSupplierColumns_readsTheView() {
+        Robolectric.setupContentProvider(InventoryProvider.class, InventoryContract.CONTENT_AUTHORITY);
+        ContentResolver contentResolver = RuntimeEnvironment.application.getContentResolver();
+        String[] suppliers = {"Zeta", "Acme", "Mono"};
+        for (int i = 0; i < suppliers.length; i++) {
+            ContentValues values = new ContentValues();
+            values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            values.put(InventoryEntry.COLUMN_PRICE, 1);
+            values.put(InventoryEntry.COLUMN_QUANTITY, 1);
+            values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, suppliers[i]);
+            contentResolver.insert(InventoryEntry.CONTENT_URI, values);
+        }
+
+        //the projection alone would be answered from the products table
+        Cursor cursor = contentResolver.query(InventoryEntry.CONTENT_URI,
+                new String[]{InventoryEntry._ID, InventoryEntry.COLUMN_PRODUCT_NAME}, null, null,
+                InventoryEntry.COLUMN_SUPPLIER_NAME);
+        StringBuilder names = new StringBuilder();
+        try {
+            while (cursor.moveToNext()) {
+                names.append(cursor.getString(1)).append(',');
+            }
+        } finally {
+            cursor.close();
+        }
+        assertEquals("Product 1,Product 2,Product 0,", names.toString());
+    }
+
+    @Test
+    public void supplierColumns_inAnyCaseOrQuoting_readTheView() {
+        Robolectric.setupContentProvider(InventoryProvider.class, InventoryContract.CONTENT_AUTHORITY);
+        ContentResolver contentResolver = RuntimeEnvironment.application.getContentResolver();
+        String[] suppliers = {"Zeta", "Acme"};
+        for (int i = 0; i < suppliers.length; i++) {
+            ContentValues values = new ContentValues();
+            values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, suppliers[i]);
+            contentResolver.insert(InventoryEntry.CONTENT_URI, values);
+        }
+
+        //the products table has no such columns, so each of these fails unless it reads the view
+        String[] selections = {"supplier_name = ?", "\"SUPPLIER_NAME\" = ?", "[Supplier_Name] = ?"};
+        for (String selection : selections) {
+            Cursor cursor = contentResolver.query(InventoryEntry.CONTENT_URI,
+                    new String[]{InventoryEntry.COLUMN_PRODUCT_NAME}, selection, new String[]{"Acme"}, null);
+            try {
+                assertTrue(selection, cursor.moveToFirst());
+                assertEquals(selection, "Product 1", cursor.getString(0));
+                assertEquals(selection, 1, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+        }
+
+        //a literal that spells a supplier column does not need the suppliers
+        Cursor cursor = contentResolver.query(InventoryEntry.CONTENT_URI,
+                new String[]{InventoryEntry.COLUMN_PRODUCT_NAME},
+                InventoryEntry.COLUMN_PRODUCT_NAME + " != 'Supplier_Name'", null, null);
+        try {
+            assertEquals(2, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ProductQuery query(int sortBy, boolean descending, int filters) {
+        ProductQuery.Builder builder = new ProductQuery.Builder().sortBy(sortBy, descending);
+        if ((filters & 1) != 0) {
+            builder.priceRange(2, 50);
+        }
+        if ((filters & 2) != 0) {
+            builder.inStockOnly(true);
+        }
+        if ((filters & 4) != 0) {
+            builder.supplier(1);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Every step reading products has to come from a covering index, so no row is read twice.
+     * The only exception is a query in _id order, which walks the table itself and stops at
+     * the page limit.
+     */
+    private static void assertUsesCoveringIndexes(String description, String plan, int sortBy) {
+        for (String step : plan.split("\n")) {
+            if (!step.contains(InventoryEntry.TABLE_NAME) || step.contains("COVERING INDEX")) {
+                continue;
+            }
+            assertTrue(description + "\n" + plan, sortBy == ProductQuery.SORT_BY_ID
+                    && (!step.contains(" USING ") || step.contains("INTEGER PRIMARY KEY")));
+        }
+    }
+
+    private String plan(ProductQuerySql sql) {
+        return explain(SQLiteQueryBuilder.buildQueryString(false, InventoryEntry.TABLE_NAME,
+                LIST_PROJECTION, sql.selection, null, null, sql.orderBy, "50"), sql.selectionArgs);
+    }
+
+    private String explain(String sql, String[] selectionArgs) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
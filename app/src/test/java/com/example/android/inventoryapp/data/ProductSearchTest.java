@@ -0,0 +1,149 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Searches products through products/search, where what the user typed becomes a full-text
+ * match of word prefixes. No input may reach SQLite as a malformed match expression.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProductSearchTest {
+
+    private ContentResolver mContentResolver;
+    private long mBluePencil;
+    private long mRedPen;
+    private long mPencilCase;
+    private long mCrayons;
+
+    @Before
+    public void setUp() {
+        Robolectric.setupContentProvider(InventoryProvider.class, InventoryContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+        mBluePencil = insertProduct("Blue Pencil", "Acme");
+        mRedPen = insertProduct("Red Pen", "Near Goods");
+        mPencilCase = insertProduct("Pencil Case", "Or Ltd");
+        mCrayons = insertProduct("Kid's Crayons", "Acme");
+    }
+
+    @Test
+    public void everyWord_matchesAsAPrefix() {
+        assertEquals(Collections.singletonList(mBluePencil), search("blu pen"));
+        assertEquals(Arrays.asList(mBluePencil, mRedPen, mPencilCase), search("pen"));
+        //case does not matter, and the words may come in any order
+        assertEquals(Collections.singletonList(mPencilCase), search("CASE penc"));
+        assertEquals(Collections.<Long>emptyList(), search("pencils"));
+    }
+
+    @Test
+    public void supplierNames_areSearchedToo() {
+        assertEquals(Arrays.asList(mBluePencil, mCrayons), search("acme"));
+        assertEquals(Collections.singletonList(mCrayons), search("acme cray"));
+    }
+
+    @Test
+    public void punctuation_splitsWords() {
+        assertEquals(Collections.singletonList(mCrayons), search("kid's"));
+        assertEquals(Collections.singletonList(mBluePencil), search("blue-pencil"));
+        assertEquals(Collections.singletonList(mBluePencil), search("blue,  pencil."));
+    }
+
+    @Test
+    public void quotesStarsAndMinus_areDropped() {
+        List<Long> pens = Arrays.asList(mBluePencil, mRedPen, mPencilCase);
+        assertEquals(pens, search("\"pen\""));
+        assertEquals(pens, search("pen*"));
+        //a leading minus would exclude the word, here it is still searched for
+        assertEquals(pens, search("-pen"));
+        assertEquals(Collections.singletonList(mBluePencil), search("blue -pencil"));
+    }
+
+    @Test
+    public void inputThatWouldBeAMalformedMatch_stillSearches() {
+        //each of these is a malformed match expression or an operator on its own
+        assertEquals(Arrays.asList(mBluePencil, mRedPen, mPencilCase), search("\"pen"));
+        assertEquals(Collections.singletonList(mRedPen), search("NEAR("));
+        assertEquals(Collections.singletonList(mPencilCase), search("pen OR"));
+        assertEquals(Collections.<Long>emptyList(), search("AND"));
+        assertEquals(Collections.<Long>emptyList(), search("NOT pen"));
+        assertEquals(Arrays.asList(mBluePencil, mRedPen, mPencilCase), search("pen)("));
+    }
+
+    @Test
+    public void inputWithoutWords_findsEveryProduct() {
+        List<Long> all = Arrays.asList(mBluePencil, mRedPen, mPencilCase, mCrayons);
+        assertEquals(all, search(""));
+        assertEquals(all, search(" \"*-()"));
+        assertEquals(all, ids(InventoryEntry.CONTENT_SEARCH_URI));
+    }
+
+    @Test
+    public void searchResults_comeInPages() {
+        Uri searchUri = InventoryEntry.buildSearchUri("pen");
+        List<Long> first = ids(InventoryEntry.buildPageUri(searchUri, 0, 2));
+        assertEquals(Arrays.asList(mBluePencil, mRedPen), first);
+        List<Long> second = ids(InventoryEntry.buildPageUri(searchUri, first.get(1), 2));
+        assertEquals(Collections.singletonList(mPencilCase), second);
+        assertEquals(Collections.<Long>emptyList(),
+                ids(InventoryEntry.buildPageUri(searchUri, second.get(0), 2)));
+
+        assertEquals(Collections.singletonList(mRedPen),
+                ids(InventoryEntry.buildOffsetPageUri(searchUri, 1, 1)));
+    }
+
+    @Test
+    public void renamedProduct_isFoundByItsNewName() {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Green Marker");
+        assertEquals(1, mContentResolver.update(
+                ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, mRedPen), values, null, null));
+
+        assertEquals(Collections.singletonList(mRedPen), search("mark"));
+        assertEquals(Arrays.asList(mBluePencil, mPencilCase), search("pen"));
+    }
+
+    private List<Long> search(String query) {
+        return ids(InventoryEntry.buildSearchUri(query));
+    }
+
+    private List<Long> ids(Uri uri) {
+        Cursor cursor = mContentResolver.query(uri, new String[]{InventoryEntry._ID}, null, null,
+                InventoryEntry._ID);
+        try {
+            List<Long> ids = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long insertProduct(String name, String supplier) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(InventoryEntry.COLUMN_QUANTITY, 1);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, supplier);
+        return ContentUris.parseId(mContentResolver.insert(InventoryEntry.CONTENT_URI, values));
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentValues;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProductValidatorTest {
+
+    @Test
+    public void insert_requiresNameAndSupplier() {
+        ContentValues values = product();
+        assertEquals(ProductValidator.VALID, ProductValidator.validateInsert(values));
+
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "  ");
+        assertEquals(ProductValidator.ERROR_NAME_MISSING, ProductValidator.validateInsert(values));
+
+        values = product();
+        values.remove(InventoryEntry.COLUMN_SUPPLIER_NAME);
+        assertEquals(ProductValidator.ERROR_SUPPLIER_MISSING, ProductValidator.validateInsert(values));
+    }
+
+    @Test
+    public void insert_checksNumbersGivenAsNumbersOrText() {
+        ContentValues values = product();
+        values.put(InventoryEntry.COLUMN_PRICE, "12");
+        values.put(InventoryEntry.COLUMN_SUPPLIER_PHOHE, "5550100");
+        assertEquals(ProductValidator.VALID, ProductValidator.validateInsert(values));
+
+        values.put(InventoryEntry.COLUMN_PRICE, -1);
+        assertEquals(ProductValidator.ERROR_PRICE_INVALID, ProductValidator.validateInsert(values));
+
+        values = product();
+        values.put(InventoryEntry.COLUMN_QUANTITY, "3.5");
+        assertEquals(ProductValidator.ERROR_QUANTITY_INVALID, ProductValidator.validateInsert(values));
+
+        values.put(InventoryEntry.COLUMN_QUANTITY, "99999999999");
+        assertEquals(ProductValidator.ERROR_QUANTITY_INVALID, ProductValidator.validateInsert(values));
+
+        values = product();
+        values.put(InventoryEntry.COLUMN_SUPPLIER_PHOHE, "555-0100 x");
+        assertEquals(ProductValidator.ERROR_PHONE_INVALID, ProductValidator.validateInsert(values));
+    }
+
+    @Test
+    public void phones_keepSeparatorsAndLeadingZeros() {
+        ContentValues values = product();
+        values.put(InventoryEntry.COLUMN_SUPPLIER_PHOHE, "+1 (555) 010-0100");
+        assertEquals(ProductValidator.VALID, ProductValidator.validateInsert(values));
+
+        values.put(InventoryEntry.COLUMN_SUPPLIER_PHOHE, "0049 30 1234");
+        assertEquals(ProductValidator.VALID, ProductValidator.validateInsert(values));
+
+        values.put(InventoryEntry.COLUMN_SUPPLIER_PHOHE, "1+2");
+        assertEquals(ProductValidator.ERROR_PHONE_INVALID, ProductValidator.validateInsert(values));
+    }
+
+    @Test
+    public void insert_acceptsASupplierIdInsteadOfAName() {
+        ContentValues values = product();
+        values.remove(InventoryEntry.COLUMN_SUPPLIER_NAME);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_ID, 3);
+        assertEquals(ProductValidator.VALID, ProductValidator.validateInsert(values));
+    }
+
+    @Test
+    public void update_checksOnlyPresentColumns() {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_QUANTITY, 4);
+        assertEquals(ProductValidator.VALID, ProductValidator.validateUpdate(values));
+
+        values.put(InventoryEntry.COLUMN_PRICE, "abc");
+        assertEquals(ProductValidator.ERROR_PRICE_INVALID, ProductValidator.validateUpdate(values));
+
+        values = new ContentValues();
+        values.putNull(InventoryEntry.COLUMN_SUPPLIER_NAME);
+        assertEquals(ProductValidator.ERROR_SUPPLIER_MISSING, ProductValidator.validateUpdate(values));
+    }
+
+    @Test
+    public void skus_areVisibleAsciiText() {
+        ContentValues values = product();
+        values.put(InventoryEntry.COLUMN_SKU, "0036000291452");
+        assertEquals(ProductValidator.VALID, ProductValidator.validateInsert(values));
+        values.put(InventoryEntry.COLUMN_SKU, "ACME-PEN/BLUE");
+        assertEquals(ProductValidator.VALID, ProductValidator.validateInsert(values));
+
+        //a number would lose the leading zeros
+        values.put(InventoryEntry.COLUMN_SKU, 36000291452L);
+        assertEquals(ProductValidator.ERROR_SKU_INVALID, ProductValidator.validateInsert(values));
+        values.put(InventoryEntry.COLUMN_SKU, "");
+        assertEquals(ProductValidator.ERROR_SKU_INVALID, ProductValidator.validateInsert(values));
+        values.put(InventoryEntry.COLUMN_SKU, "0036 0002");
+        assertEquals(ProductValidator.ERROR_SKU_INVALID, ProductValidator.validateInsert(values));
+
+        //clearing it is a valid change
+        values = new ContentValues();
+        values.putNull(InventoryEntry.COLUMN_SKU);
+        assertEquals(ProductValidator.VALID, ProductValidator.validateUpdate(values));
+    }
+
+    @Test
+    public void validate_doesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        ContentValues values = product();
+        values.put(InventoryEntry.COLUMN_PRICE, "1250");
+        int checksum = 0;
+        for (int i = 0; i < 1000; i++) {
+            checksum += ProductValidator.validateInsert(values);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            checksum += ProductValidator.validateInsert(values);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(ProductValidator.VALID, checksum);
+        assertEquals(0, allocated);
+    }
+
+    private static ContentValues product() {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Pencil");
+        values.put(InventoryEntry.COLUMN_PRICE, 2);
+        values.put(InventoryEntry.COLUMN_QUANTITY, 40);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        return values;
+    }
+}
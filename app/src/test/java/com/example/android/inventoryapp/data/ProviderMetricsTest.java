@@ -0,0 +1,99 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class ProviderMetricsTest {
+
+    private InventoryProvider mProvider;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        mProvider = Robolectric.setupContentProvider(InventoryProvider.class,
+                InventoryContract.CONTENT_AUTHORITY);
+        //its first page read must not show up in the counters
+        mProvider.awaitWarmUp();
+    }
+
+    @Test
+    public void disabledMetrics_recordNothing() {
+        insertProduct("Pencil");
+        readAll(mProvider.query(InventoryEntry.CONTENT_URI, null, null, null, null));
+
+        String dump = dump();
+        assertTrue(dump, dump.contains("ProviderMetrics[disabled]"));
+        assertFalse(dump, dump.contains("calls="));
+    }
+
+    @Test
+    public void enabledMetrics_countCallsRowsAndWindowFillsPerPattern() {
+        dump("metrics", "on");
+        insertProduct("Pencil");
+        insertProduct("Eraser");
+        Uri paper = insertProduct("Paper");
+
+        assertEquals(3, readAll(mProvider.query(InventoryEntry.CONTENT_URI,
+                new String[]{InventoryEntry._ID, InventoryEntry.COLUMN_PRODUCT_NAME}, null, null, null)));
+        ContentValues sale = new ContentValues();
+        sale.put(InventoryEntry.COLUMN_QUANTITY, 1);
+        assertEquals(1, mProvider.update(paper, sale, null, null));
+        assertEquals(InventoryEntry.ADJUST_REJECTED, mProvider.update(
+                InventoryEntry.buildAdjustUri(ContentUris.parseId(paper), -5), null, null, null));
+        assertEquals(1, mProvider.delete(paper, null, null));
+
+        String dump = dump();
+        assertTrue(dump, dump.contains("insert products: calls=3 "));
+        assertTrue(dump, dump.contains(" rows=3 windowFills=1 "));
+        assertTrue(dump, dump.contains("update products/#: calls=1 "));
+        assertTrue(dump, dump.contains("update products/#/adjust: calls=1 "));
+        assertTrue(dump, dump.contains("delete products/#: calls=1 "));
+        assertTrue(dump, dump.contains("    latency <"));
+
+        dump("metrics", "reset");
+        assertFalse(dump(), dump().contains("calls="));
+    }
+
+    private Uri insertProduct(String name) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(InventoryEntry.COLUMN_QUANTITY, 3);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        return mProvider.insert(InventoryEntry.CONTENT_URI, values);
+    }
+
+    private static int readAll(Cursor cursor) {
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String dump(String... args) {
+        StringWriter dump = new StringWriter();
+        PrintWriter writer = new PrintWriter(dump);
+        mProvider.dump(null, writer, args);
+        writer.flush();
+        return dump.toString();
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+import com.example.android.inventoryapp.data.InventoryContract.MovementEntry;
+import com.example.android.inventoryapp.data.InventoryContract.SaleEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class StockLedgerTest {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private InventoryProvider mProvider;
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(InventoryProvider.class,
+                InventoryContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void everyQuantityChange_isRecordedWithItsReason() {
+        long id = insertProduct(10);
+        mContentResolver.update(InventoryEntry.buildAdjustUri(id, -3), null, null, null);
+        assertEquals(InventoryEntry.ADJUST_REJECTED,
+                mContentResolver.update(InventoryEntry.buildAdjustUri(id, -100), null, null, null));
+        ContentValues edit = new ContentValues();
+        edit.put(InventoryEntry.COLUMN_QUANTITY, 20);
+        mContentResolver.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), edit, null, null);
+        //saving the same quantity again is not a movement
+        mContentResolver.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), edit, null, null);
+
+        assertEquals("10,2,\n-3,1,\n13,3,\n", rows(MovementEntry.CONTENT_URI, id, null,
+                MovementEntry.COLUMN_DELTA, MovementEntry.COLUMN_REASON));
+        assertEquals(20, quantity(id));
+    }
+
+    @Test
+    public void insertedMovement_changesTheQuantityUnlessItWouldGoNegative() {
+        long id = insertProduct(2);
+
+        Uri movementUri = mContentResolver.insert(MovementEntry.CONTENT_URI,
+                movement(id, 5, MovementEntry.REASON_RESTOCK, System.currentTimeMillis()));
+        assertNotNull(movementUri);
+        assertEquals(7, quantity(id));
+
+        assertNull(mContentResolver.insert(MovementEntry.CONTENT_URI,
+                movement(id, -8, MovementEntry.REASON_SALE, System.currentTimeMillis())));
+        assertEquals(7, quantity(id));
+        assertEquals("2,\n5,\n", rows(MovementEntry.CONTENT_URI, id, null, MovementEntry.COLUMN_DELTA));
+    }
+
+    @Test
+    public void skuAdjust_findsTheProductAndRecordsTheSale() {
+        long id = insertProduct(2);
+        ContentValues sku = new ContentValues();
+        sku.put(InventoryEntry.COLUMN_SKU, "4006381333931");
+        assertEquals(1, mContentResolver.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                sku, null, null));
+
+        Cursor cursor = mContentResolver.query(InventoryEntry.buildSkuUri("4006381333931"),
+                new String[]{InventoryEntry._ID, InventoryEntry.COLUMN_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(id, cursor.getLong(0));
+            assertEquals(2, cursor.getInt(1));
+        } finally {
+            cursor.close();
+        }
+
+        Uri sale = InventoryEntry.buildSkuAdjustUri("4006381333931", -1);
+        assertEquals(1, mContentResolver.update(sale, null, null, null));
+        assertEquals(0, mContentResolver.update(sale, null, null, null));
+        assertEquals(InventoryEntry.ADJUST_REJECTED, mContentResolver.update(sale, null, null, null));
+        assertEquals(InventoryEntry.ADJUST_UNKNOWN_SKU, mContentResolver.update(
+                InventoryEntry.buildSkuAdjustUri("0000000000000", -1), null, null, null));
+
+        assertEquals("2,2,\n-1,1,\n-1,1,\n", rows(MovementEntry.CONTENT_URI, id, null,
+                MovementEntry.COLUMN_DELTA, MovementEntry.COLUMN_REASON));
+        //a second product cannot take the sku
+        ContentValues other = new ContentValues();
+        other.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Eraser");
+        other.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        other.put(InventoryEntry.COLUMN_SKU, "4006381333931");
+        assertNull(mContentResolver.insert(InventoryEntry.CONTENT_URI, other));
+    }
+
+    @Test
+    public void checkout_sellsEveryLineOrNone() {
+        long pencil = insertProduct(5);
+        long paper = insertProduct(2);
+        ContentValues sku = new ContentValues();
+        sku.put(InventoryEntry.COLUMN_SKU, "4006381333931");
+        mContentResolver.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, paper), sku, null, null);
+
+        assertEquals(2, mContentResolver.bulkInsert(SaleEntry.CONTENT_URI, new ContentValues[]{
+                line(pencil, 3), skuLine("4006381333931", 2)}));
+        assertEquals(2, quantity(pencil));
+        assertEquals(0, quantity(paper));
+        assertEquals("5,2,\n-3,1,\n", rows(MovementEntry.CONTENT_URI, pencil, null,
+                MovementEntry.COLUMN_DELTA, MovementEntry.COLUMN_REASON));
+
+        //the short last line undoes the first
+        assertEquals(SaleEntry.SALE_REJECTED, mContentResolver.bulkInsert(SaleEntry.CONTENT_URI,
+                new ContentValues[]{line(pencil, 1), line(paper, 1)}));
+        assertEquals(SaleEntry.SALE_UNKNOWN_SKU, mContentResolver.bulkInsert(SaleEntry.CONTENT_URI,
+                new ContentValues[]{line(pencil, 1), skuLine("0000000000000", 1)}));
+        assertEquals(2, quantity(pencil));
+        assertEquals("5,\n-3,\n", rows(MovementEntry.CONTENT_URI, pencil, null, MovementEntry.COLUMN_DELTA));
+    }
+
+    @Test
+    public void compaction_rollsOldMovementsIntoDailySummaries() {
+        long id = insertProduct(50);
+        mContentResolver.insert(MovementEntry.CONTENT_URI, movement(id, -1, MovementEntry.REASON_SALE, 3 * DAY + 10));
+        mContentResolver.insert(MovementEntry.CONTENT_URI, movement(id, -2, MovementEntry.REASON_SALE, 3 * DAY + 20));
+        mContentResolver.insert(MovementEntry.CONTENT_URI, movement(id, 4, MovementEntry.REASON_RESTOCK, 3 * DAY + 30));
+        mContentResolver.insert(MovementEntry.CONTENT_URI, movement(id, -5, MovementEntry.REASON_SALE, 4 * DAY));
+
+        Bundle extras = new Bundle();
+        extras.putLong(MovementEntry.EXTRA_BEFORE, 5 * DAY);
+        Bundle result = mProvider.call(MovementEntry.METHOD_COMPACT, null, extras);
+        assertEquals(4, result.getInt(MovementEntry.EXTRA_COUNT));
+
+        //a late movement for a compacted day is added to its summary
+        mContentResolver.insert(MovementEntry.CONTENT_URI, movement(id, -1, MovementEntry.REASON_SALE, 3 * DAY + 40));
+        mProvider.call(MovementEntry.METHOD_COMPACT, null, extras);
+
+        String days = MovementEntry.COLUMN_DAY + ", " + MovementEntry.COLUMN_REASON;
+        assertEquals("3,1,-4,3,\n3,2,4,1,\n4,1,-5,1,\n", rows(MovementEntry.CONTENT_DAYS_URI, id, days,
+                MovementEntry.COLUMN_DAY, MovementEntry.COLUMN_REASON, MovementEntry.COLUMN_DELTA,
+                MovementEntry.COLUMN_MOVEMENT_COUNT));
+        //only the starting quantity, recorded today, is left in the ledger
+        assertEquals("50,\n", rows(MovementEntry.CONTENT_URI, id, null, MovementEntry.COLUMN_DELTA));
+        assertEquals(45, quantity(id));
+
+        //nothing is older than the retention period by default
+        assertEquals(0, mProvider.call(MovementEntry.METHOD_COMPACT, null, null)
+                .getInt(MovementEntry.EXTRA_COUNT));
+    }
+
+    private long insertProduct(int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Pencil");
+        values.put(InventoryEntry.COLUMN_QUANTITY, quantity);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        return ContentUris.parseId(mContentResolver.insert(InventoryEntry.CONTENT_URI, values));
+    }
+
+    private static ContentValues movement(long productId, int delta, int reason, long timestamp) {
+        ContentValues values = new ContentValues();
+        values.put(MovementEntry.COLUMN_PRODUCT_ID, productId);
+        values.put(MovementEntry.COLUMN_DELTA, delta);
+        values.put(MovementEntry.COLUMN_REASON, reason);
+        values.put(MovementEntry.COLUMN_TIMESTAMP, timestamp);
+        return values;
+    }
+
+    private static ContentValues line(long productId, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(SaleEntry.COLUMN_PRODUCT_ID, productId);
+        values.put(SaleEntry.COLUMN_QUANTITY, quantity);
+        return values;
+    }
+
+    private static ContentValues skuLine(String sku, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(SaleEntry.COLUMN_SKU, sku);
+        values.put(SaleEntry.COLUMN_QUANTITY, quantity);
+        return values;
+    }
+
+    private int quantity(long id) {
+        Cursor cursor = mContentResolver.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                new String[]{InventoryEntry.COLUMN_QUANTITY}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String rows(Uri uri, long productId, String sortOrder, String... columns) {
+        StringBuilder rows = new StringBuilder();
+        Cursor cursor = mContentResolver.query(uri, columns, MovementEntry.COLUMN_PRODUCT_ID + "=?",
+                new String[]{Long.toString(productId)}, sortOrder);
+        try {
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < columns.length; i++) {
+                    rows.append(cursor.getString(i)).append(',');
+                }
+                rows.append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.android.inventoryapp.data;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * The sync server as {@link InventorySync} expects it, in memory. Takes a change whose base is
+ * its version of the row and hands out a feed of the changed rows. Remembers how many rows
+ * every request pushed and pulled.
+ */
+final class SyncServerStandIn extends Dispatcher {
+
+    private final Map<String, JSONObject> mRows = new HashMap<>();
+    //feed position of the last change of every row
+    private final TreeMap<Long, String> mFeed = new TreeMap<>();
+    private final Map<String, Long> mPositions = new HashMap<>();
+    private long mPosition;
+
+    final List<Integer> pushedRows = new ArrayList<>();
+    final List<Integer> pulledRows = new ArrayList<>();
+    boolean gzipRequests = true;
+
+    @Override
+    public synchronized MockResponse dispatch(RecordedRequest request) {
+        try {
+            gzipRequests &= "gzip".equals(request.getHeader("Content-Encoding"));
+            JSONObject body = new JSONObject(new String(gunzip(request.getBody().readByteArray()), "UTF-8"));
+            byte[] answer = gzip(exchange(body).toString().getBytes("UTF-8"));
+            return new MockResponse()
+                    .setHeader("Content-Type", "application/json")
+                    .setHeader("Content-Encoding", "gzip")
+                    .setBody(new Buffer().write(answer));
+        } catch (IOException | JSONException e) {
+            return new MockResponse().setResponseCode(400).setBody(e.toString());
+        }
+    }
+
+    private JSONObject exchange(JSONObject request) throws JSONException {
+        JSONArray changes = request.getJSONArray("changes");
+        JSONArray accepted = new JSONArray();
+        JSONArray conflicts = new JSONArray();
+        pushedRows.add(changes.length());
+        for (int i = 0; i < changes.length(); i++) {
+            JSONObject change = changes.getJSONObject(i);
+            String id = change.getString("id");
+            JSONObject current = mRows.get(id);
+            long version = current == null ? 0 : current.getLong("version");
+            if (change.getLong("base") != version) {
+                conflicts.put(current);
+                continue;
+            }
+            change.remove("base");
+            change.put("version", version + 1);
+            mRows.put(id, change);
+            Long old = mPositions.put(id, ++mPosition);
+            if (old != null) {
+                mFeed.remove(old);
+            }
+            mFeed.put(mPosition, id);
+            accepted.put(new JSONObject().put("id", id).put("version", version + 1));
+        }
+
+        long cursor = request.getLong("since");
+        int limit = request.getInt("limit");
+        SortedMap<Long, String> after = mFeed.tailMap(cursor + 1);
+        JSONArray pulled = new JSONArray();
+        for (Map.Entry<Long, String> entry : after.entrySet()) {
+            if (pulled.length() == limit) {
+                break;
+            }
+            pulled.put(mRows.get(entry.getValue()));
+            cursor = entry.getKey();
+        }
+        pulledRows.add(pulled.length());
+        return new JSONObject()
+                .put("accepted", accepted)
+                .put("conflicts", conflicts)
+                .put("changes", pulled)
+                .put("cursor", cursor)
+                .put("more", after.size() > pulled.length());
+    }
+
+    int lastPushed() {
+        return pushedRows.get(pushedRows.size() - 1);
+    }
+
+    int lastPulled() {
+        return pulledRows.get(pulledRows.size() - 1);
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
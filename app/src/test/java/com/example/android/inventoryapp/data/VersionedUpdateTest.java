@@ -0,0 +1,162 @@
+package com.example.android.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventoryapp.data.InventoryContract.InventoryEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class VersionedUpdateTest {
+
+    private InventoryProvider mProvider;
+    private ContentResolver mContentResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.setupContentProvider(InventoryProvider.class,
+                InventoryContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @Test
+    public void staleVersion_isRefusedWithoutWriting() {
+        long id = insertProduct();
+        long opened = version(id);
+
+        //another screen saves first
+        assertEquals(1, mContentResolver.update(InventoryEntry.buildVersionedUri(id, opened),
+                values(InventoryEntry.COLUMN_PRICE, "3"), null, null));
+        assertEquals(opened + 1, version(id));
+
+        assertEquals(InventoryEntry.UPDATE_CONFLICT, mContentResolver.update(
+                InventoryEntry.buildVersionedUri(id, opened),
+                values(InventoryEntry.COLUMN_PRODUCT_NAME, "Eraser"), null, null));
+        assertEquals("Pencil", name(id));
+
+        //saving over it on purpose still works
+        assertEquals(1, mContentResolver.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                values(InventoryEntry.COLUMN_PRODUCT_NAME, "Eraser"), null, null));
+        assertEquals("Eraser", name(id));
+    }
+
+    @Test
+    public void unchangedValues_keepTheVersion() {
+        long id = insertProduct();
+        long opened = version(id);
+        Uri uri = InventoryEntry.buildVersionedUri(id, opened);
+
+        assertEquals(0, mContentResolver.update(uri, values(InventoryEntry.COLUMN_PRICE, "2"), null, null));
+        assertEquals(opened, version(id));
+        //so the same screen can still save
+        assertEquals(1, mContentResolver.update(uri, values(InventoryEntry.COLUMN_PRICE, "4"), null, null));
+    }
+
+    @Test
+    public void deletedProduct_isAConflict() {
+        long id = insertProduct();
+        long opened = version(id);
+        assertEquals(1, mContentResolver.delete(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                null, null));
+        assertEquals(InventoryEntry.UPDATE_CONFLICT, mContentResolver.update(
+                InventoryEntry.buildVersionedUri(id, opened),
+                values(InventoryEntry.COLUMN_PRICE, "3"), null, null));
+    }
+
+    @Test
+    public void versionLoadedBeforeASync_conflicts() throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new SyncServerStandIn());
+        server.start();
+        InventoryDbHelper otherDevice = new InventoryDbHelper(RuntimeEnvironment.application,
+                "other_device.db", InventoryDbHelper.StorageMode.WRITE_AHEAD_LOG);
+        try {
+            String serverUrl = server.url("/sync").toString();
+            long id = insertProduct();
+            sync(serverUrl);
+
+            //opened between two edits, the sync then sets the version of the server
+            mContentResolver.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                    values(InventoryEntry.COLUMN_PRICE, "3"), null, null);
+            long opened = version(id);
+            mContentResolver.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                    values(InventoryEntry.COLUMN_PRICE, "4"), null, null);
+            sync(serverUrl);
+            assertEquals(InventoryEntry.UPDATE_CONFLICT, mContentResolver.update(
+                    InventoryEntry.buildVersionedUri(id, opened),
+                    values(InventoryEntry.COLUMN_PRODUCT_NAME, "Eraser"), null, null));
+
+            //opened before a sync brings the change of another device
+            opened = version(id);
+            InventorySyncTest.newSync(otherDevice.getWritableDatabase(), server.url("/sync").url()).run();
+            ContentValues sale = values(InventoryEntry.COLUMN_QUANTITY, "4");
+            assertEquals(1, otherDevice.getWritableDatabase().update(InventoryEntry.TABLE_NAME, sale,
+                    null, null));
+            InventorySyncTest.newSync(otherDevice.getWritableDatabase(), server.url("/sync").url()).run();
+            sync(serverUrl);
+            assertEquals("4", read(id, InventoryEntry.COLUMN_QUANTITY));
+            assertEquals(InventoryEntry.UPDATE_CONFLICT, mContentResolver.update(
+                    InventoryEntry.buildVersionedUri(id, opened),
+                    values(InventoryEntry.COLUMN_PRODUCT_NAME, "Eraser"), null, null));
+            assertEquals("Pencil", name(id));
+        } finally {
+            otherDevice.close();
+            server.shutdown();
+        }
+    }
+
+    private void sync(String serverUrl) {
+        Bundle result = mProvider.call(InventoryContract.SyncEntry.METHOD_SYNC, serverUrl, null);
+        assertFalse(result.containsKey(InventoryContract.SyncEntry.EXTRA_ERROR));
+    }
+
+    private long insertProduct() {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Pencil");
+        values.put(InventoryEntry.COLUMN_PRICE, 2);
+        values.put(InventoryEntry.COLUMN_QUANTITY, 5);
+        values.put(InventoryEntry.COLUMN_SUPPLIER_NAME, "Acme");
+        return ContentUris.parseId(mContentResolver.insert(InventoryEntry.CONTENT_URI, values));
+    }
+
+    private static ContentValues values(String column, String value) {
+        ContentValues values = new ContentValues();
+        values.put(column, value);
+        return values;
+    }
+
+    private long version(long id) {
+        return Long.parseLong(read(id, InventoryEntry.COLUMN_LOCAL_VERSION));
+    }
+
+    private String name(long id) {
+        return read(id, InventoryEntry.COLUMN_PRODUCT_NAME);
+    }
+
+    private String read(long id, String column) {
+        Cursor cursor = mContentResolver.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                new String[]{column}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}